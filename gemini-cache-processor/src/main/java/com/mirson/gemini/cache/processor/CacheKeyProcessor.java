@@ -0,0 +1,393 @@
+package com.mirson.gemini.cache.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 缓存注解处理器
+ * 编译期把缓存注解中的key表达式（#paramN、#result及其属性链）翻译为直接的方法调用，
+ * 为每个包含缓存注解的类生成{@code <类名>_CacheKeys}注册类，并写入ServiceLoader配置，
+ * 运行期切面优先使用生成的key提取，省去SpEL的解析与求值；无法翻译的表达式输出提示后仍由切面使用SpEL计算
+ *
+ * @author zoutongkun
+ */
+public class CacheKeyProcessor extends AbstractProcessor {
+
+    private static final String ANNOTATION_PACKAGE = "com.mirson.gemini.cache.annotation.";
+
+    private static final String CACHE_ADD = ANNOTATION_PACKAGE + "CacheAdd";
+
+    private static final String CACHE_ADD_BATCH = ANNOTATION_PACKAGE + "CacheAddBatch";
+
+    private static final String CACHE_UPDATE = ANNOTATION_PACKAGE + "CacheUpdate";
+
+    private static final String CACHE_DELETE = ANNOTATION_PACKAGE + "CacheDelete";
+
+    private static final String PROVIDER = "com.mirson.gemini.cache.core.key.CacheKeyExtractorProvider";
+
+    private static final String GENERATED_SUFFIX = "_CacheKeys";
+
+    private Types types;
+
+    private Elements elements;
+
+    private Filer filer;
+
+    private Messager messager;
+
+    /**
+     * 本次编译生成的注册类
+     */
+    private final Set<String> providers = new LinkedHashSet<>();
+
+    /**
+     * 已处理的类（同一个类只生成一次）
+     */
+    private final Set<String> processedTypes = new HashSet<>();
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        this.types = processingEnv.getTypeUtils();
+        this.elements = processingEnv.getElementUtils();
+        this.filer = processingEnv.getFiler();
+        this.messager = processingEnv.getMessager();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return new HashSet<>(Arrays.asList(CACHE_ADD, CACHE_ADD_BATCH, CACHE_UPDATE, CACHE_DELETE));
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeServiceFile();
+            return false;
+        }
+        // 按声明类分组
+        Map<TypeElement, List<ExecutableElement>> methodsByType = new LinkedHashMap<>();
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.METHOD) {
+                    continue;
+                }
+                ExecutableElement method = (ExecutableElement) element;
+                List<ExecutableElement> methods = methodsByType.computeIfAbsent(
+                        (TypeElement) method.getEnclosingElement(), k -> new ArrayList<>());
+                if (!methods.contains(method)) {
+                    methods.add(method);
+                }
+            }
+        }
+        for (Map.Entry<TypeElement, List<ExecutableElement>> entry : methodsByType.entrySet()) {
+            generate(entry.getKey(), entry.getValue());
+        }
+        return false;
+    }
+
+    /**
+     * 为一个类生成注册类
+     *
+     * @param type
+     * @param methods
+     */
+    private void generate(TypeElement type, List<ExecutableElement> methods) {
+        String binaryName = elements.getBinaryName(type).toString();
+        if (!processedTypes.add(binaryName)) {
+            return;
+        }
+        List<String> registrations = new ArrayList<>();
+        for (ExecutableElement method : methods) {
+            for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+                String annotationName = ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName()
+                        .toString();
+                if (!getSupportedAnnotationTypes().contains(annotationName)) {
+                    continue;
+                }
+                String registration = registration(binaryName, method, mirror, annotationName);
+                if (registration != null) {
+                    registrations.add(registration);
+                }
+            }
+        }
+        if (registrations.isEmpty()) {
+            return;
+        }
+        PackageElement packageElement = elements.getPackageOf(type);
+        String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+        String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+                .replace('$', '_') + GENERATED_SUFFIX;
+        String generatedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        try {
+            JavaFileObject file = filer.createSourceFile(generatedName, type);
+            try (Writer writer = file.openWriter()) {
+                if (!packageName.isEmpty()) {
+                    writer.write("package " + packageName + ";\n\n");
+                }
+                writer.write("/**\n * " + binaryName + " 的缓存key提取，由CacheKeyProcessor生成，请勿修改\n */\n");
+                writer.write("public final class " + simpleName + " implements " + PROVIDER + " {\n\n");
+                writer.write("    @Override\n");
+                writer.write("    public void register(java.util.Map<String, "
+                        + "com.mirson.gemini.cache.core.key.CacheKeyExtractor> extractors) {\n");
+                for (String registration : registrations) {
+                    writer.write(registration);
+                }
+                writer.write("    }\n}\n");
+            }
+            providers.add(generatedName);
+        } catch (IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "generate " + generatedName + " failed: " + e.getMessage(),
+                    type);
+        }
+    }
+
+    /**
+     * 生成一个方法注解的注册语句
+     *
+     * @return 不需要或无法生成时返回null
+     */
+    private String registration(String className, ExecutableElement method, AnnotationMirror mirror,
+                                String annotationName) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : elements.getElementValuesWithDefaults(mirror).entrySet()) {
+            values.put(entry.getKey().getSimpleName().toString(), entry.getValue().getValue());
+        }
+        String keyExpression = String.valueOf(values.get("keyExpression")).trim();
+        if (keyExpression.isEmpty() || Boolean.TRUE.equals(values.get("removeAll"))) {
+            // 没有表达式时切面直接使用方法参数，全部移除时不需要key
+            return null;
+        }
+        String keyGenerator = ((VariableElement) values.get("keyGenerator")).getSimpleName().toString();
+        List<String> params = translate(keyExpression, method, annotationName);
+        if (params == null) {
+            messager.printMessage(Diagnostic.Kind.NOTE, "cache key expression '" + keyExpression
+                    + "' is not supported by CacheKeyProcessor, fallback to SpEL at runtime.", method);
+            return null;
+        }
+        String annotationSimpleName = annotationName.substring(ANNOTATION_PACKAGE.length());
+        StringBuilder typeNames = new StringBuilder();
+        for (VariableElement parameter : method.getParameters()) {
+            if (typeNames.length() > 0) {
+                typeNames.append(',');
+            }
+            typeNames.append(typeName(parameter.asType()));
+        }
+        String methodId = annotationSimpleName + ":" + className + "#" + method.getSimpleName() + "(" + typeNames
+                + ")";
+        return "        extractors.put(\"" + methodId + "\", (args, result) -> "
+                + "com.mirson.gemini.cache.utils.CacheUtil.buildCacheKey("
+                + "com.mirson.gemini.cache.utils.KeyGenerators." + keyGenerator + ", "
+                + "java.util.Arrays.asList(new Object[]{" + String.join(", ", params) + "})));\n";
+    }
+
+    /**
+     * 把key表达式翻译为Java表达式，规则与切面中的SpEL处理一致：
+     * #result开头时整体为一个表达式，#param开头时按逗号分隔为多个表达式
+     *
+     * @return 无法翻译时返回null
+     */
+    private List<String> translate(String keyExpression, ExecutableElement method, String annotationName) {
+        List<String> params = new ArrayList<>();
+        if (keyExpression.startsWith("#result")) {
+            String[] path = keyExpression.substring("#result".length()).split("\\.", -1);
+            if (!path[0].isEmpty()) {
+                return null;
+            }
+            if (path.length == 1) {
+                params.add("result");
+                return params;
+            }
+            // CacheAdd在调用前计算key，CacheAddBatch的#result为集合元素，类型不确定，交给SpEL
+            if (CACHE_ADD.equals(annotationName) || CACHE_ADD_BATCH.equals(annotationName)) {
+                return null;
+            }
+            String access = propertyChain("result", method.getReturnType(), path);
+            if (access == null) {
+                return null;
+            }
+            params.add(access);
+            return params;
+        }
+        if (!keyExpression.startsWith("#param")) {
+            return null;
+        }
+        for (String item : keyExpression.split(",")) {
+            item = item.trim();
+            if (!item.startsWith("#param")) {
+                return null;
+            }
+            String[] path = item.substring("#param".length()).split("\\.", -1);
+            int index;
+            try {
+                index = Integer.parseInt(path[0]) - 1;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (index < 0 || index >= method.getParameters().size()) {
+                return null;
+            }
+            // #paramN.a.b的取值取决于运行时配置app.cache.key.fullPropertyPath，交给SpEL
+            if (path.length > 2) {
+                return null;
+            }
+            String access = propertyChain("args[" + index + "]", method.getParameters().get(index).asType(), path);
+            if (access == null) {
+                return null;
+            }
+            params.add(access);
+        }
+        return params;
+    }
+
+    /**
+     * 属性链翻译为getter（或isXxx、public字段）调用
+     *
+     * @param root 根对象的Java表达式（类型为Object）
+     * @param type 根对象的声明类型
+     * @param path 第一个元素为根，之后为属性名
+     * @return 无法翻译时返回null
+     */
+    private String propertyChain(String root, TypeMirror type, String[] path) {
+        if (path.length == 1) {
+            return root;
+        }
+        String access = root;
+        TypeMirror current = type;
+        for (int i = 1; i < path.length; i++) {
+            String property = path[i].trim();
+            if (!SourceVersion.isIdentifier(property) || current.getKind() != TypeKind.DECLARED) {
+                return null;
+            }
+            TypeMirror erasure = types.erasure(current);
+            TypeElement typeElement = (TypeElement) ((DeclaredType) erasure).asElement();
+            if (!isAccessible(typeElement)) {
+                return null;
+            }
+            String member = null;
+            TypeMirror memberType = null;
+            String capitalized = Character.toUpperCase(property.charAt(0)) + property.substring(1);
+            for (ExecutableElement getter : ElementFilter.methodsIn(elements.getAllMembers(typeElement))) {
+                String name = getter.getSimpleName().toString();
+                if (!getter.getParameters().isEmpty() || !getter.getModifiers().contains(Modifier.PUBLIC)
+                        || getter.getModifiers().contains(Modifier.STATIC)) {
+                    continue;
+                }
+                if (name.equals("get" + capitalized)) {
+                    member = name + "()";
+                    memberType = getter.getReturnType();
+                    break;
+                }
+                if (name.equals("is" + capitalized) && (getter.getReturnType().getKind() == TypeKind.BOOLEAN)) {
+                    member = name + "()";
+                    memberType = getter.getReturnType();
+                }
+            }
+            if (member == null) {
+                for (VariableElement field : ElementFilter.fieldsIn(elements.getAllMembers(typeElement))) {
+                    if (field.getSimpleName().contentEquals(property)
+                            && field.getModifiers().contains(Modifier.PUBLIC)
+                            && !field.getModifiers().contains(Modifier.STATIC)) {
+                        member = property;
+                        memberType = field.asType();
+                        break;
+                    }
+                }
+            }
+            if (member == null || memberType.getKind() == TypeKind.TYPEVAR) {
+                return null;
+            }
+            access = "((" + erasure + ") " + access + ")." + member;
+            current = memberType;
+        }
+        return access;
+    }
+
+    /**
+     * 生成类与声明类同包，类型及其外部类都不能是private
+     */
+    private boolean isAccessible(TypeElement typeElement) {
+        Element element = typeElement;
+        while (element != null && element.getKind() != ElementKind.PACKAGE) {
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            element = element.getEnclosingElement();
+        }
+        return true;
+    }
+
+    /**
+     * 参数类型名称，与运行期{@code Class#getTypeName()}一致
+     */
+    private String typeName(TypeMirror type) {
+        TypeMirror erasure = types.erasure(type);
+        if (erasure.getKind() == TypeKind.ARRAY) {
+            return typeName(((ArrayType) erasure).getComponentType()) + "[]";
+        }
+        if (erasure.getKind() == TypeKind.DECLARED) {
+            return elements.getBinaryName((TypeElement) ((DeclaredType) erasure).asElement()).toString();
+        }
+        return erasure.toString();
+    }
+
+    /**
+     * 写入ServiceLoader配置
+     */
+    private void writeServiceFile() {
+        if (providers.isEmpty()) {
+            return;
+        }
+        try {
+            FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "",
+                    "META-INF/services/" + PROVIDER);
+            try (Writer writer = file.openWriter()) {
+                for (String provider : providers) {
+                    writer.write(provider + "\n");
+                }
+            }
+        } catch (IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "write service file failed: " + e.getMessage());
+        }
+    }
+}
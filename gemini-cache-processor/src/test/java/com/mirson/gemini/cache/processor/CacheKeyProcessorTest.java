@@ -0,0 +1,239 @@
+package com.mirson.gemini.cache.processor;
+
+import com.mirson.gemini.cache.annotation.CacheAdd;
+import com.mirson.gemini.cache.annotation.CacheAddBatch;
+import com.mirson.gemini.cache.annotation.CacheDelete;
+import com.mirson.gemini.cache.annotation.CacheUpdate;
+import com.mirson.gemini.cache.core.key.CacheKeyExtractor;
+import com.mirson.gemini.cache.core.key.CacheKeyExtractorProvider;
+import com.mirson.gemini.cache.core.key.GeneratedKeyExtractors;
+import com.mirson.gemini.cache.utils.KeyGenerators;
+import com.mirson.gemini.cache.utils.SpElUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 使用注解处理器编译示例类，生成的key提取与切面中SpEL的计算结果一致，无法翻译的表达式输出提示并交给SpEL
+ *
+ * @author zoutongkun
+ */
+public class CacheKeyProcessorTest {
+
+    private static final String SAMPLE = "sample.OrderService";
+
+    private final SpElUtil spElUtil = new SpElUtil();
+
+    private Path workDir;
+
+    private URLClassLoader classLoader;
+
+    private Class<?> sampleClass;
+
+    private final Map<String, CacheKeyExtractor> extractors = new HashMap<>();
+
+    private final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+    @Before
+    public void setUp() throws Exception {
+        workDir = Files.createTempDirectory("cache-key-processor");
+        Path source = workDir.resolve("src/sample/OrderService.java");
+        Files.createDirectories(source.getParent());
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("sample/OrderService.java")) {
+            Files.copy(in, source, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Path classes = Files.createDirectories(workDir.resolve("classes"));
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull("tests need a JDK", compiler);
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, Locale.ROOT, null)) {
+            // 示例类与生成的代码只依赖gemini-cache
+            String classpath = new File(CacheAdd.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+                    .getPath();
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+                    Arrays.asList("-classpath", classpath, "-d", classes.toString(), "-encoding", "UTF-8"), null,
+                    fileManager.getJavaFileObjects(source.toFile()));
+            task.setProcessors(Collections.singletonList(new CacheKeyProcessor()));
+            boolean compiled = task.call();
+            assertTrue("compile failed: " + diagnostics.getDiagnostics(), compiled);
+        }
+
+        classLoader = new URLClassLoader(new URL[]{classes.toUri().toURL()}, getClass().getClassLoader());
+        sampleClass = classLoader.loadClass(SAMPLE);
+        // 通过ServiceLoader配置加载生成的注册类
+        for (CacheKeyExtractorProvider provider : ServiceLoader.load(CacheKeyExtractorProvider.class, classLoader)) {
+            provider.register(extractors);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (classLoader != null) {
+            classLoader.close();
+        }
+        try (Stream<Path> paths = Files.walk(workDir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void generatesOnlyTranslatableExpressions() {
+        Set<String> generated = new HashSet<>();
+        for (Method method : sampleClass.getDeclaredMethods()) {
+            if (extractor(method) != null) {
+                generated.add(method.getName());
+            }
+        }
+        assertEquals(new HashSet<>(Arrays.asList("get", "getByOrder", "getByRegion", "update", "remove", "cancel",
+                "batch")), generated);
+        assertEquals(generated.size(), extractors.size());
+    }
+
+    @Test
+    public void paramKeysMatchSpEL() throws Exception {
+        Object order = order(42L, "east", true);
+        assertSameKey("get", new Object[]{42L}, null);
+        // getter
+        assertSameKey("getByOrder", new Object[]{order}, null);
+        // public字段与多个参数
+        assertSameKey("getByRegion", new Object[]{order, 7}, null);
+        // 属性为null
+        assertSameKey("getByRegion", new Object[]{order(1L, null, false), 8}, null);
+    }
+
+    @Test
+    public void resultKeysMatchSpEL() throws Exception {
+        Object order = order(42L, "east", true);
+        // CacheUpdate的#result为返回值，使用getter
+        assertSameKey("update", new Object[]{order}, order);
+        // CacheDelete的#result使用public字段与isXxx
+        assertSameKey("remove", new Object[]{42L}, order);
+        assertSameKey("cancel", new Object[]{42L}, order);
+        assertSameKey("cancel", new Object[]{42L}, order(43L, "west", false));
+        // CacheAddBatch的#result为集合元素
+        assertSameKey("batch", new Object[]{Arrays.asList(1L, 2L)}, 2L);
+    }
+
+    @Test
+    public void untranslatableExpressionsFallbackToSpEL() {
+        Set<String> fallbacks = new HashSet<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            String message = diagnostic.getMessage(Locale.ROOT);
+            if (diagnostic.getKind() == Diagnostic.Kind.NOTE && message.contains("fallback to SpEL")) {
+                fallbacks.add(message.substring(message.indexOf('\'') + 1, message.lastIndexOf('\'')));
+            }
+        }
+        assertEquals(new HashSet<>(Arrays.asList("#result.id", "#param1.customer.name", "#param1.getId()")),
+                fallbacks);
+        assertNull(extractor(method("getByResult")));
+        assertNull(extractor(method("getByCustomer")));
+        assertNull(extractor(method("getByCall")));
+        // removeAll不需要key，不生成也不提示
+        assertNull(extractor(method("clear")));
+    }
+
+    /**
+     * 生成的key提取与SpEL计算结果一致
+     */
+    private void assertSameKey(String methodName, Object[] args, Object result) {
+        Method method = method(methodName);
+        CacheKeyExtractor extractor = extractor(method);
+        assertNotNull("no extractor for " + methodName, extractor);
+        Annotation annotation = cacheAnnotation(method);
+        Object expected = spElUtil.parseAndGetCacheKeyFromExpression(method, keyExpression(annotation), result, args,
+                keyGenerator(annotation));
+        assertEquals(methodName, expected, extractor.extract(args, result));
+    }
+
+    private CacheKeyExtractor extractor(Method method) {
+        Annotation annotation = cacheAnnotation(method);
+        if (annotation == null) {
+            return null;
+        }
+        return extractors.get(GeneratedKeyExtractors.methodId(annotation.annotationType().getSimpleName(),
+                method.getDeclaringClass().getName(), method.getName(), method.getParameterTypes()));
+    }
+
+    private Method method(String name) {
+        for (Method method : sampleClass.getDeclaredMethods()) {
+            if (method.getName().equals(name)) {
+                return method;
+            }
+        }
+        throw new AssertionError("no method " + name);
+    }
+
+    private Object order(Long id, String region, boolean paid) throws Exception {
+        Class<?> customerClass = classLoader.loadClass(SAMPLE + "$Customer");
+        Object customer = customerClass.getConstructor(String.class).newInstance("alice");
+        Constructor<?> constructor = classLoader.loadClass(SAMPLE + "$Order")
+                .getConstructor(Long.class, String.class, boolean.class, customerClass);
+        return constructor.newInstance(id, region, paid, customer);
+    }
+
+    private static Annotation cacheAnnotation(Method method) {
+        for (Class<? extends Annotation> type : Arrays.asList(CacheAdd.class, CacheAddBatch.class,
+                CacheUpdate.class, CacheDelete.class)) {
+            Annotation annotation = method.getAnnotation(type);
+            if (annotation != null) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    private static String keyExpression(Annotation annotation) {
+        if (annotation instanceof CacheAdd) {
+            return ((CacheAdd) annotation).keyExpression();
+        } else if (annotation instanceof CacheAddBatch) {
+            return ((CacheAddBatch) annotation).keyExpression();
+        } else if (annotation instanceof CacheUpdate) {
+            return ((CacheUpdate) annotation).keyExpression();
+        }
+        return ((CacheDelete) annotation).keyExpression();
+    }
+
+    private static KeyGenerators keyGenerator(Annotation annotation) {
+        if (annotation instanceof CacheAdd) {
+            return ((CacheAdd) annotation).keyGenerator();
+        } else if (annotation instanceof CacheAddBatch) {
+            return ((CacheAddBatch) annotation).keyGenerator();
+        } else if (annotation instanceof CacheUpdate) {
+            return ((CacheUpdate) annotation).keyGenerator();
+        }
+        return ((CacheDelete) annotation).keyGenerator();
+    }
+}
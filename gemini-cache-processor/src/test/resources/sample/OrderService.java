@@ -0,0 +1,116 @@
+package sample;
+
+import com.mirson.gemini.cache.annotation.CacheAdd;
+import com.mirson.gemini.cache.annotation.CacheAddBatch;
+import com.mirson.gemini.cache.annotation.CacheDelete;
+import com.mirson.gemini.cache.annotation.CacheUpdate;
+import com.mirson.gemini.cache.utils.KeyGenerators;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CacheKeyProcessorTest编译的示例类，覆盖getter、isXxx、public字段、#result与无法翻译的表达式
+ */
+public class OrderService {
+
+    public static class Customer {
+
+        private String name;
+
+        public Customer(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    public static class Order {
+
+        /**
+         * public字段，没有getter
+         */
+        public String region;
+
+        private Long id;
+
+        private boolean paid;
+
+        private Customer customer;
+
+        public Order(Long id, String region, boolean paid, Customer customer) {
+            this.id = id;
+            this.region = region;
+            this.paid = paid;
+            this.customer = customer;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public boolean isPaid() {
+            return paid;
+        }
+
+        public Customer getCustomer() {
+            return customer;
+        }
+    }
+
+    @CacheAdd(cacheName = "orders", keyExpression = "#param1")
+    public Order get(Long id) {
+        return null;
+    }
+
+    @CacheAdd(cacheName = "orders", keyExpression = "#param1.id", keyGenerator = KeyGenerators.MURMUR3_128)
+    public Order getByOrder(Order order) {
+        return null;
+    }
+
+    @CacheAdd(cacheName = "orders", keyExpression = "#param1.region, #param2", keyGenerator = KeyGenerators.CONCAT)
+    public Order getByRegion(Order order, int seq) {
+        return null;
+    }
+
+    @CacheUpdate(cacheNames = "orders", keyExpression = "#result.id", keyGenerator = KeyGenerators.XXHASH64)
+    public Order update(Order order) {
+        return order;
+    }
+
+    @CacheDelete(cacheNames = "orders", keyExpression = "#result.region", keyGenerator = KeyGenerators.CONCAT)
+    public Order remove(Long id) {
+        return null;
+    }
+
+    @CacheDelete(cacheNames = "orders", keyExpression = "#result.paid")
+    public Order cancel(Long id) {
+        return null;
+    }
+
+    @CacheDelete(cacheNames = "orders", removeAll = true)
+    public void clear() {
+    }
+
+    @CacheAddBatch(cacheName = "orders")
+    public Map<Long, Order> batch(List<Long> ids) {
+        return null;
+    }
+
+    @CacheAdd(cacheName = "orders", keyExpression = "#result.id")
+    public Order getByResult(Long id) {
+        return null;
+    }
+
+    @CacheAdd(cacheName = "orders", keyExpression = "#param1.customer.name")
+    public Order getByCustomer(Order order) {
+        return null;
+    }
+
+    @CacheAdd(cacheName = "orders", keyExpression = "#param1.getId()")
+    public Order getByCall(Order order) {
+        return null;
+    }
+}
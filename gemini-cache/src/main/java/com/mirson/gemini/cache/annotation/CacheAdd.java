@@ -49,4 +49,102 @@ public @interface CacheAdd {
      */
     KeyGenerators keyGenerator() default SHA;
 
-}
\ No newline at end of file
+    /**
+     * 是否合并同一节点内相同key的并发加载（缓存未命中时只有一个线程调用原方法）
+     * @return
+     */
+    boolean singleFlight() default true;
+
+    /**
+     * 合并加载时，等待线程的最长等待时间（单位：毫秒），超时后自行调用原方法，0代表一直等待
+     * @return
+     */
+    long singleFlightTimeout() default 3000;
+
+    /**
+     * 是否开启跨节点加载保护：缓存未命中时先在Redis中获取租约，只有租约持有者调用原方法，
+     * 其他节点等待缓存写回，超时后再自行调用原方法
+     * @return
+     */
+    boolean distributedLoad() default false;
+
+    /**
+     * 跨节点加载租约的有效时间（单位：毫秒），应大于原方法的正常执行时间
+     * @return
+     */
+    long leaseTime() default 5000;
+
+    /**
+     * 未拿到租约时等待缓存写回的最长时间（单位：毫秒）
+     * @return
+     */
+    long leaseWaitTime() default 3000;
+
+    /**
+     * 原方法返回null时是否缓存空值，防止不存在的数据每次都穿透到数据库
+     * @return
+     */
+    boolean cacheNull() default false;
+
+    /**
+     * 空值的缓存生命周期（单位：秒），一般应远小于TTL
+     * @return
+     */
+    long nullTTL() default 60;
+
+    /**
+     * 是否开启布隆过滤器，开启后一定不存在的key直接返回null，不再访问Redis与原方法
+     * 过滤器需通过BloomFilterManager.rebuild按全量key初始化后才会生效
+     * @return
+     */
+    boolean bloomFilter() default false;
+
+    /**
+     * 是否开启提前刷新：缓存存活时间超过TTL的refreshFactor比例后，仍直接返回缓存数据，
+     * 同时在后台重新调用原方法并更新两级缓存（TTL为0时按app.cache.caffeine.refreshAfterWrite刷新）
+     * @return
+     */
+    boolean refreshAhead() default false;
+
+    /**
+     * 提前刷新的TTL比例（0~1）
+     * @return
+     */
+    double refreshFactor() default 0.8;
+
+    /**
+     * 是否开启概率提前刷新（XFetch）：根据每个key实际的加载耗时，越接近过期越可能在后台提前刷新，
+     * 使同一批写入的缓存错开刷新，不会在同一时刻集中穿透到数据库（需TTL大于0）
+     * @return
+     */
+    boolean earlyRefresh() default false;
+
+    /**
+     * 概率提前刷新的提前程度，越大越提前（默认1.0）
+     * @return
+     */
+    double earlyRefreshBeta() default 1.0;
+
+    /**
+     * 原方法调用失败时，可返回已过期多久以内的本地缓存数据（单位：秒，默认0不开启，仅两级缓存模式生效）
+     * 开启后该缓存因过期被移除的本地数据会转存到影子区，数据被删除或更新后不再返回
+     * @return
+     */
+    long staleIfError() default 0;
+
+    /**
+     * 开启staleIfError后，原方法调用的最长等待时间（单位：毫秒，默认0不限制）
+     * 有可用的过期数据且超出该时间时直接返回过期数据，原方法在后台继续执行并写回缓存
+     * @return
+     */
+    long staleTimeout() default 0;
+
+    /**
+     * 本地缓存配置，格式为：key=value,key=value，如：maximumSize=100000,expireAfterWrite=600000
+     * 支持enabled、initialCapacity、maximumSize、expireAfterWrite、expireAfterAccess、refreshAfterWrite、admission，
+     * 未指定的项使用全局配置，app.cache.caffeine.specs中的同名配置优先（仅两级缓存模式生效）
+     * @return
+     */
+    String localSpec() default "";
+
+}
@@ -0,0 +1,77 @@
+package com.mirson.gemini.cache.annotation;
+
+
+import com.mirson.gemini.cache.utils.KeyGenerators;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import static com.mirson.gemini.cache.utils.KeyGenerators.SHA;
+
+
+/**
+ * 批量新增缓存
+ * 用于参数为集合的批量查询方法，如：List&lt;Order&gt; getOrders(List&lt;String&gt; ids)。
+ * 集合中的每个元素对应一条缓存，只有未命中的元素才会传给原方法，结果按参数顺序拼接后返回。
+ * 原方法返回值支持Map（key为集合元素）与List/Set（需指定resultKeyExpression）
+ * @author zoutongkun
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CacheAddBatch {
+
+    /**
+     * 缓存名称
+     * @return
+     */
+    String cacheName() default "";
+
+    /**
+     * 缓存生命周期 (单位：秒）
+     * @return
+     */
+    long TTL() default 0;
+
+    /**
+     * 集合参数的位置（与#paramN一致，从1开始）
+     * @return
+     */
+    int batchParam() default 1;
+
+    /**
+     * 集合元素的缓存KEY，#result代表集合中的单个元素，如：#result、#result.orderId
+     * 与单条查询的@CacheAdd使用相同的key时，两者可以共用缓存
+     * @return
+     */
+    String keyExpression() default "#result";
+
+    /**
+     * 原方法返回List/Set时，从返回的单个元素中获取缓存KEY，#result代表返回的单个元素，如：#result.orderId
+     * 生成的key需与keyExpression一致
+     * @return
+     */
+    String resultKeyExpression() default "";
+
+    /**
+     * 是否异步
+     * @return
+     */
+    boolean isAsync() default false;
+
+    /**
+     * key生成器
+     * @return
+     */
+    KeyGenerators keyGenerator() default SHA;
+
+    /**
+     * 本地缓存配置，格式为：key=value,key=value，如：maximumSize=100000,expireAfterWrite=600000
+     * 支持enabled、initialCapacity、maximumSize、expireAfterWrite、expireAfterAccess、refreshAfterWrite、admission，
+     * 未指定的项使用全局配置，app.cache.caffeine.specs中的同名配置优先（仅两级缓存模式生效）
+     * @return
+     */
+    String localSpec() default "";
+
+}
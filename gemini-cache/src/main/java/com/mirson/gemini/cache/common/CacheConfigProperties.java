@@ -60,6 +60,24 @@ public class CacheConfigProperties {
     @Value("${app.cache.redis.executor.queueCapacity: 1000}")
     private int executorQueueCapacity;
 
+    /**
+     * 原方法调用线程池大小（开启staleTimeout时使用，默认8）
+     */
+    @Value("${app.cache.loader.executor.poolSize: 8}")
+    private int loaderExecutorPoolSize;
+
+    /**
+     * 原方法调用线程池队列大小（默认100）
+     */
+    @Value("${app.cache.loader.executor.queueCapacity: 100}")
+    private int loaderExecutorQueueCapacity;
+
+    /**
+     * key表达式#paramN.a.b是否保留完整的属性路径，默认false只取第一级属性（#paramN.a），开启后已有缓存的key会变化
+     */
+    @Value("${app.cache.key.fullPropertyPath: false}")
+    private boolean keyFullPropertyPath;
+
     /**
      * 连接池最大连接数（默认100）
      */
@@ -90,6 +108,13 @@ public class CacheConfigProperties {
      */
     @Value("${app.cache.redis.global.expire: 24*3600 }")
     private long expire;
+    /**
+     * 缓存生命周期随机延长的最大比例（如0.1代表最多延长10%），同时作用于Redis与Caffeine，
+     * 避免同一批写入的缓存在同一时刻集中过期，0代表不开启
+     */
+    @Value("${app.cache.ttlJitter: 0}")
+    private double ttlJitter;
+
     /**
      * Redis 集群连接信息
      */
@@ -120,12 +145,115 @@ public class CacheConfigProperties {
     @Value("${app.cache.redis.useCompression}")
     private boolean useCompression;
 
+    /**
+     * 跨节点加载时，未拿到租约的节点轮询缓存的间隔（单位：毫秒）
+     */
+    @Value("${app.cache.redis.lease.pollInterval: 50}")
+    private long leasePollInterval;
+
+    /**
+     * 是否开启Redis熔断，开启后访问Redis超出延迟预算或失败达到阈值时跳过Redis
+     */
+    @Value("${app.cache.redis.breaker.enable: false}")
+    private boolean breakerEnable;
+
+    /**
+     * 访问Redis的默认延迟预算（单位：毫秒）
+     */
+    @Value("${app.cache.redis.breaker.latencyBudget: 100}")
+    private long breakerLatencyBudget;
+
+    /**
+     * 按缓存名称单独设置延迟预算，格式为：cacheName:毫秒;cacheName:毫秒
+     */
+    @Value("${app.cache.redis.breaker.latencyBudgets: }")
+    private String breakerLatencyBudgets;
+
+    /**
+     * 连续失败（超时或异常）多少次后熔断
+     */
+    @Value("${app.cache.redis.breaker.failureThreshold: 5}")
+    private int breakerFailureThreshold;
+
+    /**
+     * 熔断后多久开始后台探测Redis是否恢复（单位：毫秒）
+     */
+    @Value("${app.cache.redis.breaker.openDuration: 5000}")
+    private long breakerOpenDuration;
+
+    /**
+     * 是否开启Redis读取合并，同一缓存名称的并发读取合并为一次批量读取
+     */
+    @Value("${app.cache.redis.readBatch.enable: false}")
+    private boolean readBatchEnable;
+
+    /**
+     * Redis读取合并的时间窗口（单位：微秒）
+     */
+    @Value("${app.cache.redis.readBatch.window: 200}")
+    private long readBatchWindow;
+
+    /**
+     * Redis读取合并的单批最大key数量，达到后立即发送
+     */
+    @Value("${app.cache.redis.readBatch.maxSize: 64}")
+    private int readBatchMaxSize;
+
+    /**
+     * 批量写入、删除时每个管道批次的最大key数量
+     */
+    @Value("${app.cache.redis.batch.chunkSize: 500}")
+    private int batchChunkSize;
+
+    /**
+     * 布隆过滤器默认的预期数据量
+     */
+    @Value("${app.cache.bloom.expectedInsertions: 1000000}")
+    private long bloomExpectedInsertions;
+
+    /**
+     * 布隆过滤器默认的误判率
+     */
+    @Value("${app.cache.bloom.fpp: 0.01}")
+    private double bloomFpp;
+
+    /**
+     * 布隆过滤器位图的最大长度（单位：位，默认67108864即本地副本8MB，不超过4294967296），
+     * 每个节点为每个开启过滤器的缓存持有一份本地副本；按预期数据量计算的长度超过时按该长度创建，误判率会高于配置
+     */
+    @Value("${app.cache.bloom.maxBits: 67108864}")
+    private long bloomMaxBits;
+
+    /**
+     * 布隆过滤器本地副本从Redis同步的间隔（单位：秒）
+     */
+    @Value("${app.cache.bloom.syncInterval: 30}")
+    private long bloomSyncInterval;
+
     /**
      * 分布式缓存更新时的topic名称
      */
     @Value("${app.cache.caffeine.topic: cache:redis:caffeine:topic}")
     private String topic;
 
+    /**
+     * 缓存变更消息的缓冲时间，单位毫秒，期间的变更去重后合并为一条消息发布，0代表每次变更立即发布
+     */
+    @Value("${app.cache.notify.batchWindow:5}")
+    private long notifyBatchWindow;
+
+    /**
+     * 缓冲的key数量达到该值时立即发布
+     */
+    @Value("${app.cache.notify.maxBatchKeys:1000}")
+    private int notifyMaxBatchKeys;
+
+    /**
+     * 缓存变更topic的分片数，大于0时按缓存名称的哈希分散到多个topic，各节点只订阅本地已创建的缓存所在的分片；0代表不分片
+     */
+    @Value("${app.cache.notify.shards:0}")
+    private int notifyShards;
+
 
     /**
      * 访问后过期时间，单位毫秒
@@ -139,8 +267,15 @@ public class CacheConfigProperties {
     @Value("${app.cache.caffeine.expireAfterWrite:0}")
     private long expireAfterWrite;
 
+    /**
+     * 空值占位对象在本地缓存中的过期时间，单位毫秒（从Redis加载的空值使用该配置）
+     */
+    @Value("${app.cache.caffeine.nullValueExpire:10000}")
+    private long nullValueExpire;
+
     /**
      * 写入后刷新时间，单位毫秒
+     * 开启提前刷新（refreshAhead）且TTL为0的缓存，写入超过该时间后在后台刷新，0代表不刷新
      */
     @Value("${app.cache.caffeine.refreshAfterWrite:0}")
     private long refreshAfterWrite;
@@ -157,4 +292,111 @@ public class CacheConfigProperties {
     @Value("${app.cache.caffeine.maximumSize:0}")
     private long maximumSize;
 
+    /**
+     * 本地缓存节点级内存上限（单位：MB，所有缓存名称共用，按估算的条目大小淘汰），0代表不开启
+     * 开启后maximumSize不再生效
+     */
+    @Value("${app.cache.caffeine.memoryBudget:0}")
+    private long memoryBudget;
+
+    /**
+     * 内存预算按命中次数在各缓存间重新分配的间隔（单位：秒）
+     */
+    @Value("${app.cache.caffeine.rebalanceInterval:30}")
+    private long rebalanceInterval;
+
+    /**
+     * 按缓存名称单独设置本地缓存，格式为：cacheName:key=value,key=value;cacheName:key=value
+     * 支持的项见{@link com.mirson.gemini.cache.core.cache.LocalCacheSpec}，优先级高于注解中的localSpec
+     */
+    @Value("${app.cache.caffeine.specs: }")
+    private String localSpecs;
+
+    /**
+     * 堆外缓存容量（单位：MB，位于本地缓存与Redis之间，保存较大条目序列化后的字节），0代表不开启
+     * 需保证-XX:MaxDirectMemorySize足够
+     */
+    @Value("${app.cache.offheap.capacity:0}")
+    private long offHeapCapacity;
+
+    /**
+     * 堆外缓存分块大小（单位：MB），也是单个条目序列化后的最大长度
+     */
+    @Value("${app.cache.offheap.slabSize:8}")
+    private long offHeapSlabSize;
+
+    /**
+     * 估算大小达到该值的条目写入堆外缓存而不是本地缓存（单位：字节）
+     */
+    @Value("${app.cache.offheap.minValueSize:16384}")
+    private long offHeapMinValueSize;
+
+    /**
+     * 堆外缓存条目被读取多少次后提升到本地缓存
+     */
+    @Value("${app.cache.offheap.promoteHits:3}")
+    private int offHeapPromoteHits;
+
+    /**
+     * 主机共享缓存段的数据区容量（单位：MB，同一主机上的JVM通过内存映射文件共享缓存数据），0代表不开启
+     */
+    @Value("${app.cache.shared.capacity:0}")
+    private long sharedCapacity;
+
+    /**
+     * 主机共享缓存段的文件路径，不同的服务需使用不同的文件
+     */
+    @Value("${app.cache.shared.path:/dev/shm/gemini-cache}")
+    private String sharedPath;
+
+    /**
+     * 主机共享缓存段的索引位置数（向下取2的幂）
+     */
+    @Value("${app.cache.shared.slots:131072}")
+    private int sharedSlots;
+
+    /**
+     * 本地缓存快照文件路径（关闭时保存、启动时恢复），为空代表不开启
+     * 同一主机上的多个实例需使用不同的文件
+     */
+    @Value("${app.cache.snapshot.path: }")
+    private String snapshotPath;
+
+    /**
+     * 快照中每个缓存最多保存的条目数（访问最频繁的条目）
+     */
+    @Value("${app.cache.snapshot.topN:10000}")
+    private int snapshotTopN;
+
+    /**
+     * 快照的最长有效时间，单位秒，启动时超过该时间的快照不恢复
+     */
+    @Value("${app.cache.snapshot.maxAge:300}")
+    private long snapshotMaxAge;
+
+    /**
+     * 影子区中每个缓存最多保留的过期数据条数
+     */
+    @Value("${app.cache.caffeine.shadow.maximumSize:10000}")
+    private long shadowMaximumSize;
+
+    /**
+     * 影子区中过期数据的最长保留时间，单位秒（注解中的staleIfError超过该时间时以该时间为准）
+     */
+    @Value("${app.cache.caffeine.shadow.maxStale:600}")
+    private long shadowMaxStale;
+
+    /**
+     * 本地缓存记录已收到的变更版本号的时间，单位毫秒，期间比该版本旧的数据不写入本地缓存，0代表不开启版本校验（默认）
+     * 开启后每次写入与删除都会访问Redis中的全局计数器分配版本号
+     */
+    @Value("${app.cache.caffeine.version.tombstoneTtl:0}")
+    private long versionTombstoneTtl;
+
+    /**
+     * 每个缓存最多记录的变更版本号条数
+     */
+    @Value("${app.cache.caffeine.version.tombstoneSize:100000}")
+    private long versionTombstoneSize;
+
 }
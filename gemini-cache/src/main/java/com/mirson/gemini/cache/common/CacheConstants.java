@@ -11,5 +11,20 @@ public class CacheConstants {
      */
     public static final String TMS_QUERY_CACHE = "TMS_QUERY_CACHE";
 
+    /**
+     * 跨节点加载租约的KEY前缀
+     */
+    public static final String LEASE_KEY_PREFIX = "gemini:cache:lease:";
+
+    /**
+     * 布隆过滤器的KEY前缀
+     */
+    public static final String BLOOM_KEY_PREFIX = "gemini:cache:bloom:";
+
+    /**
+     * 缓存条目版本号计数器的KEY
+     */
+    public static final String VERSION_KEY = "gemini:cache:version";
+
 
 }
@@ -2,15 +2,28 @@ package com.mirson.gemini.cache.config;
 
 import com.mirson.gemini.cache.common.CacheConfigProperties;
 import com.mirson.gemini.cache.common.NamedThreadFactory;
+import com.mirson.gemini.cache.core.bloom.BloomFilterManager;
+import com.mirson.gemini.cache.core.breaker.RedisCircuitBreakerManager;
 import com.mirson.gemini.cache.core.cache.CacheService;
+import com.mirson.gemini.cache.core.cache.CacheVersions;
+import com.mirson.gemini.cache.core.cache.HostSharedSegment;
+import com.mirson.gemini.cache.core.cache.LocalCacheSnapshot;
+import com.mirson.gemini.cache.core.cache.LocalCacheSpecs;
+import com.mirson.gemini.cache.core.cache.LocalMemoryBudget;
+import com.mirson.gemini.cache.core.cache.OffHeapStore;
 import com.mirson.gemini.cache.core.cache.TwoLevelCacheService;
 import com.mirson.gemini.cache.core.cache.OneLevelCacheService;
+import com.mirson.gemini.cache.core.cache.RedisReadCoalescer;
+import com.mirson.gemini.cache.core.listener.CacheTopicSubscriber;
 import com.mirson.gemini.cache.core.listener.CacheUpdateMessageListener;
+import com.mirson.gemini.cache.core.loader.BackgroundRefresher;
+import com.mirson.gemini.cache.core.loader.CacheLoaderExecutor;
+import com.mirson.gemini.cache.core.loader.SingleFlightLoader;
+import com.mirson.gemini.cache.core.metrics.CacheMetrics;
 import com.mirson.gemini.cache.core.notify.NotifyByRedisImpl;
 import com.mirson.gemini.cache.core.notify.NotifyService;
 import com.mirson.gemini.cache.utils.SpringUtils;
 import org.redisson.Redisson;
-import org.redisson.api.RTopic;
 import org.redisson.api.RedissonClient;
 import org.redisson.codec.FstCodec;
 import org.redisson.codec.LZ4Codec;
@@ -19,6 +32,7 @@ import org.redisson.config.Config;
 import org.redisson.config.SingleServerConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
@@ -26,6 +40,7 @@ import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
 import org.springframework.core.annotation.Order;
+import org.springframework.core.task.TaskDecorator;
 
 import javax.annotation.PostConstruct;
 import java.util.Arrays;
@@ -150,12 +165,158 @@ public class CacheAutoConfiguration {
      *
      * @param cacheConfigProperties
      * @param redissonClient
+     * @param hostSharedSegment
      * @return
      */
-    @Bean
+    @Bean(destroyMethod = "shutdown")
     public NotifyService redisSendService(CacheConfigProperties cacheConfigProperties,
-                                          RedissonClient redissonClient) {
-        return new NotifyByRedisImpl(cacheConfigProperties, redissonClient);
+                                          RedissonClient redissonClient,
+                                          HostSharedSegment hostSharedSegment) {
+        return new NotifyByRedisImpl(cacheConfigProperties, redissonClient, hostSharedSegment);
+    }
+
+    /**
+     * 缓存统计指标
+     *
+     * @return
+     */
+    @Bean
+    public CacheMetrics cacheMetrics() {
+        return new CacheMetrics();
+    }
+
+    /**
+     * 缓存未命中时原方法调用的合并加载
+     *
+     * @param cacheMetrics
+     * @return
+     */
+    @Bean
+    public SingleFlightLoader singleFlightLoader(CacheMetrics cacheMetrics) {
+        return new SingleFlightLoader(cacheMetrics, CacheMetrics.COALESCED_LOADS);
+    }
+
+    /**
+     * 缓存后台刷新，在Redis线程池中执行
+     *
+     * @param redisExecutor
+     * @param cacheMetrics
+     * @return
+     */
+    @Bean
+    public BackgroundRefresher backgroundRefresher(ExecutorService redisExecutor, CacheMetrics cacheMetrics) {
+        return new BackgroundRefresher(redisExecutor, cacheMetrics);
+    }
+
+    /**
+     * 原方法调用线程池（开启staleTimeout时使用）
+     *
+     * @param taskDecorator 应用中定义的TaskDecorator，用于传递线程上下文
+     * @return
+     */
+    @Bean(destroyMethod = "shutdown")
+    public CacheLoaderExecutor cacheLoaderExecutor(ObjectProvider<TaskDecorator> taskDecorator) {
+        return new CacheLoaderExecutor(cacheConfigProperties.getLoaderExecutorPoolSize(),
+                cacheConfigProperties.getLoaderExecutorQueueCapacity(), taskDecorator.getIfAvailable());
+    }
+
+    /**
+     * 布隆过滤器管理
+     *
+     * @param redissonClient
+     * @param cacheMetrics
+     * @param redisCircuitBreakerManager
+     * @return
+     */
+    @Bean(destroyMethod = "shutdown")
+    public BloomFilterManager bloomFilterManager(RedissonClient redissonClient, CacheMetrics cacheMetrics,
+                                                 RedisCircuitBreakerManager redisCircuitBreakerManager) {
+        return new BloomFilterManager(redissonClient, cacheConfigProperties, cacheMetrics, redisCircuitBreakerManager);
+    }
+
+    /**
+     * Redis熔断管理
+     *
+     * @param redissonClient
+     * @param cacheMetrics
+     * @return
+     */
+    @Bean(destroyMethod = "shutdown")
+    public RedisCircuitBreakerManager redisCircuitBreakerManager(RedissonClient redissonClient, CacheMetrics cacheMetrics) {
+        return new RedisCircuitBreakerManager(redissonClient, cacheConfigProperties, cacheMetrics);
+    }
+
+    /**
+     * Redis读取合并
+     *
+     * @param redissonClient
+     * @param cacheMetrics
+     * @return
+     */
+    @Bean(destroyMethod = "shutdown")
+    public RedisReadCoalescer redisReadCoalescer(RedissonClient redissonClient, CacheMetrics cacheMetrics) {
+        return new RedisReadCoalescer(redissonClient, cacheConfigProperties, cacheMetrics);
+    }
+
+    /**
+     * 本地缓存内存预算
+     *
+     * @param cacheMetrics
+     * @return
+     */
+    @Bean(destroyMethod = "shutdown")
+    public LocalMemoryBudget localMemoryBudget(CacheMetrics cacheMetrics) {
+        return new LocalMemoryBudget(cacheConfigProperties, cacheMetrics);
+    }
+
+    /**
+     * 堆外缓存，与Redis使用相同的编码
+     *
+     * @param redissonClient
+     * @param cacheMetrics
+     * @return
+     */
+    @Bean(destroyMethod = "shutdown")
+    public OffHeapStore offHeapStore(RedissonClient redissonClient, CacheMetrics cacheMetrics) {
+        return new OffHeapStore(cacheConfigProperties, cacheMetrics, redissonClient.getConfig().getCodec());
+    }
+
+    /**
+     * 主机共享缓存段，与Redis使用相同的编码
+     *
+     * @param redissonClient
+     * @param cacheMetrics
+     * @return
+     */
+    @Bean(destroyMethod = "shutdown")
+    public HostSharedSegment hostSharedSegment(RedissonClient redissonClient, CacheMetrics cacheMetrics) {
+        return new HostSharedSegment(cacheConfigProperties, cacheMetrics, redissonClient.getConfig().getCodec());
+    }
+
+    /**
+     * 本地缓存快照，启动时在后台恢复，容器关闭时保存
+     * 依赖缓存服务，销毁顺序在缓存服务及其使用的堆外缓存、共享段、Redisson之前
+     *
+     * @param cacheService
+     * @param redissonClient
+     * @return
+     */
+    @Bean(destroyMethod = "shutdown")
+    public LocalCacheSnapshot localCacheSnapshot(CacheService cacheService, RedissonClient redissonClient) {
+        LocalCacheSnapshot snapshot = new LocalCacheSnapshot(cacheConfigProperties, cacheService,
+                redissonClient.getConfig().getCodec());
+        snapshot.restoreAsync();
+        return snapshot;
+    }
+
+    /**
+     * 本地缓存配置
+     *
+     * @return
+     */
+    @Bean
+    public LocalCacheSpecs localCacheSpecs() {
+        return new LocalCacheSpecs(cacheConfigProperties);
     }
 
     /**
@@ -166,14 +327,27 @@ public class CacheAutoConfiguration {
     @Bean
     public CacheService cacheService(RedissonClient redissonClient,
                                      NotifyService notifyService,
-                                     ExecutorService redisExecutor) {
+                                     ExecutorService redisExecutor,
+                                     CacheMetrics cacheMetrics,
+                                     BloomFilterManager bloomFilterManager,
+                                     RedisCircuitBreakerManager redisCircuitBreakerManager,
+                                     RedisReadCoalescer redisReadCoalescer,
+                                     LocalCacheSpecs localCacheSpecs,
+                                     LocalMemoryBudget localMemoryBudget,
+                                     OffHeapStore offHeapStore,
+                                     HostSharedSegment hostSharedSegment) {
         CacheService cacheService;
         // 判断是否开启两级缓存，默认只开启redis缓存
         if (cacheConfigProperties.isEnableSecondCache()) {
-            CacheService secondCacheService = new OneLevelCacheService(redissonClient, redisExecutor, cacheConfigProperties);
-            cacheService = new TwoLevelCacheService(secondCacheService, notifyService, cacheConfigProperties);
+            CacheService secondCacheService = new OneLevelCacheService(redissonClient, redisExecutor, cacheConfigProperties, cacheMetrics,
+                    bloomFilterManager, redisCircuitBreakerManager, redisReadCoalescer);
+            cacheService = new TwoLevelCacheService(secondCacheService, notifyService, cacheConfigProperties, cacheMetrics,
+                    redisCircuitBreakerManager, localCacheSpecs, localMemoryBudget, offHeapStore,
+                    hostSharedSegment, cacheConfigProperties.getVersionTombstoneTtl() > 0
+                            ? new CacheVersions(redissonClient, redisCircuitBreakerManager) : null);
         } else {
-            cacheService = new OneLevelCacheService(redissonClient, redisExecutor, cacheConfigProperties);
+            cacheService = new OneLevelCacheService(redissonClient, redisExecutor, cacheConfigProperties, cacheMetrics,
+                    bloomFilterManager, redisCircuitBreakerManager, redisReadCoalescer);
         }
         return cacheService;
     }
@@ -182,20 +356,31 @@ public class CacheAutoConfiguration {
     /**
      * 设置redis消息监听器
      * 只有在开启了两级缓存时才注入！！！
+     * 开启分片时，本地缓存创建时才订阅其所在的分片
      *
      * @param redissonClient
      * @param caffeineCacheService
+     * @param bloomFilterManager
+     * @param hostSharedSegment
      * @return
      */
     @ConditionalOnProperty(
             value = "app.cache.enableSecondCache",
             havingValue = "true")
     @Bean
-    public RTopic subscribe(RedissonClient redissonClient, CacheService caffeineCacheService) {
-        RTopic rTopic = redissonClient.getTopic(cacheConfigProperties.getTopic());
-        CacheUpdateMessageListener messageListener = new CacheUpdateMessageListener((TwoLevelCacheService) caffeineCacheService);
-        rTopic.addListener(messageListener);
-        return rTopic;
+    public CacheTopicSubscriber subscribe(RedissonClient redissonClient, CacheService caffeineCacheService,
+                                          BloomFilterManager bloomFilterManager,
+                                          HostSharedSegment hostSharedSegment) {
+        TwoLevelCacheService twoLevelCacheService = (TwoLevelCacheService) caffeineCacheService;
+        CacheUpdateMessageListener messageListener = new CacheUpdateMessageListener(
+                twoLevelCacheService, bloomFilterManager, hostSharedSegment,
+                redissonClient.getConfig().getCodec());
+        CacheTopicSubscriber subscriber = new CacheTopicSubscriber(redissonClient, cacheConfigProperties,
+                messageListener);
+        if (subscriber.isSharded()) {
+            twoLevelCacheService.addCreateListener(subscriber::subscribe);
+        }
+        return subscriber;
     }
 
 }
@@ -0,0 +1,189 @@
+package com.mirson.gemini.cache.core.aspect;
+
+import com.mirson.gemini.cache.annotation.CacheAdd;
+import com.mirson.gemini.cache.annotation.CacheAddBatch;
+import com.mirson.gemini.cache.annotation.CacheDelete;
+import com.mirson.gemini.cache.annotation.CacheUpdate;
+import com.mirson.gemini.cache.core.key.CacheKeyExtractor;
+import com.mirson.gemini.cache.core.key.GeneratedKeyExtractors;
+import com.mirson.gemini.cache.utils.CacheUtil;
+import com.mirson.gemini.cache.utils.KeyGenerators;
+import com.mirson.gemini.cache.utils.SpElUtil;
+import org.springframework.util.StringUtils;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * 缓存方法的调用计划
+ * 每个方法只解析一次注解，保存解析后的缓存名称、key提取方式等信息，之后每次调用直接复用，不再反射
+ *
+ * @author zoutongkun
+ */
+final class CacheInvocationPlan<A extends Annotation> {
+
+    /**
+     * 缓存注解
+     */
+    private final A annotation;
+
+    /**
+     * 目标类上的实际方法
+     */
+    private final Method method;
+
+    /**
+     * 缓存名称（调用方不可修改）
+     */
+    private final String[] cacheNames;
+
+    /**
+     * 缓存生命周期（单位：秒）
+     */
+    private final long ttl;
+
+    /**
+     * 是否异步
+     */
+    private final boolean async;
+
+    /**
+     * 缓存key提取
+     */
+    private final CacheKeyExtractor keyExtractor;
+
+    private CacheInvocationPlan(A annotation, Method method, String[] cacheNames, long ttl, boolean async,
+                                CacheKeyExtractor keyExtractor) {
+        this.annotation = annotation;
+        this.method = method;
+        this.cacheNames = cacheNames;
+        this.ttl = ttl;
+        this.async = async;
+        this.keyExtractor = keyExtractor;
+    }
+
+    /**
+     * 构建调用计划
+     *
+     * @param method     目标类上的实际方法
+     * @param annotation 缓存注解
+     * @param spElUtil
+     * @param <A>
+     * @return
+     */
+    static <A extends Annotation> CacheInvocationPlan<A> create(Method method, A annotation, SpElUtil spElUtil) {
+        if (annotation instanceof CacheAdd) {
+            CacheAdd cacheAdd = (CacheAdd) annotation;
+            String keyExpression = cacheAdd.keyExpression();
+            KeyGenerators keyGenerator = cacheAdd.keyGenerator();
+            CacheKeyExtractor keyExtractor = keyExtractor(CacheAdd.class, spElUtil, method, keyExpression,
+                    keyGenerator);
+            return new CacheInvocationPlan<>(annotation, method, new String[]{cacheAdd.cacheName()}, cacheAdd.TTL(),
+                    cacheAdd.isAsync(), keyExtractor);
+        }
+        if (annotation instanceof CacheAddBatch) {
+            CacheAddBatch cacheAddBatch = (CacheAddBatch) annotation;
+            return new CacheInvocationPlan<>(annotation, method, new String[]{cacheAddBatch.cacheName()},
+                    cacheAddBatch.TTL(), cacheAddBatch.isAsync(),
+                    expressionExtractor(CacheAddBatch.class, spElUtil, method, cacheAddBatch.keyExpression(),
+                            cacheAddBatch.keyGenerator()));
+        }
+        if (annotation instanceof CacheUpdate) {
+            CacheUpdate cacheUpdate = (CacheUpdate) annotation;
+            return new CacheInvocationPlan<>(annotation, method, cacheUpdate.cacheNames(), cacheUpdate.TTL(),
+                    cacheUpdate.isAsync(),
+                    expressionExtractor(CacheUpdate.class, spElUtil, method, cacheUpdate.keyExpression(),
+                            cacheUpdate.keyGenerator()));
+        }
+        if (annotation instanceof CacheDelete) {
+            CacheDelete cacheDelete = (CacheDelete) annotation;
+            CacheKeyExtractor keyExtractor = cacheDelete.removeAll() ? (args, result) -> null
+                    : keyExtractor(CacheDelete.class, spElUtil, method, cacheDelete.keyExpression(),
+                    cacheDelete.keyGenerator());
+            return new CacheInvocationPlan<>(annotation, method, cacheDelete.cacheNames(), 0, cacheDelete.isAsync(),
+                    keyExtractor);
+        }
+        throw new IllegalArgumentException("Unsupported cache annotation: " + annotation.annotationType());
+    }
+
+    /**
+     * key的提取，没有表达式时使用全部方法参数，与表达式#param1,#param2,...,#paramN生成的key一致
+     *
+     * @param annotationType
+     * @param spElUtil
+     * @param method
+     * @param keyExpression
+     * @param keyGenerator
+     * @return
+     */
+    private static CacheKeyExtractor keyExtractor(Class<? extends Annotation> annotationType, SpElUtil spElUtil,
+                                                  Method method, String keyExpression, KeyGenerators keyGenerator) {
+        if (StringUtils.isEmpty(keyExpression)) {
+            return (args, result) -> CacheUtil.buildCacheKey(keyGenerator, Arrays.asList(args));
+        }
+        return expressionExtractor(annotationType, spElUtil, method, keyExpression, keyGenerator);
+    }
+
+    /**
+     * key表达式的提取，优先使用编译期生成的实现
+     *
+     * @param annotationType
+     * @param spElUtil
+     * @param method
+     * @param keyExpression
+     * @param keyGenerator
+     * @return
+     */
+    private static CacheKeyExtractor expressionExtractor(Class<? extends Annotation> annotationType, SpElUtil spElUtil,
+                                                         Method method, String keyExpression,
+                                                         KeyGenerators keyGenerator) {
+        CacheKeyExtractor generated = GeneratedKeyExtractors.find(annotationType, method);
+        if (generated != null) {
+            return generated;
+        }
+        return (args, result) -> spElUtil.parseAndGetCacheKeyFromExpression(method, keyExpression, result, args,
+                keyGenerator);
+    }
+
+    /**
+     * 计算缓存key
+     *
+     * @param args   方法参数
+     * @param result #result对应的对象（返回值或集合元素）
+     * @return
+     */
+    Object cacheKey(Object[] args, Object result) {
+        return keyExtractor.extract(args, result);
+    }
+
+    A getAnnotation() {
+        return annotation;
+    }
+
+    Method getMethod() {
+        return method;
+    }
+
+    String[] getCacheNames() {
+        return cacheNames;
+    }
+
+    /**
+     * 单个缓存名称（CacheAdd/CacheAddBatch）
+     *
+     * @return
+     */
+    String getCacheName() {
+        return cacheNames[0];
+    }
+
+    long getTtl() {
+        return ttl;
+    }
+
+    boolean isAsync() {
+        return async;
+    }
+
+}
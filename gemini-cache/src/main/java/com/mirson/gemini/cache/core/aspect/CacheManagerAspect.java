@@ -1,12 +1,21 @@
 package com.mirson.gemini.cache.core.aspect;
 
 import com.mirson.gemini.cache.annotation.CacheAdd;
+import com.mirson.gemini.cache.annotation.CacheAddBatch;
 import com.mirson.gemini.cache.annotation.CacheDelete;
 import com.mirson.gemini.cache.annotation.CacheUpdate;
 import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.core.bloom.BloomFilterManager;
+import com.mirson.gemini.cache.core.cache.CacheEntry;
 import com.mirson.gemini.cache.core.cache.CacheService;
+import com.mirson.gemini.cache.core.cache.LocalCacheSpecs;
+import com.mirson.gemini.cache.core.cache.NullValue;
+import com.mirson.gemini.cache.core.loader.BackgroundRefresher;
+import com.mirson.gemini.cache.core.loader.CacheLoader;
+import com.mirson.gemini.cache.core.loader.CacheLoaderExecutor;
+import com.mirson.gemini.cache.core.loader.SingleFlightLoader;
+import com.mirson.gemini.cache.core.metrics.CacheMetrics;
 import com.mirson.gemini.cache.utils.CacheUtil;
-import com.mirson.gemini.cache.utils.KeyGenerators;
 import com.mirson.gemini.cache.utils.SpElUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.JoinPoint;
@@ -18,12 +27,28 @@ import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.MethodClassKey;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 二级缓存AOP切面
@@ -47,6 +72,48 @@ public class CacheManagerAspect {
     @Autowired
     private CacheConfigProperties cacheConfigProperties;
 
+    /**
+     * 原方法调用的合并加载
+     */
+    @Autowired
+    private SingleFlightLoader singleFlightLoader;
+
+    /**
+     * 缓存统计指标
+     */
+    @Autowired
+    private CacheMetrics cacheMetrics;
+
+    /**
+     * 布隆过滤器
+     */
+    @Autowired
+    private BloomFilterManager bloomFilterManager;
+
+    /**
+     * 缓存后台刷新
+     */
+    @Autowired
+    private BackgroundRefresher backgroundRefresher;
+
+    /**
+     * 方法调用计划，注解类型 -> (方法 -> 调用计划)
+     */
+    private final ConcurrentMap<Class<? extends Annotation>, ConcurrentMap<MethodClassKey, CacheInvocationPlan<?>>>
+            invocationPlans = new ConcurrentHashMap<>();
+
+    /**
+     * 开启staleTimeout时，原方法在该线程池中调用
+     */
+    @Autowired
+    private CacheLoaderExecutor cacheLoaderExecutor;
+
+    /**
+     * 本地缓存配置
+     */
+    @Autowired
+    private LocalCacheSpecs localCacheSpecs;
+
     /**
      * 获取数据时
      */
@@ -54,6 +121,13 @@ public class CacheManagerAspect {
     public void executionOfCacheAddMethod() {
     }
 
+    /**
+     * 批量获取数据时
+     */
+    @Pointcut("execution(* com.mirson..*.*(..)) && @annotation(com.mirson.gemini.cache.annotation.CacheAddBatch)")
+    public void executionOfCacheAddBatchMethod() {
+    }
+
     /**
      * 更新数据时
      */
@@ -79,15 +153,13 @@ public class CacheManagerAspect {
             if (!cacheConfigProperties.isEnableCache()) {
                 return;
             }
-            CacheUpdate cacheUpdateAnnotation = getAnnotation(joinPoint, CacheUpdate.class);
-            Object cacheKey = spElUtil
-                    .parseAndGetCacheKeyFromExpression(cacheUpdateAnnotation.keyExpression(), returnObject,
-                            joinPoint.getArgs(), cacheUpdateAnnotation.keyGenerator());
+            CacheInvocationPlan<CacheUpdate> plan = getPlan(joinPoint, CacheUpdate.class);
+            Object cacheKey = plan.cacheKey(joinPoint.getArgs(), returnObject);
 
-            if (cacheUpdateAnnotation.isAsync()) {
-                cacheService.saveByAsync(cacheUpdateAnnotation.cacheNames(), cacheKey, returnObject, cacheUpdateAnnotation.TTL());
+            if (plan.isAsync()) {
+                cacheService.saveByAsync(plan.getCacheNames(), cacheKey, returnObject, plan.getTtl());
             } else {
-                cacheService.save(cacheUpdateAnnotation.cacheNames(), cacheKey, returnObject, cacheUpdateAnnotation.TTL());
+                cacheService.save(plan.getCacheNames(), cacheKey, returnObject, plan.getTtl());
             }
 
         } catch (Exception e) {
@@ -102,16 +174,13 @@ public class CacheManagerAspect {
             if (!cacheConfigProperties.isEnableCache()) {
                 return;
             }
-            CacheDelete cacheDeleteAnnotation = getAnnotation(joinPoint, CacheDelete.class);
+            CacheInvocationPlan<CacheDelete> plan = getPlan(joinPoint, CacheDelete.class);
+            CacheDelete cacheDeleteAnnotation = plan.getAnnotation();
 
-            String[] cacheNames = cacheDeleteAnnotation.cacheNames();
-            Object cacheKey = null;
-            if (!cacheDeleteAnnotation.removeAll()) {
-                cacheKey = spElUtil
-                        .parseAndGetCacheKeyFromExpression(cacheDeleteAnnotation.keyExpression(), returnObject,
-                                joinPoint.getArgs(), cacheDeleteAnnotation.keyGenerator());
-            }
-            if (cacheDeleteAnnotation.isAsync()) {
+            String[] cacheNames = plan.getCacheNames();
+            //全部清理时key为空
+            Object cacheKey = plan.cacheKey(joinPoint.getArgs(), returnObject);
+            if (plan.isAsync()) {
                 if (cacheDeleteAnnotation.removeAll()) {
                     cacheService.delete(cacheNames);
                 }
@@ -133,55 +202,337 @@ public class CacheManagerAspect {
 
         Object returnObject = null;
 
+        CacheInvocationPlan<CacheAdd> plan = null;
         CacheAdd cacheAddAnnotation = null;
         Object cacheKey = null;
         try {
-            cacheAddAnnotation = getAnnotation(proceedingJoinPoint, CacheAdd.class);
-            KeyGenerators keyGenerator = cacheAddAnnotation.keyGenerator();
-            if (StringUtils.isEmpty(cacheAddAnnotation.keyExpression())) {
-                //构建缓存key
-                cacheKey = CacheUtil.buildCacheKey(proceedingJoinPoint.getArgs());
-            } else {
-                cacheKey = spElUtil
-                        .parseAndGetCacheKeyFromExpression(cacheAddAnnotation.keyExpression(), null,
-                                proceedingJoinPoint.getArgs(), keyGenerator);
+            plan = getPlan(proceedingJoinPoint, CacheAdd.class);
+            cacheAddAnnotation = plan.getAnnotation();
+            //构建缓存key
+            cacheKey = plan.cacheKey(proceedingJoinPoint.getArgs(), null);
+            if (cacheAddAnnotation.staleIfError() > 0) {
+                cacheService.enableStale(plan.getCacheName());
+            }
+            //布隆过滤器判断一定不存在的key，直接返回
+            if (cacheAddAnnotation.bloomFilter()) {
+                bloomFilterManager.register(plan.getCacheName());
+                if (!bloomFilterManager.mightContain(plan.getCacheName(), cacheKey)) {
+                    return null;
+                }
             }
             //从缓存中获取数据
             //包括两级缓存
-            returnObject = cacheService.get(cacheAddAnnotation.cacheName(), cacheKey);
+            CacheEntry cacheEntry = cacheService.getEntry(plan.getCacheName(), cacheKey);
+            returnObject = CacheEntry.valueOf(cacheEntry);
+            //临近过期的缓存，在后台提前刷新
+            if (cacheEntry != null && isRefreshDue(cacheAddAnnotation, cacheEntry)) {
+                final CacheInvocationPlan<CacheAdd> refreshPlan = plan;
+                final Object key = cacheKey;
+                backgroundRefresher.refresh(refreshPlan.getCacheName(), key,
+                        () -> loadAndAddCache(proceedingJoinPoint, refreshPlan, key, true));
+            }
 
         } catch (Exception e) {
             log.error("getAndSaveInCache # Redis op Exception while trying to get from cache ## " + e.getMessage(), e);
         }
-        //若缓存中有，则直接返回
+        //若缓存中有，则直接返回（空值占位对象还原为null）
         if (returnObject != null) {
+            if (NullValue.isNull(returnObject)) {
+                cacheMetrics.increment(plan.getCacheName(), CacheMetrics.NULL_HITS);
+                return null;
+            }
+            cacheMetrics.increment(plan.getCacheName(), CacheMetrics.HITS);
             return returnObject;
-        } else {
-            //否则，调用原方法，一般就是从数据库中获取！
-            returnObject = callActualMethod(proceedingJoinPoint);
-            //再写回到缓存（先写redis，再写本地缓存！）
-            if (returnObject != null) {
+        }
+        if (cacheAddAnnotation == null || cacheKey == null) {
+            return callActualMethod(proceedingJoinPoint);
+        }
+        cacheMetrics.increment(plan.getCacheName(), CacheMetrics.MISSES);
+        //否则，调用原方法，一般就是从数据库中获取！
+        final CacheInvocationPlan<CacheAdd> loadPlan = plan;
+        final CacheAdd annotation = cacheAddAnnotation;
+        final Object key = cacheKey;
+        CacheLoader loader = () -> loadAndAddCache(proceedingJoinPoint, loadPlan, key, false);
+        if (annotation.distributedLoad()) {
+            //跨节点只有拿到租约的节点调用原方法
+            final CacheLoader localLoader = loader;
+            loader = () -> cacheService.loadWithLease(loadPlan.getCacheName(), key, annotation.leaseTime(),
+                    annotation.leaseWaitTime(), localLoader);
+        }
+        if (annotation.singleFlight()) {
+            //同一节点内相同key的并发请求合并，只有一个线程调用原方法
+            final CacheLoader sharedLoader = loader;
+            loader = () -> singleFlightLoader.load(loadPlan.getCacheName(), key, annotation.singleFlightTimeout(),
+                    sharedLoader);
+        }
+        if (annotation.staleIfError() > 0) {
+            return NullValue.unwrap(loadOrStale(annotation, key, loader));
+        }
+        return NullValue.unwrap(loader.load());
+    }
+
+    /**
+     * 调用原方法，失败或超时时返回过期数据
+     *
+     * @param cacheAddAnnotation
+     * @param cacheKey
+     * @param loader
+     * @return
+     * @throws Throwable 没有可用的过期数据时抛出原方法的异常
+     */
+    private Object loadOrStale(CacheAdd cacheAddAnnotation, Object cacheKey, CacheLoader loader) throws Throwable {
+        String cacheName = cacheAddAnnotation.cacheName();
+        long maxStaleMillis = TimeUnit.SECONDS.toMillis(cacheAddAnnotation.staleIfError());
+        if (cacheAddAnnotation.staleTimeout() > 0) {
+            CacheEntry stale = cacheService.getStale(cacheName, cacheKey, maxStaleMillis);
+            if (stale != null) {
+                //有可用的过期数据时才限制等待时间，超时后原方法在后台继续执行并写回缓存
+                CompletableFuture<Object> future = new CompletableFuture<>();
                 try {
-                    assert cacheAddAnnotation != null;
-                    //是否异步写入
-                    if (cacheAddAnnotation.isAsync()) {
-                        cacheService
-                                .saveByAsync(new String[]{cacheAddAnnotation.cacheName()}, cacheKey,
-                                        returnObject, cacheAddAnnotation.TTL());
-                    } else {
-                        cacheService
-                                .save(new String[]{cacheAddAnnotation.cacheName()}, cacheKey,
-                                        returnObject, cacheAddAnnotation.TTL());
-                    }
-                } catch (Exception e) {
-                    log.error("getAndSaveInCache # Exception occurred while trying to save data in redis##" + e.getMessage(),
-                            e);
+                    cacheLoaderExecutor.execute(() -> {
+                        try {
+                            future.complete(loader.load());
+                        } catch (Throwable e) {
+                            future.completeExceptionally(e);
+                        }
+                    });
+                    return future.get(cacheAddAnnotation.staleTimeout(), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    cacheMetrics.increment(cacheName, CacheMetrics.STALE_TIMEOUTS);
+                    log.warn("loadOrStale # actual method timeout, return stale data, cacheName: {}, key: {}",
+                            cacheName, cacheKey);
+                    return stale.getValue();
+                } catch (ExecutionException e) {
+                    cacheMetrics.increment(cacheName, CacheMetrics.STALE_ERRORS);
+                    log.warn("loadOrStale # actual method failed, return stale data, cacheName: {}, key: {}",
+                            cacheName, cacheKey, e.getCause());
+                    return stale.getValue();
+                } catch (RejectedExecutionException e) {
+                    //线程池已满，在当前线程调用
+                    log.debug("loadOrStale # executor is busy, call actual method directly.");
                 }
             }
         }
+        try {
+            return loader.load();
+        } catch (Throwable e) {
+            CacheEntry stale = cacheService.getStale(cacheName, cacheKey, maxStaleMillis);
+            if (stale == null) {
+                throw e;
+            }
+            cacheMetrics.increment(cacheName, CacheMetrics.STALE_ERRORS);
+            log.warn("loadOrStale # actual method failed, return stale data, cacheName: {}, key: {}",
+                    cacheName, cacheKey, e);
+            return stale.getValue();
+        }
+    }
+
+    /**
+     * 缓存是否需要在后台提前刷新
+     *
+     * @param cacheAddAnnotation
+     * @param cacheEntry
+     * @return
+     */
+    private boolean isRefreshDue(CacheAdd cacheAddAnnotation, CacheEntry cacheEntry) {
+        long now = System.currentTimeMillis();
+        if (cacheAddAnnotation.refreshAhead() && cacheEntry.isRefreshDue(cacheAddAnnotation.refreshFactor(),
+                localCacheSpecs.get(cacheAddAnnotation.cacheName()).getRefreshAfterWrite(), now)) {
+            return true;
+        }
+        return cacheAddAnnotation.earlyRefresh() && cacheEntry.isEarlyRefreshDue(cacheAddAnnotation.earlyRefreshBeta(), now);
+    }
+
+    /**
+     * 调用原方法，并将结果写回到缓存
+     * 未命中时按回源写入（Redis中已有的数据不覆盖，不广播其他节点）；
+     * 提前刷新时缓存中的数据即将过期，按更新写入（覆盖Redis并广播）
+     *
+     * @param proceedingJoinPoint
+     * @param plan
+     * @param cacheKey
+     * @param refresh 是否为提前刷新
+     * @return
+     * @throws Throwable
+     */
+    private Object loadAndAddCache(ProceedingJoinPoint proceedingJoinPoint, CacheInvocationPlan<CacheAdd> plan,
+                                   Object cacheKey, boolean refresh) throws Throwable {
+        CacheAdd cacheAddAnnotation = plan.getAnnotation();
+        long start = System.nanoTime();
+        Object returnObject = callActualMethod(proceedingJoinPoint);
+        long loadCost = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (returnObject == null && cacheAddAnnotation.bloomFilter()) {
+            bloomFilterManager.recordFalsePositive(plan.getCacheName());
+        }
+        //再写回到缓存（先写redis，再写本地缓存！），结果为空时按需缓存空值占位对象
+        Object cacheValue = returnObject;
+        long ttl = plan.getTtl();
+        if (returnObject == null && cacheAddAnnotation.cacheNull()) {
+            cacheValue = NullValue.INSTANCE;
+            ttl = cacheAddAnnotation.nullTTL();
+        }
+        if (cacheValue != null) {
+            try {
+                //记录加载耗时，用于概率提前刷新
+                CacheEntry cacheEntry = new CacheEntry(cacheValue, System.currentTimeMillis(),
+                        CacheUtil.jitter(TimeUnit.SECONDS.toMillis(ttl), cacheConfigProperties.getTtlJitter()),
+                        loadCost);
+                //是否异步写入
+                if (refresh && plan.isAsync()) {
+                    cacheService
+                            .saveByAsync(plan.getCacheNames(), cacheKey,
+                                    cacheEntry, ttl);
+                } else if (refresh) {
+                    cacheService
+                            .save(plan.getCacheNames(), cacheKey,
+                                    cacheEntry, ttl);
+                } else if (plan.isAsync()) {
+                    cacheService
+                            .fillByAsync(plan.getCacheNames(), cacheKey,
+                                    cacheEntry, ttl);
+                } else {
+                    cacheService
+                            .fill(plan.getCacheNames(), cacheKey,
+                                    cacheEntry, ttl);
+                }
+            } catch (Exception e) {
+                log.error("getAndSaveInCache # Exception occurred while trying to save data in redis##" + e.getMessage(),
+                        e);
+            }
+        }
         return returnObject;
     }
 
+    /**
+     * 批量读取缓存
+     * 按batchParam指定的集合参数逐个元素生成key，一次性从缓存批量获取；未命中的元素组成新的集合调用一次原方法，
+     * 加载结果按元素（Map的key或resultKeyExpression）回填缓存，再与命中的结果按参数中元素的顺序合并返回。
+     * 方法签名不支持批量处理时直接调用原方法
+     *
+     * @param proceedingJoinPoint
+     * @return
+     * @throws Throwable
+     */
+    @Around("executionOfCacheAddBatchMethod()")
+    public Object getAndAddBatchCache(final ProceedingJoinPoint proceedingJoinPoint) throws Throwable {
+        //未开启缓存时，直接执行原方法
+        if (!cacheConfigProperties.isEnableCache()) {
+            return callActualMethod(proceedingJoinPoint);
+        }
+        CacheInvocationPlan<CacheAddBatch> plan = getPlan(proceedingJoinPoint, CacheAddBatch.class);
+        CacheAddBatch annotation = plan.getAnnotation();
+        Object[] args = proceedingJoinPoint.getArgs();
+        int index = annotation.batchParam() - 1;
+        Class<?> returnType = ((MethodSignature) proceedingJoinPoint.getSignature()).getReturnType();
+        boolean mapResult = Map.class.isAssignableFrom(returnType) && returnType.isAssignableFrom(LinkedHashMap.class);
+        boolean collectionResult = Collection.class.isAssignableFrom(returnType)
+                && (returnType.isAssignableFrom(ArrayList.class) || returnType.isAssignableFrom(LinkedHashSet.class));
+        if (index < 0 || index >= args.length || !(args[index] instanceof Collection)
+                || !(mapResult || collectionResult && !StringUtils.isEmpty(annotation.resultKeyExpression()))) {
+            log.warn("getAndAddBatchCache # unsupported batch method, call actual method directly: {}",
+                    proceedingJoinPoint.getSignature());
+            return callActualMethod(proceedingJoinPoint);
+        }
+        String cacheName = plan.getCacheName();
+        Collection<?> elements = (Collection<?>) args[index];
+
+        //集合元素 -> 缓存key
+        Map<Object, Object> elementKeys = new LinkedHashMap<>(elements.size() * 2);
+        Map<Object, Object> cached;
+        try {
+            for (Object element : elements) {
+                elementKeys.put(element, plan.cacheKey(args, element));
+            }
+            cached = cacheService.getAll(cacheName, elementKeys.values());
+        } catch (Exception e) {
+            log.error("getAndAddBatchCache # Redis op Exception while trying to get from cache ## " + e.getMessage(), e);
+            return callActualMethod(proceedingJoinPoint);
+        }
+
+        //只有未命中的元素才调用原方法
+        Collection<Object> missElements = args[index] instanceof Set ? new LinkedHashSet<>() : new ArrayList<>();
+        elementKeys.forEach((element, key) -> {
+            if (!cached.containsKey(key)) {
+                missElements.add(element);
+            }
+        });
+        cacheMetrics.add(cacheName, CacheMetrics.HITS, elementKeys.size() - missElements.size());
+        cacheMetrics.add(cacheName, CacheMetrics.MISSES, missElements.size());
+        Map<Object, Object> loaded = missElements.isEmpty() ? new LinkedHashMap<>()
+                : loadAndAddBatchCache(proceedingJoinPoint, plan, index, missElements, mapResult, elementKeys);
+
+        //按参数顺序拼接结果（缓存的空值不返回）
+        Map<Object, Object> resultMap = new LinkedHashMap<>(elementKeys.size() * 2);
+        Collection<Object> resultCollection = returnType.isAssignableFrom(ArrayList.class)
+                ? new ArrayList<>(elementKeys.size()) : new LinkedHashSet<>();
+        elementKeys.forEach((element, key) -> {
+            Object value = cached.containsKey(key) ? cached.get(key) : loaded.get(key);
+            if (value == null || NullValue.isNull(value)) {
+                return;
+            }
+            if (mapResult) {
+                resultMap.put(element, value);
+            } else {
+                resultCollection.add(value);
+            }
+        });
+        return mapResult ? resultMap : resultCollection;
+    }
+
+    /**
+     * 使用未命中的元素调用原方法，并将结果批量写回到缓存
+     *
+     * @param proceedingJoinPoint
+     * @param plan          方法的调用计划
+     * @param index         集合参数的位置
+     * @param missElements  未命中的元素
+     * @param mapResult     原方法是否返回Map
+     * @param elementKeys   集合元素 -> 缓存key
+     * @return 缓存key -> 原方法返回的数据
+     * @throws Throwable
+     */
+    private Map<Object, Object> loadAndAddBatchCache(ProceedingJoinPoint proceedingJoinPoint,
+                                                     CacheInvocationPlan<CacheAddBatch> plan,
+                                                     int index, Collection<Object> missElements, boolean mapResult,
+                                                     Map<Object, Object> elementKeys) throws Throwable {
+        Object[] args = proceedingJoinPoint.getArgs().clone();
+        args[index] = missElements;
+        Object result = proceedingJoinPoint.proceed(args);
+        CacheAddBatch annotation = plan.getAnnotation();
+        Map<Object, Object> loaded = new LinkedHashMap<>();
+        if (result == null) {
+            return loaded;
+        }
+        if (mapResult) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) result).entrySet()) {
+                Object key = elementKeys.get(entry.getKey());
+                if (key != null && entry.getValue() != null) {
+                    loaded.put(key, entry.getValue());
+                }
+            }
+        } else {
+            for (Object value : (Collection<?>) result) {
+                if (value != null) {
+                    loaded.put(spElUtil.parseAndGetCacheKeyFromExpression(plan.getMethod(), annotation.resultKeyExpression(), value,
+                            args, annotation.keyGenerator()), value);
+                }
+            }
+        }
+        String[] cacheNames = plan.getCacheNames();
+        try {
+            if (plan.isAsync()) {
+                for (Map.Entry<Object, Object> entry : loaded.entrySet()) {
+                    cacheService.fillByAsync(cacheNames, entry.getKey(), entry.getValue(), plan.getTtl());
+                }
+            } else {
+                cacheService.fillAll(cacheNames, loaded, plan.getTtl());
+            }
+        } catch (Exception e) {
+            log.error("getAndAddBatchCache # Data save failed ## " + e.getMessage(), e);
+        }
+        return loaded;
+    }
+
     /**
      * 执行目标方法，相当于是直接从数据库取
      *
@@ -194,17 +545,61 @@ public class CacheManagerAspect {
 
     }
 
-    private <T extends Annotation> T getAnnotation(JoinPoint proceedingJoinPoint,
-                                                   Class<T> annotationClass) throws NoSuchMethodException {
+    /**
+     * 获取方法的调用计划，每个方法（按目标类区分）只解析一次
+     *
+     * @param joinPoint
+     * @param annotationClass
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Annotation> CacheInvocationPlan<T> getPlan(JoinPoint joinPoint, Class<T> annotationClass) {
+        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+        Object target = joinPoint.getTarget();
+        Class<?> targetClass = target != null ? target.getClass() : signature.getDeclaringType();
+        MethodClassKey planKey = new MethodClassKey(signature.getMethod(), targetClass);
+        ConcurrentMap<MethodClassKey, CacheInvocationPlan<?>> plans = invocationPlans.get(annotationClass);
+        if (plans == null) {
+            plans = invocationPlans.computeIfAbsent(annotationClass, type -> new ConcurrentHashMap<>());
+        }
+        CacheInvocationPlan<?> plan = plans.get(planKey);
+        if (plan == null) {
+            plan = plans.computeIfAbsent(planKey,
+                    key -> createPlan(signature.getMethod(), targetClass, annotationClass));
+        }
+        return (CacheInvocationPlan<T>) plan;
+    }
 
-        MethodSignature signature = (MethodSignature) proceedingJoinPoint.getSignature();
-        Method method = signature.getMethod();
-        String methodName = method.getName();
-        if (method.getDeclaringClass().isInterface()) {
-            method = proceedingJoinPoint.getTarget().getClass().getDeclaredMethod(methodName,
-                    method.getParameterTypes());
+    /**
+     * 解析注解，构建调用计划
+     * 接口方法上的切点需要到目标类的实现方法上查找注解
+     *
+     * @param method
+     * @param targetClass
+     * @param annotationClass
+     * @param <T>
+     * @return
+     */
+    private <T extends Annotation> CacheInvocationPlan<T> createPlan(Method method, Class<?> targetClass,
+                                                                    Class<T> annotationClass) {
+        Method specificMethod = ClassUtils.getMostSpecificMethod(method, targetClass);
+        T annotation = specificMethod.getAnnotation(annotationClass);
+        if (annotation == null) {
+            specificMethod = method;
+            annotation = method.getAnnotation(annotationClass);
+        }
+        if (annotation == null) {
+            throw new IllegalStateException("No @" + annotationClass.getSimpleName() + " found on method: " + method);
+        }
+        // 注解中的本地缓存配置
+        if (annotation instanceof CacheAdd) {
+            localCacheSpecs.register(((CacheAdd) annotation).cacheName(), ((CacheAdd) annotation).localSpec());
+        } else if (annotation instanceof CacheAddBatch) {
+            localCacheSpecs.register(((CacheAddBatch) annotation).cacheName(),
+                    ((CacheAddBatch) annotation).localSpec());
         }
-        return method.getAnnotation(annotationClass);
+        return CacheInvocationPlan.create(specificMethod, annotation, spElUtil);
     }
 
 }
@@ -0,0 +1,317 @@
+package com.mirson.gemini.cache.core.bloom;
+
+import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.common.NamedThreadFactory;
+import com.mirson.gemini.cache.core.breaker.RedisCircuitBreakerManager;
+import com.mirson.gemini.cache.core.metrics.CacheMetrics;
+import org.redisson.api.RFuture;
+import org.redisson.api.RedissonClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 布隆过滤器管理
+ * 按缓存名称维护布隆过滤器，用于拦截一定不存在的key，避免访问数据库。
+ * 本地副本定时从Redis同步；两级缓存模式下，其他节点的写入通过缓存更新消息实时同步到本地副本。
+ * 回源写入不发送更新消息，本地副本可能缺少其他节点刚写入的key，因此本地判断不存在时再以Redis中的位图确认
+ *
+ * @author zoutongkun
+ */
+public class BloomFilterManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(BloomFilterManager.class);
+
+    /**
+     * 已开启布隆过滤器的缓存
+     */
+    private final ConcurrentMap<String, CacheBloomFilter> filters = new ConcurrentHashMap<>();
+
+    private final RedissonClient redissonClient;
+
+    private final CacheConfigProperties cacheConfigProperties;
+
+    private final CacheMetrics cacheMetrics;
+
+    private final RedisCircuitBreakerManager circuitBreakerManager;
+
+    /**
+     * 本地副本同步线程
+     */
+    private final ScheduledExecutorService syncExecutor;
+
+    public BloomFilterManager(RedissonClient redissonClient,
+                              CacheConfigProperties cacheConfigProperties,
+                              CacheMetrics cacheMetrics,
+                              RedisCircuitBreakerManager circuitBreakerManager) {
+        this.redissonClient = redissonClient;
+        this.cacheConfigProperties = cacheConfigProperties;
+        this.cacheMetrics = cacheMetrics;
+        this.circuitBreakerManager = circuitBreakerManager;
+        this.syncExecutor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("Bloom-Sync"));
+        long interval = Math.max(1, cacheConfigProperties.getBloomSyncInterval());
+        this.syncExecutor.scheduleWithFixedDelay(this::syncAll, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 为缓存开启布隆过滤器（幂等），首次开启时异步从Redis加载
+     *
+     * @param cacheName
+     */
+    public void register(String cacheName) {
+        if (filters.containsKey(cacheName)) {
+            return;
+        }
+        CacheBloomFilter filter = new CacheBloomFilter(cacheName, redissonClient, cacheConfigProperties.getBloomMaxBits());
+        if (filters.putIfAbsent(cacheName, filter) == null) {
+            syncExecutor.execute(() -> sync(filter, cacheName));
+        }
+    }
+
+    /**
+     * 判断key是否可能存在
+     *
+     * @param cacheName
+     * @param key
+     * @return false代表一定不存在
+     */
+    public boolean mightContain(String cacheName, Object key) {
+        CacheBloomFilter filter = filters.get(cacheName);
+        if (filter == null || filter.mightContain(key)) {
+            return true;
+        }
+        return !confirmMisses(cacheName, filter, Collections.singletonList(key)).isEmpty();
+    }
+
+    /**
+     * 批量判断key是否可能存在，本地副本判断不存在的key合并为一次Redis访问确认
+     *
+     * @param cacheName
+     * @param keys
+     * @return 可能存在的key
+     */
+    public Set<Object> mightContainAll(String cacheName, Collection<?> keys) {
+        Set<Object> result = new LinkedHashSet<>(keys);
+        CacheBloomFilter filter = filters.get(cacheName);
+        if (filter == null) {
+            return result;
+        }
+        List<Object> misses = new ArrayList<>();
+        for (Object key : keys) {
+            if (!filter.mightContain(key)) {
+                misses.add(key);
+            }
+        }
+        if (!misses.isEmpty()) {
+            result.removeAll(misses);
+            result.addAll(confirmMisses(cacheName, filter, misses));
+        }
+        return result;
+    }
+
+    /**
+     * 以Redis中的位图确认本地副本判断不存在的key
+     * Redis不可用、过滤器版本已切换或正在重建时无法确认，按可能存在处理
+     *
+     * @param cacheName
+     * @param filter
+     * @param misses    本地副本判断不存在的key
+     * @return 可能存在的key
+     */
+    private List<Object> confirmMisses(String cacheName, CacheBloomFilter filter, List<Object> misses) {
+        List<Object> found = circuitBreakerManager.execute(cacheName, () -> filter.mightContainAsync(misses), null);
+        if (found == null || found.size() != misses.size()) {
+            if (found != null) {
+                // 其他节点已重建过滤器，尽快同步到新版本
+                syncExecutor.execute(() -> sync(filter, cacheName));
+            }
+            return misses;
+        }
+        List<Object> result = new ArrayList<>();
+        for (int i = 0; i < misses.size(); i++) {
+            Object key = misses.get(i);
+            if (((Number) found.get(i)).longValue() == 1) {
+                // 补齐本地副本，之后的判断不再访问Redis
+                filter.putLocal(key);
+                result.add(key);
+            } else {
+                cacheMetrics.increment(cacheName, CacheMetrics.BLOOM_REJECTS);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 缓存是否有已生效的布隆过滤器
+     *
+     * @param cacheName
+     * @return
+     */
+    public boolean isActive(String cacheName) {
+        CacheBloomFilter filter = filters.get(cacheName);
+        return filter != null && filter.isActive();
+    }
+
+    /**
+     * 添加key（写入本地副本与Redis）
+     *
+     * @param cacheName
+     * @param key
+     */
+    public void put(String cacheName, Object key) {
+        CacheBloomFilter filter = filters.get(cacheName);
+        if (filter != null && key != null) {
+            write(filter, cacheName, Collections.singletonList(key), true);
+        }
+    }
+
+    /**
+     * 批量添加key
+     *
+     * @param cacheName
+     * @param keys
+     */
+    public void putAll(String cacheName, Collection<?> keys) {
+        CacheBloomFilter filter = filters.get(cacheName);
+        if (filter != null && !keys.isEmpty()) {
+            write(filter, cacheName, keys, true);
+        }
+    }
+
+    /**
+     * 写入过滤器，过滤器已在其他节点重建时同步到新版本后重新写入
+     *
+     * @param filter
+     * @param cacheName
+     * @param keys
+     * @param retry     被拒绝时是否重新写入
+     */
+    private void write(CacheBloomFilter filter, String cacheName, Collection<?> keys, boolean retry) {
+        RFuture<Long> future = filter.putAll(keys);
+        if (future == null) {
+            return;
+        }
+        future.whenComplete((result, e) -> {
+            if (e != null) {
+                logger.warn("write # bloom filter write failed, cacheName: {}, {}", cacheName, e.getMessage());
+            } else if (retry && result != null && result == 0) {
+                syncExecutor.execute(() -> {
+                    sync(filter, cacheName);
+                    write(filter, cacheName, keys, false);
+                });
+            }
+        });
+    }
+
+    /**
+     * 添加key到本地副本（其他节点已写入Redis）
+     *
+     * @param cacheName
+     * @param key
+     */
+    public void putLocal(String cacheName, Object key) {
+        CacheBloomFilter filter = filters.get(cacheName);
+        if (filter != null && key != null) {
+            filter.putLocal(key);
+        }
+    }
+
+    /**
+     * 记录一次误判（过滤器判断存在，但实际数据不存在）
+     *
+     * @param cacheName
+     */
+    public void recordFalsePositive(String cacheName) {
+        if (isActive(cacheName)) {
+            cacheMetrics.increment(cacheName, CacheMetrics.BLOOM_FALSE_POSITIVES);
+        }
+    }
+
+    /**
+     * 按全量key批量重建过滤器，沿用当前容量（首次使用全局配置的容量）
+     *
+     * @param cacheName
+     * @param keys      全部存在的缓存key（与缓存使用的key一致）
+     */
+    public void rebuild(String cacheName, Collection<?> keys) {
+        rebuild(cacheName, () -> keys);
+    }
+
+    /**
+     * 按全量key批量重建过滤器，沿用当前容量（首次使用全局配置的容量）
+     * 先开始记录重建期间的写入再加载全量key，加载期间其他节点写入的key不会丢失
+     *
+     * @param cacheName
+     * @param keysLoader 加载全部存在的缓存key（与缓存使用的key一致）
+     */
+    public void rebuild(String cacheName, Supplier<? extends Collection<?>> keysLoader) {
+        resize(cacheName, cacheConfigProperties.getBloomExpectedInsertions(), cacheConfigProperties.getBloomFpp(), keysLoader);
+    }
+
+    /**
+     * 按新的容量与误判率重建过滤器
+     * 布隆过滤器无法直接扩容，需要提供全量key
+     *
+     * @param cacheName
+     * @param expectedInsertions 预期数据量
+     * @param fpp                误判率
+     * @param keys               全部存在的缓存key
+     */
+    public void resize(String cacheName, long expectedInsertions, double fpp, Collection<?> keys) {
+        resize(cacheName, expectedInsertions, fpp, () -> keys);
+    }
+
+    /**
+     * 按新的容量与误判率重建过滤器
+     *
+     * @param cacheName
+     * @param expectedInsertions 预期数据量
+     * @param fpp                误判率
+     * @param keysLoader         加载全部存在的缓存key
+     */
+    public void resize(String cacheName, long expectedInsertions, double fpp, Supplier<? extends Collection<?>> keysLoader) {
+        register(cacheName);
+        CacheBloomFilter filter = filters.get(cacheName);
+        int size;
+        synchronized (filter) {
+            size = filter.rebuild(keysLoader, expectedInsertions, fpp);
+        }
+        logger.info("resize # bloom filter of {} rebuilt, keys: {}, bits: {}", cacheName, size, filter.getNumBits());
+    }
+
+    /**
+     * 同步全部过滤器
+     */
+    private void syncAll() {
+        filters.forEach((cacheName, filter) -> sync(filter, cacheName));
+    }
+
+    private void sync(CacheBloomFilter filter, String cacheName) {
+        try {
+            synchronized (filter) {
+                filter.sync();
+            }
+        } catch (Exception e) {
+            logger.error("sync # bloom filter sync failed, cacheName: " + cacheName + ", " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 关闭同步线程
+     */
+    public void shutdown() {
+        syncExecutor.shutdownNow();
+    }
+}
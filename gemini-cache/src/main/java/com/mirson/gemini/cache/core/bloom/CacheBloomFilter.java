@@ -0,0 +1,453 @@
+package com.mirson.gemini.cache.core.bloom;
+
+import com.mirson.gemini.cache.common.CacheConstants;
+import com.mirson.gemini.cache.utils.Murmur3;
+import org.redisson.api.RBatch;
+import org.redisson.api.RBitSetAsync;
+import org.redisson.api.RBucket;
+import org.redisson.api.RFuture;
+import org.redisson.api.RList;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * 单个缓存名称的布隆过滤器
+ * 位图保存在Redis中（多节点共享），每个节点持有一份本地副本，优先判断本地内存，本地判断不存在时再以Redis中的位图为准。
+ * 只有执行过{@link #rebuild}（即Redis中存在过滤器配置）后才会生效，未生效时全部放行。
+ * 同一缓存的Redis key使用相同的hash tag，集群模式下位于同一个slot，可以在一个脚本中访问
+ *
+ * @author zoutongkun
+ */
+public class CacheBloomFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheBloomFilter.class);
+
+    /**
+     * 哈希种子
+     */
+    private static final long SEED = 0x9747b28cL;
+
+    /**
+     * 位图长度上限（Redis字符串最大512MB）
+     */
+    private static final long MAX_BITS = 1L << 32;
+
+    /**
+     * 位图最小长度
+     */
+    private static final long MIN_BITS = 64;
+
+    /**
+     * 重建标记的过期时间（分钟），重建节点异常退出时自动清理
+     */
+    private static final long REBUILD_TIMEOUT = 10;
+
+    /**
+     * 写入脚本：过滤器版本与写入节点一致时才写入位图，重建期间同时记录key，版本已切换时返回0
+     * KEYS: 配置、位图、重建标记、重建日志；ARGV: 配置、key数量、key...、位序号...
+     */
+    private static final String PUT_SCRIPT =
+            "if redis.call('get', KEYS[1]) ~= ARGV[1] then return 0 end " +
+            "local n = tonumber(ARGV[2]) " +
+            "local ttl = redis.call('pttl', KEYS[3]) " +
+            "if ttl > 0 then " +
+            "for i = 3, n + 2 do redis.call('rpush', KEYS[4], ARGV[i]) end " +
+            "redis.call('pexpire', KEYS[4], ttl) end " +
+            "for i = n + 3, #ARGV do redis.call('setbit', KEYS[2], ARGV[i], 1) end " +
+            "return 1";
+
+    /**
+     * 判断脚本：按key返回是否可能存在（1/0），过滤器版本已切换或正在重建时返回空列表
+     * KEYS: 配置、位图、重建标记；ARGV: 配置、哈希次数、位序号...
+     */
+    private static final String CONTAINS_SCRIPT =
+            "if redis.call('get', KEYS[1]) ~= ARGV[1] or redis.call('exists', KEYS[3]) == 1 then return {} end " +
+            "local k = tonumber(ARGV[2]) " +
+            "local result = {} " +
+            "for i = 3, #ARGV, k do " +
+            "local found = 1 " +
+            "for j = i, i + k - 1 do " +
+            "if redis.call('getbit', KEYS[2], ARGV[j]) == 0 then found = 0 break end end " +
+            "result[#result + 1] = found end " +
+            "return result";
+
+    private final String cacheName;
+
+    private final RedissonClient redissonClient;
+
+    /**
+     * 重建时位图的最大长度，每个节点的本地副本占用maxBits/8字节
+     */
+    private final long maxBits;
+
+    /**
+     * 当前生效的过滤器，为空代表未生效
+     */
+    private volatile State state;
+
+    public CacheBloomFilter(String cacheName, RedissonClient redissonClient, long maxBits) {
+        this.cacheName = cacheName;
+        this.redissonClient = redissonClient;
+        this.maxBits = Math.max(MIN_BITS, Math.min(MAX_BITS, maxBits));
+    }
+
+    /**
+     * 是否已生效
+     *
+     * @return
+     */
+    public boolean isActive() {
+        return state != null;
+    }
+
+    /**
+     * 判断key是否可能存在（只访问本地副本）
+     *
+     * @param key
+     * @return false代表本地副本中不存在，其他节点的写入可能尚未同步，需再通过{@link #mightContainAsync}确认
+     */
+    public boolean mightContain(Object key) {
+        State current = state;
+        if (current == null) {
+            return true;
+        }
+        for (long index : current.indexes(key)) {
+            if (!current.get(index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按Redis中的位图判断key是否可能存在（一次网络往返）
+     *
+     * @param keys
+     * @return 与keys顺序一致的判断结果（1代表可能存在，0代表一定不存在）；
+     * 过滤器未生效、版本已切换或正在重建时返回空列表，此时无法判断；为空代表无需访问Redis
+     */
+    public RFuture<List<Object>> mightContainAsync(List<?> keys) {
+        State current = state;
+        if (current == null || keys.isEmpty()) {
+            return null;
+        }
+        List<Object> args = new ArrayList<>(2 + keys.size() * current.numHashes);
+        args.add(current.config());
+        args.add(String.valueOf(current.numHashes));
+        for (Object key : keys) {
+            for (long index : current.indexes(key)) {
+                args.add(String.valueOf(index));
+            }
+        }
+        return redissonClient.getScript().evalAsync(configKey(), RScript.Mode.READ_ONLY, StringCodec.INSTANCE,
+                CONTAINS_SCRIPT, RScript.ReturnType.MULTI,
+                Arrays.<Object>asList(configKey(), bitsKey(current), rebuildKey()), args.toArray());
+    }
+
+    /**
+     * 添加key，同时写入本地副本与Redis
+     *
+     * @param key
+     * @return 参考{@link #putAll}
+     */
+    public RFuture<Long> put(Object key) {
+        return putAll(Collections.singletonList(key));
+    }
+
+    /**
+     * 批量添加key，同时写入本地副本与Redis（一次网络往返）
+     *
+     * @param keys
+     * @return 写入结果，0代表过滤器已在其他节点重建，需同步后重新写入；未生效时为空
+     */
+    public RFuture<Long> putAll(Collection<?> keys) {
+        State current = state;
+        if (current == null || keys.isEmpty()) {
+            return null;
+        }
+        List<Object> args = new ArrayList<>(2 + keys.size() * (current.numHashes + 1));
+        args.add(current.config());
+        args.add(String.valueOf(keys.size()));
+        for (Object key : keys) {
+            args.add(String.valueOf(key));
+        }
+        for (Object key : keys) {
+            for (long index : current.indexes(key)) {
+                current.set(index);
+                args.add(String.valueOf(index));
+            }
+        }
+        return redissonClient.getScript().evalAsync(configKey(), RScript.Mode.READ_WRITE, StringCodec.INSTANCE,
+                PUT_SCRIPT, RScript.ReturnType.INTEGER,
+                Arrays.<Object>asList(configKey(), bitsKey(current), rebuildKey(), journalKey()), args.toArray());
+    }
+
+    /**
+     * 只添加到本地副本（其他节点已写入Redis）
+     *
+     * @param key
+     */
+    public void putLocal(Object key) {
+        State current = state;
+        if (current == null) {
+            return;
+        }
+        for (long index : current.indexes(key)) {
+            current.set(index);
+        }
+    }
+
+    /**
+     * 从Redis同步过滤器配置与位图
+     */
+    public void sync() {
+        State synced = State.parse(configBucket().get());
+        if (synced == null) {
+            state = null;
+            return;
+        }
+        State current = state;
+        if (synced.numBits > maxBits && (current == null || current.generation != synced.generation)) {
+            // 位图由其他节点按更大的上限创建，本地副本需与其一致
+            logger.warn("sync # bloom filter of {} has {} bits, more than app.cache.bloom.maxBits {}, "
+                    + "local copy takes {} bytes", cacheName, synced.numBits, maxBits, synced.numBits >>> 3);
+        }
+        RBucket<byte[]> bits = redissonClient.getBucket(bitsKey(synced), ByteArrayCodec.INSTANCE);
+        synced.load(bits.get());
+        if (current != null && current.generation == synced.generation) {
+            // 合并本地已添加但可能尚未写入Redis的数据
+            synced.merge(current);
+        }
+        state = synced;
+    }
+
+    /**
+     * 按数据量与误判率重建过滤器
+     * 加载全量key之前开始记录所有节点写入旧版本的key，切换配置后合并到新版本，再删除旧位图；
+     * 切换配置后仍按旧版本写入的节点会被拒绝，由写入节点同步到新版本后重新写入
+     *
+     * @param keysLoader         加载全部存在的key
+     * @param expectedInsertions 预期数据量
+     * @param fpp                误判率
+     * @return 加载的key数量
+     */
+    public int rebuild(Supplier<? extends Collection<?>> keysLoader, long expectedInsertions, double fpp) {
+        RBucket<String> configBucket = configBucket();
+        RBucket<String> rebuildBucket = redissonClient.getBucket(rebuildKey(), StringCodec.INSTANCE);
+        RList<String> journal = redissonClient.getList(journalKey(), StringCodec.INSTANCE);
+        journal.delete();
+        rebuildBucket.set(String.valueOf(System.currentTimeMillis()), REBUILD_TIMEOUT, TimeUnit.MINUTES);
+        try {
+            Collection<?> keys = keysLoader.get();
+            long expected = Math.max(expectedInsertions, Math.max(1, keys.size()));
+            long numBits = optimalNumBits(expected, fpp);
+            if (numBits > maxBits) {
+                logger.warn("rebuild # bloom filter of {} needs {} bits for {} keys at fpp {}, "
+                                + "limited to app.cache.bloom.maxBits {}, the false positive rate will be higher",
+                        cacheName, numBits, expected, fpp, maxBits);
+                numBits = maxBits;
+            }
+            int numHashes = optimalNumHashes(expected, numBits);
+            State previous = State.parse(configBucket.get());
+            long generation = previous == null ? System.currentTimeMillis() : previous.generation + 1;
+            State rebuilt = new State(numBits, numHashes, generation);
+            for (Object key : keys) {
+                for (long index : rebuilt.indexes(key)) {
+                    rebuilt.set(index);
+                }
+            }
+            // 先写入新位图，再切换配置，其他节点同步时直接切换到新版本
+            redissonClient.getBucket(bitsKey(rebuilt), ByteArrayCodec.INSTANCE).set(rebuilt.toBytes());
+            configBucket.set(rebuilt.config());
+            // 切换配置后旧版本的写入均被拒绝，日志已完整，合并到新版本
+            List<String> journaled = journal.readAll();
+            if (!journaled.isEmpty()) {
+                RBatch batch = redissonClient.createBatch();
+                RBitSetAsync bitSet = batch.getBitSet(bitsKey(rebuilt));
+                for (String key : journaled) {
+                    for (long index : rebuilt.indexes(key)) {
+                        rebuilt.set(index);
+                        bitSet.setAsync(index);
+                    }
+                }
+                batch.execute();
+            }
+            if (previous != null) {
+                redissonClient.getBucket(bitsKey(previous)).delete();
+            }
+            state = rebuilt;
+            return keys.size();
+        } finally {
+            rebuildBucket.delete();
+            journal.delete();
+        }
+    }
+
+    /**
+     * 当前位图长度
+     *
+     * @return 未生效时返回0
+     */
+    public long getNumBits() {
+        State current = state;
+        return current == null ? 0 : current.numBits;
+    }
+
+    private RBucket<String> configBucket() {
+        return redissonClient.getBucket(configKey(), StringCodec.INSTANCE);
+    }
+
+    private String configKey() {
+        return key("config");
+    }
+
+    private String rebuildKey() {
+        return key("rebuilding");
+    }
+
+    private String journalKey() {
+        return key("journal");
+    }
+
+    private String bitsKey(State state) {
+        return key(String.valueOf(state.generation));
+    }
+
+    private String key(String suffix) {
+        return CacheConstants.BLOOM_KEY_PREFIX + "{" + cacheName + "}:" + suffix;
+    }
+
+    private static long[] hash(Object key) {
+        byte[] bytes = String.valueOf(key).getBytes(StandardCharsets.UTF_8);
+        return Murmur3.hash128(bytes, 0, bytes.length, SEED);
+    }
+
+    static long optimalNumBits(long expectedInsertions, double fpp) {
+        double p = fpp <= 0 || fpp >= 1 ? 0.01 : fpp;
+        long bits = (long) (-expectedInsertions * Math.log(p) / (Math.log(2) * Math.log(2)));
+        return Math.min(MAX_BITS, Math.max(MIN_BITS, bits));
+    }
+
+    static int optimalNumHashes(long expectedInsertions, long numBits) {
+        return Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+    }
+
+    /**
+     * 过滤器版本（配置 + 本地位图）
+     * Redis位图按SETBIT的位序保存：第i位对应第i/8个字节的从高到低第i%8位
+     */
+    private static final class State {
+
+        final long numBits;
+
+        final int numHashes;
+
+        final long generation;
+
+        final AtomicLongArray words;
+
+        State(long numBits, int numHashes, long generation) {
+            this.numBits = numBits;
+            this.numHashes = numHashes;
+            this.generation = generation;
+            this.words = new AtomicLongArray((int) ((numBits + 63) >>> 6));
+        }
+
+        /**
+         * 解析Redis中的过滤器配置（numBits:numHashes:generation）
+         *
+         * @param config
+         * @return 配置不存在时为空
+         */
+        static State parse(String config) {
+            if (config == null) {
+                return null;
+            }
+            String[] parts = config.split(":");
+            return new State(Long.parseLong(parts[0]), Integer.parseInt(parts[1]), Long.parseLong(parts[2]));
+        }
+
+        String config() {
+            return numBits + ":" + numHashes + ":" + generation;
+        }
+
+        long[] indexes(Object key) {
+            long[] hash = hash(key);
+            long[] indexes = new long[numHashes];
+            long combined = hash[0];
+            for (int i = 0; i < numHashes; i++) {
+                indexes[i] = (combined & Long.MAX_VALUE) % numBits;
+                combined += hash[1];
+            }
+            return indexes;
+        }
+
+        boolean get(long index) {
+            return (words.get((int) (index >>> 6)) & (1L << index)) != 0;
+        }
+
+        void set(long index) {
+            int wordIndex = (int) (index >>> 6);
+            long mask = 1L << index;
+            long word;
+            do {
+                word = words.get(wordIndex);
+                if ((word & mask) != 0) {
+                    return;
+                }
+            } while (!words.compareAndSet(wordIndex, word, word | mask));
+        }
+
+        void merge(State other) {
+            for (int i = 0; i < words.length(); i++) {
+                long otherWord = other.words.get(i);
+                if (otherWord != 0) {
+                    words.set(i, words.get(i) | otherWord);
+                }
+            }
+        }
+
+        void load(byte[] bytes) {
+            if (bytes == null) {
+                return;
+            }
+            int length = (int) Math.min(bytes.length, (numBits + 7) >>> 3);
+            for (int byteIndex = 0; byteIndex < length; byteIndex++) {
+                int value = bytes[byteIndex] & 0xff;
+                if (value == 0) {
+                    continue;
+                }
+                for (int bit = 0; bit < 8; bit++) {
+                    long index = ((long) byteIndex << 3) + bit;
+                    if ((value & (0x80 >>> bit)) != 0 && index < numBits) {
+                        set(index);
+                    }
+                }
+            }
+        }
+
+        byte[] toBytes() {
+            byte[] bytes = new byte[(int) ((numBits + 7) >>> 3)];
+            for (long index = 0; index < numBits; index++) {
+                if (get(index)) {
+                    bytes[(int) (index >>> 3)] |= 0x80 >>> (index & 7);
+                }
+            }
+            return bytes;
+        }
+    }
+}
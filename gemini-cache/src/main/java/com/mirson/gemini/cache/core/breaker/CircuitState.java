@@ -0,0 +1,37 @@
+package com.mirson.gemini.cache.core.breaker;
+
+/**
+ * 熔断器状态
+ *
+ * @author zoutongkun
+ */
+public enum CircuitState {
+
+    /**
+     * 正常访问Redis
+     */
+    CLOSED(0),
+
+    /**
+     * 熔断中，跳过Redis
+     */
+    OPEN(1),
+
+    /**
+     * 正在后台探测Redis是否恢复，仍跳过Redis
+     */
+    HALF_OPEN(2);
+
+    /**
+     * 指标值
+     */
+    private final int code;
+
+    CircuitState(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+}
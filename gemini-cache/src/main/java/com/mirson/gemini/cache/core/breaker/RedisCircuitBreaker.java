@@ -0,0 +1,111 @@
+package com.mirson.gemini.cache.core.breaker;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 单个缓存名称的Redis熔断器
+ * 连续多次超出延迟预算或访问失败后熔断，熔断期间跳过Redis，由后台探测恢复
+ *
+ * @author zoutongkun
+ */
+public class RedisCircuitBreaker {
+
+    private final String cacheName;
+
+    /**
+     * 延迟预算（单位：毫秒）
+     */
+    private final long latencyBudget;
+
+    /**
+     * 连续失败多少次后熔断
+     */
+    private final int failureThreshold;
+
+    private final AtomicReference<CircuitState> state = new AtomicReference<>(CircuitState.CLOSED);
+
+    /**
+     * 连续失败次数
+     */
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /**
+     * 最近一次熔断的时间
+     */
+    private volatile long openedAt;
+
+    public RedisCircuitBreaker(String cacheName, long latencyBudget, int failureThreshold) {
+        this.cacheName = cacheName;
+        this.latencyBudget = latencyBudget;
+        this.failureThreshold = Math.max(1, failureThreshold);
+    }
+
+    /**
+     * 是否允许访问Redis
+     *
+     * @return
+     */
+    public boolean allowRequest() {
+        return state.get() == CircuitState.CLOSED;
+    }
+
+    /**
+     * 记录一次成功访问
+     */
+    public void onSuccess() {
+        failures.set(0);
+    }
+
+    /**
+     * 记录一次失败（超时或异常）
+     *
+     * @return 是否因此触发熔断
+     */
+    public boolean onFailure() {
+        if (failures.incrementAndGet() >= failureThreshold
+                && state.compareAndSet(CircuitState.CLOSED, CircuitState.OPEN)) {
+            openedAt = System.currentTimeMillis();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 熔断时间已满，开始探测
+     *
+     * @param openDuration 熔断后多久开始探测（单位：毫秒）
+     * @return 是否进入探测状态
+     */
+    public boolean tryHalfOpen(long openDuration) {
+        return System.currentTimeMillis() - openedAt >= openDuration
+                && state.compareAndSet(CircuitState.OPEN, CircuitState.HALF_OPEN);
+    }
+
+    /**
+     * 探测结果
+     *
+     * @param recovered 是否已恢复
+     */
+    public void onProbe(boolean recovered) {
+        if (recovered) {
+            failures.set(0);
+            state.compareAndSet(CircuitState.HALF_OPEN, CircuitState.CLOSED);
+        } else {
+            openedAt = System.currentTimeMillis();
+            state.compareAndSet(CircuitState.HALF_OPEN, CircuitState.OPEN);
+        }
+    }
+
+    public CircuitState getState() {
+        return state.get();
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    public long getLatencyBudget() {
+        return latencyBudget;
+    }
+}
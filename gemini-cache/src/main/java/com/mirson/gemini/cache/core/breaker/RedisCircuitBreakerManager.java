@@ -0,0 +1,424 @@
+package com.mirson.gemini.cache.core.breaker;
+
+import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.common.NamedThreadFactory;
+import com.mirson.gemini.cache.core.metrics.CacheMetrics;
+import com.mirson.gemini.cache.utils.CacheUtil;
+import org.redisson.api.RFuture;
+import org.redisson.api.RedissonClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Redis熔断管理
+ * 按缓存名称为Redis访问设置延迟预算，超出预算视为失败；连续失败达到阈值后熔断，
+ * 熔断期间跳过Redis读（按未命中处理），由后台线程探测Redis恢复后自动闭合。
+ * 删除不会被熔断跳过，在延迟预算内未确认的删除记录下来，由后台线程补发，熔断器在补发成功后才闭合；
+ * 被跳过或未确认的写入由调用方按待删除记录，避免Redis中保留旧值
+ *
+ * @author zoutongkun
+ */
+public class RedisCircuitBreakerManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisCircuitBreakerManager.class);
+
+    /**
+     * 探测间隔上限（单位：毫秒）
+     */
+    private static final long MAX_PROBE_INTERVAL = 1000;
+
+    /**
+     * 每个缓存最多记录的待补发删除key数，超过后改为补发时清空整个缓存
+     */
+    private static final int MAX_PENDING_KEYS = 10000;
+
+    private final ConcurrentMap<String, RedisCircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    private final RedissonClient redissonClient;
+
+    private final CacheConfigProperties cacheConfigProperties;
+
+    private final CacheMetrics cacheMetrics;
+
+    /**
+     * 按缓存名称单独设置的延迟预算
+     */
+    private final Map<String, Long> latencyBudgets = new HashMap<>();
+
+    /**
+     * 待补发的删除，缓存名称 -> key
+     */
+    private final ConcurrentMap<String, Set<Object>> pendingDeletes = new ConcurrentHashMap<>();
+
+    /**
+     * 待补发清空整个缓存的缓存名称
+     */
+    private final Set<String> pendingClears = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 补发删除成功后的监听器，参数为缓存名称和补发的key（清空整个缓存时为null）
+     */
+    private final List<BiConsumer<String, Collection<?>>> replayListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 后台探测线程
+     */
+    private final ScheduledExecutorService probeExecutor;
+
+    public RedisCircuitBreakerManager(RedissonClient redissonClient,
+                                      CacheConfigProperties cacheConfigProperties,
+                                      CacheMetrics cacheMetrics) {
+        this.redissonClient = redissonClient;
+        this.cacheConfigProperties = cacheConfigProperties;
+        this.cacheMetrics = cacheMetrics;
+        CacheUtil.parseNamedValues(cacheConfigProperties.getBreakerLatencyBudgets())
+                .forEach((cacheName, budget) -> latencyBudgets.put(cacheName, Long.valueOf(budget)));
+        if (cacheConfigProperties.isBreakerEnable()) {
+            this.probeExecutor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("Breaker-Probe"));
+            long interval = Math.max(1, Math.min(MAX_PROBE_INTERVAL, cacheConfigProperties.getBreakerOpenDuration()));
+            this.probeExecutor.scheduleWithFixedDelay(this::probeAll, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.probeExecutor = null;
+        }
+    }
+
+    /**
+     * 在熔断保护下访问Redis
+     * 未开启熔断时同步等待结果；开启后最多等待延迟预算，超时、失败或熔断中返回默认值
+     *
+     * @param cacheName
+     * @param operation 发起Redis异步操作
+     * @param fallback  跳过Redis时的返回值
+     * @param <T>
+     * @return
+     */
+    public <T> T execute(String cacheName, Supplier<? extends Future<T>> operation, T fallback) {
+        if (!cacheConfigProperties.isBreakerEnable()) {
+            return await(operation.get());
+        }
+        RedisCircuitBreaker breaker = getBreaker(cacheName);
+        if (!breaker.allowRequest()) {
+            cacheMetrics.increment(cacheName, CacheMetrics.BREAKER_SHORT_CIRCUITS);
+            return fallback;
+        }
+        try {
+            T result = operation.get().get(breaker.getLatencyBudget(), TimeUnit.MILLISECONDS);
+            breaker.onSuccess();
+            return result;
+        } catch (TimeoutException e) {
+            cacheMetrics.increment(cacheName, CacheMetrics.BREAKER_TIMEOUTS);
+            onFailure(breaker);
+        } catch (ExecutionException e) {
+            logger.warn("Redis access failed, cacheName: {}", cacheName, e.getCause());
+            onFailure(breaker);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return fallback;
+    }
+
+    /**
+     * 在熔断保护下写入Redis
+     * 未开启熔断时同步等待结果；开启后最多等待延迟预算，熔断中不发送
+     *
+     * @param cacheName
+     * @param operation 发起Redis异步写入
+     * @return 是否在延迟预算内确认写入，未确认时写入可能未生效，需调用{@link #deferDelete}记录
+     */
+    public boolean write(String cacheName, Supplier<? extends Future<?>> operation) {
+        if (!cacheConfigProperties.isBreakerEnable()) {
+            await(operation.get());
+            return true;
+        }
+        RedisCircuitBreaker breaker = getBreaker(cacheName);
+        if (!breaker.allowRequest()) {
+            cacheMetrics.increment(cacheName, CacheMetrics.BREAKER_SHORT_CIRCUITS);
+            return false;
+        }
+        try {
+            operation.get().get(breaker.getLatencyBudget(), TimeUnit.MILLISECONDS);
+            breaker.onSuccess();
+            return true;
+        } catch (TimeoutException e) {
+            cacheMetrics.increment(cacheName, CacheMetrics.BREAKER_TIMEOUTS);
+            onFailure(breaker);
+        } catch (ExecutionException e) {
+            logger.warn("Redis write failed, cacheName: {}", cacheName, e.getCause());
+            onFailure(breaker);
+        } catch (RuntimeException e) {
+            logger.warn("Redis write failed, cacheName: {}", cacheName, e);
+            onFailure(breaker);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * 删除Redis中的数据，不受熔断影响
+     * 未开启熔断时同步等待结果；开启后总是发送，最多等待延迟预算，超时或失败计入熔断
+     *
+     * @param cacheName
+     * @param operation 发起Redis异步删除
+     * @return 是否在延迟预算内确认删除，未确认时需调用{@link #deferDelete}或{@link #deferClear}记录
+     */
+    public boolean delete(String cacheName, Supplier<? extends Future<?>> operation) {
+        if (!cacheConfigProperties.isBreakerEnable()) {
+            await(operation.get());
+            return true;
+        }
+        RedisCircuitBreaker breaker = getBreaker(cacheName);
+        try {
+            operation.get().get(breaker.getLatencyBudget(), TimeUnit.MILLISECONDS);
+            if (breaker.allowRequest()) {
+                breaker.onSuccess();
+            }
+            return true;
+        } catch (TimeoutException e) {
+            cacheMetrics.increment(cacheName, CacheMetrics.BREAKER_TIMEOUTS);
+            onFailure(breaker);
+        } catch (ExecutionException e) {
+            logger.warn("Redis delete failed, cacheName: {}", cacheName, e.getCause());
+            onFailure(breaker);
+        } catch (RuntimeException e) {
+            logger.warn("Redis delete failed, cacheName: {}", cacheName, e);
+            onFailure(breaker);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * 记录未确认的删除，由后台线程补发
+     * 超时的删除可能已经生效，补发只会多删除一次
+     *
+     * @param cacheName
+     * @param keys
+     */
+    public void deferDelete(String cacheName, Collection<?> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        cacheMetrics.add(cacheName, CacheMetrics.BREAKER_DEFERRED_DELETES, keys.size());
+        if (!pendingClears.contains(cacheName) && addPending(cacheName, keys) > MAX_PENDING_KEYS) {
+            logger.warn("too many deferred Redis deletes, the whole cache will be cleared, cacheName: {}", cacheName);
+            deferClear(cacheName);
+        }
+    }
+
+    /**
+     * 记录未确认的清空整个缓存，由后台线程补发
+     *
+     * @param cacheName
+     */
+    public void deferClear(String cacheName) {
+        cacheMetrics.increment(cacheName, CacheMetrics.BREAKER_DEFERRED_DELETES);
+        pendingClears.add(cacheName);
+        pendingDeletes.remove(cacheName);
+    }
+
+    /**
+     * 添加补发删除成功后的监听器（如广播失效消息）
+     *
+     * @param listener 参数为缓存名称和补发的key，清空整个缓存时key为null
+     */
+    public void addReplayListener(BiConsumer<String, Collection<?>> listener) {
+        replayListeners.add(listener);
+    }
+
+    /**
+     * 当前是否允许访问Redis
+     *
+     * @param cacheName
+     * @return
+     */
+    public boolean allowRequest(String cacheName) {
+        if (!cacheConfigProperties.isBreakerEnable()) {
+            return true;
+        }
+        if (getBreaker(cacheName).allowRequest()) {
+            return true;
+        }
+        cacheMetrics.increment(cacheName, CacheMetrics.BREAKER_SHORT_CIRCUITS);
+        return false;
+    }
+
+    /**
+     * 获取熔断器状态
+     *
+     * @param cacheName
+     * @return
+     */
+    public CircuitState getState(String cacheName) {
+        RedisCircuitBreaker breaker = breakers.get(cacheName);
+        return breaker == null ? CircuitState.CLOSED : breaker.getState();
+    }
+
+    /**
+     * 获取缓存的延迟预算
+     *
+     * @param cacheName
+     * @return
+     */
+    public long getLatencyBudget(String cacheName) {
+        Long budget = latencyBudgets.get(cacheName);
+        return budget != null ? budget : cacheConfigProperties.getBreakerLatencyBudget();
+    }
+
+    /**
+     * 停止后台探测
+     */
+    public void shutdown() {
+        if (probeExecutor != null) {
+            probeExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 同步等待结果，异常原样抛出
+     *
+     * @param future
+     * @param <T>
+     * @return
+     */
+    private <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private RedisCircuitBreaker getBreaker(String cacheName) {
+        RedisCircuitBreaker breaker = breakers.get(cacheName);
+        if (breaker != null) {
+            return breaker;
+        }
+        return breakers.computeIfAbsent(cacheName, name -> {
+            RedisCircuitBreaker created = new RedisCircuitBreaker(name, getLatencyBudget(name),
+                    cacheConfigProperties.getBreakerFailureThreshold());
+            cacheMetrics.gauge(name, CacheMetrics.BREAKER_STATE, () -> created.getState().getCode());
+            return created;
+        });
+    }
+
+    private void onFailure(RedisCircuitBreaker breaker) {
+        if (breaker.onFailure()) {
+            cacheMetrics.increment(breaker.getCacheName(), CacheMetrics.BREAKER_OPENED);
+            logger.warn("Redis circuit breaker opened, cacheName: {}", breaker.getCacheName());
+        }
+    }
+
+    /**
+     * 探测熔断中的缓存，Redis在延迟预算内正常响应且待补发的删除全部成功后闭合；
+     * 未熔断的缓存直接补发
+     */
+    private void probeAll() {
+        for (RedisCircuitBreaker breaker : breakers.values()) {
+            if (breaker.allowRequest()) {
+                replayDeletes(breaker);
+                continue;
+            }
+            if (!breaker.tryHalfOpen(cacheConfigProperties.getBreakerOpenDuration())) {
+                continue;
+            }
+            boolean recovered = false;
+            try {
+                RFuture<Boolean> future = redissonClient.getMapCache(breaker.getCacheName()).isExistsAsync();
+                recovered = future.awaitUninterruptibly(breaker.getLatencyBudget()) && future.isSuccess();
+            } catch (Exception e) {
+                logger.warn("Redis probe failed, cacheName: {}", breaker.getCacheName(), e);
+            }
+            // 先补发删除再闭合，闭合后不会读到熔断期间应删除的数据
+            recovered = recovered && replayDeletes(breaker);
+            breaker.onProbe(recovered);
+            if (recovered) {
+                logger.info("Redis circuit breaker closed, cacheName: {}", breaker.getCacheName());
+            }
+        }
+    }
+
+    /**
+     * 补发缓存的待删除数据，失败时放回，下次再补发
+     *
+     * @param breaker
+     * @return 是否已没有待补发的删除
+     */
+    private boolean replayDeletes(RedisCircuitBreaker breaker) {
+        String cacheName = breaker.getCacheName();
+        boolean clear = pendingClears.remove(cacheName);
+        Set<Object> keys = clear ? null : pendingDeletes.remove(cacheName);
+        if (!clear && keys == null) {
+            return true;
+        }
+        try {
+            RFuture<?> future = clear ? redissonClient.getMapCache(cacheName).deleteAsync()
+                    : redissonClient.getMapCache(cacheName).fastRemoveAsync(keys.toArray());
+            if (future.awaitUninterruptibly(breaker.getLatencyBudget()) && future.isSuccess()) {
+                logger.info("deferred Redis deletes replayed, cacheName: {}, keys: {}", cacheName,
+                        clear ? "all" : String.valueOf(keys.size()));
+                fireReplayed(cacheName, keys);
+                return true;
+            }
+        } catch (Exception e) {
+            logger.warn("Redis delete replay failed, cacheName: {}", cacheName, e);
+        }
+        if (clear) {
+            pendingClears.add(cacheName);
+        } else {
+            addPending(cacheName, keys);
+        }
+        return false;
+    }
+
+    private void fireReplayed(String cacheName, Collection<?> keys) {
+        for (BiConsumer<String, Collection<?>> listener : replayListeners) {
+            try {
+                listener.accept(cacheName, keys);
+            } catch (Exception e) {
+                logger.warn("replay listener failed, cacheName: {}", cacheName, e);
+            }
+        }
+    }
+
+    /**
+     * 添加待补发删除的key，与补发时的取出互斥，不会添加到已取出的集合中
+     *
+     * @param cacheName
+     * @param keys
+     * @return 添加后的key数量
+     */
+    private int addPending(String cacheName, Collection<?> keys) {
+        Set<Object> pending = pendingDeletes.compute(cacheName, (name, current) -> {
+            Set<Object> merged = current != null ? current : new HashSet<>();
+            merged.addAll(keys);
+            return merged;
+        });
+        return pending.size();
+    }
+}
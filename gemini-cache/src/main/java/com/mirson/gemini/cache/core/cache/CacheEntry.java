@@ -0,0 +1,191 @@
+package com.mirson.gemini.cache.core.cache;
+
+import com.mirson.gemini.cache.utils.CacheUtil;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存条目
+ * 在两级缓存中保存的都是该对象，除缓存数据外还记录写入时间与生命周期，用于提前刷新等处理；
+ * 更新写入的条目带有全局单调递增的版本号，本地缓存据此拒绝比已收到的变更更旧的数据
+ *
+ * @author zoutongkun
+ */
+public final class CacheEntry implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 缓存数据
+     */
+    private final Object value;
+
+    /**
+     * 写入时间（单位：毫秒），0代表未知（旧格式数据）
+     */
+    private final long writeTime;
+
+    /**
+     * 生命周期（单位：毫秒），0代表不限制
+     */
+    private final long ttl;
+
+    /**
+     * 加载耗时（单位：毫秒），用于概率提前刷新，0代表未知
+     */
+    private final long loadCost;
+
+    /**
+     * 版本号，更新写入时分配，0代表回源写入或旧格式数据（视为最旧）
+     */
+    private final long version;
+
+    public CacheEntry(Object value, long writeTime, long ttl, long loadCost) {
+        this(value, writeTime, ttl, loadCost, 0);
+    }
+
+    public CacheEntry(Object value, long writeTime, long ttl, long loadCost, long version) {
+        this.value = value;
+        this.writeTime = writeTime;
+        this.ttl = ttl;
+        this.loadCost = loadCost;
+        this.version = version;
+    }
+
+    /**
+     * 包装缓存数据
+     *
+     * @param value
+     * @param ttl       单位：秒
+     * @param ttlJitter 生命周期随机延长的比例
+     * @return 已经是缓存条目时原样返回
+     */
+    public static CacheEntry wrap(Object value, long ttl, double ttlJitter) {
+        if (value instanceof CacheEntry) {
+            return (CacheEntry) value;
+        }
+        return new CacheEntry(value, System.currentTimeMillis(),
+                CacheUtil.jitter(TimeUnit.SECONDS.toMillis(Math.max(0, ttl)), ttlJitter), 0);
+    }
+
+    /**
+     * 转换缓存中保存的对象
+     *
+     * @param stored
+     * @return 旧格式的数据包装为写入时间未知的条目
+     */
+    public static CacheEntry from(Object stored) {
+        if (stored == null || stored instanceof CacheEntry) {
+            return (CacheEntry) stored;
+        }
+        return new CacheEntry(stored, 0, 0, 0);
+    }
+
+    /**
+     * 获取条目中的数据
+     *
+     * @param entry
+     * @return
+     */
+    public static Object valueOf(CacheEntry entry) {
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * 批量取出缓存数据
+     *
+     * @param entries key -> 缓存条目
+     * @return key -> 缓存数据
+     */
+    public static Map<Object, Object> valuesOf(Map<Object, CacheEntry> entries) {
+        Map<Object, Object> values = new HashMap<>(entries.size() * 2);
+        entries.forEach((key, entry) -> values.put(key, entry.value));
+        return values;
+    }
+
+    /**
+     * 是否需要提前刷新
+     *
+     * @param refreshFactor       达到生命周期的该比例后刷新
+     * @param refreshAfterMillis  没有生命周期的数据，写入该时间后刷新，0代表不刷新
+     * @param now
+     * @return
+     */
+    public boolean isRefreshDue(double refreshFactor, long refreshAfterMillis, long now) {
+        long age = now - writeTime;
+        if (ttl > 0) {
+            return age >= (long) (ttl * refreshFactor);
+        }
+        return refreshAfterMillis > 0 && age >= refreshAfterMillis;
+    }
+
+    /**
+     * 剩余生命周期
+     * 写入Redis时以条目的生命周期作为过期时间，因此与Redis中该条目的剩余时间一致（不考虑节点间的时钟偏差）
+     *
+     * @param now
+     * @return 单位：毫秒，不限制或写入时间未知时返回-1
+     */
+    public long remainingTtl(long now) {
+        if (ttl <= 0 || writeTime <= 0) {
+            return -1;
+        }
+        return Math.max(0, Math.min(ttl, writeTime + ttl - now));
+    }
+
+    /**
+     * 是否需要概率提前刷新（XFetch）
+     * 越接近过期、加载耗时越长，越可能提前刷新，使同一批写入的缓存不会在同一时刻集中过期
+     *
+     * @param beta 提前程度，越大越提前
+     * @param now
+     * @return
+     */
+    public boolean isEarlyRefreshDue(double beta, long now) {
+        if (ttl <= 0 || loadCost <= 0 || writeTime <= 0) {
+            return false;
+        }
+        double random = 1.0 - ThreadLocalRandom.current().nextDouble();
+        return now - loadCost * beta * Math.log(random) >= writeTime + ttl;
+    }
+
+    /**
+     * 复制条目并设置版本号
+     *
+     * @param version
+     * @return
+     */
+    public CacheEntry withVersion(long version) {
+        return version == this.version ? this : new CacheEntry(value, writeTime, ttl, loadCost, version);
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public long getWriteTime() {
+        return writeTime;
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public long getLoadCost() {
+        return loadCost;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheEntry{value=" + value + ", writeTime=" + writeTime + ", ttl=" + ttl + ", loadCost=" + loadCost
+                + ", version=" + version + "}";
+    }
+}
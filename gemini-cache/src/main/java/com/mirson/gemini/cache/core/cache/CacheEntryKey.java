@@ -0,0 +1,55 @@
+package com.mirson.gemini.cache.core.cache;
+
+import java.util.Objects;
+
+/**
+ * 缓存条目标识（缓存名称 + 缓存KEY）
+ *
+ * @author zoutongkun
+ */
+public final class CacheEntryKey {
+
+    private final String cacheName;
+
+    private final Object cacheKey;
+
+    private final int hash;
+
+    public CacheEntryKey(String cacheName, Object cacheKey) {
+        this.cacheName = cacheName;
+        this.cacheKey = cacheKey;
+        this.hash = 31 * Objects.hashCode(cacheName) + Objects.hashCode(cacheKey);
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    public Object getCacheKey() {
+        return cacheKey;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CacheEntryKey)) {
+            return false;
+        }
+        CacheEntryKey that = (CacheEntryKey) o;
+        return hash == that.hash
+                && Objects.equals(cacheName, that.cacheName)
+                && Objects.equals(cacheKey, that.cacheKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return cacheName + ":" + cacheKey;
+    }
+}
@@ -1,5 +1,10 @@
 package com.mirson.gemini.cache.core.cache;
 
+import com.mirson.gemini.cache.core.loader.CacheLoader;
+
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * 缓存服务接口
  * 分为一级/本地换存和二级缓存
@@ -12,16 +17,43 @@ public interface CacheService {
      *
      * @param cacheName
      * @param cacheKey
-     * @return
+     * @return 未命中返回null，缓存的空值返回{@link NullValue#INSTANCE}
      */
     Object get(String cacheName, Object cacheKey);
 
+    /**
+     * 从缓存中获取缓存条目（包含写入时间、生命周期等信息）
+     *
+     * @param cacheName
+     * @param cacheKey
+     * @return 未命中返回null
+     */
+    CacheEntry getEntry(String cacheName, Object cacheKey);
+
+    /**
+     * 批量获取缓存数据
+     *
+     * @param cacheName
+     * @param cacheKeys
+     * @return 命中的数据（key -> 数据），缓存的空值为{@link NullValue#INSTANCE}
+     */
+    Map<Object, Object> getAll(String cacheName, Collection<?> cacheKeys);
+
+    /**
+     * 批量获取缓存条目
+     *
+     * @param cacheName
+     * @param cacheKeys
+     * @return 命中的缓存条目（key -> 条目）
+     */
+    Map<Object, CacheEntry> getAllEntries(String cacheName, Collection<?> cacheKeys);
+
     /**
      * 保存数据到缓存
      *
      * @param cacheNames
      * @param cacheKey
-     * @param cacheValue
+     * @param cacheValue 缓存数据，也可以是已构建好的{@link CacheEntry}（此时以条目中的生命周期为准）
      * @param ttl
      * @return
      */
@@ -44,6 +76,25 @@ public interface CacheService {
      */
     boolean delete(String[] cacheNames);
 
+    /**
+     * 批量保存数据到缓存（按批次管道发送）
+     *
+     * @param cacheNames
+     * @param cacheValues key -> 缓存数据（也可以是已构建好的{@link CacheEntry}）
+     * @param ttl
+     * @return
+     */
+    boolean saveAll(String[] cacheNames, Map<?, ?> cacheValues, long ttl);
+
+    /**
+     * 批量清理缓存（按批次管道发送）
+     *
+     * @param cacheNames
+     * @param cacheKeys
+     * @return
+     */
+    boolean deleteAll(String[] cacheNames, Collection<?> cacheKeys);
+
     /**
      * 异步保存数据到缓存
      *
@@ -55,6 +106,39 @@ public interface CacheService {
      */
     boolean saveByAsync(String[] cacheNames, Object cacheKey, Object cacheValue, long ttl);
 
+    /**
+     * 回源加载后写入缓存
+     * 与{@link #save}不同，Redis中已有的数据不覆盖，本地缓存直接写入，不广播其他节点
+     *
+     * @param cacheNames
+     * @param cacheKey
+     * @param cacheValue 缓存数据，也可以是已构建好的{@link CacheEntry}
+     * @param ttl
+     * @return
+     */
+    boolean fill(String[] cacheNames, Object cacheKey, Object cacheValue, long ttl);
+
+    /**
+     * 批量回源加载后写入缓存（按批次管道发送），Redis中已有的数据不覆盖，不广播其他节点
+     *
+     * @param cacheNames
+     * @param cacheValues key -> 缓存数据（也可以是已构建好的{@link CacheEntry}）
+     * @param ttl
+     * @return
+     */
+    boolean fillAll(String[] cacheNames, Map<?, ?> cacheValues, long ttl);
+
+    /**
+     * 异步回源加载后写入缓存
+     *
+     * @param cacheNames
+     * @param cacheKey
+     * @param cacheValue
+     * @param ttl
+     * @return
+     */
+    boolean fillByAsync(String[] cacheNames, Object cacheKey, Object cacheValue, long ttl);
+
     /**
      * 异步清理缓存
      *
@@ -72,4 +156,37 @@ public interface CacheService {
      */
     boolean deleteByAsync(String[] cacheNames);
 
+    /**
+     * 基于Redis租约的跨节点加载
+     * 缓存未命中时，只有拿到租约的节点调用loader（由loader负责写回缓存），
+     * 其他节点在有限时间内等待缓存写回，超时后再自行加载
+     *
+     * @param cacheName
+     * @param cacheKey
+     * @param leaseMillis 租约有效时间（单位：毫秒）
+     * @param waitMillis  未拿到租约时的最长等待时间（单位：毫秒）
+     * @param loader
+     * @return
+     * @throws Throwable
+     */
+    Object loadWithLease(String cacheName, Object cacheKey, long leaseMillis, long waitMillis,
+                         CacheLoader loader) throws Throwable;
+
+    /**
+     * 为缓存开启stale-if-error，之后因过期被移除的本地缓存会转存到影子区
+     *
+     * @param cacheName
+     */
+    void enableStale(String cacheName);
+
+    /**
+     * 获取已过期的缓存条目，用于原方法调用失败或超时时降级返回
+     *
+     * @param cacheName
+     * @param cacheKey
+     * @param maxStaleMillis 过期后最多可使用多久（单位：毫秒）
+     * @return 没有可用的过期数据返回null
+     */
+    CacheEntry getStale(String cacheName, Object cacheKey, long maxStaleMillis);
+
 }
@@ -0,0 +1,35 @@
+package com.mirson.gemini.cache.core.cache;
+
+import com.mirson.gemini.cache.common.CacheConstants;
+import com.mirson.gemini.cache.core.breaker.RedisCircuitBreakerManager;
+import org.redisson.api.RAtomicLong;
+import org.redisson.api.RedissonClient;
+
+/**
+ * 缓存条目版本号
+ * 使用Redis中的全局计数器分配，所有节点共用，保证同一个key的更新版本号单调递增
+ *
+ * @author zoutongkun
+ */
+public class CacheVersions {
+
+    private final RAtomicLong counter;
+
+    private final RedisCircuitBreakerManager circuitBreakerManager;
+
+    public CacheVersions(RedissonClient redissonClient, RedisCircuitBreakerManager circuitBreakerManager) {
+        this.counter = redissonClient.getAtomicLong(CacheConstants.VERSION_KEY);
+        this.circuitBreakerManager = circuitBreakerManager;
+    }
+
+    /**
+     * 分配新的版本号
+     *
+     * @param cacheNames 按第一个缓存名称的熔断状态访问Redis
+     * @return 熔断中或访问失败时返回0（不带版本号）
+     */
+    public long next(String[] cacheNames) {
+        Long version = circuitBreakerManager.execute(cacheNames[0], counter::incrementAndGetAsync, 0L);
+        return version == null ? 0 : version;
+    }
+}
@@ -0,0 +1,183 @@
+package com.mirson.gemini.cache.core.cache;
+
+import com.github.benmanes.caffeine.cache.Weigher;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 本地缓存条目的内存估算（单位：字节）
+ * 按对象图估算堆内存占用：字符串、数组、集合直接计算，其他对象通过反射遍历字段（字段列表按类缓存）；
+ * 每次最多访问有限数量的对象，集合只抽样部分元素后按数量推算，只用于按内存淘汰，不追求精确
+ *
+ * @author zoutongkun
+ */
+final class EntryWeigher implements Weigher<Object, Object> {
+
+    static final EntryWeigher INSTANCE = new EntryWeigher();
+
+    private static final int OBJECT_HEADER = 16;
+
+    private static final int REFERENCE = 8;
+
+    /**
+     * Caffeine中每个条目节点的额外开销
+     */
+    private static final int NODE_OVERHEAD = 64;
+
+    /**
+     * 单次估算最多访问的对象数
+     */
+    private static final int MAX_VISITS = 1024;
+
+    /**
+     * 最大遍历深度
+     */
+    private static final int MAX_DEPTH = 8;
+
+    /**
+     * 集合的抽样元素数
+     */
+    private static final int SAMPLE_SIZE = 32;
+
+    /**
+     * 类的实例字段（含父类），无法访问时为空数组（只计算浅大小）
+     */
+    private static final ClassValue<Field[]> FIELDS = new ClassValue<Field[]>() {
+        @Override
+        protected Field[] computeValue(Class<?> type) {
+            return instanceFields(type);
+        }
+    };
+
+    private EntryWeigher() {
+    }
+
+    @Override
+    public int weigh(Object key, Object value) {
+        int[] visits = {MAX_VISITS};
+        long size = NODE_OVERHEAD + estimate(key, 0, visits) + estimate(value, 0, visits);
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    private static long estimate(Object object, int depth, int[] visits) {
+        if (object == null || object instanceof Enum || object instanceof Class) {
+            return 0;
+        }
+        if (--visits[0] < 0) {
+            return 0;
+        }
+        if (object instanceof String) {
+            return 40 + 2L * ((String) object).length();
+        }
+        if (object instanceof Number || object instanceof Boolean || object instanceof Character) {
+            return object instanceof Long || object instanceof Double ? 24 : 16;
+        }
+        if (object instanceof CacheEntry) {
+            return OBJECT_HEADER + 32 + estimate(((CacheEntry) object).getValue(), depth + 1, visits);
+        }
+        Class<?> type = object.getClass();
+        if (type.isArray()) {
+            return estimateArray(object, type.getComponentType(), depth, visits);
+        }
+        if (depth >= MAX_DEPTH) {
+            return OBJECT_HEADER;
+        }
+        if (object instanceof Collection) {
+            Collection<?> collection = (Collection<?>) object;
+            return 48 + collection.size() * (long) (REFERENCE + 24)
+                    + sample(collection.iterator(), collection.size(), depth, visits);
+        }
+        if (object instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) object;
+            return 64 + map.size() * (long) (REFERENCE + 32)
+                    + sample(map.keySet().iterator(), map.size(), depth, visits)
+                    + sample(map.values().iterator(), map.size(), depth, visits);
+        }
+        long size = OBJECT_HEADER;
+        for (Field field : FIELDS.get(type)) {
+            Class<?> fieldType = field.getType();
+            if (fieldType.isPrimitive()) {
+                size += primitiveSize(fieldType);
+                continue;
+            }
+            size += REFERENCE;
+            try {
+                size += estimate(field.get(object), depth + 1, visits);
+            } catch (IllegalAccessException e) {
+                // 无法访问时只计算引用
+            }
+        }
+        return size;
+    }
+
+    private static long estimateArray(Object array, Class<?> componentType, int depth, int[] visits) {
+        int length = Array.getLength(array);
+        if (componentType.isPrimitive()) {
+            return OBJECT_HEADER + (long) length * primitiveSize(componentType);
+        }
+        long size = OBJECT_HEADER + (long) length * REFERENCE;
+        if (length == 0 || depth >= MAX_DEPTH) {
+            return size;
+        }
+        Object[] elements = (Object[]) array;
+        int sampled = Math.min(length, SAMPLE_SIZE);
+        long sampledSize = 0;
+        for (int i = 0; i < sampled; i++) {
+            sampledSize += estimate(elements[i], depth + 1, visits);
+        }
+        return size + sampledSize * length / sampled;
+    }
+
+    /**
+     * 抽样估算集合元素，按元素数量推算
+     */
+    private static long sample(Iterator<?> iterator, int size, int depth, int[] visits) {
+        long sampledSize = 0;
+        int sampled = 0;
+        while (sampled < SAMPLE_SIZE && iterator.hasNext()) {
+            sampledSize += estimate(iterator.next(), depth + 1, visits);
+            sampled++;
+        }
+        return sampled == 0 ? 0 : sampledSize * size / sampled;
+    }
+
+    private static int primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static Field[] instanceFields(Class<?> type) {
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> current = type; current != null && current != Object.class;
+             current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                try {
+                    field.setAccessible(true);
+                } catch (RuntimeException e) {
+                    // JDK内部类等无法访问的字段，只计算浅大小
+                    return new Field[0];
+                }
+                fields.add(field);
+            }
+        }
+        return fields.toArray(new Field[0]);
+    }
+}
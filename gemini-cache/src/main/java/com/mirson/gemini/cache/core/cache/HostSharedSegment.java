@@ -0,0 +1,598 @@
+package com.mirson.gemini.cache.core.cache;
+
+import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.core.metrics.CacheMetrics;
+import com.mirson.gemini.cache.utils.XxHash64;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.handler.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * 主机共享缓存段
+ * 同一台主机上的多个JVM通过内存映射文件（如/dev/shm下的文件）共享一份缓存数据，本地缓存未命中时先读共享段再读Redis。
+ * 文件由头部、缓存名称代数表、最近处理的消息表、开放寻址索引和环形数据区组成：
+ * 写入在进程内同步并持有文件锁，数据追加写入环形数据区后更新索引；
+ * 读取不加锁，按索引找到记录后复制出来，通过记录中的位置、CRC校验与key比对判断是否有效，
+ * 与写入冲突或已被覆盖时视为未命中。
+ * 清空整个缓存时只增加该缓存名称的代数，旧代数的记录随之失效
+ *
+ * @author zoutongkun
+ */
+public class HostSharedSegment {
+
+    private static final Logger logger = LoggerFactory.getLogger(HostSharedSegment.class);
+
+    private static final long MAGIC = 0x47454d494e495348L;
+
+    private static final int MAGIC_OFFSET = 0;
+
+    private static final int SEGMENT_ID_OFFSET = 8;
+
+    private static final int SLOT_COUNT_OFFSET = 16;
+
+    private static final int DATA_CAPACITY_OFFSET = 24;
+
+    private static final int WRITE_POSITION_OFFSET = 32;
+
+    private static final int RECENT_CURSOR_OFFSET = 40;
+
+    /**
+     * 写入时持有的文件锁位置
+     */
+    private static final int WRITE_LOCK_OFFSET = 48;
+
+    /**
+     * 各JVM映射期间持有的共享文件锁位置，用于判断是否只有当前JVM在使用
+     */
+    private static final int ALIVE_LOCK_OFFSET = 49;
+
+    private static final int HEADER_SIZE = 64;
+
+    /**
+     * 缓存名称代数表，每项为[名称哈希, 代数]
+     */
+    private static final int NAMESPACE_SLOTS = 256;
+
+    private static final int NAMESPACE_OFFSET = HEADER_SIZE;
+
+    /**
+     * 最近处理的消息ID，用于同一条消息在一台主机上只处理一次
+     */
+    private static final int RECENT_IDS = 1024;
+
+    private static final int RECENT_OFFSET = NAMESPACE_OFFSET + NAMESPACE_SLOTS * 16;
+
+    /**
+     * 索引，每项为[key哈希, 记录位置]，位置为-1代表已删除
+     */
+    private static final int INDEX_OFFSET = RECENT_OFFSET + RECENT_IDS * 8;
+
+    private static final int SLOT_SIZE = 16;
+
+    /**
+     * 开放寻址的最大探测次数，超过时覆盖第一个位置
+     */
+    private static final int MAX_PROBES = 8;
+
+    /**
+     * 记录头：位置(8)、过期时间(8)、代数(8)、key长度(4)、value长度(4)、CRC(4)、填充(4)
+     */
+    private static final int RECORD_HEADER = 40;
+
+    private static final int RECORD_EXPIRE_AT = 8;
+
+    private static final int RECORD_GENERATION = 16;
+
+    private static final int RECORD_KEY_LENGTH = 24;
+
+    private static final int RECORD_VALUE_LENGTH = 28;
+
+    private static final int RECORD_CRC = 32;
+
+    private static final long SEED = 0x5bd1e995L;
+
+    private final Codec codec;
+
+    private final CacheMetrics cacheMetrics;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    private final FileLock aliveLock;
+
+    private final int slotCount;
+
+    private final long dataCapacity;
+
+    private final int dataOffset;
+
+    private final long segmentId;
+
+    public HostSharedSegment(CacheConfigProperties cacheConfigProperties, CacheMetrics cacheMetrics, Codec codec) {
+        this.codec = codec;
+        this.cacheMetrics = cacheMetrics;
+        long capacity = Math.max(0, cacheConfigProperties.getSharedCapacity()) * 1024 * 1024;
+        int slots = Integer.highestOneBit(Math.max(1024, cacheConfigProperties.getSharedSlots()));
+        // 单个映射不能超过2G
+        capacity = Math.min(capacity, Integer.MAX_VALUE - INDEX_OFFSET - (long) slots * SLOT_SIZE);
+        FileChannel openedChannel = null;
+        MappedByteBuffer mapped = null;
+        FileLock alive = null;
+        if (capacity > 0) {
+            String path = cacheConfigProperties.getSharedPath();
+            try {
+                openedChannel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+                mapped = map(openedChannel, slots, capacity);
+                alive = openedChannel.lock(ALIVE_LOCK_OFFSET, 1, true);
+                logger.info("map host shared cache segment {}, segmentId: {}", path,
+                        mapped.getLong(SEGMENT_ID_OFFSET));
+            } catch (IOException | RuntimeException e) {
+                logger.warn("map host shared cache segment " + path + " failed, disabled. " + e.getMessage());
+                closeQuietly(openedChannel);
+                openedChannel = null;
+                mapped = null;
+            }
+        }
+        this.channel = openedChannel;
+        this.buffer = mapped;
+        this.aliveLock = alive;
+        this.slotCount = slots;
+        this.dataCapacity = capacity;
+        this.dataOffset = INDEX_OFFSET + slots * SLOT_SIZE;
+        this.segmentId = mapped == null ? 0 : mapped.getLong(SEGMENT_ID_OFFSET);
+    }
+
+    /**
+     * 是否开启共享段
+     *
+     * @return
+     */
+    public boolean isEnabled() {
+        return buffer != null;
+    }
+
+    /**
+     * 共享段标识，映射同一文件的JVM相同，未开启时为0
+     *
+     * @return
+     */
+    public long getSegmentId() {
+        return segmentId;
+    }
+
+    /**
+     * 是否为映射同一共享段的JVM（同一主机）
+     *
+     * @param otherSegmentId
+     * @return
+     */
+    public boolean isSameHost(long otherSegmentId) {
+        return segmentId != 0 && segmentId == otherSegmentId;
+    }
+
+    /**
+     * 读取条目（不加锁）
+     *
+     * @param cacheName
+     * @param key
+     * @return 不存在、已过期、已被覆盖或读取时与写入冲突时返回null
+     */
+    public CacheEntry get(String cacheName, Object key) {
+        byte[] keyBytes = keyBytes(cacheName, key);
+        if (keyBytes == null) {
+            return null;
+        }
+        long position = findPosition(hash(keyBytes));
+        byte[] record = position < 0 ? null : readRecord(position);
+        if (record == null) {
+            return null;
+        }
+        ByteBuffer view = ByteBuffer.wrap(record);
+        int keyLength = view.getInt(RECORD_KEY_LENGTH);
+        if (view.getLong(RECORD_EXPIRE_AT) <= System.currentTimeMillis()
+                || view.getLong(RECORD_GENERATION) != generation(cacheName)
+                || !matches(record, keyBytes, keyLength)) {
+            return null;
+        }
+        ByteBuf buf = Unpooled.wrappedBuffer(record, RECORD_HEADER + keyLength, view.getInt(RECORD_VALUE_LENGTH));
+        try {
+            CacheEntry entry = CacheEntry.from(codec.getValueDecoder().decode(buf, new State(false)));
+            cacheMetrics.increment(cacheName, CacheMetrics.SHARED_HITS);
+            return entry;
+        } catch (Exception e) {
+            logger.warn("decode host shared cache entry failed, cacheName: " + cacheName + ", " + e.getMessage());
+            return null;
+        } finally {
+            buf.release();
+        }
+    }
+
+    /**
+     * 保存条目
+     *
+     * @param cacheName
+     * @param key
+     * @param entry
+     * @param expireAt 过期时间（单位：毫秒）
+     * @return
+     */
+    public boolean put(String cacheName, Object key, CacheEntry entry, long expireAt) {
+        byte[] keyBytes = keyBytes(cacheName, key);
+        byte[] valueBytes;
+        try {
+            valueBytes = keyBytes == null ? null : codec.getValueEncoder().encode(entry);
+        } catch (Exception e) {
+            logger.warn("encode host shared cache entry failed, cacheName: " + cacheName + ", " + e.getMessage());
+            return false;
+        }
+        // 单条记录不超过数据区的1/4，避免一次写入淘汰过多数据
+        if (valueBytes == null || RECORD_HEADER + keyBytes.length + (long) valueBytes.length > dataCapacity / 4) {
+            return false;
+        }
+        byte[] record = new byte[RECORD_HEADER + keyBytes.length + valueBytes.length];
+        ByteBuffer view = ByteBuffer.wrap(record);
+        view.putLong(RECORD_EXPIRE_AT, expireAt);
+        view.putInt(RECORD_KEY_LENGTH, keyBytes.length);
+        view.putInt(RECORD_VALUE_LENGTH, valueBytes.length);
+        System.arraycopy(keyBytes, 0, record, RECORD_HEADER, keyBytes.length);
+        System.arraycopy(valueBytes, 0, record, RECORD_HEADER + keyBytes.length, valueBytes.length);
+        long hash = hash(keyBytes);
+        return locked(() -> {
+            long head = buffer.getLong(WRITE_POSITION_OFFSET);
+            int offset = (int) (head % dataCapacity);
+            if (offset + record.length > dataCapacity) {
+                // 记录不跨越数据区末尾，从下一圈的起点写入
+                head += dataCapacity - offset;
+                offset = 0;
+            }
+            // 先推进写入位置再写数据，读取方复制后按写入位置判断记录是否可能被覆盖
+            long next = (head + record.length + 7) & ~7L;
+            buffer.putLong(WRITE_POSITION_OFFSET, next);
+            view.putLong(0, head);
+            view.putLong(RECORD_GENERATION, generation(cacheName));
+            view.putInt(RECORD_CRC, crc(record));
+            ByteBuffer target = buffer.duplicate();
+            target.position(dataOffset + offset);
+            target.put(record);
+            insertSlot(hash, head, next);
+            return true;
+        });
+    }
+
+    /**
+     * 删除条目
+     *
+     * @param cacheName
+     * @param key
+     */
+    public void remove(String cacheName, Object key) {
+        byte[] keyBytes = keyBytes(cacheName, key);
+        if (keyBytes == null) {
+            return;
+        }
+        long hash = hash(keyBytes);
+        locked(() -> {
+            removeSlot(hash);
+            return true;
+        });
+    }
+
+    /**
+     * 删除缓存下的全部条目
+     *
+     * @param cacheName
+     */
+    public void removeAll(String cacheName) {
+        locked(() -> {
+            nextGeneration(cacheName);
+            return true;
+        });
+    }
+
+    /**
+     * 处理其他主机的缓存变更消息，同一条消息在一台主机上只处理一次
+     *
+     * @param messageId
+     * @param cacheNames
+     * @param keys       为null时清空整个缓存
+     * @return 已由本主机的其他JVM处理时返回false
+     */
+    public boolean invalidateOnce(long messageId, String[] cacheNames, Collection<?> keys) {
+        return locked(() -> {
+            if (messageId != 0) {
+                for (int i = 0; i < RECENT_IDS; i++) {
+                    if (buffer.getLong(RECENT_OFFSET + i * 8) == messageId) {
+                        return false;
+                    }
+                }
+                int cursor = (int) buffer.getLong(RECENT_CURSOR_OFFSET);
+                buffer.putLong(RECENT_OFFSET + cursor * 8, messageId);
+                buffer.putLong(RECENT_CURSOR_OFFSET, (cursor + 1) % RECENT_IDS);
+            }
+            for (String cacheName : cacheNames) {
+                if (keys == null) {
+                    nextGeneration(cacheName);
+                    continue;
+                }
+                for (Object key : keys) {
+                    byte[] keyBytes = key == null ? null : keyBytes(cacheName, key);
+                    if (keyBytes != null) {
+                        removeSlot(hash(keyBytes));
+                    }
+                }
+            }
+            return true;
+        });
+    }
+
+    public void shutdown() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            aliveLock.release();
+        } catch (IOException e) {
+            logger.warn("release host shared cache segment failed. " + e.getMessage());
+        }
+        closeQuietly(channel);
+    }
+
+    /**
+     * 映射文件，只有当前JVM使用时重新初始化（数据可能在没有JVM运行期间已过时）
+     */
+    private static MappedByteBuffer map(FileChannel channel, int slots, long capacity) throws IOException {
+        long size = INDEX_OFFSET + (long) slots * SLOT_SIZE + capacity;
+        FileLock writeLock = channel.lock(WRITE_LOCK_OFFSET, 1, false);
+        try {
+            FileLock probe = channel.tryLock(ALIVE_LOCK_OFFSET, 1, false);
+            boolean alone = probe != null;
+            if (probe != null) {
+                probe.release();
+            }
+            if (alone && channel.size() > size) {
+                channel.truncate(size);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (alone) {
+                for (int i = NAMESPACE_OFFSET; i < INDEX_OFFSET + slots * SLOT_SIZE; i += 8) {
+                    mapped.putLong(i, 0);
+                }
+                mapped.putLong(SLOT_COUNT_OFFSET, slots);
+                mapped.putLong(DATA_CAPACITY_OFFSET, capacity);
+                mapped.putLong(WRITE_POSITION_OFFSET, 0);
+                mapped.putLong(RECENT_CURSOR_OFFSET, 0);
+                long id = ThreadLocalRandom.current().nextLong();
+                mapped.putLong(SEGMENT_ID_OFFSET, id == 0 ? 1 : id);
+                mapped.putLong(MAGIC_OFFSET, MAGIC);
+            } else if (mapped.getLong(MAGIC_OFFSET) != MAGIC || mapped.getLong(SLOT_COUNT_OFFSET) != slots
+                    || mapped.getLong(DATA_CAPACITY_OFFSET) != capacity) {
+                throw new IllegalStateException("segment layout differs from the JVMs already using it");
+            }
+            return mapped;
+        } finally {
+            writeLock.release();
+        }
+    }
+
+    /**
+     * 在进程内同步并持有文件锁执行写操作
+     */
+    private boolean locked(BooleanSupplier action) {
+        if (buffer == null) {
+            return false;
+        }
+        synchronized (this) {
+            FileLock writeLock;
+            try {
+                writeLock = channel.lock(WRITE_LOCK_OFFSET, 1, false);
+            } catch (IOException e) {
+                logger.warn("lock host shared cache segment failed. " + e.getMessage());
+                return false;
+            }
+            try {
+                return action.getAsBoolean();
+            } finally {
+                try {
+                    writeLock.release();
+                } catch (IOException e) {
+                    logger.warn("unlock host shared cache segment failed. " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 复制记录并校验，失败时返回null
+     */
+    private byte[] readRecord(long position) {
+        if (buffer.getLong(WRITE_POSITION_OFFSET) - position > dataCapacity) {
+            return null;
+        }
+        int offset = (int) (position % dataCapacity);
+        if (dataCapacity - offset < RECORD_HEADER) {
+            return null;
+        }
+        int keyLength = buffer.getInt(dataOffset + offset + RECORD_KEY_LENGTH);
+        int valueLength = buffer.getInt(dataOffset + offset + RECORD_VALUE_LENGTH);
+        long length = RECORD_HEADER + (long) keyLength + valueLength;
+        if (keyLength < 0 || valueLength < 0 || length > dataCapacity - offset) {
+            return null;
+        }
+        byte[] record = new byte[(int) length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(dataOffset + offset);
+        source.get(record);
+        if (buffer.getLong(WRITE_POSITION_OFFSET) - position > dataCapacity - length) {
+            return null;
+        }
+        ByteBuffer view = ByteBuffer.wrap(record);
+        int crc = view.getInt(RECORD_CRC);
+        view.putInt(RECORD_CRC, 0);
+        return view.getLong(0) == position && crc(record) == crc ? record : null;
+    }
+
+    private long findPosition(long hash) {
+        int home = (int) (hash & (slotCount - 1));
+        for (int i = 0; i < MAX_PROBES; i++) {
+            int slot = INDEX_OFFSET + ((home + i) & (slotCount - 1)) * SLOT_SIZE;
+            long slotHash = buffer.getLong(slot);
+            if (slotHash == 0) {
+                return -1;
+            }
+            if (slotHash == hash) {
+                return buffer.getLong(slot + 8);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 写入索引：优先使用相同哈希或空的位置，其次是已删除或记录已被覆盖的位置，都没有时覆盖第一个位置
+     */
+    private void insertSlot(long hash, long position, long head) {
+        int home = (int) (hash & (slotCount - 1));
+        int target = -1;
+        for (int i = 0; i < MAX_PROBES; i++) {
+            int slot = INDEX_OFFSET + ((home + i) & (slotCount - 1)) * SLOT_SIZE;
+            long slotHash = buffer.getLong(slot);
+            if (slotHash == hash) {
+                target = slot;
+                break;
+            }
+            if (slotHash == 0) {
+                target = target < 0 ? slot : target;
+                break;
+            }
+            long slotPosition = buffer.getLong(slot + 8);
+            if (target < 0 && (slotPosition < 0 || head - slotPosition > dataCapacity)) {
+                target = slot;
+            }
+        }
+        if (target < 0) {
+            target = INDEX_OFFSET + home * SLOT_SIZE;
+        }
+        if (buffer.getLong(target) != hash) {
+            buffer.putLong(target + 8, -1);
+            buffer.putLong(target, hash);
+        }
+        buffer.putLong(target + 8, position);
+    }
+
+    private void removeSlot(long hash) {
+        int home = (int) (hash & (slotCount - 1));
+        for (int i = 0; i < MAX_PROBES; i++) {
+            int slot = INDEX_OFFSET + ((home + i) & (slotCount - 1)) * SLOT_SIZE;
+            long slotHash = buffer.getLong(slot);
+            if (slotHash == 0) {
+                return;
+            }
+            if (slotHash == hash) {
+                buffer.putLong(slot + 8, -1);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 缓存名称的当前代数，代数表已满时与哈希位置上的名称共用代数
+     */
+    private long generation(String cacheName) {
+        return buffer.getLong(namespaceSlot(cacheName, false) + 8);
+    }
+
+    private void nextGeneration(String cacheName) {
+        int slot = namespaceSlot(cacheName, true);
+        buffer.putLong(slot + 8, buffer.getLong(slot + 8) + 1);
+    }
+
+    private int namespaceSlot(String cacheName, boolean create) {
+        long nameHash = hash(cacheName.getBytes(StandardCharsets.UTF_8));
+        int home = (int) (nameHash & (NAMESPACE_SLOTS - 1));
+        for (int i = 0; i < NAMESPACE_SLOTS; i++) {
+            int slot = NAMESPACE_OFFSET + ((home + i) & (NAMESPACE_SLOTS - 1)) * 16;
+            long slotHash = buffer.getLong(slot);
+            if (slotHash == nameHash) {
+                return slot;
+            }
+            if (slotHash == 0) {
+                if (create) {
+                    buffer.putLong(slot, nameHash);
+                }
+                return slot;
+            }
+        }
+        return NAMESPACE_OFFSET + home * 16;
+    }
+
+    /**
+     * key的字节：缓存名称 + 0 + Redis编码后的key
+     */
+    private byte[] keyBytes(String cacheName, Object key) {
+        try {
+            byte[] name = cacheName.getBytes(StandardCharsets.UTF_8);
+            byte[] encoded = codec.getMapKeyEncoder().encode(key);
+            byte[] bytes = new byte[name.length + 1 + encoded.length];
+            System.arraycopy(name, 0, bytes, 0, name.length);
+            System.arraycopy(encoded, 0, bytes, name.length + 1, encoded.length);
+            return bytes;
+        } catch (Exception e) {
+            logger.warn("encode host shared cache key failed, cacheName: " + cacheName + ", " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean matches(byte[] record, byte[] keyBytes, int keyLength) {
+        if (keyLength != keyBytes.length) {
+            return false;
+        }
+        for (int i = 0; i < keyLength; i++) {
+            if (record[RECORD_HEADER + i] != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 0代表空位置，不作为哈希值
+     */
+    private static long hash(byte[] bytes) {
+        long hash = XxHash64.hash(bytes, 0, bytes.length, SEED);
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static int crc(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        return (int) crc.getValue();
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.mirson.gemini.cache.core.cache;
+
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.mirson.gemini.cache.utils.CacheUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caffeine本地缓存过期策略
+ * 有生命周期的缓存条目按剩余生命周期过期（从Redis加载时即为Redis中的剩余时间），
+ * 没有生命周期的按写入后过期配置，访问后过期配置对所有条目生效，空值占位对象使用单独的（更短的）过期时间
+ *
+ * @author zoutongkun
+ */
+public class LocalCacheExpiry implements Expiry<Object, Object> {
+
+    /**
+     * 不过期
+     */
+    private static final long NEVER = Long.MAX_VALUE;
+
+    /**
+     * 写入后过期时间（单位：纳秒）
+     */
+    private final long expireAfterWriteNanos;
+
+    /**
+     * 访问后过期时间（单位：纳秒）
+     */
+    private final long expireAfterAccessNanos;
+
+    /**
+     * 空值占位对象的过期时间（单位：纳秒）
+     */
+    private final long nullValueExpireNanos;
+
+    /**
+     * 写入后过期时间随机延长的比例
+     */
+    private final double ttlJitter;
+
+    /**
+     * @param expireAfterWriteMillis  写入后过期时间，0代表不限制
+     * @param expireAfterAccessMillis 访问后过期时间，0代表不限制
+     * @param nullValueExpireMillis   空值占位对象的过期时间，0代表与普通数据一致
+     * @param ttlJitter               写入后过期时间随机延长的比例
+     */
+    public LocalCacheExpiry(long expireAfterWriteMillis, long expireAfterAccessMillis, long nullValueExpireMillis,
+                            double ttlJitter) {
+        this.expireAfterWriteNanos = toNanos(expireAfterWriteMillis);
+        this.expireAfterAccessNanos = toNanos(expireAfterAccessMillis);
+        this.nullValueExpireNanos = toNanos(nullValueExpireMillis);
+        this.ttlJitter = ttlJitter;
+    }
+
+    @Override
+    public long expireAfterCreate(Object key, Object value, long currentTime) {
+        CacheEntry entry = value instanceof CacheEntry ? (CacheEntry) value : null;
+        // currentTime为Caffeine的纳秒计时，不能与写入时间比较
+        long remainingTtl = entry == null ? -1 : entry.remainingTtl(System.currentTimeMillis());
+        long expireAfterWrite = remainingTtl >= 0 ? TimeUnit.MILLISECONDS.toNanos(remainingTtl)
+                : jitter(expireAfterWriteNanos);
+        long expire = Math.min(expireAfterWrite, expireAfterAccessNanos);
+        Object actual = entry != null ? entry.getValue() : value;
+        if (NullValue.isNull(actual)) {
+            expire = Math.min(expire, nullValueExpireNanos);
+        }
+        return expire;
+    }
+
+    @Override
+    public long expireAfterUpdate(Object key, Object value, long currentTime, long currentDuration) {
+        return expireAfterCreate(key, value, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+        // 访问后顺延，但不超过写入后的过期时间
+        return Math.min(currentDuration, expireAfterAccessNanos);
+    }
+
+    private long jitter(long nanos) {
+        return nanos == NEVER ? NEVER : CacheUtil.jitter(nanos, ttlJitter);
+    }
+
+    private static long toNanos(long millis) {
+        return millis > 0 ? TimeUnit.MILLISECONDS.toNanos(millis) : NEVER;
+    }
+}
@@ -0,0 +1,304 @@
+package com.mirson.gemini.cache.core.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.common.NamedThreadFactory;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.handler.State;
+import org.redisson.client.protocol.Decoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地缓存快照
+ * 关闭时把每个缓存访问最频繁的条目（按Redis相同的编码）连同剩余过期时间写入本地文件，
+ * 启动时映射该文件，按缓存名称并行恢复到Caffeine，跳过已过期的条目，节点重启后不需要再从Redis预热。
+ * 文件格式：魔数(4)、保存时间(8)、各缓存的条目[过期时间(8)、key长度(4)、key、value长度(4)、value]，
+ * 末尾为目录[缓存数(4)、各缓存的名称、条目起始位置(4)、条目数(4)]与目录位置(4)
+ *
+ * @author zoutongkun
+ */
+public class LocalCacheSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalCacheSnapshot.class);
+
+    private static final int MAGIC = 0x47435331;
+
+    private static final int HEADER_SIZE = 12;
+
+    /**
+     * 快照文件路径，为空代表不开启
+     */
+    private final Path path;
+
+    /**
+     * 每个缓存最多保存的条目数
+     */
+    private final int topN;
+
+    /**
+     * 快照的最长有效时间（单位：毫秒），超过时不恢复
+     */
+    private final long maxAge;
+
+    /**
+     * 未开启两级缓存时为null
+     */
+    private final TwoLevelCacheService twoLevelCacheService;
+
+    private final Codec codec;
+
+    public LocalCacheSnapshot(CacheConfigProperties cacheConfigProperties, CacheService cacheService, Codec codec) {
+        String snapshotPath = cacheConfigProperties.getSnapshotPath();
+        this.path = snapshotPath == null || snapshotPath.trim().isEmpty() ? null : Paths.get(snapshotPath.trim());
+        this.topN = Math.max(0, cacheConfigProperties.getSnapshotTopN());
+        this.maxAge = TimeUnit.SECONDS.toMillis(Math.max(0, cacheConfigProperties.getSnapshotMaxAge()));
+        this.twoLevelCacheService = cacheService instanceof TwoLevelCacheService
+                ? (TwoLevelCacheService) cacheService : null;
+        this.codec = codec;
+    }
+
+    /**
+     * 是否开启快照（只有两级缓存模式有本地缓存）
+     *
+     * @return
+     */
+    public boolean isEnabled() {
+        return path != null && topN > 0 && twoLevelCacheService != null;
+    }
+
+    /**
+     * 保存快照，先写入临时文件再替换
+     */
+    public void save() {
+        if (!isEnabled()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        int total = 0;
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeLong(start);
+                Map<String, int[]> sections = new LinkedHashMap<>();
+                for (Map.Entry<String, Cache<Object, Object>> localCache : twoLevelCacheService.localCaches().entrySet()) {
+                    int offset = out.size();
+                    int count = writeEntries(out, localCache.getValue(), start);
+                    sections.put(localCache.getKey(), new int[]{offset, count});
+                    total += count;
+                }
+                int directory = out.size();
+                out.writeInt(sections.size());
+                for (Map.Entry<String, int[]> section : sections.entrySet()) {
+                    out.writeUTF(section.getKey());
+                    out.writeInt(section.getValue()[0]);
+                    out.writeInt(section.getValue()[1]);
+                }
+                out.writeInt(directory);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("save local cache snapshot {}, entries: {}, cost: {}ms", path, total,
+                    System.currentTimeMillis() - start);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("save local cache snapshot " + path + " failed. " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 容器关闭时保存快照（在缓存服务销毁之前）
+     */
+    public void shutdown() {
+        save();
+    }
+
+    /**
+     * 在后台线程中恢复快照
+     */
+    public void restoreAsync() {
+        if (isEnabled() && Files.exists(path)) {
+            new NamedThreadFactory("Cache-Restore").newThread(this::restore).start();
+        }
+    }
+
+    /**
+     * 恢复快照，各缓存并行恢复；快照使用后删除，避免之后异常重启时恢复过时的数据
+     */
+    public void restore() {
+        if (!isEnabled() || !Files.exists(path)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (buffer.capacity() < HEADER_SIZE + 4 || buffer.getInt(0) != MAGIC) {
+                logger.warn("invalid local cache snapshot {}, ignored", path);
+                return;
+            }
+            long savedAt = buffer.getLong(4);
+            if (start - savedAt > maxAge) {
+                logger.info("local cache snapshot {} is older than {}ms, ignored", path, maxAge);
+                return;
+            }
+            ByteBuffer directory = buffer.duplicate();
+            directory.position(buffer.getInt(buffer.capacity() - 4));
+            int sectionCount = directory.getInt();
+            AtomicInteger restored = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(
+                    Math.max(1, Math.min(sectionCount, Runtime.getRuntime().availableProcessors())),
+                    new NamedThreadFactory("Cache-Restore"));
+            try {
+                List<Future<?>> futures = new ArrayList<>(sectionCount);
+                for (int i = 0; i < sectionCount; i++) {
+                    String cacheName = readUTF(directory);
+                    int offset = directory.getInt();
+                    int count = directory.getInt();
+                    futures.add(executor.submit(() ->
+                            restored.addAndGet(restoreEntries(buffer, cacheName, offset, count))));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            logger.info("restore local cache snapshot {}, entries: {}, cost: {}ms", path, restored.get(),
+                    System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.warn("restore local cache snapshot " + path + " failed. " + e.getMessage(), e);
+        } finally {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                logger.warn("delete local cache snapshot " + path + " failed. " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 写入缓存访问最频繁的条目（按数量或内存淘汰时），其他缓存写入最近写入的条目
+     *
+     * @return 写入的条目数
+     */
+    private int writeEntries(DataOutputStream out, Cache<Object, Object> cache, long now) throws IOException {
+        Optional<Policy.VarExpiration<Object, Object>> expiration = cache.policy().expireVariably();
+        Optional<Policy.Eviction<Object, Object>> eviction = cache.policy().eviction();
+        Map<Object, Object> entries;
+        if (eviction.isPresent()) {
+            entries = eviction.get().hottest(topN);
+        } else if (expiration.isPresent()) {
+            entries = expiration.get().youngest(topN);
+        } else {
+            entries = new LinkedHashMap<>();
+            Iterator<Map.Entry<Object, Object>> iterator = cache.asMap().entrySet().iterator();
+            while (entries.size() < topN && iterator.hasNext()) {
+                Map.Entry<Object, Object> entry = iterator.next();
+                entries.put(entry.getKey(), entry.getValue());
+            }
+        }
+        int count = 0;
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            long expireAfter = expiration.isPresent()
+                    ? expiration.get().getExpiresAfter(entry.getKey(), TimeUnit.MILLISECONDS).orElse(0L)
+                    : Long.MAX_VALUE;
+            if (expireAfter <= 0 || !(entry.getValue() instanceof CacheEntry)) {
+                continue;
+            }
+            byte[] key;
+            byte[] value;
+            try {
+                key = codec.getMapKeyEncoder().encode(entry.getKey());
+                value = codec.getValueEncoder().encode(entry.getValue());
+            } catch (Exception e) {
+                // 无法编码的条目不保存
+                continue;
+            }
+            out.writeLong(expireAfter >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + expireAfter);
+            out.writeInt(key.length);
+            out.write(key);
+            out.writeInt(value.length);
+            out.write(value);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 恢复一个缓存的条目，已过期的条目不解码
+     *
+     * @return 恢复的条目数
+     */
+    private int restoreEntries(ByteBuffer buffer, String cacheName, int offset, int count) throws IOException {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        int restored = 0;
+        for (int i = 0; i < count; i++) {
+            long expireAt = view.getLong();
+            byte[] key = new byte[view.getInt()];
+            view.get(key);
+            int valueLength = view.getInt();
+            long expireAfter = expireAt - System.currentTimeMillis();
+            if (expireAfter <= 0) {
+                view.position(view.position() + valueLength);
+                continue;
+            }
+            byte[] value = new byte[valueLength];
+            view.get(value);
+            twoLevelCacheService.restoreLocal(cacheName, decode(codec.getMapKeyDecoder(), key),
+                    CacheEntry.from(decode(codec.getValueDecoder(), value)), expireAfter);
+            restored++;
+        }
+        return restored;
+    }
+
+    private static Object decode(Decoder<Object> decoder, byte[] bytes) throws IOException {
+        ByteBuf buf = Unpooled.wrappedBuffer(bytes);
+        try {
+            return decoder.decode(buf, new State(false));
+        } finally {
+            buf.release();
+        }
+    }
+
+    /**
+     * 读取DataOutputStream.writeUTF写入的字符串（缓存名称）
+     */
+    private static String readUTF(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
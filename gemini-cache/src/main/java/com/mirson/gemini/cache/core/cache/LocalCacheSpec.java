@@ -0,0 +1,174 @@
+package com.mirson.gemini.cache.core.cache;
+
+import java.util.Locale;
+
+/**
+ * 本地（Caffeine）缓存配置
+ * 文本格式为：key=value,key=value，未指定的项沿用上一级配置，支持的项：
+ * enabled（是否开启本地缓存）、initialCapacity、maximumSize、expireAfterWrite、expireAfterAccess、
+ * refreshAfterWrite（单位：毫秒）、admission（all：全部写入；frequent：同一key第二次写入时才进入本地缓存）
+ *
+ * @author zoutongkun
+ */
+public final class LocalCacheSpec {
+
+    /**
+     * 本地缓存准入策略
+     */
+    public enum Admission {
+        /**
+         * 全部写入本地缓存
+         */
+        ALL,
+        /**
+         * 同一key在准入窗口内第二次写入时才进入本地缓存，过滤只访问一次的数据
+         */
+        FREQUENT
+    }
+
+    private final boolean enabled;
+
+    private final int initialCapacity;
+
+    private final long maximumSize;
+
+    private final long expireAfterWrite;
+
+    private final long expireAfterAccess;
+
+    private final long refreshAfterWrite;
+
+    private final Admission admission;
+
+    public LocalCacheSpec(boolean enabled, int initialCapacity, long maximumSize, long expireAfterWrite,
+                          long expireAfterAccess, long refreshAfterWrite, Admission admission) {
+        this.enabled = enabled;
+        this.initialCapacity = initialCapacity;
+        this.maximumSize = maximumSize;
+        this.expireAfterWrite = expireAfterWrite;
+        this.expireAfterAccess = expireAfterAccess;
+        this.refreshAfterWrite = refreshAfterWrite;
+        this.admission = admission;
+    }
+
+    /**
+     * 在当前配置基础上覆盖文本中指定的项
+     *
+     * @param text 配置文本，为空时返回当前配置
+     * @return
+     */
+    public LocalCacheSpec merge(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return this;
+        }
+        boolean enabled = this.enabled;
+        int initialCapacity = this.initialCapacity;
+        long maximumSize = this.maximumSize;
+        long expireAfterWrite = this.expireAfterWrite;
+        long expireAfterAccess = this.expireAfterAccess;
+        long refreshAfterWrite = this.refreshAfterWrite;
+        Admission admission = this.admission;
+        for (String item : text.split(",")) {
+            if (item.trim().isEmpty()) {
+                continue;
+            }
+            int index = item.indexOf('=');
+            if (index <= 0) {
+                throw new IllegalArgumentException("Invalid local cache spec: " + text);
+            }
+            String key = item.substring(0, index).trim();
+            String value = item.substring(index + 1).trim();
+            switch (key) {
+                case "enabled":
+                    enabled = Boolean.parseBoolean(value);
+                    break;
+                case "initialCapacity":
+                    initialCapacity = Integer.parseInt(value);
+                    break;
+                case "maximumSize":
+                    maximumSize = Long.parseLong(value);
+                    break;
+                case "expireAfterWrite":
+                    expireAfterWrite = Long.parseLong(value);
+                    break;
+                case "expireAfterAccess":
+                    expireAfterAccess = Long.parseLong(value);
+                    break;
+                case "refreshAfterWrite":
+                    refreshAfterWrite = Long.parseLong(value);
+                    break;
+                case "admission":
+                    admission = Admission.valueOf(value.toUpperCase(Locale.ROOT));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown local cache spec key: " + key);
+            }
+        }
+        return new LocalCacheSpec(enabled, initialCapacity, maximumSize, expireAfterWrite, expireAfterAccess,
+                refreshAfterWrite, admission);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getInitialCapacity() {
+        return initialCapacity;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long getExpireAfterWrite() {
+        return expireAfterWrite;
+    }
+
+    public long getExpireAfterAccess() {
+        return expireAfterAccess;
+    }
+
+    public long getRefreshAfterWrite() {
+        return refreshAfterWrite;
+    }
+
+    public Admission getAdmission() {
+        return admission;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LocalCacheSpec)) {
+            return false;
+        }
+        LocalCacheSpec that = (LocalCacheSpec) o;
+        return enabled == that.enabled && initialCapacity == that.initialCapacity
+                && maximumSize == that.maximumSize && expireAfterWrite == that.expireAfterWrite
+                && expireAfterAccess == that.expireAfterAccess && refreshAfterWrite == that.refreshAfterWrite
+                && admission == that.admission;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Boolean.hashCode(enabled);
+        result = 31 * result + initialCapacity;
+        result = 31 * result + Long.hashCode(maximumSize);
+        result = 31 * result + Long.hashCode(expireAfterWrite);
+        result = 31 * result + Long.hashCode(expireAfterAccess);
+        result = 31 * result + Long.hashCode(refreshAfterWrite);
+        return 31 * result + admission.hashCode();
+    }
+
+    /**
+     * 与配置文本格式一致
+     */
+    @Override
+    public String toString() {
+        return "enabled=" + enabled + ",initialCapacity=" + initialCapacity + ",maximumSize=" + maximumSize
+                + ",expireAfterWrite=" + expireAfterWrite + ",expireAfterAccess=" + expireAfterAccess
+                + ",refreshAfterWrite=" + refreshAfterWrite + ",admission=" + admission.name().toLowerCase(Locale.ROOT);
+    }
+}
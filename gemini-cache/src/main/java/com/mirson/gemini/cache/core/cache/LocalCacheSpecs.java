@@ -0,0 +1,122 @@
+package com.mirson.gemini.cache.core.cache;
+
+import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.utils.CacheUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 按缓存名称管理本地缓存配置
+ * 生效顺序（后者覆盖前者）：全局配置（app.cache.caffeine.*） -> 注解中的localSpec -> app.cache.caffeine.specs
+ *
+ * @author zoutongkun
+ */
+public class LocalCacheSpecs {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalCacheSpecs.class);
+
+    /**
+     * 全局配置
+     */
+    private final LocalCacheSpec defaultSpec;
+
+    /**
+     * 配置文件中按缓存名称指定的配置，cacheName -> 配置文本
+     */
+    private final Map<String, String> configuredSpecs;
+
+    /**
+     * 注解中指定的配置，cacheName -> 配置文本
+     */
+    private final ConcurrentMap<String, String> annotationSpecs = new ConcurrentHashMap<>();
+
+    /**
+     * 已生效的配置
+     */
+    private final ConcurrentMap<String, LocalCacheSpec> effectiveSpecs = new ConcurrentHashMap<>();
+
+    /**
+     * 配置变更监听（参数为cacheName）
+     */
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    public LocalCacheSpecs(CacheConfigProperties cacheConfigProperties) {
+        this.defaultSpec = new LocalCacheSpec(true, cacheConfigProperties.getInitialCapacity(),
+                cacheConfigProperties.getMaximumSize(), cacheConfigProperties.getExpireAfterWrite(),
+                cacheConfigProperties.getExpireAfterAccess(), cacheConfigProperties.getRefreshAfterWrite(),
+                LocalCacheSpec.Admission.ALL);
+        this.configuredSpecs = CacheUtil.parseNamedValues(cacheConfigProperties.getLocalSpecs());
+        // 启动时校验配置
+        configuredSpecs.forEach((cacheName, text) -> defaultSpec.merge(text));
+    }
+
+    /**
+     * 注册注解中指定的配置，配置变化时通知监听者
+     *
+     * @param cacheName
+     * @param text 配置文本，为空时忽略
+     */
+    public void register(String cacheName, String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return;
+        }
+        String previous = annotationSpecs.put(cacheName, text);
+        if (text.equals(previous)) {
+            return;
+        }
+        LocalCacheSpec old = effectiveSpecs.get(cacheName);
+        LocalCacheSpec current = resolve(cacheName);
+        effectiveSpecs.put(cacheName, current);
+        if (old != null && !old.equals(current)) {
+            logger.info("local cache spec of {} changed to: {}", cacheName, current);
+            for (Consumer<String> listener : listeners) {
+                listener.accept(cacheName);
+            }
+        }
+    }
+
+    /**
+     * 获取生效的配置
+     *
+     * @param cacheName
+     * @return
+     */
+    public LocalCacheSpec get(String cacheName) {
+        LocalCacheSpec spec = effectiveSpecs.get(cacheName);
+        if (spec == null) {
+            spec = effectiveSpecs.computeIfAbsent(cacheName, this::resolve);
+        }
+        return spec;
+    }
+
+    /**
+     * 已使用的缓存生效的配置，cacheName -> 配置
+     *
+     * @return
+     */
+    public Map<String, LocalCacheSpec> getAll() {
+        return Collections.unmodifiableMap(new TreeMap<>(effectiveSpecs));
+    }
+
+    /**
+     * 添加配置变更监听，变更后本地缓存需按新配置重建
+     *
+     * @param listener 参数为cacheName
+     */
+    public void addListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    private LocalCacheSpec resolve(String cacheName) {
+        return defaultSpec.merge(annotationSpecs.get(cacheName)).merge(configuredSpecs.get(cacheName));
+    }
+}
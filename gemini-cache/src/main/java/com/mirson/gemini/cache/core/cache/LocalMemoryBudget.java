@@ -0,0 +1,206 @@
+package com.mirson.gemini.cache.core.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.common.NamedThreadFactory;
+import com.mirson.gemini.cache.core.metrics.CacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地缓存内存预算
+ * 所有缓存名称共用一个节点级的内存上限（按条目估算的字节数淘汰），
+ * 定时按各缓存在上一周期的命中次数重新分配：每个缓存保留一份保底额度，其余按命中次数比例分配，命中越多分到的内存越多
+ *
+ * @author zoutongkun
+ */
+public class LocalMemoryBudget {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalMemoryBudget.class);
+
+    /**
+     * 平均分配的保底比例
+     */
+    private static final double FLOOR_RATIO = 0.2;
+
+    /**
+     * 内存上限（单位：字节），0代表不开启
+     */
+    private final long budgetBytes;
+
+    private final CacheMetrics cacheMetrics;
+
+    /**
+     * 参与分配的缓存
+     */
+    private final ConcurrentMap<String, Budgeted> caches = new ConcurrentHashMap<>();
+
+    /**
+     * 重新分配线程
+     */
+    private final ScheduledExecutorService rebalanceExecutor;
+
+    public LocalMemoryBudget(CacheConfigProperties cacheConfigProperties, CacheMetrics cacheMetrics) {
+        this.budgetBytes = Math.max(0, cacheConfigProperties.getMemoryBudget()) * 1024 * 1024;
+        this.cacheMetrics = cacheMetrics;
+        if (budgetBytes > 0) {
+            this.rebalanceExecutor = Executors.newSingleThreadScheduledExecutor(
+                    new NamedThreadFactory("Local-Budget"));
+            long interval = Math.max(1, cacheConfigProperties.getRebalanceInterval());
+            this.rebalanceExecutor.scheduleWithFixedDelay(this::rebalance, interval, interval, TimeUnit.SECONDS);
+        } else {
+            this.rebalanceExecutor = null;
+        }
+    }
+
+    /**
+     * 是否开启内存预算
+     *
+     * @return
+     */
+    public boolean isEnabled() {
+        return budgetBytes > 0;
+    }
+
+    /**
+     * 新建缓存的初始额度，注册后立即重新分配
+     *
+     * @return 单位：字节
+     */
+    public long initialShare() {
+        return Math.max(1, budgetBytes / (caches.size() + 1));
+    }
+
+    /**
+     * 加入内存预算（缓存需按weight淘汰并开启统计）
+     *
+     * @param cacheName
+     * @param cache
+     */
+    public void register(String cacheName, Cache<Object, Object> cache) {
+        Budgeted budgeted = new Budgeted(cache);
+        budgeted.allocated = cache.policy().eviction().map(Policy.Eviction::getMaximum).orElse(0L);
+        caches.put(cacheName, budgeted);
+        cacheMetrics.gauge(cacheName, CacheMetrics.LOCAL_WEIGHT, () -> getWeightedSize(cacheName));
+        cacheMetrics.gauge(cacheName, CacheMetrics.LOCAL_BUDGET, () -> getAllocated(cacheName));
+        rebalanceExecutor.execute(this::rebalance);
+    }
+
+    /**
+     * 移出内存预算（缓存被丢弃时）
+     *
+     * @param cacheName
+     * @param cache
+     */
+    public void unregister(String cacheName, Cache<Object, Object> cache) {
+        Budgeted budgeted = caches.get(cacheName);
+        if (budgeted != null && budgeted.cache == cache) {
+            caches.remove(cacheName, budgeted);
+        }
+    }
+
+    /**
+     * 缓存当前占用的内存（估算值）
+     *
+     * @param cacheName
+     * @return 单位：字节
+     */
+    public long getWeightedSize(String cacheName) {
+        Budgeted budgeted = caches.get(cacheName);
+        if (budgeted == null) {
+            return 0;
+        }
+        return budgeted.cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L);
+    }
+
+    /**
+     * 缓存当前分配到的内存额度
+     *
+     * @param cacheName
+     * @return 单位：字节
+     */
+    public long getAllocated(String cacheName) {
+        Budgeted budgeted = caches.get(cacheName);
+        return budgeted == null ? 0 : budgeted.allocated;
+    }
+
+    /**
+     * 按命中次数重新分配内存
+     */
+    synchronized void rebalance() {
+        try {
+            List<Map.Entry<String, Budgeted>> entries = new ArrayList<>(caches.entrySet());
+            if (entries.isEmpty()) {
+                return;
+            }
+            long floor = (long) (budgetBytes * FLOOR_RATIO / entries.size());
+            long pool = budgetBytes - floor * entries.size();
+            long[] hits = new long[entries.size()];
+            long totalHits = 0;
+            for (int i = 0; i < entries.size(); i++) {
+                Budgeted budgeted = entries.get(i).getValue();
+                long hitCount = budgeted.cache.stats().hitCount();
+                hits[i] = Math.max(0, hitCount - budgeted.lastHits);
+                budgeted.lastHits = hitCount;
+                totalHits += hits[i];
+            }
+            long[] allocated = new long[entries.size()];
+            long totalAllocated = 0;
+            for (int i = 0; i < entries.size(); i++) {
+                Budgeted budgeted = entries.get(i).getValue();
+                long target = floor + (totalHits == 0 ? pool / entries.size()
+                        : (long) ((double) pool * hits[i] / totalHits));
+                // 与上一次额度取平均，避免命中波动导致额度剧烈变化
+                allocated[i] = budgeted.allocated > 0 ? (budgeted.allocated + target) / 2 : target;
+                totalAllocated += allocated[i];
+            }
+            // 新加入的缓存使用初始额度，合计可能超出上限，按比例缩减
+            double scale = totalAllocated > budgetBytes ? (double) budgetBytes / totalAllocated : 1;
+            for (int i = 0; i < entries.size(); i++) {
+                Budgeted budgeted = entries.get(i).getValue();
+                budgeted.allocated = Math.max(1, (long) (allocated[i] * scale));
+                budgeted.cache.policy().eviction().ifPresent(eviction -> eviction.setMaximum(budgeted.allocated));
+            }
+        } catch (RuntimeException e) {
+            logger.warn("rebalance local memory budget failed. " + e.getMessage(), e);
+        }
+    }
+
+    public void shutdown() {
+        if (rebalanceExecutor != null) {
+            rebalanceExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 参与分配的缓存
+     */
+    private static final class Budgeted {
+
+        private final Cache<Object, Object> cache;
+
+        /**
+         * 上一周期末的累计命中次数
+         */
+        private long lastHits;
+
+        /**
+         * 当前额度（单位：字节）
+         */
+        private volatile long allocated;
+
+        private Budgeted(Cache<Object, Object> cache) {
+            this.cache = cache;
+        }
+    }
+}
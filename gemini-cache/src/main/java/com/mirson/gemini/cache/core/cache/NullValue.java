@@ -0,0 +1,58 @@
+package com.mirson.gemini.cache.core.cache;
+
+import java.io.Serializable;
+
+/**
+ * 空值占位对象
+ * 原方法返回null时缓存该对象，防止不存在的数据每次都穿透到数据库
+ *
+ * @author zoutongkun
+ */
+public final class NullValue implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final NullValue INSTANCE = new NullValue();
+
+    private NullValue() {
+    }
+
+    /**
+     * 是否为空值占位对象
+     *
+     * @param value
+     * @return
+     */
+    public static boolean isNull(Object value) {
+        return value instanceof NullValue;
+    }
+
+    /**
+     * 还原空值占位对象
+     *
+     * @param value
+     * @return 空值占位对象返回null，其他原样返回
+     */
+    public static Object unwrap(Object value) {
+        return isNull(value) ? null : value;
+    }
+
+    private Object readResolve() {
+        return INSTANCE;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof NullValue;
+    }
+
+    @Override
+    public int hashCode() {
+        return NullValue.class.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "NullValue";
+    }
+}
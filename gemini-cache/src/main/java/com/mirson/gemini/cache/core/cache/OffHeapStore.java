@@ -0,0 +1,411 @@
+package com.mirson.gemini.cache.core.cache;
+
+import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.core.metrics.CacheMetrics;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.handler.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 堆外缓存
+ * 位于Caffeine与Redis之间，保存较大的缓存条目序列化后的字节（与Redis使用相同的编码），不占用堆内存。
+ * 内存按固定大小的DirectByteBuffer分块（slab），顺序追加写入；写满后循环复用最早的分块，
+ * 该分块中的条目全部淘汰（先进先出）。读取时解码，同一条目被多次读取后提升到Caffeine
+ *
+ * @author zoutongkun
+ */
+public class OffHeapStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapStore.class);
+
+    /**
+     * 分块，为空代表不开启
+     */
+    private final Slab[] slabs;
+
+    /**
+     * 分块大小（单位：字节），也是单个条目的最大长度
+     */
+    private final int slabSize;
+
+    /**
+     * 估算大小达到该值的条目才保存到堆外（单位：字节）
+     */
+    private final long minValueSize;
+
+    /**
+     * 读取多少次后提升到Caffeine
+     */
+    private final int promoteHits;
+
+    private final Codec codec;
+
+    private final CacheMetrics cacheMetrics;
+
+    /**
+     * 条目位置，(cacheName, key) -> 位置
+     */
+    private final ConcurrentMap<StoreKey, Location> index = new ConcurrentHashMap<>();
+
+    /**
+     * 各缓存有效条目占用的字节数
+     */
+    private final ConcurrentMap<String, AtomicLong> usedBytes = new ConcurrentHashMap<>();
+
+    /**
+     * 当前写入的分块，由this保护
+     */
+    private int current;
+
+    public OffHeapStore(CacheConfigProperties cacheConfigProperties, CacheMetrics cacheMetrics, Codec codec) {
+        long capacity = Math.max(0, cacheConfigProperties.getOffHeapCapacity()) * 1024 * 1024;
+        this.slabSize = (int) Math.min(Integer.MAX_VALUE,
+                Math.max(1, cacheConfigProperties.getOffHeapSlabSize()) * 1024 * 1024);
+        int slabCount = capacity <= 0 ? 0 : (int) Math.max(2, capacity / slabSize);
+        this.slabs = new Slab[slabCount];
+        for (int i = 0; i < slabCount; i++) {
+            slabs[i] = new Slab();
+        }
+        this.minValueSize = cacheConfigProperties.getOffHeapMinValueSize();
+        this.promoteHits = Math.max(1, cacheConfigProperties.getOffHeapPromoteHits());
+        this.codec = codec;
+        this.cacheMetrics = cacheMetrics;
+    }
+
+    /**
+     * 是否开启堆外缓存
+     *
+     * @return
+     */
+    public boolean isEnabled() {
+        return slabs.length > 0;
+    }
+
+    /**
+     * 估算大小达到该值的条目才保存到堆外
+     *
+     * @return 单位：字节
+     */
+    public long getMinValueSize() {
+        return minValueSize;
+    }
+
+    /**
+     * 保存条目
+     *
+     * @param cacheName
+     * @param key
+     * @param entry
+     * @param expireAt 过期时间（单位：毫秒）
+     * @return 编码失败或超出分块大小时返回false
+     */
+    public boolean put(String cacheName, Object key, CacheEntry entry, long expireAt) {
+        byte[] bytes;
+        try {
+            bytes = codec.getValueEncoder().encode(entry);
+        } catch (Exception e) {
+            logger.warn("encode off-heap cache entry failed, cacheName: " + cacheName + ", " + e.getMessage());
+            return false;
+        }
+        if (bytes.length > slabSize) {
+            return false;
+        }
+        StoreKey storeKey = new StoreKey(cacheName, key);
+        synchronized (this) {
+            Slab slab = slabs[current];
+            if (slab.buffer == null || slab.position + bytes.length > slabSize) {
+                current = (current + 1) % slabs.length;
+                slab = slabs[current];
+                recycle(slab);
+            }
+            int offset = slab.position;
+            ByteBuffer target = slab.buffer.duplicate();
+            target.position(offset);
+            target.put(bytes);
+            slab.position += bytes.length;
+            slab.keys.add(storeKey);
+            Location location = new Location(slab, slab.generation, offset, bytes.length, expireAt);
+            Location old = index.put(storeKey, location);
+            addUsed(cacheName, bytes.length - (old == null ? 0 : old.length));
+        }
+        return true;
+    }
+
+    /**
+     * 读取条目
+     *
+     * @param cacheName
+     * @param key
+     * @return 不存在、已过期或已被淘汰时返回null
+     */
+    public CacheEntry get(String cacheName, Object key) {
+        StoreKey storeKey = new StoreKey(cacheName, key);
+        Location location = index.get(storeKey);
+        if (location == null) {
+            return null;
+        }
+        byte[] bytes = location.expireAt > System.currentTimeMillis() ? location.slab.read(location) : null;
+        if (bytes == null) {
+            remove(storeKey, location);
+            return null;
+        }
+        try {
+            ByteBuf buf = Unpooled.wrappedBuffer(bytes);
+            try {
+                CacheEntry entry = CacheEntry.from(codec.getValueDecoder().decode(buf, new State(false)));
+                location.hits++;
+                cacheMetrics.increment(cacheName, CacheMetrics.OFFHEAP_HITS);
+                return entry;
+            } finally {
+                buf.release();
+            }
+        } catch (Exception e) {
+            logger.warn("decode off-heap cache entry failed, cacheName: " + cacheName + ", " + e.getMessage());
+            remove(storeKey, location);
+            return null;
+        }
+    }
+
+    /**
+     * 条目是否已达到提升到Caffeine的读取次数（读取后调用）
+     *
+     * @param cacheName
+     * @param key
+     * @return
+     */
+    public boolean shouldPromote(String cacheName, Object key) {
+        Location location = index.get(new StoreKey(cacheName, key));
+        if (location == null || location.hits < promoteHits) {
+            return false;
+        }
+        // 重新计数，Caffeine淘汰后需再次达到读取次数才会提升
+        location.hits = 0;
+        cacheMetrics.increment(cacheName, CacheMetrics.OFFHEAP_PROMOTIONS);
+        return true;
+    }
+
+    /**
+     * 删除条目
+     *
+     * @param cacheName
+     * @param key
+     */
+    public void remove(String cacheName, Object key) {
+        StoreKey storeKey = new StoreKey(cacheName, key);
+        Location location = index.get(storeKey);
+        if (location != null) {
+            remove(storeKey, location);
+        }
+    }
+
+    /**
+     * 删除缓存下的全部条目
+     *
+     * @param cacheName
+     */
+    public void removeAll(String cacheName) {
+        index.forEach((storeKey, location) -> {
+            if (storeKey.cacheName.equals(cacheName)) {
+                remove(storeKey, location);
+            }
+        });
+    }
+
+    /**
+     * 缓存有效条目占用的字节数
+     *
+     * @param cacheName
+     * @return
+     */
+    public long getUsedBytes(String cacheName) {
+        AtomicLong used = usedBytes.get(cacheName);
+        return used == null ? 0 : used.get();
+    }
+
+    public void shutdown() {
+        synchronized (this) {
+            index.clear();
+            usedBytes.clear();
+            for (Slab slab : slabs) {
+                long stamp = slab.lock.writeLock();
+                try {
+                    slab.generation++;
+                    slab.buffer = null;
+                    slab.keys.clear();
+                } finally {
+                    slab.lock.unlockWrite(stamp);
+                }
+            }
+        }
+    }
+
+    private void remove(StoreKey storeKey, Location location) {
+        if (index.remove(storeKey, location)) {
+            addUsed(storeKey.cacheName, -location.length);
+        }
+    }
+
+    /**
+     * 复用分块，淘汰其中的全部条目（在this同步块中调用）
+     */
+    private void recycle(Slab slab) {
+        for (StoreKey storeKey : slab.keys) {
+            Location location = index.get(storeKey);
+            if (location != null && location.slab == slab && location.generation == slab.generation) {
+                remove(storeKey, location);
+            }
+        }
+        long stamp = slab.lock.writeLock();
+        try {
+            slab.generation++;
+            slab.position = 0;
+            slab.keys.clear();
+            if (slab.buffer == null) {
+                slab.buffer = ByteBuffer.allocateDirect(slabSize);
+            }
+        } finally {
+            slab.lock.unlockWrite(stamp);
+        }
+    }
+
+    private void addUsed(String cacheName, long delta) {
+        AtomicLong used = usedBytes.get(cacheName);
+        if (used == null) {
+            used = usedBytes.computeIfAbsent(cacheName, name -> {
+                cacheMetrics.gauge(name, CacheMetrics.OFFHEAP_BYTES, () -> getUsedBytes(name));
+                return new AtomicLong();
+            });
+        }
+        used.addAndGet(delta);
+    }
+
+    /**
+     * 分块
+     * 追加写入不会覆盖已有数据，只有复用（generation变化）时需要写锁；读取使用乐观读，与复用冲突时再加读锁
+     */
+    private static final class Slab {
+
+        private final StampedLock lock = new StampedLock();
+
+        /**
+         * 首次使用时分配
+         */
+        private volatile ByteBuffer buffer;
+
+        private volatile long generation;
+
+        /**
+         * 写入位置，由OffHeapStore同步块保护
+         */
+        private int position;
+
+        /**
+         * 分块中写入过的key，由OffHeapStore同步块保护
+         */
+        private final List<StoreKey> keys = new ArrayList<>();
+
+        /**
+         * 读取条目的字节
+         *
+         * @return 分块已被复用时返回null
+         */
+        private byte[] read(Location location) {
+            long stamp = lock.tryOptimisticRead();
+            byte[] bytes = copy(location);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    bytes = copy(location);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return bytes;
+        }
+
+        private byte[] copy(Location location) {
+            ByteBuffer source = buffer;
+            if (source == null || generation != location.generation) {
+                return null;
+            }
+            byte[] bytes = new byte[location.length];
+            ByteBuffer view = source.duplicate();
+            view.position(location.offset);
+            view.get(bytes);
+            return bytes;
+        }
+    }
+
+    /**
+     * 条目位置
+     */
+    private static final class Location {
+
+        private final Slab slab;
+
+        private final long generation;
+
+        private final int offset;
+
+        private final int length;
+
+        private final long expireAt;
+
+        /**
+         * 读取次数（允许并发下少计）
+         */
+        private volatile int hits;
+
+        private Location(Slab slab, long generation, int offset, int length, long expireAt) {
+            this.slab = slab;
+            this.generation = generation;
+            this.offset = offset;
+            this.length = length;
+            this.expireAt = expireAt;
+        }
+    }
+
+    /**
+     * 堆外缓存key
+     */
+    private static final class StoreKey {
+
+        private final String cacheName;
+
+        private final Object key;
+
+        private StoreKey(String cacheName, Object key) {
+            this.cacheName = cacheName;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof StoreKey)) {
+                return false;
+            }
+            StoreKey that = (StoreKey) o;
+            return cacheName.equals(that.cacheName) && Objects.equals(key, that.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * cacheName.hashCode() + Objects.hashCode(key);
+        }
+    }
+}
@@ -1,14 +1,31 @@
 package com.mirson.gemini.cache.core.cache;
 
 import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.common.CacheConstants;
+import com.mirson.gemini.cache.core.bloom.BloomFilterManager;
+import com.mirson.gemini.cache.core.breaker.RedisCircuitBreakerManager;
+import com.mirson.gemini.cache.core.loader.CacheLoader;
+import com.mirson.gemini.cache.core.metrics.CacheMetrics;
+import com.mirson.gemini.cache.utils.CacheUtil;
 import org.redisson.api.RBatch;
-import org.redisson.api.RMapCache;
+import org.redisson.api.RBucket;
 import org.redisson.api.RMapCacheAsync;
+import org.redisson.api.RScript;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.StringUtils;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -27,15 +44,46 @@ public class OneLevelCacheService implements CacheService {
 
     private CacheConfigProperties cacheConfigProperties;
 
+    private CacheMetrics cacheMetrics;
+
+    /**
+     * 布隆过滤器
+     */
+    private BloomFilterManager bloomFilterManager;
+
+    /**
+     * Redis熔断
+     */
+    private RedisCircuitBreakerManager circuitBreakerManager;
+
+    /**
+     * Redis读取合并
+     */
+    private RedisReadCoalescer readCoalescer;
+
+    /**
+     * 释放租约脚本，只删除自己持有的租约
+     */
+    private static final String RELEASE_LEASE_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
+
     /**
      * 初始化
      */
     public OneLevelCacheService(RedissonClient redissonClient,
                                 ExecutorService serviceCallExecutorService,
-                                CacheConfigProperties cacheConfigProperties) {
+                                CacheConfigProperties cacheConfigProperties,
+                                CacheMetrics cacheMetrics,
+                                BloomFilterManager bloomFilterManager,
+                                RedisCircuitBreakerManager circuitBreakerManager,
+                                RedisReadCoalescer readCoalescer) {
         this.redissonClient = redissonClient;
         this.serviceCallExecutorService = serviceCallExecutorService;
         this.cacheConfigProperties = cacheConfigProperties;
+        this.cacheMetrics = cacheMetrics;
+        this.bloomFilterManager = bloomFilterManager;
+        this.circuitBreakerManager = circuitBreakerManager;
+        this.readCoalescer = readCoalescer;
     }
 
 
@@ -48,11 +96,81 @@ public class OneLevelCacheService implements CacheService {
      */
     @Override
     public Object get(final String cacheName, final Object cacheKey) {
+        return CacheEntry.valueOf(getEntry(cacheName, cacheKey));
+    }
+
+    /**
+     * 获取缓存条目
+     *
+     * @param cacheName
+     * @param cacheKey
+     * @return
+     */
+    @Override
+    public CacheEntry getEntry(final String cacheName, final Object cacheKey) {
         if (StringUtils.isEmpty(cacheName) || cacheKey == null) {
             throw new IllegalArgumentException("Cache name or cache key can not be null!");
         }
+        // 布隆过滤器判断一定不存在的key，不再读取缓存
+        if (!bloomFilterManager.mightContain(cacheName, cacheKey)) {
+            return null;
+        }
 
-        return redissonClient.getMapCache(cacheName).get(cacheKey);
+        // 超出延迟预算或熔断中按未命中处理
+        return CacheEntry.from(circuitBreakerManager.execute(cacheName, () -> {
+            if (readCoalescer.isEnabled()) {
+                // 与其他线程的并发读取合并为一次批量读取
+                return readCoalescer.get(cacheName, cacheKey);
+            }
+            return redissonClient.getMapCache(cacheName).getAsync(cacheKey);
+        }, null));
+    }
+
+    /**
+     * 批量获取缓存对象
+     *
+     * @param cacheName
+     * @param cacheKeys
+     * @return
+     */
+    @Override
+    public Map<Object, Object> getAll(final String cacheName, final Collection<?> cacheKeys) {
+        return CacheEntry.valuesOf(getAllEntries(cacheName, cacheKeys));
+    }
+
+    /**
+     * 批量获取缓存条目，一次网络往返
+     *
+     * @param cacheName
+     * @param cacheKeys
+     * @return
+     */
+    @Override
+    public Map<Object, CacheEntry> getAllEntries(final String cacheName, final Collection<?> cacheKeys) {
+        if (StringUtils.isEmpty(cacheName) || cacheKeys == null) {
+            throw new IllegalArgumentException("Cache name or cache keys can not be null!");
+        }
+        Set<Object> candidates = new HashSet<>(cacheKeys.size());
+        for (Object cacheKey : cacheKeys) {
+            if (cacheKey != null) {
+                candidates.add(cacheKey);
+            }
+        }
+        // 布隆过滤器判断一定不存在的key，不再读取缓存
+        Set<Object> keys = bloomFilterManager.mightContainAll(cacheName, candidates);
+        if (keys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        // 超出延迟预算或熔断中按未命中处理
+        Map<Object, Object> stored = circuitBreakerManager.execute(cacheName,
+                () -> redissonClient.getMapCache(cacheName).getAllAsync(keys), Collections.emptyMap());
+        Map<Object, CacheEntry> result = new HashMap<>(stored.size() * 2);
+        stored.forEach((key, value) -> {
+            if (value != null) {
+                result.put(key, CacheEntry.from(value));
+            }
+        });
+        return result;
     }
 
     /**
@@ -73,34 +191,76 @@ public class OneLevelCacheService implements CacheService {
                     "Cache names list can not be null or empty for save operation!!");
         }
 
+        CacheEntry entry = CacheEntry.wrap(cacheValue, ttl, cacheConfigProperties.getTtlJitter());
+        long redisTtl = redisTtl(entry);
+        boolean saved = true;
         for (String cacheName : cacheNames) {
-            RMapCache mapCache = redissonClient.getMapCache(cacheName);
-            boolean isExists = mapCache.isExists();
-            if (!isExists) {
-                // 第一次保存， 并设定超时时间
-                firstSave(cacheName, cacheKey, cacheValue, ttl);
-            } else {
-                mapCache.put(cacheKey, cacheValue, ttl, TimeUnit.SECONDS);
+            boolean applied = circuitBreakerManager.write(cacheName, () -> redissonClient.getMapCache(cacheName)
+                    .fastPutAsync(cacheKey, entry, redisTtl, TimeUnit.MILLISECONDS));
+            if (!applied) {
+                // 熔断中跳过或未确认的写入，Redis中可能保留旧值，记录为待删除
+                circuitBreakerManager.deferDelete(cacheName, Collections.singletonList(cacheKey));
+                saved = false;
+            } else if (!NullValue.isNull(entry.getValue())) {
+                bloomFilterManager.put(cacheName, cacheKey);
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * 回源加载后保存至REDIS缓存，已存在的数据不覆盖
+     *
+     * @param cacheNames
+     * @param cacheKey
+     * @param cacheValue
+     * @param ttl
+     * @return
+     */
+    @Override
+    public boolean fill(final String[] cacheNames, final Object cacheKey,
+                        final Object cacheValue, final long ttl) {
+        if (cacheNames == null || cacheNames.length == 0) {
+            throw new IllegalArgumentException(
+                    "Cache names list can not be null or empty for fill operation!!");
+        }
+
+        CacheEntry entry = CacheEntry.wrap(cacheValue, ttl, cacheConfigProperties.getTtlJitter());
+        long redisTtl = redisTtl(entry);
+        for (String cacheName : cacheNames) {
+            // 熔断中跳过写入
+            Boolean saved = circuitBreakerManager.execute(cacheName, () -> redissonClient.getMapCache(cacheName)
+                    .fastPutIfAbsentAsync(cacheKey, entry, redisTtl, TimeUnit.MILLISECONDS, 0, TimeUnit.MILLISECONDS),
+                    null);
+            if (Boolean.TRUE.equals(saved) && !NullValue.isNull(entry.getValue())) {
+                bloomFilterManager.put(cacheName, cacheKey);
             }
         }
         return true;
     }
 
-    private void firstSave(String cacheName, final Object cacheKey,
-                           final Object cacheValue, final long ttl) {
-        RBatch batch = redissonClient.createBatch();
-        RMapCacheAsync rMapCacheAsync = batch.getMapCache(cacheName);
-        rMapCacheAsync.putAsync(cacheKey, cacheValue, ttl, TimeUnit.SECONDS);
-        rMapCacheAsync.expireAsync(cacheConfigProperties.getExpire(), TimeUnit.SECONDS);
-        batch.execute();
+    /**
+     * Redis中单条缓存的生命周期
+     * 未指定TTL的数据使用全局超时时间，并随机延长，不再对整个缓存设置超时，避免同一缓存名称下的数据同时失效
+     *
+     * @param entry
+     * @return 单位：毫秒
+     */
+    private long redisTtl(CacheEntry entry) {
+        if (entry.getTtl() > 0) {
+            return entry.getTtl();
+        }
+        return CacheUtil.jitter(TimeUnit.SECONDS.toMillis(cacheConfigProperties.getExpire()),
+                cacheConfigProperties.getTtlJitter());
     }
 
     /**
      * 清理缓存
+     * 删除不受熔断影响，延迟预算内未确认的删除由后台补发
      *
      * @param cacheNames
      * @param cacheKey
-     * @return
+     * @return 是否全部确认删除
      */
     @Override
     public boolean delete(final String[] cacheNames, final Object cacheKey) {
@@ -109,32 +269,185 @@ public class OneLevelCacheService implements CacheService {
             throw new IllegalArgumentException(
                     "Cache names list can not be null or empty for save operation!!");
         }
+        boolean deleted = true;
         for (String cacheName : cacheNames) {
             if (StringUtils.isEmpty(cacheName)) {
                 continue;
             }
-            if (null == redissonClient.getMapCache(cacheName)) {
-                continue;
+            if (!circuitBreakerManager.delete(cacheName,
+                    () -> redissonClient.getMapCache(cacheName).fastRemoveAsync(cacheKey))) {
+                circuitBreakerManager.deferDelete(cacheName, Collections.singletonList(cacheKey));
+                deleted = false;
             }
-            redissonClient.getMapCache(cacheName).remove(cacheKey);
         }
-        return true;
+        return deleted;
     }
 
     /**
      * 清理缓存
+     * 删除不受熔断影响，延迟预算内未确认的清理由后台补发
      *
      * @param cacheNames
-     * @return
+     * @return 是否全部确认清理
      */
     @Override
     public boolean delete(final String[] cacheNames) {
+        boolean deleted = true;
+        for (String cacheName : cacheNames) {
+            if (!circuitBreakerManager.delete(cacheName, redissonClient.getMapCache(cacheName)::deleteAsync)) {
+                circuitBreakerManager.deferClear(cacheName);
+                deleted = false;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * 批量保存至REDIS缓存
+     * 每个批次通过一次管道发送，熔断中跳过或未确认写入的缓存将本次所有key记录为待删除
+     *
+     * @param cacheNames
+     * @param cacheValues
+     * @param ttl
+     * @return
+     */
+    @Override
+    public boolean saveAll(final String[] cacheNames, final Map<?, ?> cacheValues, final long ttl) {
+        if (cacheNames == null || cacheNames.length == 0) {
+            throw new IllegalArgumentException(
+                    "Cache names list can not be null or empty for save operation!!");
+        }
+        if (cacheValues == null || cacheValues.isEmpty()) {
+            return true;
+        }
+        Map<Object, CacheEntry> entries = new LinkedHashMap<>(cacheValues.size() * 2);
+        List<Object> bloomKeys = new ArrayList<>(cacheValues.size());
+        cacheValues.forEach((key, value) -> {
+            CacheEntry entry = CacheEntry.wrap(value, ttl, cacheConfigProperties.getTtlJitter());
+            entries.put(key, entry);
+            if (!NullValue.isNull(entry.getValue())) {
+                bloomKeys.add(key);
+            }
+        });
+        List<List<Object>> chunks = chunk(new ArrayList<>(entries.keySet()));
+        boolean saved = true;
+        for (String cacheName : cacheNames) {
+            boolean applied = true;
+            for (List<Object> keys : chunks) {
+                RBatch batch = redissonClient.createBatch();
+                RMapCacheAsync<Object, Object> mapCache = batch.getMapCache(cacheName);
+                for (Object key : keys) {
+                    CacheEntry entry = entries.get(key);
+                    mapCache.fastPutAsync(key, entry, redisTtl(entry), TimeUnit.MILLISECONDS);
+                }
+                applied &= circuitBreakerManager.write(cacheName, batch::executeAsync);
+            }
+            if (!applied) {
+                // 部分批次未写入时整体按未写入处理，补发删除后再广播失效
+                circuitBreakerManager.deferDelete(cacheName, entries.keySet());
+                saved = false;
+            }
+            bloomFilterManager.putAll(cacheName, bloomKeys);
+        }
+        return saved;
+    }
+
+    /**
+     * 批量回源加载后保存至REDIS缓存，已存在的数据不覆盖
+     * 每个批次通过一次管道发送，熔断中的缓存跳过写入
+     *
+     * @param cacheNames
+     * @param cacheValues
+     * @param ttl
+     * @return
+     */
+    @Override
+    public boolean fillAll(final String[] cacheNames, final Map<?, ?> cacheValues, final long ttl) {
+        if (cacheNames == null || cacheNames.length == 0) {
+            throw new IllegalArgumentException(
+                    "Cache names list can not be null or empty for fill operation!!");
+        }
+        if (cacheValues == null || cacheValues.isEmpty()) {
+            return true;
+        }
+        Map<Object, CacheEntry> entries = new LinkedHashMap<>(cacheValues.size() * 2);
+        List<Object> bloomKeys = new ArrayList<>(cacheValues.size());
+        cacheValues.forEach((key, value) -> {
+            CacheEntry entry = CacheEntry.wrap(value, ttl, cacheConfigProperties.getTtlJitter());
+            entries.put(key, entry);
+            if (!NullValue.isNull(entry.getValue())) {
+                bloomKeys.add(key);
+            }
+        });
+        List<List<Object>> chunks = chunk(new ArrayList<>(entries.keySet()));
         for (String cacheName : cacheNames) {
-            redissonClient.getMapCache(cacheName).delete();
+            for (List<Object> keys : chunks) {
+                RBatch batch = redissonClient.createBatch();
+                RMapCacheAsync<Object, Object> mapCache = batch.getMapCache(cacheName);
+                for (Object key : keys) {
+                    CacheEntry entry = entries.get(key);
+                    mapCache.fastPutIfAbsentAsync(key, entry, redisTtl(entry), TimeUnit.MILLISECONDS,
+                            0, TimeUnit.MILLISECONDS);
+                }
+                // 熔断中跳过写入
+                circuitBreakerManager.execute(cacheName, batch::executeAsync, null);
+            }
+            // 已存在的key必然已加入过布隆过滤器，重复加入无影响
+            bloomFilterManager.putAll(cacheName, bloomKeys);
         }
         return true;
     }
 
+    /**
+     * 批量清理缓存
+     * 每个批次通过一次管道发送，熔断中也会发送；未在延迟预算内确认的批次由熔断管理在后台补发
+     *
+     * @param cacheNames
+     * @param cacheKeys
+     * @return 是否全部确认删除
+     */
+    @Override
+    public boolean deleteAll(final String[] cacheNames, final Collection<?> cacheKeys) {
+        if (cacheNames == null || cacheNames.length == 0) {
+            throw new IllegalArgumentException(
+                    "Cache names list can not be null or empty for delete operation!!");
+        }
+        if (cacheKeys == null || cacheKeys.isEmpty()) {
+            return true;
+        }
+        List<List<Object>> chunks = chunk(new ArrayList<>(cacheKeys));
+        boolean deleted = true;
+        for (String cacheName : cacheNames) {
+            if (StringUtils.isEmpty(cacheName)) {
+                continue;
+            }
+            for (List<Object> keys : chunks) {
+                RBatch batch = redissonClient.createBatch();
+                batch.getMapCache(cacheName).fastRemoveAsync(keys.toArray());
+                if (!circuitBreakerManager.delete(cacheName, batch::executeAsync)) {
+                    circuitBreakerManager.deferDelete(cacheName, keys);
+                    deleted = false;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * 按配置的批次大小拆分
+     *
+     * @param keys
+     * @return
+     */
+    private List<List<Object>> chunk(List<Object> keys) {
+        int chunkSize = Math.max(1, cacheConfigProperties.getBatchChunkSize());
+        List<List<Object>> chunks = new ArrayList<>((keys.size() + chunkSize - 1) / chunkSize);
+        for (int from = 0; from < keys.size(); from += chunkSize) {
+            chunks.add(keys.subList(from, Math.min(keys.size(), from + chunkSize)));
+        }
+        return chunks;
+    }
+
     @Override
     public boolean saveByAsync(final String[] cacheNames, final Object cacheKey,
                                final Object cacheValue, long ttl) {
@@ -144,6 +457,15 @@ public class OneLevelCacheService implements CacheService {
         return true;
     }
 
+    @Override
+    public boolean fillByAsync(final String[] cacheNames, final Object cacheKey,
+                               final Object cacheValue, long ttl) {
+
+        // 异步线程池执行处理
+        serviceCallExecutorService.execute(() -> fill(cacheNames, cacheKey, cacheValue, ttl));
+        return true;
+    }
+
     /**
      * 清除缓存信息（异步方式）
      *
@@ -171,4 +493,88 @@ public class OneLevelCacheService implements CacheService {
         return true;
     }
 
+    /**
+     * 基于Redis租约的跨节点加载
+     *
+     * @param cacheName
+     * @param cacheKey
+     * @param leaseMillis
+     * @param waitMillis
+     * @param loader
+     * @return
+     * @throws Throwable
+     */
+    @Override
+    public Object loadWithLease(final String cacheName, final Object cacheKey, final long leaseMillis,
+                                final long waitMillis, final CacheLoader loader) throws Throwable {
+        if (!circuitBreakerManager.allowRequest(cacheName)) {
+            // Redis熔断中，直接由当前节点加载
+            return loader.load();
+        }
+        String leaseName = CacheConstants.LEASE_KEY_PREFIX + cacheName + ":" + cacheKey;
+        String token = CacheConfigProperties.SYSTEM_ID + ":" + Thread.currentThread().getId();
+        RBucket<String> lease = redissonClient.getBucket(leaseName, StringCodec.INSTANCE);
+        if (lease.trySet(token, leaseMillis, TimeUnit.MILLISECONDS)) {
+            // 拿到租约，由当前节点加载
+            cacheMetrics.increment(cacheName, CacheMetrics.LEASE_ACQUIRED);
+            try {
+                return loader.load();
+            } finally {
+                releaseLease(leaseName, token);
+            }
+        }
+
+        // 未拿到租约，等待持有者写回缓存
+        long deadline = System.currentTimeMillis() + waitMillis;
+        long pollInterval = Math.max(1, cacheConfigProperties.getLeasePollInterval());
+        while (true) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            Thread.sleep(Math.min(pollInterval, remaining));
+            Object result = get(cacheName, cacheKey);
+            if (result != null) {
+                cacheMetrics.increment(cacheName, CacheMetrics.LEASE_WAIT_HITS);
+                return result;
+            }
+            if (!lease.isExists()) {
+                // 持有者已结束但没有写回（如结果为空或加载失败），不再等待
+                break;
+            }
+        }
+        cacheMetrics.increment(cacheName, CacheMetrics.LEASE_FALLBACKS);
+        return loader.load();
+    }
+
+    /**
+     * 只有Redis时没有本地缓存，不保留过期数据
+     *
+     * @param cacheName
+     */
+    @Override
+    public void enableStale(final String cacheName) {
+        // Redis中过期的数据已被删除，无需处理
+    }
+
+    @Override
+    public CacheEntry getStale(final String cacheName, final Object cacheKey, final long maxStaleMillis) {
+        return null;
+    }
+
+    /**
+     * 释放租约
+     *
+     * @param leaseName
+     * @param token
+     */
+    private void releaseLease(String leaseName, String token) {
+        try {
+            redissonClient.getScript().eval(RScript.Mode.READ_WRITE, StringCodec.INSTANCE, RELEASE_LEASE_SCRIPT,
+                    RScript.ReturnType.INTEGER, Collections.<Object>singletonList(leaseName), token);
+        } catch (Exception e) {
+            logger.error("releaseLease # release lease failed, it will expire automatically. " + e.getMessage(), e);
+        }
+    }
+
 }
@@ -0,0 +1,179 @@
+package com.mirson.gemini.cache.core.cache;
+
+import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.common.NamedThreadFactory;
+import com.mirson.gemini.cache.core.metrics.CacheMetrics;
+import org.redisson.api.RedissonClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis读取合并
+ * 同一缓存名称在时间窗口（微秒）内的并发读取收集为一批，通过一次getAll（单次脚本调用）从Redis读取，
+ * 再分别完成每个调用方的结果；达到批量上限时立即发送。用于降低高并发下Redis的请求数与连接池压力
+ *
+ * @author zoutongkun
+ */
+public class RedisReadCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisReadCoalescer.class);
+
+    private final RedissonClient redissonClient;
+
+    private final CacheMetrics cacheMetrics;
+
+    /**
+     * 合并窗口（单位：微秒）
+     */
+    private final long window;
+
+    /**
+     * 单批最大key数量
+     */
+    private final int maxBatchSize;
+
+    /**
+     * 当前正在收集的批次，cacheName -> 批次
+     */
+    private final ConcurrentMap<String, PendingBatch> pendingBatches = new ConcurrentHashMap<>();
+
+    /**
+     * 窗口到期后发送批次的线程，未开启时为null
+     */
+    private final ScheduledExecutorService flushExecutor;
+
+    public RedisReadCoalescer(RedissonClient redissonClient,
+                              CacheConfigProperties cacheConfigProperties,
+                              CacheMetrics cacheMetrics) {
+        this.redissonClient = redissonClient;
+        this.cacheMetrics = cacheMetrics;
+        this.window = Math.max(1, cacheConfigProperties.getReadBatchWindow());
+        this.maxBatchSize = Math.max(1, cacheConfigProperties.getReadBatchMaxSize());
+        this.flushExecutor = cacheConfigProperties.isReadBatchEnable()
+                ? Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("Redis-Read-Batch")) : null;
+    }
+
+    /**
+     * 是否开启读取合并
+     *
+     * @return
+     */
+    public boolean isEnabled() {
+        return flushExecutor != null;
+    }
+
+    /**
+     * 加入当前批次读取
+     *
+     * @param cacheName
+     * @param cacheKey
+     * @return Redis中存储的原始数据，不存在时为null
+     */
+    public CompletableFuture<Object> get(String cacheName, Object cacheKey) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        while (true) {
+            PendingBatch batch = pendingBatches.get(cacheName);
+            if (batch == null) {
+                PendingBatch created = new PendingBatch();
+                batch = pendingBatches.putIfAbsent(cacheName, created);
+                if (batch == null) {
+                    batch = created;
+                    PendingBatch scheduled = created;
+                    flushExecutor.schedule(() -> flush(cacheName, scheduled), window, TimeUnit.MICROSECONDS);
+                }
+            }
+            int size = batch.add(cacheKey, future);
+            if (size < 0) {
+                // 批次已发送，加入下一批
+                continue;
+            }
+            if (size >= maxBatchSize) {
+                flush(cacheName, batch);
+            }
+            return future;
+        }
+    }
+
+    /**
+     * 停止发送线程
+     */
+    public void shutdown() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+        }
+    }
+
+    /**
+     * 发送批次（由窗口到期或达到批量上限触发，只发送一次）
+     *
+     * @param cacheName
+     * @param batch
+     */
+    private void flush(String cacheName, PendingBatch batch) {
+        Map<Object, List<CompletableFuture<Object>>> waiters = batch.close();
+        if (waiters == null) {
+            return;
+        }
+        pendingBatches.remove(cacheName, batch);
+        cacheMetrics.increment(cacheName, CacheMetrics.REDIS_READ_BATCHES);
+        cacheMetrics.add(cacheName, CacheMetrics.REDIS_BATCHED_READS, waiters.size());
+        try {
+            redissonClient.getMapCache(cacheName).getAllAsync(waiters.keySet()).whenComplete((values, error) -> {
+                if (error != null) {
+                    waiters.values().forEach(futures -> futures.forEach(future -> future.completeExceptionally(error)));
+                    return;
+                }
+                waiters.forEach((key, futures) -> {
+                    Object value = values.get(key);
+                    futures.forEach(future -> future.complete(value));
+                });
+            });
+        } catch (Exception e) {
+            logger.error("flush # send batch read failed, cacheName: {}", cacheName, e);
+            waiters.values().forEach(futures -> futures.forEach(future -> future.completeExceptionally(e)));
+        }
+    }
+
+    /**
+     * 收集中的批次，相同key只读取一次
+     */
+    private static class PendingBatch {
+
+        private Map<Object, List<CompletableFuture<Object>>> waiters = new LinkedHashMap<>();
+
+        /**
+         * 加入批次
+         *
+         * @return 加入后的key数量，批次已发送时返回-1
+         */
+        synchronized int add(Object key, CompletableFuture<Object> future) {
+            if (waiters == null) {
+                return -1;
+            }
+            waiters.computeIfAbsent(key, k -> new ArrayList<>(1)).add(future);
+            return waiters.size();
+        }
+
+        /**
+         * 关闭批次
+         *
+         * @return 批次中的调用方，已关闭时返回null
+         */
+        synchronized Map<Object, List<CompletableFuture<Object>>> close() {
+            Map<Object, List<CompletableFuture<Object>>> closed = waiters;
+            waiters = null;
+            return closed;
+        }
+    }
+}
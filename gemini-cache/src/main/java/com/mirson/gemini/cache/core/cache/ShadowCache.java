@@ -0,0 +1,137 @@
+package com.mirson.gemini.cache.core.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheWriter;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 过期数据影子区
+ * Caffeine中因过期被移除的数据转存到有界的影子区，原方法调用失败或超时时可返回旧数据（stale-if-error）。
+ * 只有开启了stale-if-error的缓存才会转存；主动删除、容量淘汰的数据不会进入影子区
+ *
+ * @author zoutongkun
+ */
+public class ShadowCache {
+
+    /**
+     * 开启了stale-if-error的缓存
+     */
+    private final Set<String> enabledNames = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 影子区，cacheName -> (key -> 过期数据)
+     */
+    private final ConcurrentMap<String, Cache<Object, ShadowEntry>> shadows = new ConcurrentHashMap<>();
+
+    /**
+     * 每个缓存影子区的最大条数
+     */
+    private final long maximumSize;
+
+    /**
+     * 过期数据最长保留时间（单位：秒）
+     */
+    private final long maxStale;
+
+    public ShadowCache(long maximumSize, long maxStale) {
+        this.maximumSize = maximumSize;
+        this.maxStale = maxStale;
+    }
+
+    /**
+     * 为缓存开启影子区（幂等）
+     *
+     * @param cacheName
+     */
+    public void register(String cacheName) {
+        enabledNames.add(cacheName);
+    }
+
+    /**
+     * 创建转存过期数据的Caffeine写入器，同步回调，保证清理后立即可以读到过期数据
+     *
+     * @param cacheName
+     * @return
+     */
+    public CacheWriter<Object, Object> writer(String cacheName) {
+        return new CacheWriter<Object, Object>() {
+            @Override
+            public void write(Object key, Object value) {
+                // 写入时无需处理
+            }
+
+            @Override
+            public void delete(Object key, Object value, RemovalCause cause) {
+                if (cause == RemovalCause.EXPIRED && value instanceof CacheEntry && enabledNames.contains(cacheName)) {
+                    shadow(cacheName).put(key, new ShadowEntry((CacheEntry) value, System.currentTimeMillis()));
+                }
+            }
+        };
+    }
+
+    /**
+     * 获取过期数据
+     *
+     * @param cacheName
+     * @param key
+     * @param maxStaleMillis 过期后最多可使用多久（单位：毫秒）
+     * @return 不存在或已超出可用时间返回null
+     */
+    public CacheEntry get(String cacheName, Object key, long maxStaleMillis) {
+        Cache<Object, ShadowEntry> shadow = shadows.get(cacheName);
+        if (shadow == null) {
+            return null;
+        }
+        ShadowEntry shadowEntry = shadow.getIfPresent(key);
+        if (shadowEntry == null || System.currentTimeMillis() - shadowEntry.expiredAt > maxStaleMillis) {
+            return null;
+        }
+        return shadowEntry.entry;
+    }
+
+    /**
+     * 删除过期数据（数据被主动删除或更新时调用）
+     *
+     * @param cacheName
+     * @param key       为空时清空该缓存的影子区
+     */
+    public void invalidate(String cacheName, Object key) {
+        Cache<Object, ShadowEntry> shadow = shadows.get(cacheName);
+        if (shadow == null) {
+            return;
+        }
+        if (key == null) {
+            shadow.invalidateAll();
+        } else {
+            shadow.invalidate(key);
+        }
+    }
+
+    private Cache<Object, ShadowEntry> shadow(String cacheName) {
+        return shadows.computeIfAbsent(cacheName, name -> Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(maxStale, TimeUnit.SECONDS)
+                .build());
+    }
+
+    /**
+     * 过期数据及其过期时间
+     */
+    private static class ShadowEntry {
+
+        private final CacheEntry entry;
+
+        private final long expiredAt;
+
+        ShadowEntry(CacheEntry entry, long expiredAt) {
+            this.entry = entry;
+            this.expiredAt = expiredAt;
+        }
+    }
+}
@@ -3,13 +3,26 @@ package com.mirson.gemini.cache.core.cache;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.core.breaker.RedisCircuitBreakerManager;
+import com.mirson.gemini.cache.core.loader.CacheLoader;
+import com.mirson.gemini.cache.core.loader.SingleFlightLoader;
+import com.mirson.gemini.cache.core.metrics.CacheMetrics;
 import com.mirson.gemini.cache.core.notify.NotifyService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * 两级缓存实现
@@ -24,15 +37,30 @@ public class TwoLevelCacheService implements CacheService {
 
     private static final Logger logger = LoggerFactory.getLogger(TwoLevelCacheService.class);
 
+    /**
+     * 准入策略为frequent且未设置最大条数时，记录的key数量上限
+     */
+    private static final long DOORKEEPER_MAXIMUM_SIZE = 10000;
+
+    /**
+     * 准入策略为frequent且未设置写入后过期时间时的准入窗口（单位：毫秒）
+     */
+    private static final long DOORKEEPER_WINDOW = 60000;
+
+    /**
+     * 写入的数据不是从Redis读取的（或读取开始时间未知），清空缓存的记录期内都按旧数据校验
+     */
+    private static final long UNKNOWN_READ = -1;
+
     /**
      * 二级缓存
      */
     private CacheService secondCacheService;
 
     /**
-     * Caffeine内部缓存
+     * Caffeine内部缓存，首次写入时按该缓存的配置创建
      */
-    private ConcurrentMap<String, Cache> cacheMap = new ConcurrentHashMap<>();
+    private ConcurrentMap<String, LocalCache> cacheMap = new ConcurrentHashMap<>();
 
     /**
      * Redis 发送服务接口
@@ -45,51 +73,261 @@ public class TwoLevelCacheService implements CacheService {
      */
     private CacheConfigProperties cacheConfigProperties;
 
+    /**
+     * 本地缓存未命中时，合并同一key的并发Redis读取
+     */
+    private SingleFlightLoader redisReadLoader;
+
+    /**
+     * 本地缓存配置
+     */
+    private LocalCacheSpecs localCacheSpecs;
+
+    /**
+     * 缓存统计指标
+     */
+    private CacheMetrics cacheMetrics;
+
+    /**
+     * 本地缓存内存预算
+     */
+    private LocalMemoryBudget localMemoryBudget;
+
+    /**
+     * 堆外缓存，保存较大的条目
+     */
+    private OffHeapStore offHeapStore;
+
+    /**
+     * 主机共享缓存段，同一主机上的JVM共享
+     */
+    private HostSharedSegment hostSharedSegment;
+
+    /**
+     * Redis熔断，熔断期间只使用Caffeine缓存
+     */
+    private RedisCircuitBreakerManager circuitBreakerManager;
+
+    /**
+     * 过期数据影子区
+     */
+    private ShadowCache shadowCache;
+
+    /**
+     * 缓存条目版本号，未开启版本校验时为null
+     */
+    private CacheVersions cacheVersions;
+
+    /**
+     * 本地缓存创建监听器（如按缓存名称订阅变更消息）
+     */
+    private List<Consumer<String>> createListeners = new CopyOnWriteArrayList<>();
 
     public TwoLevelCacheService(CacheService secondCacheService,
                                 NotifyService notifyService,
-                                CacheConfigProperties cacheConfigProperties) {
+                                CacheConfigProperties cacheConfigProperties,
+                                CacheMetrics cacheMetrics,
+                                RedisCircuitBreakerManager circuitBreakerManager,
+                                LocalCacheSpecs localCacheSpecs,
+                                LocalMemoryBudget localMemoryBudget,
+                                OffHeapStore offHeapStore,
+                                HostSharedSegment hostSharedSegment,
+                                CacheVersions cacheVersions) {
         this.secondCacheService = secondCacheService;
         this.notifyService = notifyService;
         this.cacheConfigProperties = cacheConfigProperties;
+        this.redisReadLoader = new SingleFlightLoader(cacheMetrics, CacheMetrics.COALESCED_REDIS_READS);
+        this.cacheMetrics = cacheMetrics;
+        this.localCacheSpecs = localCacheSpecs;
+        this.localMemoryBudget = localMemoryBudget;
+        this.offHeapStore = offHeapStore;
+        this.hostSharedSegment = hostSharedSegment;
+        this.cacheVersions = cacheVersions;
+        // 配置变更后丢弃原有的本地缓存，下次写入时按新配置重建
+        localCacheSpecs.addListener(cacheName -> {
+            LocalCache removed = cacheMap.remove(cacheName);
+            if (removed != null && removed.cache != null) {
+                localMemoryBudget.unregister(cacheName, removed.cache);
+                removed.cache.invalidateAll();
+            }
+            if (offHeapStore.isEnabled()) {
+                offHeapStore.removeAll(cacheName);
+            }
+        });
+        this.circuitBreakerManager = circuitBreakerManager;
+        if (circuitBreakerManager != null && notifyService != null) {
+            // 熔断期间未写入Redis的更新在补发删除后才广播失效，其他节点不会再从Redis读到旧值
+            circuitBreakerManager.addReplayListener((cacheName, keys) -> {
+                if (keys == null) {
+                    notifyService.sendMessage(new String[]{cacheName}, null);
+                } else {
+                    notifyService.sendBatchMessage(new String[]{cacheName}, keys);
+                }
+            });
+        }
+        this.shadowCache = new ShadowCache(cacheConfigProperties.getShadowMaximumSize(),
+                cacheConfigProperties.getShadowMaxStale());
     }
 
     /**
      * 清理缓存（支持批量清理）
+     * 收到其他节点的变更消息时调用，主机共享缓存段由消息监听器单独处理
      *
      * @param cacheNames
      * @param key
+     * @param version    变更的版本号，之后比该版本旧的数据不再写入本地缓存
      */
-    public void clearNotSend(String[] cacheNames, Object key) {
+    public void clearNotSend(String[] cacheNames, Object key, long version) {
         for (String cacheName : cacheNames) {
-            doClearAndSend(cacheName, key, false);
+            doClearAndSend(cacheName, key, false, false, version);
         }
     }
 
     /**
      * 初始化caffeine缓存对象
      *
+     * @param cacheName
+     * @param spec
+     * @param expiry
      * @return
      */
-    public Cache<Object, Object> caffeineCache() {
+    public Cache<Object, Object> caffeineCache(String cacheName, LocalCacheSpec spec, LocalCacheExpiry expiry) {
         Caffeine<Object, Object> cacheBuilder = Caffeine.newBuilder();
-        // Caffeine 缓存初始化参数配置
-        if (cacheConfigProperties.getExpireAfterAccess() > 0) {
-            cacheBuilder.expireAfterAccess(cacheConfigProperties.getExpireAfterAccess(), TimeUnit.MILLISECONDS);
+        // Caffeine 缓存初始化参数配置（写入后过期、访问后过期以及空值的过期时间）
+        cacheBuilder.expireAfter(expiry);
+        // 过期数据转存到影子区
+        cacheBuilder.writer(shadowCache.writer(cacheName));
+        if (spec.getInitialCapacity() > 0) {
+            cacheBuilder.initialCapacity(spec.getInitialCapacity());
+        }
+        if (localMemoryBudget.isEnabled()) {
+            // 开启内存预算时按估算的字节数淘汰，额度由内存预算统一分配
+            cacheBuilder.maximumWeight(localMemoryBudget.initialShare())
+                    .weigher(EntryWeigher.INSTANCE)
+                    .recordStats();
+        } else if (spec.getMaximumSize() > 0) {
+            cacheBuilder.maximumSize(spec.getMaximumSize());
+        }
+        return cacheBuilder.build();
+    }
+
+    /**
+     * 添加本地缓存创建监听器，已创建的缓存立即通知一次
+     * 监听器在创建本地缓存之前调用（不在cacheMap的锁内），同一缓存名称可能被多个线程同时通知
+     *
+     * @param listener 参数为缓存名称，需保证幂等与线程安全
+     */
+    public void addCreateListener(Consumer<String> listener) {
+        createListeners.add(listener);
+        cacheMap.keySet().forEach(listener);
+    }
+
+    /**
+     * 本地缓存当前生效的配置
+     *
+     * @param cacheName
+     * @return
+     */
+    public LocalCacheSpec getLocalSpec(String cacheName) {
+        return localCacheSpecs.get(cacheName);
+    }
+
+    /**
+     * 已创建的本地缓存（不含未开启本地缓存的缓存名称）
+     *
+     * @return cacheName -> Caffeine缓存
+     */
+    public Map<String, Cache<Object, Object>> localCaches() {
+        Map<String, Cache<Object, Object>> caches = new LinkedHashMap<>();
+        cacheMap.forEach((cacheName, localCache) -> {
+            if (localCache.cache != null) {
+                caches.put(cacheName, localCache.cache);
+            }
+        });
+        return caches;
+    }
+
+    /**
+     * 恢复快照中的本地缓存条目，不覆盖已有的条目，不经过准入策略
+     *
+     * @param cacheName
+     * @param key
+     * @param entry
+     * @param expireAfterMillis 剩余的过期时间
+     */
+    public void restoreLocal(String cacheName, Object key, CacheEntry entry, long expireAfterMillis) {
+        Cache<Object, Object> cache = obtainLocalCache(cacheName).cache;
+        if (cache != null) {
+            cache.policy().expireVariably().ifPresent(expiration ->
+                    expiration.putIfAbsent(key, entry, expireAfterMillis, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * 获取本地缓存，未开启本地缓存或尚未创建时返回null
+     *
+     * @param cacheName
+     * @return
+     */
+    private Cache<Object, Object> localCache(String cacheName) {
+        LocalCache localCache = cacheMap.get(cacheName);
+        return localCache == null ? null : localCache.cache;
+    }
+
+    /**
+     * 获取本地缓存，不存在时按配置创建
+     *
+     * @param cacheName
+     * @return
+     */
+    private LocalCache obtainLocalCache(String cacheName) {
+        LocalCache localCache = cacheMap.get(cacheName);
+        if (localCache == null) {
+            // 在创建前通知（如订阅变更消息），完成后才创建并读取Redis，不会错过之后的变更消息；
+            // 监听器可能阻塞（网络IO），在computeIfAbsent之外执行，不阻塞其他缓存名称的创建；
+            // 监听器抛出异常（如订阅失败）时不创建，异常抛给本次访问，下次访问时重试
+            for (Consumer<String> listener : createListeners) {
+                listener.accept(cacheName);
+            }
+            localCache = cacheMap.computeIfAbsent(cacheName, this::createLocalCache);
         }
-        if (cacheConfigProperties.getExpireAfterWrite() > 0) {
-            cacheBuilder.expireAfterWrite(cacheConfigProperties.getExpireAfterWrite(), TimeUnit.MILLISECONDS);
+        return localCache;
+    }
+
+    private LocalCache createLocalCache(String cacheName) {
+        LocalCacheSpec spec = localCacheSpecs.get(cacheName);
+        logger.info("create local cache {} with spec: {}", cacheName, spec);
+        if (!spec.isEnabled()) {
+            return new LocalCache(null, null, null);
         }
-        if (cacheConfigProperties.getInitialCapacity() > 0) {
-            cacheBuilder.initialCapacity(cacheConfigProperties.getInitialCapacity());
+        LocalCacheExpiry expiry = new LocalCacheExpiry(spec.getExpireAfterWrite(), spec.getExpireAfterAccess(),
+                cacheConfigProperties.getNullValueExpire(), cacheConfigProperties.getTtlJitter());
+        Cache<Object, Object> doorkeeper = null;
+        if (spec.getAdmission() == LocalCacheSpec.Admission.FREQUENT) {
+            // 记录第一次写入的key，准入窗口与写入后过期时间一致（未设置时为1分钟）
+            doorkeeper = Caffeine.newBuilder()
+                    .maximumSize(spec.getMaximumSize() > 0 ? spec.getMaximumSize() : DOORKEEPER_MAXIMUM_SIZE)
+                    .expireAfterWrite(spec.getExpireAfterWrite() > 0 ? spec.getExpireAfterWrite()
+                            : DOORKEEPER_WINDOW, TimeUnit.MILLISECONDS)
+                    .build();
         }
-        if (cacheConfigProperties.getMaximumSize() > 0) {
-            cacheBuilder.maximumSize(cacheConfigProperties.getMaximumSize());
+        cacheMetrics.gauge(cacheName, CacheMetrics.LOCAL_SIZE, () -> {
+            Cache<Object, Object> current = localCache(cacheName);
+            return current == null ? 0 : current.estimatedSize();
+        });
+        Cache<Object, Long> versions = null;
+        if (cacheConfigProperties.getVersionTombstoneTtl() > 0) {
+            // 记录已收到的变更版本号，只需覆盖从Redis读取到写入本地缓存的时间窗口
+            versions = Caffeine.newBuilder()
+                    .maximumSize(Math.max(1, cacheConfigProperties.getVersionTombstoneSize()))
+                    .expireAfterWrite(cacheConfigProperties.getVersionTombstoneTtl(), TimeUnit.MILLISECONDS)
+                    .build();
         }
-        if (cacheConfigProperties.getRefreshAfterWrite() > 0) {
-            cacheBuilder.refreshAfterWrite(cacheConfigProperties.getRefreshAfterWrite(), TimeUnit.MILLISECONDS);
+        Cache<Object, Object> cache = caffeineCache(cacheName, spec, expiry);
+        if (localMemoryBudget.isEnabled()) {
+            localMemoryBudget.register(cacheName, cache);
         }
-        return cacheBuilder.build();
+        return new LocalCache(cache, doorkeeper, versions);
     }
 
     /**
@@ -101,57 +339,363 @@ public class TwoLevelCacheService implements CacheService {
      */
     @Override
     public Object get(final String cacheName, final Object cacheKey) {
-        Object result = null;
-        Cache caffeineCache = cacheMap.get(cacheName);
+        return CacheEntry.valueOf(getEntry(cacheName, cacheKey));
+    }
+
+    /**
+     * 获取缓存条目
+     *
+     * @param cacheName
+     * @param cacheKey
+     * @return
+     */
+    @Override
+    public CacheEntry getEntry(final String cacheName, final Object cacheKey) {
+        CacheEntry result = null;
+        // 首次访问时创建本地缓存（并订阅其变更消息），之后再读取Redis
+        Cache<Object, Object> caffeineCache = obtainLocalCache(cacheName).cache;
         if (null != caffeineCache) {
             // 1.先从本地缓存获取
-            result = caffeineCache.getIfPresent(cacheKey);
+            result = (CacheEntry) caffeineCache.getIfPresent(cacheKey);
+        }
+
+        if (null == result && null != caffeineCache) {
+            // 2.从堆外缓存获取
+            result = getFromOffHeap(cacheName, cacheKey, caffeineCache);
+        }
+
+        if (null == result && null != caffeineCache) {
+            // 3.从主机共享缓存段获取
+            result = getFromShared(cacheName, cacheKey);
         }
 
         if (null == result) {
-            // 2.从Redis缓存获取
-            result = secondCacheService.get(cacheName, cacheKey);
-            logger.info("getFromCache # fetch data from redis cache.");
-            // 3.再保存更新Caffeine缓存
-            saveCaffeineCache(cacheName, cacheKey, result, caffeineCache);
+            // 4.从Redis缓存获取（同一key的并发读取合并为一次）
+            result = getFromRedis(cacheName, cacheKey);
         }
 
         return result;
     }
 
+    /**
+     * 批量获取缓存对象
+     *
+     * @param cacheName
+     * @param cacheKeys
+     * @return
+     */
+    @Override
+    public Map<Object, Object> getAll(final String cacheName, final Collection<?> cacheKeys) {
+        return CacheEntry.valuesOf(getAllEntries(cacheName, cacheKeys));
+    }
+
+    /**
+     * 批量获取缓存条目
+     * 先从本地缓存获取，剩余的key一次性从Redis获取，并保存更新Caffeine缓存
+     *
+     * @param cacheName
+     * @param cacheKeys
+     * @return
+     */
+    @Override
+    public Map<Object, CacheEntry> getAllEntries(final String cacheName, final Collection<?> cacheKeys) {
+        Map<Object, CacheEntry> result = new HashMap<>(cacheKeys.size() * 2);
+        Cache<Object, Object> caffeineCache = obtainLocalCache(cacheName).cache;
+        List<Object> remainingKeys = new ArrayList<>(cacheKeys.size());
+        for (Object cacheKey : cacheKeys) {
+            CacheEntry entry = caffeineCache == null || cacheKey == null
+                    ? null : (CacheEntry) caffeineCache.getIfPresent(cacheKey);
+            if (entry == null && caffeineCache != null && cacheKey != null) {
+                entry = getFromOffHeap(cacheName, cacheKey, caffeineCache);
+                if (entry == null) {
+                    entry = getFromShared(cacheName, cacheKey);
+                }
+            }
+            if (entry != null) {
+                result.put(cacheKey, entry);
+            } else if (cacheKey != null) {
+                remainingKeys.add(cacheKey);
+            }
+        }
+        if (remainingKeys.isEmpty()) {
+            return result;
+        }
+        long readClears = obtainLocalCache(cacheName).clears;
+        Map<Object, CacheEntry> redisEntries = secondCacheService.getAllEntries(cacheName, remainingKeys);
+        for (Map.Entry<Object, CacheEntry> redisEntry : redisEntries.entrySet()) {
+            saveCaffeineCache(cacheName, redisEntry.getKey(), redisEntry.getValue(), readClears);
+        }
+        result.putAll(redisEntries);
+        return result;
+    }
+
+    /**
+     * 从堆外缓存获取，读取次数达到提升次数后写入Caffeine缓存
+     *
+     * @param cacheName
+     * @param cacheKey
+     * @param caffeineCache
+     * @return
+     */
+    private CacheEntry getFromOffHeap(String cacheName, Object cacheKey, Cache<Object, Object> caffeineCache) {
+        if (!offHeapStore.isEnabled()) {
+            return null;
+        }
+        CacheEntry result = offHeapStore.get(cacheName, cacheKey);
+        LocalCache localCache = cacheMap.get(cacheName);
+        if (result != null && localCache != null && localCache.cache == caffeineCache
+                && offHeapStore.shouldPromote(cacheName, cacheKey)) {
+            localCache.putIfCurrent(cacheName, cacheKey, result, UNKNOWN_READ);
+        }
+        return result;
+    }
+
+    /**
+     * 从主机共享缓存段获取，并保存更新Caffeine缓存
+     *
+     * @param cacheName
+     * @param cacheKey
+     * @return
+     */
+    private CacheEntry getFromShared(String cacheName, Object cacheKey) {
+        if (!hostSharedSegment.isEnabled()) {
+            return null;
+        }
+        CacheEntry result = hostSharedSegment.get(cacheName, cacheKey);
+        if (result != null) {
+            putLocal(cacheName, obtainLocalCache(cacheName), cacheKey, result, UNKNOWN_READ);
+        }
+        return result;
+    }
+
+    /**
+     * 从Redis缓存获取，并保存更新Caffeine缓存
+     *
+     * @param cacheName
+     * @param cacheKey
+     * @return
+     */
+    private CacheEntry getFromRedis(String cacheName, Object cacheKey) {
+        try {
+            return (CacheEntry) redisReadLoader.load(cacheName, cacheKey, cacheConfigProperties.getTimeout(), () -> {
+                long readClears = obtainLocalCache(cacheName).clears;
+                CacheEntry result = secondCacheService.getEntry(cacheName, cacheKey);
+                logger.debug("getFromCache # fetch data from redis cache.");
+                // 5.再保存更新Caffeine缓存
+                saveCaffeineCache(cacheName, cacheKey, result, readClears);
+                return result;
+            });
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     /**
      * 保存更新Caffeine缓存
      *
      * @param cacheName
      * @param cacheKey
      * @param result
-     * @param caffeineCache
+     * @param readClears 开始读取Redis时本地缓存的清空次数
      */
-    private void saveCaffeineCache(String cacheName, Object cacheKey, Object result, Cache caffeineCache) {
+    private void saveCaffeineCache(String cacheName, Object cacheKey, CacheEntry result, long readClears) {
         if (null != result) {
             // 获取缓存对象
-            if (caffeineCache == null) {
-                caffeineCache = caffeineCache();
-                cacheMap.putIfAbsent(cacheName, caffeineCache);
+            LocalCache localCache = obtainLocalCache(cacheName);
+            putLocal(cacheName, localCache, cacheKey, result, readClears);
+            putShared(cacheName, localCache, cacheKey, result, readClears);
+        }
+    }
+
+    /**
+     * 写入主机共享缓存段（未开启本地缓存的缓存不写入）
+     *
+     * @param cacheName
+     * @param localCache
+     * @param key
+     * @param value
+     * @param readClears
+     */
+    private void putShared(String cacheName, LocalCache localCache, Object key, CacheEntry value, long readClears) {
+        if (localCache.cache != null && hostSharedSegment.isEnabled() && !localCache.isStale(key, value, readClears)) {
+            hostSharedSegment.put(cacheName, key, value, localExpireAt(cacheName, value));
+            if (localCache.isStale(key, value, readClears)) {
+                // 写入期间收到了更新的变更
+                hostSharedSegment.remove(cacheName, key);
             }
-            caffeineCache.put(cacheKey, result);
         }
     }
 
+    /**
+     * 写入本地缓存，较大的条目写入堆外缓存
+     * 本地过期时间由LocalCacheExpiry按条目的生命周期计算，堆外缓存的过期时间与其一致；
+     * 比已收到的变更版本旧的条目不写入
+     *
+     * @param cacheName
+     * @param localCache
+     * @param key
+     * @param value
+     * @param readClears 开始读取Redis时本地缓存的清空次数，不是从Redis读取的数据为UNKNOWN_READ
+     */
+    private void putLocal(String cacheName, LocalCache localCache, Object key, CacheEntry value, long readClears) {
+        if (localCache.cache == null) {
+            return;
+        }
+        if (localCache.isStale(key, value, readClears)) {
+            cacheMetrics.increment(cacheName, CacheMetrics.LOCAL_VERSION_REJECTS);
+            return;
+        }
+        if (offHeapStore.isEnabled()) {
+            if (EntryWeigher.INSTANCE.weigh(key, value) >= offHeapStore.getMinValueSize()
+                    && offHeapStore.put(cacheName, key, value, localExpireAt(cacheName, value))) {
+                // 旧值可能已提升到Caffeine
+                localCache.cache.invalidate(key);
+                if (localCache.isStale(key, value, readClears)) {
+                    // 写入期间收到了更新的变更
+                    offHeapStore.remove(cacheName, key);
+                }
+                return;
+            }
+            // 旧值可能在堆外缓存中
+            offHeapStore.remove(cacheName, key);
+        }
+        if (localCache.admit(cacheName, key)) {
+            localCache.putIfCurrent(cacheName, key, value, readClears);
+        }
+    }
+
+    /**
+     * 堆外缓存与主机共享缓存段中条目的过期时间：条目剩余的生命周期，没有时使用本地缓存配置的写入后过期时间，
+     * 空值不超过空值的过期时间
+     *
+     * @param cacheName
+     * @param value
+     * @return 单位：毫秒，不过期时为Long.MAX_VALUE
+     */
+    private long localExpireAt(String cacheName, CacheEntry value) {
+        long now = System.currentTimeMillis();
+        long remaining = value.remainingTtl(now);
+        if (remaining < 0) {
+            remaining = localCacheSpecs.get(cacheName).getExpireAfterWrite();
+        }
+        if (NullValue.isNull(value.getValue()) && cacheConfigProperties.getNullValueExpire() > 0) {
+            remaining = remaining > 0 ? Math.min(remaining, cacheConfigProperties.getNullValueExpire())
+                    : cacheConfigProperties.getNullValueExpire();
+        }
+        return remaining > 0 ? now + remaining : Long.MAX_VALUE;
+    }
+
     @Override
     public boolean save(String[] cacheNames, Object cacheKey, Object cacheValue, long ttl) {
-        //先写到redis
-        boolean result = secondCacheService.save(cacheNames, cacheKey, cacheValue, ttl);
+        CacheEntry entry = CacheEntry.wrap(cacheValue, ttl, cacheConfigProperties.getTtlJitter())
+                .withVersion(nextVersion(cacheNames));
+        //先写到redis，按缓存名称分别确认是否写入
+        List<String> sendNames = new ArrayList<>(cacheNames.length);
+        for (String cacheName : cacheNames) {
+            if (secondCacheService.save(new String[]{cacheName}, cacheKey, entry, ttl)) {
+                sendNames.add(cacheName);
+            }
+        }
         // 再保存并广播更新二级缓存
-        saveAndSend(cacheNames, cacheKey, cacheValue);
-        return result;
+        saveAndSend(cacheNames, sendNames, cacheKey, entry);
+        return sendNames.size() == cacheNames.length;
     }
 
     @Override
     public boolean saveByAsync(String[] cacheNames, Object cacheKey, Object cacheValue, long ttl) {
-        boolean result = secondCacheService.saveByAsync(cacheNames, cacheKey, cacheValue, ttl);
-        // 保存并广播更新二级缓存
-        saveAndSend(cacheNames, cacheKey, cacheValue);
+        CacheEntry entry = CacheEntry.wrap(cacheValue, ttl, cacheConfigProperties.getTtlJitter())
+                .withVersion(nextVersion(cacheNames));
+        boolean result = secondCacheService.saveByAsync(cacheNames, cacheKey, entry, ttl);
+        // 异步写入无法确认结果，直接保存并广播更新二级缓存，未写入Redis的更新补发删除后会再次广播
+        saveAndSend(cacheNames, Arrays.asList(cacheNames), cacheKey, entry);
+        return result;
+    }
+
+    @Override
+    public boolean saveAll(String[] cacheNames, Map<?, ?> cacheValues, long ttl) {
+        // 同一批写入使用同一个版本号
+        long version = cacheValues.isEmpty() ? 0 : nextVersion(cacheNames);
+        Map<Object, CacheEntry> entries = new LinkedHashMap<>(cacheValues.size() * 2);
+        cacheValues.forEach((key, value) -> entries.put(key,
+                CacheEntry.wrap(value, ttl, cacheConfigProperties.getTtlJitter()).withVersion(version)));
+        //先批量写到redis，按缓存名称分别确认是否写入
+        List<String> sendNames = new ArrayList<>(cacheNames.length);
+        for (String cacheName : cacheNames) {
+            if (secondCacheService.saveAll(new String[]{cacheName}, entries, ttl)) {
+                sendNames.add(cacheName);
+            }
+        }
+        //再保存本地缓存，所有key合并为一条消息广播
+        for (String cacheName : cacheNames) {
+            entries.forEach((key, entry) -> doSaveAndSend(cacheName, key, entry, false));
+        }
+        if (!sendNames.isEmpty() && !entries.isEmpty()) {
+            notifyService.sendBatchMessage(sendNames.toArray(new String[0]), entries.keySet(), version);
+        }
+        return sendNames.size() == cacheNames.length;
+    }
+
+    /**
+     * 回源加载后写入缓存
+     * 其他节点的本地缓存中没有该key（否则不会回源）或是同样有效的数据，无需广播，
+     * 避免热点key在各节点回源时互相清除本地缓存
+     *
+     * @param cacheNames
+     * @param cacheKey
+     * @param cacheValue
+     * @param ttl
+     * @return
+     */
+    @Override
+    public boolean fill(String[] cacheNames, Object cacheKey, Object cacheValue, long ttl) {
+        CacheEntry entry = CacheEntry.wrap(cacheValue, ttl, cacheConfigProperties.getTtlJitter());
+        //先写到redis（已存在时不覆盖）
+        boolean result = secondCacheService.fill(cacheNames, cacheKey, entry, ttl);
+        //再保存本地缓存，不广播
+        for (String cacheName : cacheNames) {
+            doSaveAndSend(cacheName, cacheKey, entry, false);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean fillAll(String[] cacheNames, Map<?, ?> cacheValues, long ttl) {
+        Map<Object, CacheEntry> entries = new LinkedHashMap<>(cacheValues.size() * 2);
+        cacheValues.forEach((key, value) ->
+                entries.put(key, CacheEntry.wrap(value, ttl, cacheConfigProperties.getTtlJitter())));
+        boolean result = secondCacheService.fillAll(cacheNames, entries, ttl);
+        for (String cacheName : cacheNames) {
+            entries.forEach((key, entry) -> doSaveAndSend(cacheName, key, entry, false));
+        }
+        return result;
+    }
+
+    @Override
+    public boolean fillByAsync(String[] cacheNames, Object cacheKey, Object cacheValue, long ttl) {
+        CacheEntry entry = CacheEntry.wrap(cacheValue, ttl, cacheConfigProperties.getTtlJitter());
+        boolean result = secondCacheService.fillByAsync(cacheNames, cacheKey, entry, ttl);
+        for (String cacheName : cacheNames) {
+            doSaveAndSend(cacheName, cacheKey, entry, false);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean deleteAll(String[] cacheNames, Collection<?> cacheKeys) {
+        long version = cacheKeys.isEmpty() ? 0 : nextVersion(cacheNames);
+        boolean result = secondCacheService.deleteAll(cacheNames, cacheKeys);
+        for (String cacheName : cacheNames) {
+            for (Object cacheKey : cacheKeys) {
+                if (cacheKey != null) {
+                    doClearAndSend(cacheName, cacheKey, false, true, version);
+                }
+            }
+        }
+        if (!cacheKeys.isEmpty()) {
+            notifyService.sendBatchMessage(cacheNames, cacheKeys, version);
+        }
         return result;
     }
 
@@ -165,45 +709,86 @@ public class TwoLevelCacheService implements CacheService {
         throw new RuntimeException("一级缓存目前不支持异步处理！");
     }
 
+    @Override
+    public Object loadWithLease(String cacheName, Object cacheKey, long leaseMillis, long waitMillis,
+                                CacheLoader loader) throws Throwable {
+        // 当前节点加载时由loader写回两级缓存，等待其他节点写回的数据在下次读取时更新到Caffeine缓存
+        return secondCacheService.loadWithLease(cacheName, cacheKey, leaseMillis, waitMillis, loader);
+    }
+
+    @Override
+    public void enableStale(String cacheName) {
+        shadowCache.register(cacheName);
+    }
+
+    @Override
+    public CacheEntry getStale(String cacheName, Object cacheKey, long maxStaleMillis) {
+        Cache<Object, Object> caffeineCache = localCache(cacheName);
+        if (caffeineCache != null) {
+            // 先清理已过期的本地缓存，使其转存到影子区
+            caffeineCache.cleanUp();
+        }
+        return shadowCache.get(cacheName, cacheKey, maxStaleMillis);
+    }
+
     @Override
     public boolean delete(String[] cacheNames, Object cacheKey) {
+        long version = nextVersion(cacheNames);
         boolean result = secondCacheService.delete(cacheNames, cacheKey);
-        clearAndSend(cacheNames, cacheKey);
+        clearAndSend(cacheNames, cacheKey, version);
         return result;
     }
 
     @Override
     public boolean delete(String[] cacheNames) {
+        long version = nextVersion(cacheNames);
         boolean result = secondCacheService.delete(cacheNames);
-        clearAndSend(cacheNames);
+        clearAndSend(cacheNames, version);
         return result;
     }
 
+    /**
+     * 分配新的版本号
+     *
+     * @param cacheNames
+     * @return 未开启版本校验时返回0（不带版本号），不访问Redis
+     */
+    private long nextVersion(String[] cacheNames) {
+        return cacheVersions == null ? 0 : cacheVersions.next(cacheNames);
+    }
+
     /**
      * 清理缓存（支持批量清理）
      *
      * @param cacheNames
+     * @param version
      */
-    private void clearAndSend(String[] cacheNames) {
+    private void clearAndSend(String[] cacheNames, long version) {
         for (String cacheName : cacheNames) {
-            doClearAndSend(cacheName, null, false);
+            doClearAndSend(cacheName, null, false, true, version);
         }
         // 发送Redis缓存更新消息
-        notifyService.sendMessage(cacheNames, null);
+        notifyService.sendMessage(cacheNames, null, version);
     }
 
     /**
      * 保存并且发送缓存（支持批量清理）
+     * 未写入Redis的缓存不广播，避免其他节点从Redis读到旧值，由补发删除后再广播失效
      *
      * @param cacheNames
+     * @param sendNames  已写入Redis、需要广播的缓存名称
      * @param key
+     * @param cacheValue
      */
-    private void saveAndSend(String[] cacheNames, Object key, Object cacheValue) {
+    private void saveAndSend(String[] cacheNames, List<String> sendNames, Object key, CacheEntry cacheValue) {
         for (String cacheName : cacheNames) {
             doSaveAndSend(cacheName, key, cacheValue, false);
         }
+        if (sendNames.isEmpty()) {
+            return;
+        }
         // 发送Redis缓存更新消息, 所有cacheNames统一发送
-        notifyService.sendMessage(cacheNames, key);
+        notifyService.sendMessage(sendNames.toArray(new String[0]), key, cacheValue.getVersion());
     }
 
     /**
@@ -211,13 +796,14 @@ public class TwoLevelCacheService implements CacheService {
      *
      * @param cacheNames
      * @param key
+     * @param version
      */
-    private void clearAndSend(String[] cacheNames, Object key) {
+    private void clearAndSend(String[] cacheNames, Object key, long version) {
         for (String cacheName : cacheNames) {
-            doClearAndSend(cacheName, key, false);
+            doClearAndSend(cacheName, key, false, true, version);
         }
         // 发送Redis缓存更新消息
-        notifyService.sendMessage(cacheNames, key);
+        notifyService.sendMessage(cacheNames, key, version);
     }
 
     /**
@@ -225,19 +811,20 @@ public class TwoLevelCacheService implements CacheService {
      *
      * @param cacheName
      * @param key
+     * @param value      过期时间由条目自身的生命周期决定
+     * @param isNeedSend
      */
-    private void doSaveAndSend(String cacheName, Object key, Object value, boolean isNeedSend) {
+    private void doSaveAndSend(String cacheName, Object key, CacheEntry value, boolean isNeedSend) {
         // 获取缓存对象
-        Cache caffeineCache = cacheMap.get(cacheName);
-        if (caffeineCache == null) {
-            caffeineCache = caffeineCache();
-            cacheMap.putIfAbsent(cacheName, caffeineCache);
-        }
-        caffeineCache.put(key, value);
+        LocalCache localCache = obtainLocalCache(cacheName);
+        // 当前节点并发读取到的旧数据不能再覆盖本次写入
+        localCache.seen(key, value.getVersion());
+        putLocal(cacheName, localCache, key, value, UNKNOWN_READ);
+        putShared(cacheName, localCache, key, value, UNKNOWN_READ);
 
         if (isNeedSend) {
             // 发送Redis缓存更新消息
-            notifyService.sendMessage(cacheName, key);
+            notifyService.sendMessage(new String[]{cacheName}, key, value.getVersion());
         }
     }
 
@@ -246,10 +833,35 @@ public class TwoLevelCacheService implements CacheService {
      *
      * @param cacheName
      * @param key
+     * @param isNeedSend
+     * @param clearShared 是否同时清除主机共享缓存段
+     * @param version     变更的版本号
      */
-    private void doClearAndSend(String cacheName, Object key, boolean isNeedSend) {
+    private void doClearAndSend(String cacheName, Object key, boolean isNeedSend, boolean clearShared,
+                                long version) {
+        LocalCache localCache = cacheMap.get(cacheName);
+        if (localCache != null) {
+            // 先记录版本号再清除，之后写入的旧数据会被拒绝
+            localCache.seen(key, version);
+        }
+        // 数据已变更，过期数据不再可用
+        shadowCache.invalidate(cacheName, key);
+        if (offHeapStore.isEnabled()) {
+            if (key == null) {
+                offHeapStore.removeAll(cacheName);
+            } else {
+                offHeapStore.remove(cacheName, key);
+            }
+        }
+        if (clearShared && hostSharedSegment.isEnabled()) {
+            if (key == null) {
+                hostSharedSegment.removeAll(cacheName);
+            } else {
+                hostSharedSegment.remove(cacheName, key);
+            }
+        }
         // 获取缓存对象
-        Cache caffeineCache = cacheMap.get(cacheName);
+        Cache<Object, Object> caffeineCache = localCache == null ? null : localCache.cache;
         if (caffeineCache == null) {
             return;
         }
@@ -264,7 +876,133 @@ public class TwoLevelCacheService implements CacheService {
 
         if (isNeedSend) {
             // 发送Redis缓存更新消息
-            notifyService.sendMessage(cacheName, key);
+            notifyService.sendMessage(new String[]{cacheName}, key, version);
+        }
+    }
+
+    /**
+     * 单个缓存名称的本地缓存
+     */
+    private final class LocalCache {
+
+        /**
+         * 未开启本地缓存时为null
+         */
+        private final Cache<Object, Object> cache;
+
+        /**
+         * 准入策略为frequent时，记录第一次写入的key
+         */
+        private final Cache<Object, Object> doorkeeper;
+
+        /**
+         * 已收到的变更版本号，key -> 最新的版本号，未开启版本校验时为null
+         */
+        private final Cache<Object, Long> versions;
+
+        /**
+         * 清空整个缓存的版本号与时间
+         */
+        private volatile long clearedVersion;
+
+        private volatile long clearedAt;
+
+        /**
+         * 收到清空整个缓存的次数，读取Redis前记录，读取期间没有再清空时读到的数据是清空之后的
+         */
+        private volatile long clears;
+
+        private LocalCache(Cache<Object, Object> cache, Cache<Object, Object> doorkeeper,
+                           Cache<Object, Long> versions) {
+            this.cache = cache;
+            this.doorkeeper = doorkeeper;
+            this.versions = versions;
+        }
+
+        /**
+         * 记录变更的版本号
+         *
+         * @param key     为null时代表清空整个缓存
+         * @param version 0代表不带版本号，不记录
+         */
+        private void seen(Object key, long version) {
+            if (versions == null || version <= 0) {
+                return;
+            }
+            if (key == null) {
+                synchronized (this) {
+                    if (version > clearedVersion) {
+                        clearedVersion = version;
+                    }
+                    clearedAt = System.currentTimeMillis();
+                    clears++;
+                }
+            } else {
+                versions.asMap().merge(key, version, Math::max);
+            }
+        }
+
+        /**
+         * 条目是否比已收到的变更版本旧（回源写入与旧格式的条目版本号为0）
+         * 清空整个缓存后，在清空之后开始读取Redis得到的数据不受清空版本的限制，
+         * 其他数据在记录期内都视为旧数据
+         *
+         * @param key
+         * @param value
+         * @param readClears 开始读取Redis时的清空次数，未知时为UNKNOWN_READ
+         * @return
+         */
+        private boolean isStale(Object key, CacheEntry value, long readClears) {
+            if (versions == null) {
+                return false;
+            }
+            if (value.getVersion() < clearedVersion && readClears != clears
+                    && System.currentTimeMillis() - clearedAt < cacheConfigProperties.getVersionTombstoneTtl()) {
+                return true;
+            }
+            Long seen = versions.getIfPresent(key);
+            return seen != null && value.getVersion() < seen;
+        }
+
+        /**
+         * 写入Caffeine，在key的锁内校验版本，保证与变更消息的清除不会交错
+         *
+         * @param cacheName
+         * @param key
+         * @param value
+         * @param readClears
+         */
+        private void putIfCurrent(String cacheName, Object key, CacheEntry value, long readClears) {
+            if (versions == null) {
+                cache.put(key, value);
+                return;
+            }
+            cache.asMap().compute(key, (k, old) -> {
+                if (isStale(k, value, readClears)) {
+                    cacheMetrics.increment(cacheName, CacheMetrics.LOCAL_VERSION_REJECTS);
+                    return old;
+                }
+                return value;
+            });
+        }
+
+        /**
+         * 是否可以写入本地缓存，已在本地缓存中的key总是可以更新
+         *
+         * @param cacheName
+         * @param key
+         * @return
+         */
+        private boolean admit(String cacheName, Object key) {
+            if (cache == null) {
+                return false;
+            }
+            if (doorkeeper == null || doorkeeper.asMap().remove(key) != null || cache.getIfPresent(key) != null) {
+                return true;
+            }
+            doorkeeper.put(key, Boolean.TRUE);
+            cacheMetrics.increment(cacheName, CacheMetrics.LOCAL_ADMISSION_REJECTS);
+            return false;
         }
     }
 
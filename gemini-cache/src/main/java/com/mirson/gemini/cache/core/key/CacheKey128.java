@@ -0,0 +1,64 @@
+package com.mirson.gemini.cache.core.key;
+
+import java.io.Serializable;
+
+/**
+ * 128位缓存key（由{@link com.mirson.gemini.cache.utils.KeyGenerators#MURMUR3_128}生成）
+ * 两个long保存，序列化后只有16字节数据，toString为32位十六进制
+ *
+ * @author zoutongkun
+ */
+public final class CacheKey128 implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long high;
+
+    private final long low;
+
+    public CacheKey128(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CacheKey128)) {
+            return false;
+        }
+        CacheKey128 that = (CacheKey128) o;
+        return high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        // 哈希值本身已均匀分布，直接取低位
+        return (int) low;
+    }
+
+    @Override
+    public String toString() {
+        char[] chars = new char[32];
+        fillHex(chars, 0, high);
+        fillHex(chars, 16, low);
+        return new String(chars);
+    }
+
+    private static void fillHex(char[] chars, int offset, long value) {
+        for (int i = 15; i >= 0; i--) {
+            chars[offset + i] = Character.forDigit((int) (value & 0xf), 16);
+            value >>>= 4;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.mirson.gemini.cache.core.key;
+
+/**
+ * 缓存key提取
+ * 由切面根据注解的key表达式构建，或由注解处理器在编译期生成
+ *
+ * @author zoutongkun
+ */
+@FunctionalInterface
+public interface CacheKeyExtractor {
+
+    /**
+     * 计算缓存key
+     *
+     * @param args   方法参数
+     * @param result #result对应的对象（返回值或集合元素）
+     * @return
+     */
+    Object extract(Object[] args, Object result);
+}
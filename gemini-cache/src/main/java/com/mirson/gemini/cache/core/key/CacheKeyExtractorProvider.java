@@ -0,0 +1,19 @@
+package com.mirson.gemini.cache.core.key;
+
+import java.util.Map;
+
+/**
+ * 编译期生成的缓存key提取注册（通过ServiceLoader加载）
+ * 由gemini-cache-processor注解处理器为每个包含缓存注解的类生成实现
+ *
+ * @author zoutongkun
+ */
+public interface CacheKeyExtractorProvider {
+
+    /**
+     * 注册key提取
+     *
+     * @param extractors 方法标识（见{@link GeneratedKeyExtractors#methodId}） -> key提取
+     */
+    void register(Map<String, CacheKeyExtractor> extractors);
+}
@@ -0,0 +1,95 @@
+package com.mirson.gemini.cache.core.key;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * 编译期生成的缓存key提取
+ * 首次使用时通过ServiceLoader加载全部生成的注册类；没有生成（如表达式不支持或未启用注解处理器）时由切面使用SpEL计算
+ *
+ * @author zoutongkun
+ */
+public final class GeneratedKeyExtractors {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeneratedKeyExtractors.class);
+
+    private GeneratedKeyExtractors() {
+    }
+
+    /**
+     * 延迟加载
+     */
+    private static final class Holder {
+
+        private static final Map<String, CacheKeyExtractor> EXTRACTORS = load();
+    }
+
+    /**
+     * 查找方法上某个注解对应的key提取
+     *
+     * @param annotationType 缓存注解类型
+     * @param method         声明注解的方法
+     * @return 没有生成时返回null
+     */
+    public static CacheKeyExtractor find(Class<? extends Annotation> annotationType, Method method) {
+        return Holder.EXTRACTORS.get(methodId(annotationType.getSimpleName(), method.getDeclaringClass().getName(),
+                method.getName(), method.getParameterTypes()));
+    }
+
+    /**
+     * 方法标识，格式为：注解名称:类名#方法名(参数类型,参数类型)
+     * 类名使用二进制名称（内部类为Outer$Inner），数组参数为元素类型加[]
+     *
+     * @param annotationName
+     * @param className
+     * @param methodName
+     * @param parameterTypes
+     * @return
+     */
+    public static String methodId(String annotationName, String className, String methodName,
+                                  Class<?>[] parameterTypes) {
+        String[] typeNames = new String[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            typeNames[i] = parameterTypes[i].getTypeName();
+        }
+        return methodId(annotationName, className, methodName, typeNames);
+    }
+
+    /**
+     * 方法标识
+     *
+     * @param annotationName
+     * @param className
+     * @param methodName
+     * @param parameterTypeNames
+     * @return
+     */
+    public static String methodId(String annotationName, String className, String methodName,
+                                  String[] parameterTypeNames) {
+        return annotationName + ":" + className + "#" + methodName + "(" + String.join(",", parameterTypeNames) + ")";
+    }
+
+    private static Map<String, CacheKeyExtractor> load() {
+        Map<String, CacheKeyExtractor> extractors = new HashMap<>();
+        try {
+            for (CacheKeyExtractorProvider provider : ServiceLoader.load(CacheKeyExtractorProvider.class,
+                    GeneratedKeyExtractors.class.getClassLoader())) {
+                provider.register(extractors);
+            }
+        } catch (Throwable e) {
+            logger.warn("load generated cache key extractors failed, fallback to SpEL. " + e.getMessage(), e);
+            return Collections.emptyMap();
+        }
+        if (!extractors.isEmpty()) {
+            logger.info("loaded {} generated cache key extractors.", extractors.size());
+        }
+        return extractors;
+    }
+}
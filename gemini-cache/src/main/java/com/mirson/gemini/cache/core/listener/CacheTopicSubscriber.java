@@ -0,0 +1,117 @@
+package com.mirson.gemini.cache.core.listener;
+
+import com.mirson.gemini.cache.common.CacheConfigProperties;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 缓存变更topic订阅
+ * 不分片时启动即订阅唯一的topic；分片时在本地首次创建某个缓存时才订阅其所在的分片（同步等待订阅完成，
+ * 保证之后从Redis读取的数据的变更都能收到），节点不再接收和解码与本地缓存无关的变更消息。
+ * 订阅失败时向调用方抛出异常：启动时订阅失败则启动失败，按需订阅失败则本次创建本地缓存失败，下次访问时重试
+ *
+ * @author zoutongkun
+ */
+public class CacheTopicSubscriber {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheTopicSubscriber.class);
+
+    private final RedissonClient redissonClient;
+
+    private final CacheUpdateMessageListener messageListener;
+
+    private final String topic;
+
+    /**
+     * 分片数，0代表不分片
+     */
+    private final int shards;
+
+    /**
+     * 已订阅（或正在订阅）的分片，分片序号（不分片时为-1） -> 订阅结果
+     */
+    private final ConcurrentMap<Integer, CompletableFuture<RTopic<byte[]>>> subscribed = new ConcurrentHashMap<>();
+
+    public CacheTopicSubscriber(RedissonClient redissonClient, CacheConfigProperties cacheConfigProperties,
+                                CacheUpdateMessageListener messageListener) {
+        this.redissonClient = redissonClient;
+        this.messageListener = messageListener;
+        this.topic = cacheConfigProperties.getTopic();
+        this.shards = Math.max(0, cacheConfigProperties.getNotifyShards());
+        if (shards == 0) {
+            subscribeShard(-1);
+        }
+    }
+
+    /**
+     * 是否按缓存名称分片订阅
+     *
+     * @return
+     */
+    public boolean isSharded() {
+        return shards > 0;
+    }
+
+    /**
+     * 订阅缓存所在的分片（幂等）
+     * 订阅失败时抛出异常，本地缓存不会创建，下次访问该缓存时重新订阅
+     *
+     * @param cacheName
+     */
+    public void subscribe(String cacheName) {
+        if (shards > 0) {
+            subscribeShard(CacheTopics.shard(cacheName, shards));
+        }
+    }
+
+    /**
+     * 订阅分片，失败时不记录为已订阅
+     * 由第一个线程在Map的锁之外完成订阅，同一分片的其他线程等待其结果
+     *
+     * @param shard
+     */
+    private void subscribeShard(int shard) {
+        CompletableFuture<RTopic<byte[]>> subscription = subscribed.get(shard);
+        if (subscription == null) {
+            CompletableFuture<RTopic<byte[]>> created = new CompletableFuture<>();
+            subscription = subscribed.putIfAbsent(shard, created);
+            if (subscription == null) {
+                // 当前线程负责订阅
+                doSubscribe(shard, created);
+                return;
+            }
+        }
+        try {
+            subscription.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void doSubscribe(int shard, CompletableFuture<RTopic<byte[]>> subscription) {
+        String channel = CacheTopics.channel(topic, shard);
+        try {
+            RTopic<byte[]> rTopic = redissonClient.getTopic(channel, ByteArrayCodec.INSTANCE);
+            rTopic.addListener(messageListener);
+            logger.info("subscribe cache update topic {}", channel);
+            subscription.complete(rTopic);
+        } catch (RuntimeException | Error e) {
+            // 先移除再通知等待的线程，之后的访问重新订阅
+            subscribed.remove(shard, subscription);
+            subscription.completeExceptionally(e);
+            logger.warn("subscribe cache update topic " + channel + " failed. " + e.getMessage());
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.mirson.gemini.cache.core.listener;
+
+/**
+ * 缓存变更topic分片
+ * 分片数大于0时，按缓存名称的哈希把变更消息分散到多个topic（topic名称:分片序号），
+ * 各节点只订阅本地已创建的缓存所在的分片；分片数为0时所有缓存共用一个topic
+ *
+ * @author zoutongkun
+ */
+public final class CacheTopics {
+
+    private CacheTopics() {
+    }
+
+    /**
+     * 缓存名称所在的分片（String.hashCode在各JVM中一致）
+     *
+     * @param cacheName
+     * @param shards    分片数，大于0
+     * @return
+     */
+    public static int shard(String cacheName, int shards) {
+        return Math.floorMod(cacheName.hashCode(), shards);
+    }
+
+    /**
+     * 分片的topic名称
+     *
+     * @param topic 配置的topic名称
+     * @param shard 分片序号，小于0代表不分片
+     * @return
+     */
+    public static String channel(String topic, int shard) {
+        return shard < 0 ? topic : topic + ":" + shard;
+    }
+}
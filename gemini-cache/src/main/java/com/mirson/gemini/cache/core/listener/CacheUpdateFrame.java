@@ -0,0 +1,184 @@
+package com.mirson.gemini.cache.core.listener;
+
+import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.core.key.CacheKey128;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.handler.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 缓存变更消息帧
+ * 一段时间内的多条缓存变更合并为一帧二进制数据发布，格式为：
+ * 版本(1)、发送方标识(16)、主机共享缓存段标识(8)、帧标识(8)、分组数(4)，
+ * 每组为：缓存名称数(2)、缓存名称、key数(4，-1代表清空整个缓存，之后为清空的版本号(8))、各key的版本号(8)与key；
+ * key按类型编码：字符串、长整数与CacheKey128直接写入，其他类型使用Redis的编码
+ *
+ * @author zoutongkun
+ */
+public final class CacheUpdateFrame {
+
+    private static final byte VERSION = 2;
+
+    private static final int ALL_KEYS = -1;
+
+    private static final byte KEY_CODEC = 0;
+
+    private static final byte KEY_STRING = 1;
+
+    private static final byte KEY_LONG = 2;
+
+    private static final byte KEY_128 = 3;
+
+    /**
+     * writeUTF最多写入65535字节，超长的字符串key使用Redis的编码
+     */
+    private static final int MAX_UTF_LENGTH = 65535 / 3;
+
+    private CacheUpdateFrame() {
+    }
+
+    /**
+     * 编码
+     *
+     * @param segmentId 发送方的主机共享缓存段标识
+     * @param groups    每组缓存名称的变更（key与keys都为空时清空整个缓存）
+     * @param codec     其他类型key的编码
+     * @return
+     * @throws IOException
+     */
+    public static byte[] encode(long segmentId, List<CacheUpdateMessage> groups, Codec codec)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        UUID systemId = UUID.fromString(CacheConfigProperties.SYSTEM_ID);
+        out.writeByte(VERSION);
+        out.writeLong(systemId.getMostSignificantBits());
+        out.writeLong(systemId.getLeastSignificantBits());
+        out.writeLong(segmentId);
+        out.writeLong(ThreadLocalRandom.current().nextLong());
+        out.writeInt(groups.size());
+        for (CacheUpdateMessage group : groups) {
+            out.writeShort(group.getCacheNames().length);
+            for (String cacheName : group.getCacheNames()) {
+                out.writeUTF(cacheName);
+            }
+            if (group.getKeys() != null) {
+                out.writeInt(group.getKeys().size());
+                int i = 0;
+                for (Object key : group.getKeys()) {
+                    out.writeLong(group.getVersions() == null ? group.getVersion() : group.getVersions()[i++]);
+                    writeKey(out, key, codec);
+                }
+            } else if (group.getKey() != null) {
+                out.writeInt(1);
+                out.writeLong(group.getVersion());
+                writeKey(out, group.getKey(), codec);
+            } else {
+                out.writeInt(ALL_KEYS);
+                out.writeLong(group.getVersion());
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 解码，每组对应一条缓存变更消息，消息标识为帧标识加组序号
+     *
+     * @param frame
+     * @param codec
+     * @return
+     * @throws IOException
+     */
+    public static List<CacheUpdateMessage> decode(byte[] frame, Codec codec) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported cache update frame version: " + version);
+        }
+        String systemId = new UUID(in.readLong(), in.readLong()).toString();
+        long segmentId = in.readLong();
+        long frameId = in.readLong();
+        int groupCount = in.readInt();
+        List<CacheUpdateMessage> messages = new ArrayList<>(groupCount);
+        for (int i = 0; i < groupCount; i++) {
+            String[] cacheNames = new String[in.readShort()];
+            for (int j = 0; j < cacheNames.length; j++) {
+                cacheNames[j] = in.readUTF();
+            }
+            int keyCount = in.readInt();
+            CacheUpdateMessage message;
+            if (keyCount == ALL_KEYS) {
+                message = new CacheUpdateMessage(cacheNames, (Object) null);
+                message.setVersion(in.readLong());
+            } else {
+                List<Object> keys = new ArrayList<>(keyCount);
+                long[] versions = new long[keyCount];
+                for (int j = 0; j < keyCount; j++) {
+                    versions[j] = in.readLong();
+                    keys.add(readKey(in, codec));
+                }
+                message = new CacheUpdateMessage(cacheNames, keys);
+                message.setVersions(versions);
+            }
+            message.setSystemId(systemId);
+            message.setSegmentId(segmentId);
+            message.setMessageId(frameId + i);
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private static void writeKey(DataOutputStream out, Object key, Codec codec) throws IOException {
+        if (key instanceof String && ((String) key).length() <= MAX_UTF_LENGTH) {
+            out.writeByte(KEY_STRING);
+            out.writeUTF((String) key);
+        } else if (key instanceof Long) {
+            out.writeByte(KEY_LONG);
+            out.writeLong((Long) key);
+        } else if (key instanceof CacheKey128) {
+            out.writeByte(KEY_128);
+            out.writeLong(((CacheKey128) key).getHigh());
+            out.writeLong(((CacheKey128) key).getLow());
+        } else {
+            byte[] encoded = codec.getMapKeyEncoder().encode(key);
+            out.writeByte(KEY_CODEC);
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        }
+    }
+
+    private static Object readKey(DataInputStream in, Codec codec) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case KEY_STRING:
+                return in.readUTF();
+            case KEY_LONG:
+                return in.readLong();
+            case KEY_128:
+                return new CacheKey128(in.readLong(), in.readLong());
+            case KEY_CODEC:
+                byte[] encoded = new byte[in.readInt()];
+                in.readFully(encoded);
+                ByteBuf buf = Unpooled.wrappedBuffer(encoded);
+                try {
+                    return codec.getMapKeyDecoder().decode(buf, new State(false));
+                } finally {
+                    buf.release();
+                }
+            default:
+                throw new IOException("Unknown cache key type: " + type);
+        }
+    }
+}
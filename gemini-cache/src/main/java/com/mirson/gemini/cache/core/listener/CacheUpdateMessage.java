@@ -4,9 +4,11 @@ import com.mirson.gemini.cache.common.CacheConfigProperties;
 import lombok.Data;
 
 import java.io.Serializable;
+import java.util.Collection;
 
 /**
- * 缓存发布/订阅传输消息对象
+ * 缓存变更消息
+ * 发布时多条消息合并编码为一帧，见{@link CacheUpdateFrame}
  *
  * @author zoutongkun
  */
@@ -18,6 +20,17 @@ public class CacheUpdateMessage implements Serializable {
      */
     private String systemId = CacheConfigProperties.SYSTEM_ID;
 
+    /**
+     * 消息唯一标识（帧标识加组序号）
+     * 用于同一主机上的多个JVM只处理一次主机共享缓存段
+     */
+    private long messageId;
+
+    /**
+     * 发送方的主机共享缓存段标识，未开启时为0
+     */
+    private long segmentId;
+
     /**
      * 缓存名称
      */
@@ -28,6 +41,21 @@ public class CacheUpdateMessage implements Serializable {
      */
     private Object key;
 
+    /**
+     * 批量变更的缓存KEY键值（不为空时忽略key）
+     */
+    private Collection<?> keys;
+
+    /**
+     * 变更的版本号（单个key或清空整个缓存时），0代表不带版本号
+     */
+    private long version;
+
+    /**
+     * 批量变更时各key的版本号，与keys一一对应
+     */
+    private long[] versions;
+
     public CacheUpdateMessage(String[] cacheName, Object key) {
         this.cacheNames = cacheName;
         this.key = key;
@@ -38,4 +66,9 @@ public class CacheUpdateMessage implements Serializable {
         this.key = key;
     }
 
+    public CacheUpdateMessage(String[] cacheNames, Collection<?> keys) {
+        this.cacheNames = cacheNames;
+        this.keys = keys;
+    }
+
 }
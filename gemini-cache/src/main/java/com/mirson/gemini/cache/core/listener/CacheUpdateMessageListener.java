@@ -1,27 +1,54 @@
 package com.mirson.gemini.cache.core.listener;
 
 import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.core.bloom.BloomFilterManager;
+import com.mirson.gemini.cache.core.cache.HostSharedSegment;
 import com.mirson.gemini.cache.core.cache.TwoLevelCacheService;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.listener.MessageListener;
+import org.redisson.client.codec.Codec;
+
+import java.util.Collections;
+import java.util.List;
 
 /**
  * 缓存消息发布/订阅监听器
  * 使用的是redisson封装的监听机制
- * 主要就是用于删除本地缓存
+ * 主要就是用于删除本地缓存，每帧中的变更作为一批处理
  *
  * @author zoutongkun
  */
 @Slf4j
-public class CacheUpdateMessageListener implements MessageListener<CacheUpdateMessage> {
+public class CacheUpdateMessageListener implements MessageListener<byte[]> {
 
     /**
      * Caffeine 缓存管理实现接口
      */
     private TwoLevelCacheService twoLevelCacheService;
 
-    public CacheUpdateMessageListener(TwoLevelCacheService twoLevelCacheService) {
+    /**
+     * 布隆过滤器
+     */
+    private BloomFilterManager bloomFilterManager;
+
+    /**
+     * 主机共享缓存段
+     */
+    private HostSharedSegment hostSharedSegment;
+
+    /**
+     * 帧中其他类型key的编码，与Redis一致
+     */
+    private Codec keyCodec;
+
+    public CacheUpdateMessageListener(TwoLevelCacheService twoLevelCacheService,
+                                      BloomFilterManager bloomFilterManager,
+                                      HostSharedSegment hostSharedSegment,
+                                      Codec keyCodec) {
         this.twoLevelCacheService = twoLevelCacheService;
+        this.bloomFilterManager = bloomFilterManager;
+        this.hostSharedSegment = hostSharedSegment;
+        this.keyCodec = keyCodec;
     }
 
     /**
@@ -36,22 +63,73 @@ public class CacheUpdateMessageListener implements MessageListener<CacheUpdateMe
      * 2.当更新或删除时，先删redis数据，再删除所有节点的本地缓存数据
      *
      * @param channel
-     * @param cacheUpdateMessage
+     * @param frame
      */
     @Override
-    public void onMessage(String channel, CacheUpdateMessage cacheUpdateMessage) {
-        log.info("onMessage # receive a redis message, channel: " + channel);
+    public void onMessage(String channel, byte[] frame) {
         try {
+            List<CacheUpdateMessage> messages = CacheUpdateFrame.decode(frame, keyCodec);
             // 如果是当前节点，则不做清除（这里主要是兼容redis更新的场景，而对于删除操作，则当前节点的本地缓存也需要删除！）
-            if (!CacheConfigProperties.SYSTEM_ID.equals(cacheUpdateMessage.getSystemId())) {
-                // 发送清理本地缓存的信息
-                twoLevelCacheService.clearNotSend(cacheUpdateMessage.getCacheNames(), cacheUpdateMessage.getKey());
-                log.info("onMessage # clear local cache {}, the key is {}",
-                        cacheUpdateMessage.getCacheNames(), cacheUpdateMessage.getKey());
+            if (messages.isEmpty() || CacheConfigProperties.SYSTEM_ID.equals(messages.get(0).getSystemId())) {
+                return;
+            }
+            // 先清除主机共享缓存段，避免本地缓存清除后又从共享段读到旧数据
+            for (CacheUpdateMessage cacheUpdateMessage : messages) {
+                clearShared(cacheUpdateMessage);
+            }
+            for (CacheUpdateMessage cacheUpdateMessage : messages) {
+                if (cacheUpdateMessage.getKeys() != null) {
+                    // 批量变更
+                    long[] versions = cacheUpdateMessage.getVersions();
+                    int i = 0;
+                    for (Object key : cacheUpdateMessage.getKeys()) {
+                        long version = versions == null ? cacheUpdateMessage.getVersion() : versions[i];
+                        i++;
+                        if (key != null) {
+                            clearLocal(cacheUpdateMessage.getCacheNames(), key, version);
+                        }
+                    }
+                } else {
+                    clearLocal(cacheUpdateMessage.getCacheNames(), cacheUpdateMessage.getKey(),
+                            cacheUpdateMessage.getVersion());
+                }
             }
+            log.debug("onMessage # clear local cache, channel: {}, groups: {}", channel, messages.size());
         } catch (Exception e) {
             log.error("onMessage error: # " + e.getMessage(), e);
         }
     }
 
+    /**
+     * 清理主机共享缓存段
+     * 同一主机的发送方已在写入时更新了共享段，不再清除；其他主机的消息在本主机只由最先收到的JVM处理一次
+     *
+     * @param cacheUpdateMessage
+     */
+    private void clearShared(CacheUpdateMessage cacheUpdateMessage) {
+        if (!hostSharedSegment.isEnabled() || hostSharedSegment.isSameHost(cacheUpdateMessage.getSegmentId())) {
+            return;
+        }
+        hostSharedSegment.invalidateOnce(cacheUpdateMessage.getMessageId(), cacheUpdateMessage.getCacheNames(),
+                cacheUpdateMessage.getKeys() != null ? cacheUpdateMessage.getKeys()
+                        : cacheUpdateMessage.getKey() == null ? null
+                        : Collections.singletonList(cacheUpdateMessage.getKey()));
+    }
+
+    /**
+     * 清理本地缓存
+     *
+     * @param cacheNames
+     * @param key
+     * @param version
+     */
+    private void clearLocal(String[] cacheNames, Object key, long version) {
+        // 发送清理本地缓存的信息
+        twoLevelCacheService.clearNotSend(cacheNames, key, version);
+        // 其他节点写入的key同步到本地布隆过滤器副本（删除时多加一次不影响正确性）
+        for (String cacheName : cacheNames) {
+            bloomFilterManager.putLocal(cacheName, key);
+        }
+    }
+
 }
@@ -0,0 +1,68 @@
+package com.mirson.gemini.cache.core.loader;
+
+import com.mirson.gemini.cache.core.cache.CacheEntryKey;
+import com.mirson.gemini.cache.core.metrics.CacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 缓存后台刷新
+ * 同一个 (cacheName, cacheKey) 同时只会有一个刷新任务，调用方不等待刷新结果
+ *
+ * @author zoutongkun
+ */
+public class BackgroundRefresher {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackgroundRefresher.class);
+
+    /**
+     * 正在刷新的缓存
+     */
+    private final ConcurrentHashMap<CacheEntryKey, Boolean> refreshing = new ConcurrentHashMap<>();
+
+    private final ExecutorService executorService;
+
+    private final CacheMetrics cacheMetrics;
+
+    public BackgroundRefresher(ExecutorService executorService, CacheMetrics cacheMetrics) {
+        this.executorService = executorService;
+        this.cacheMetrics = cacheMetrics;
+    }
+
+    /**
+     * 提交后台刷新
+     *
+     * @param cacheName
+     * @param cacheKey
+     * @param loader    负责重新加载并写回缓存
+     * @return 是否提交了新的刷新任务（已在刷新中或线程池已满时返回false）
+     */
+    public boolean refresh(String cacheName, Object cacheKey, CacheLoader loader) {
+        CacheEntryKey refreshKey = new CacheEntryKey(cacheName, cacheKey);
+        if (refreshing.putIfAbsent(refreshKey, Boolean.TRUE) != null) {
+            return false;
+        }
+        try {
+            executorService.execute(() -> {
+                try {
+                    loader.load();
+                    cacheMetrics.increment(cacheName, CacheMetrics.REFRESHES);
+                } catch (Throwable e) {
+                    cacheMetrics.increment(cacheName, CacheMetrics.REFRESH_FAILURES);
+                    logger.error("refresh # background refresh failed, cacheName: " + cacheName + ", " + e.getMessage(), e);
+                } finally {
+                    refreshing.remove(refreshKey);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(refreshKey);
+            logger.warn("refresh # refresh executor is busy, skip refresh of {}", refreshKey);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.mirson.gemini.cache.core.loader;
+
+/**
+ * 缓存数据加载接口
+ * 一般就是调用被缓存的原方法
+ *
+ * @author zoutongkun
+ */
+@FunctionalInterface
+public interface CacheLoader {
+
+    /**
+     * 加载数据
+     *
+     * @return
+     * @throws Throwable
+     */
+    Object load() throws Throwable;
+}
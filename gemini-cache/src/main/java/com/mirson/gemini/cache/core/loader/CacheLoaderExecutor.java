@@ -0,0 +1,71 @@
+package com.mirson.gemini.cache.core.loader;
+
+import com.mirson.gemini.cache.common.NamedThreadFactory;
+import org.slf4j.MDC;
+import org.springframework.core.task.TaskDecorator;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 原方法调用线程池
+ * 开启staleTimeout时原方法在该线程池中调用，与Redis线程池隔离，原方法较慢时不会占用Redis回调线程。
+ * 提交时复制调用线程的MDC，并通过TaskDecorator（如有）传递其他线程上下文
+ *
+ * @author zoutongkun
+ */
+public class CacheLoaderExecutor implements Executor {
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * 线程上下文传递，为空时只传递MDC
+     */
+    private final TaskDecorator taskDecorator;
+
+    public CacheLoaderExecutor(int poolSize, int queueCapacity, TaskDecorator taskDecorator) {
+        int size = Math.max(1, poolSize);
+        this.executor = new ThreadPoolExecutor(size, size, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), new NamedThreadFactory("Cache-Loader"));
+        this.executor.allowCoreThreadTimeOut(true);
+        this.taskDecorator = taskDecorator;
+    }
+
+    /**
+     * 提交任务，线程池已满时抛出RejectedExecutionException
+     *
+     * @param command
+     */
+    @Override
+    public void execute(Runnable command) {
+        Runnable task = taskDecorator == null ? command : taskDecorator.decorate(command);
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        executor.execute(() -> {
+            Map<String, String> previous = MDC.getCopyOfContextMap();
+            setContext(context);
+            try {
+                task.run();
+            } finally {
+                setContext(previous);
+            }
+        });
+    }
+
+    private static void setContext(Map<String, String> context) {
+        if (context == null) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap(context);
+        }
+    }
+
+    /**
+     * 关闭线程池
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,93 @@
+package com.mirson.gemini.cache.core.loader;
+
+import com.mirson.gemini.cache.core.cache.CacheEntryKey;
+import com.mirson.gemini.cache.core.metrics.CacheMetrics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 单节点内的并发加载合并（single-flight）
+ * 同一个 (cacheName, cacheKey) 同时只有一个线程执行加载，其余线程等待该结果，
+ * 避免热点key失效时大量相同请求同时穿透到数据库
+ *
+ * @author zoutongkun
+ */
+public class SingleFlightLoader {
+
+    /**
+     * 正在进行中的加载
+     */
+    private final ConcurrentMap<CacheEntryKey, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+
+    /**
+     * 统计指标
+     */
+    private final CacheMetrics cacheMetrics;
+
+    /**
+     * 合并次数的指标名称
+     */
+    private final String coalescedMetric;
+
+    public SingleFlightLoader(CacheMetrics cacheMetrics, String coalescedMetric) {
+        this.cacheMetrics = cacheMetrics;
+        this.coalescedMetric = coalescedMetric;
+    }
+
+    /**
+     * 合并加载
+     *
+     * @param cacheName
+     * @param cacheKey
+     * @param waitTimeoutMillis 等待其他线程加载结果的超时时间，超时后自行加载，小于等于0表示一直等待
+     * @param loader
+     * @return
+     * @throws Throwable
+     */
+    public Object load(String cacheName, Object cacheKey, long waitTimeoutMillis, CacheLoader loader) throws Throwable {
+        CacheEntryKey flightKey = new CacheEntryKey(cacheName, cacheKey);
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = flights.putIfAbsent(flightKey, flight);
+        if (existing == null) {
+            // 当前线程负责加载
+            try {
+                Object result = loader.load();
+                flight.complete(result);
+                return result;
+            } catch (Throwable e) {
+                flight.completeExceptionally(e);
+                throw e;
+            } finally {
+                flights.remove(flightKey, flight);
+            }
+        }
+
+        // 等待其他线程的加载结果
+        cacheMetrics.increment(cacheName, coalescedMetric);
+        try {
+            if (waitTimeoutMillis > 0) {
+                return existing.get(waitTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            return existing.get();
+        } catch (TimeoutException e) {
+            cacheMetrics.increment(cacheName, CacheMetrics.COALESCE_TIMEOUTS);
+            return loader.load();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 当前正在进行中的加载数量
+     *
+     * @return
+     */
+    public int inFlight() {
+        return flights.size();
+    }
+}
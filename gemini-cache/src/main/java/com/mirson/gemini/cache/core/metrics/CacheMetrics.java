@@ -0,0 +1,256 @@
+package com.mirson.gemini.cache.core.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 缓存统计指标
+ * 按缓存名称分别计数，便于对接监控系统
+ *
+ * @author zoutongkun
+ */
+public class CacheMetrics {
+
+    /**
+     * 缓存命中次数（不包含空值）
+     */
+    public static final String HITS = "hits";
+
+    /**
+     * 空值命中次数
+     */
+    public static final String NULL_HITS = "nullHits";
+
+    /**
+     * 缓存未命中次数
+     */
+    public static final String MISSES = "misses";
+
+    /**
+     * 合并到其他线程的原方法调用次数
+     */
+    public static final String COALESCED_LOADS = "coalescedLoads";
+
+    /**
+     * 合并到其他线程的Redis读取次数
+     */
+    public static final String COALESCED_REDIS_READS = "coalescedRedisReads";
+
+    /**
+     * 等待合并结果超时，自行加载的次数
+     */
+    public static final String COALESCE_TIMEOUTS = "coalesceTimeouts";
+
+    /**
+     * 拿到跨节点加载租约的次数
+     */
+    public static final String LEASE_ACQUIRED = "leaseAcquired";
+
+    /**
+     * 等待租约持有者写回并命中的次数
+     */
+    public static final String LEASE_WAIT_HITS = "leaseWaitHits";
+
+    /**
+     * 等待租约超时后自行加载的次数
+     */
+    public static final String LEASE_FALLBACKS = "leaseFallbacks";
+
+    /**
+     * 后台提前刷新的次数
+     */
+    public static final String REFRESHES = "refreshes";
+
+    /**
+     * 后台提前刷新失败的次数
+     */
+    public static final String REFRESH_FAILURES = "refreshFailures";
+
+    /**
+     * 布隆过滤器拦截的次数
+     */
+    public static final String BLOOM_REJECTS = "bloomRejects";
+
+    /**
+     * 布隆过滤器误判的次数（判断存在，但原方法返回空）
+     */
+    public static final String BLOOM_FALSE_POSITIVES = "bloomFalsePositives";
+
+    /**
+     * 原方法调用失败时返回过期数据的次数
+     */
+    public static final String STALE_ERRORS = "staleErrors";
+
+    /**
+     * 原方法调用超时时返回过期数据的次数
+     */
+    public static final String STALE_TIMEOUTS = "staleTimeouts";
+
+    /**
+     * 合并读取发送到Redis的批次数
+     */
+    public static final String REDIS_READ_BATCHES = "redisReadBatches";
+
+    /**
+     * 合并读取的key数量
+     */
+    public static final String REDIS_BATCHED_READS = "redisBatchedReads";
+
+    /**
+     * Redis熔断次数
+     */
+    public static final String BREAKER_OPENED = "breakerOpened";
+
+    /**
+     * 熔断期间跳过Redis的次数
+     */
+    public static final String BREAKER_SHORT_CIRCUITS = "breakerShortCircuits";
+
+    /**
+     * 访问Redis超出延迟预算的次数
+     */
+    public static final String BREAKER_TIMEOUTS = "breakerTimeouts";
+
+    /**
+     * 未在延迟预算内确认、记录下来等待补发的删除数（清空整个缓存计为1）
+     */
+    public static final String BREAKER_DEFERRED_DELETES = "breakerDeferredDeletes";
+
+    /**
+     * Redis熔断器状态（0：正常，1：熔断，2：探测中）
+     */
+    public static final String BREAKER_STATE = "breakerState";
+
+    /**
+     * 本地缓存当前条目数
+     */
+    public static final String LOCAL_SIZE = "localSize";
+
+    /**
+     * 因准入策略未写入本地缓存的次数
+     */
+    public static final String LOCAL_ADMISSION_REJECTS = "localAdmissionRejects";
+
+    /**
+     * 本地缓存估算占用的内存（单位：字节，开启内存预算时）
+     */
+    public static final String LOCAL_WEIGHT = "localWeight";
+
+    /**
+     * 本地缓存分配到的内存额度（单位：字节，开启内存预算时）
+     */
+    public static final String LOCAL_BUDGET = "localBudget";
+
+    /**
+     * 堆外缓存命中次数
+     */
+    public static final String OFFHEAP_HITS = "offHeapHits";
+
+    /**
+     * 堆外缓存条目提升到本地缓存的次数
+     */
+    public static final String OFFHEAP_PROMOTIONS = "offHeapPromotions";
+
+    /**
+     * 堆外缓存有效条目占用的字节数
+     */
+    public static final String OFFHEAP_BYTES = "offHeapBytes";
+
+    /**
+     * 主机共享缓存段命中次数
+     */
+    public static final String SHARED_HITS = "sharedHits";
+
+    /**
+     * 因比已收到的变更版本旧而未写入本地缓存的次数
+     */
+    public static final String LOCAL_VERSION_REJECTS = "localVersionRejects";
+
+    /**
+     * 计数器，cacheName -> (指标名称 -> 计数)
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, LongAdder>> counters = new ConcurrentHashMap<>();
+
+    /**
+     * 瞬时值，cacheName -> (指标名称 -> 取值函数)
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, LongSupplier>> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * 注册瞬时值指标（如状态、容量），快照时实时取值
+     *
+     * @param cacheName
+     * @param metric
+     * @param supplier
+     */
+    public void gauge(String cacheName, String metric, LongSupplier supplier) {
+        gauges.computeIfAbsent(cacheName, name -> new ConcurrentHashMap<>()).put(metric, supplier);
+    }
+
+    /**
+     * 计数加一
+     *
+     * @param cacheName
+     * @param metric
+     */
+    public void increment(String cacheName, String metric) {
+        add(cacheName, metric, 1);
+    }
+
+    /**
+     * 计数累加
+     *
+     * @param cacheName
+     * @param metric
+     * @param delta
+     */
+    public void add(String cacheName, String metric, long delta) {
+        counters.computeIfAbsent(cacheName, name -> new ConcurrentHashMap<>())
+                .computeIfAbsent(metric, name -> new LongAdder())
+                .add(delta);
+    }
+
+    /**
+     * 获取某个缓存的指标值
+     *
+     * @param cacheName
+     * @param metric
+     * @return
+     */
+    public long get(String cacheName, String metric) {
+        Map<String, LongSupplier> cacheGauges = gauges.get(cacheName);
+        if (cacheGauges != null && cacheGauges.containsKey(metric)) {
+            return cacheGauges.get(metric).getAsLong();
+        }
+        Map<String, LongAdder> cacheCounters = counters.get(cacheName);
+        if (cacheCounters == null) {
+            return 0;
+        }
+        LongAdder counter = cacheCounters.get(metric);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * 获取全部指标快照
+     *
+     * @return cacheName -> (指标名称 -> 计数)
+     */
+    public Map<String, Map<String, Long>> snapshot() {
+        Map<String, Map<String, Long>> snapshot = new TreeMap<>();
+        counters.forEach((cacheName, cacheCounters) -> {
+            Map<String, Long> values = new TreeMap<>();
+            cacheCounters.forEach((metric, counter) -> values.put(metric, counter.sum()));
+            snapshot.put(cacheName, values);
+        });
+        gauges.forEach((cacheName, cacheGauges) -> {
+            Map<String, Long> values = snapshot.computeIfAbsent(cacheName, name -> new TreeMap<>());
+            cacheGauges.forEach((metric, supplier) -> values.put(metric, supplier.getAsLong()));
+        });
+        return snapshot;
+    }
+
+}
@@ -1,14 +1,35 @@
 package com.mirson.gemini.cache.core.notify;
 
 import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.common.NamedThreadFactory;
+import com.mirson.gemini.cache.core.cache.HostSharedSegment;
+import com.mirson.gemini.cache.core.listener.CacheUpdateFrame;
+import com.mirson.gemini.cache.core.listener.CacheTopics;
 import com.mirson.gemini.cache.core.listener.CacheUpdateMessage;
 import org.redisson.api.RTopic;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.redisson.client.codec.Codec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Redis发送服务实现接口
+ * 缓存变更先在本地缓冲batchWindow毫秒，相同缓存名称的key去重（保留最新的版本号）后合并为一帧二进制数据发布，
+ * 缓冲的key数量达到maxBatchKeys时立即发布；batchWindow为0时每次变更立即发布。
+ * 开启分片时，每帧按缓存名称所在的分片拆分后分别发布到各分片的topic
  *
  * @author mirson
  * @date 2021/9/26
@@ -27,10 +48,73 @@ public class NotifyByRedisImpl implements NotifyService {
      */
     private RedissonClient redissonClient;
 
+    /**
+     * 主机共享缓存段，消息中带上其标识，同一主机的接收方不再重复清除
+     */
+    private HostSharedSegment hostSharedSegment;
+
+    /**
+     * 缓存变更topic，消息为二进制帧
+     */
+    private RTopic<byte[]> topic;
+
+    /**
+     * 各分片的topic，未开启分片时为空
+     */
+    private List<RTopic<byte[]>> shardTopics = new ArrayList<>();
+
+    /**
+     * 其他类型key的编码，与Redis一致
+     */
+    private Codec keyCodec;
+
+    /**
+     * 缓冲时间（单位：毫秒）
+     */
+    private long batchWindow;
+
+    /**
+     * 缓冲的key数量上限
+     */
+    private int maxBatchKeys;
+
+    /**
+     * 发布线程，batchWindow为0时为null
+     */
+    private ScheduledExecutorService flushExecutor;
+
+    /**
+     * 缓冲的变更，缓存名称 -> 变更的key与版本号，由this保护
+     */
+    private Map<List<String>, Pending> pending = new LinkedHashMap<>();
+
+    /**
+     * 缓冲的key数量，由this保护
+     */
+    private int pendingKeys;
+
+    /**
+     * 是否已安排发布，由this保护
+     */
+    private boolean flushScheduled;
+
     public NotifyByRedisImpl(CacheConfigProperties cacheConfigProperties,
-                             RedissonClient redissonClient) {
+                             RedissonClient redissonClient,
+                             HostSharedSegment hostSharedSegment) {
         this.cacheConfigProperties = cacheConfigProperties;
         this.redissonClient = redissonClient;
+        this.hostSharedSegment = hostSharedSegment;
+        this.topic = redissonClient.getTopic(cacheConfigProperties.getTopic(), ByteArrayCodec.INSTANCE);
+        for (int shard = 0; shard < cacheConfigProperties.getNotifyShards(); shard++) {
+            shardTopics.add(redissonClient.getTopic(CacheTopics.channel(cacheConfigProperties.getTopic(), shard),
+                    ByteArrayCodec.INSTANCE));
+        }
+        this.keyCodec = redissonClient.getConfig().getCodec();
+        this.batchWindow = Math.max(0, cacheConfigProperties.getNotifyBatchWindow());
+        this.maxBatchKeys = Math.max(1, cacheConfigProperties.getNotifyMaxBatchKeys());
+        if (batchWindow > 0) {
+            this.flushExecutor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("Cache-Notify"));
+        }
     }
 
     /**
@@ -72,9 +156,206 @@ public class NotifyByRedisImpl implements NotifyService {
      */
     @Override
     public void sendMessage(String[] cacheNames, Object key) {
-        RTopic rTopic = redissonClient.getTopic(cacheConfigProperties.getTopic());
-        long receive = rTopic.publish(new CacheUpdateMessage(cacheNames, key));
-        logger.info("sendMessage receive clients: " + receive);
+        sendMessage(cacheNames, key, 0);
+    }
+
+    /**
+     * 发送批量缓存变更消息
+     *
+     * @param cacheNames
+     * @param keys
+     */
+    @Override
+    public void sendBatchMessage(String[] cacheNames, Collection<?> keys) {
+        sendBatchMessage(cacheNames, keys, 0);
+    }
+
+    /**
+     * 发送带版本号的缓存变更消息
+     *
+     * @param cacheNames
+     * @param key
+     * @param version
+     */
+    @Override
+    public void sendMessage(String[] cacheNames, Object key, long version) {
+        enqueue(cacheNames, key == null ? null : Collections.singletonList(key), version);
+    }
+
+    /**
+     * 发送带版本号的批量缓存变更消息
+     *
+     * @param cacheNames
+     * @param keys
+     * @param version
+     */
+    @Override
+    public void sendBatchMessage(String[] cacheNames, Collection<?> keys, long version) {
+        enqueue(cacheNames, keys, version);
+    }
+
+    /**
+     * 发布缓冲的变更并停止发布线程
+     */
+    public void shutdown() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+            flush();
+        }
+    }
+
+    /**
+     * 缓冲变更
+     *
+     * @param cacheNames
+     * @param keys       为null时清空整个缓存
+     * @param version
+     */
+    private void enqueue(String[] cacheNames, Collection<?> keys, long version) {
+        if (flushExecutor == null || flushExecutor.isShutdown()) {
+            publish(Collections.singletonList(message(cacheNames, keys, version)));
+            return;
+        }
+        List<String> names = Arrays.asList(cacheNames.clone());
+        synchronized (this) {
+            Pending group = pending.computeIfAbsent(names, k -> new Pending());
+            if (keys == null) {
+                // 清空整个缓存后不再需要单独的key
+                pendingKeys -= group.keys.size();
+                group.keys.clear();
+                group.all = true;
+                group.allVersion = Math.max(group.allVersion, version);
+            } else if (!group.all) {
+                for (Object key : keys) {
+                    Long previous = group.keys.put(key, version);
+                    if (previous == null) {
+                        pendingKeys++;
+                    } else if (previous > version) {
+                        group.keys.put(key, previous);
+                    }
+                }
+            }
+            if (pendingKeys >= maxBatchKeys) {
+                flushExecutor.execute(this::flush);
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                flushExecutor.schedule(this::flush, batchWindow, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * 发布缓冲的变更
+     */
+    private void flush() {
+        List<CacheUpdateMessage> groups;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            groups = new ArrayList<>(pending.size());
+            for (Map.Entry<List<String>, Pending> entry : pending.entrySet()) {
+                String[] cacheNames = entry.getKey().toArray(new String[0]);
+                Pending group = entry.getValue();
+                if (group.all) {
+                    groups.add(message(cacheNames, null, group.allVersion));
+                } else {
+                    CacheUpdateMessage message = new CacheUpdateMessage(cacheNames, group.keys.keySet());
+                    long[] versions = new long[group.keys.size()];
+                    int i = 0;
+                    for (Long version : group.keys.values()) {
+                        versions[i++] = version;
+                    }
+                    message.setVersions(versions);
+                    groups.add(message);
+                }
+            }
+            pending = new LinkedHashMap<>();
+            pendingKeys = 0;
+        }
+        publish(groups);
+    }
+
+    /**
+     * 构建一组变更
+     *
+     * @param cacheNames
+     * @param keys       为null时清空整个缓存
+     * @param version
+     * @return
+     */
+    private static CacheUpdateMessage message(String[] cacheNames, Collection<?> keys, long version) {
+        CacheUpdateMessage message = keys == null ? new CacheUpdateMessage(cacheNames, (Object) null)
+                : new CacheUpdateMessage(cacheNames, keys);
+        message.setVersion(version);
+        return message;
+    }
+
+    private void publish(List<CacheUpdateMessage> groups) {
+        if (shardTopics.isEmpty()) {
+            publish(topic, groups);
+            return;
+        }
+        // 按分片拆分，同一组中不同分片的缓存名称拆为多组
+        Map<Integer, List<CacheUpdateMessage>> shardGroups = new LinkedHashMap<>();
+        for (CacheUpdateMessage group : groups) {
+            Map<Integer, List<String>> shardNames = new LinkedHashMap<>();
+            for (String cacheName : group.getCacheNames()) {
+                shardNames.computeIfAbsent(CacheTopics.shard(cacheName, shardTopics.size()), k -> new ArrayList<>())
+                        .add(cacheName);
+            }
+            shardNames.forEach((shard, names) -> shardGroups.computeIfAbsent(shard, k -> new ArrayList<>())
+                    .add(shardNames.size() == 1 ? group : withCacheNames(group, names.toArray(new String[0]))));
+        }
+        shardGroups.forEach((shard, shardGroup) -> publish(shardTopics.get(shard), shardGroup));
+    }
+
+    private void publish(RTopic<byte[]> target, List<CacheUpdateMessage> groups) {
+        try {
+            byte[] frame = CacheUpdateFrame.encode(hostSharedSegment.getSegmentId(), groups, keyCodec);
+            long receive = target.publish(frame);
+            logger.debug("publish cache update frame to {}, groups: {}, bytes: {}, receive clients: {}",
+                    target.getChannelNames(), groups.size(), frame.length, receive);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("publish cache update frame failed. " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 复制一组变更，只保留指定的缓存名称
+     *
+     * @param group
+     * @param cacheNames
+     * @return
+     */
+    private static CacheUpdateMessage withCacheNames(CacheUpdateMessage group, String[] cacheNames) {
+        CacheUpdateMessage message = group.getKeys() != null ? new CacheUpdateMessage(cacheNames, group.getKeys())
+                : new CacheUpdateMessage(cacheNames, group.getKey());
+        message.setVersion(group.getVersion());
+        message.setVersions(group.getVersions());
+        return message;
+    }
+
+    /**
+     * 同一组缓存名称缓冲的变更
+     */
+    private static final class Pending {
+
+        /**
+         * 是否清空整个缓存
+         */
+        private boolean all;
+
+        /**
+         * 清空整个缓存的版本号
+         */
+        private long allVersion;
+
+        /**
+         * 变更的key -> 版本号
+         */
+        private final Map<Object, Long> keys = new LinkedHashMap<>();
     }
 
 }
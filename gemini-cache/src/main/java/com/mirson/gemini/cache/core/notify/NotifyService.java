@@ -1,5 +1,7 @@
 package com.mirson.gemini.cache.core.notify;
 
+import java.util.Collection;
+
 /**
  * 缓存更新通知
  * 目的就是删除各节点的本地缓存，保证一致性！
@@ -38,4 +40,30 @@ public interface NotifyService {
      * @param key
      */
     void sendMessage(String[] cacheNames, Object key);
+
+    /**
+     * 发送批量缓存变更消息，多个key合并为一条消息
+     *
+     * @param cacheNames
+     * @param keys
+     */
+    void sendBatchMessage(String[] cacheNames, Collection<?> keys);
+
+    /**
+     * 发送带版本号的缓存变更消息
+     *
+     * @param cacheNames
+     * @param key        为null时清空整个缓存
+     * @param version    变更的版本号，接收方不再写入比该版本旧的数据
+     */
+    void sendMessage(String[] cacheNames, Object key, long version);
+
+    /**
+     * 发送带版本号的批量缓存变更消息，多个key合并为一条消息
+     *
+     * @param cacheNames
+     * @param keys
+     * @param version
+     */
+    void sendBatchMessage(String[] cacheNames, Collection<?> keys, long version);
 }
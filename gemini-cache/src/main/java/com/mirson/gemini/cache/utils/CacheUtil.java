@@ -3,6 +3,12 @@ package com.mirson.gemini.cache.utils;
 
 import org.apache.commons.codec.digest.DigestUtils;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
 /**
  * 缓存辅助管理工具
  * @author zoutongkun
@@ -40,6 +46,63 @@ public final class CacheUtil {
     return key.toString();
   }
 
+  /**
+   * 按key生成器构建缓存key
+   *
+   * @param keyGenerator
+   * @param params key表达式的取值
+   * @return
+   */
+  public static Object buildCacheKey(KeyGenerators keyGenerator, List<Object> params) {
+    switch (keyGenerator) {
+    case SHA:
+      return buildCacheKey(params);
+    case CONCAT:
+      return buildStringCacheKey(params.toArray());
+    case MURMUR3_128:
+      return KeyHasher.murmur3(params);
+    case XXHASH64:
+      return KeyHasher.xxHash64(params);
+    default:
+      return buildCacheKey(params);
+    }
+  }
+
+  /**
+   * 生命周期随机延长，避免同一批写入的缓存在同一时刻过期
+   *
+   * @param ttl   生命周期（单位不限），小于等于0时原样返回
+   * @param ratio 最大延长比例，如0.1代表最多延长10%
+   * @return
+   */
+  public static long jitter(long ttl, double ratio) {
+    if (ttl <= 0 || ratio <= 0) {
+      return ttl;
+    }
+    return ttl + (long) (ThreadLocalRandom.current().nextDouble() * ratio * ttl);
+  }
+
+  /**
+   * 解析按缓存名称配置的参数，格式为：cacheName:value;cacheName:value
+   *
+   * @param text 配置内容，为空时返回空集合
+   * @return cacheName -> value
+   */
+  public static Map<String, String> parseNamedValues(String text) {
+    if (text == null || text.trim().isEmpty()) {
+      return Collections.emptyMap();
+    }
+    Map<String, String> values = new LinkedHashMap<>();
+    for (String item : text.split(";")) {
+      int index = item.lastIndexOf(':');
+      if (index <= 0 || index == item.length() - 1) {
+        continue;
+      }
+      values.put(item.substring(0, index).trim(), item.substring(index + 1).trim());
+    }
+    return values;
+  }
+
   /**
    * Takes a list of arguments and returns a cache key for given objects.
    *
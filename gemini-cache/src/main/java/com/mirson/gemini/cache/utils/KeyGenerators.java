@@ -2,9 +2,11 @@ package com.mirson.gemini.cache.utils;
 
 /**
  * 缓存Key存储方式
+ * SHA：SHA-1后取32位hashCode，key数量大时可能冲突；CONCAT：拼接的字符串，可读但较长；
+ * MURMUR3_128：128位MurmurHash3；XXHASH64：64位xxHash，后两者不产生中间字符串
  * @author zoutongkun
  */
 public enum KeyGenerators
 {
-    SHA, CONCAT
+    SHA, CONCAT, MURMUR3_128, XXHASH64
 }
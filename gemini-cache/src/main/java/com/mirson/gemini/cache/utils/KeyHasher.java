@@ -0,0 +1,153 @@
+package com.mirson.gemini.cache.utils;
+
+import com.mirson.gemini.cache.core.key.CacheKey128;
+
+import java.util.List;
+
+/**
+ * 缓存key哈希
+ * key表达式的取值按类型编码到线程复用的字节缓冲区后计算哈希，不拼接中间字符串：
+ * 整数、浮点数、布尔、字符、字符串与枚举直接写入，其他对象写入toString()。
+ * 每个取值带类型标记，字符串带长度前缀，null也参与编码，不同取值组合不会因拼接产生相同的输入。
+ * 编码与哈希计算复用线程内的缓冲区，不分配内存；仍会分配的只有：返回的key对象（CacheKey128，
+ * XXHASH64装箱的Long）、调用方构造的参数列表，以及需要调用toString()的其他类型取值
+ *
+ * @author zoutongkun
+ */
+final class KeyHasher {
+
+    private static final byte TAG_NULL = 0;
+
+    private static final byte TAG_INTEGRAL = 1;
+
+    private static final byte TAG_FLOATING = 2;
+
+    private static final byte TAG_BOOLEAN = 3;
+
+    private static final byte TAG_STRING = 4;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * 缓冲区超过该大小时用完即释放，避免个别超大key长期占用内存
+     */
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final long SEED = 0x9747b28cL;
+
+    private static final ThreadLocal<KeyHasher> HASHERS = ThreadLocal.withInitial(KeyHasher::new);
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+
+    /**
+     * 128位哈希结果，高/低64位
+     */
+    private final long[] hash = new long[2];
+
+    private int position;
+
+    private KeyHasher() {
+    }
+
+    static CacheKey128 murmur3(List<Object> params) {
+        KeyHasher hasher = HASHERS.get();
+        hasher.write(params);
+        Murmur3.hash128(hasher.buffer, 0, hasher.position, SEED, hasher.hash);
+        hasher.reset();
+        return new CacheKey128(hasher.hash[0], hasher.hash[1]);
+    }
+
+    static long xxHash64(List<Object> params) {
+        KeyHasher hasher = HASHERS.get();
+        hasher.write(params);
+        long hash = XxHash64.hash(hasher.buffer, 0, hasher.position, SEED);
+        hasher.reset();
+        return hash;
+    }
+
+    private void write(List<Object> params) {
+        position = 0;
+        for (int i = 0, size = params.size(); i < size; i++) {
+            writeValue(params.get(i));
+        }
+    }
+
+    private void reset() {
+        if (buffer.length > MAX_RETAINED_CAPACITY) {
+            buffer = new byte[INITIAL_CAPACITY];
+        }
+        position = 0;
+    }
+
+    private void writeValue(Object value) {
+        if (value == null) {
+            writeByte(TAG_NULL);
+        } else if (value instanceof String) {
+            writeString((String) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+            // 不区分整数类型，与SHA/CONCAT中1与1L生成相同key的行为一致
+            writeByte(TAG_INTEGRAL);
+            writeLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            writeByte(TAG_FLOATING);
+            writeLong(Double.doubleToLongBits(((Number) value).doubleValue()));
+        } else if (value instanceof Boolean) {
+            writeByte(TAG_BOOLEAN);
+            writeByte((Boolean) value ? (byte) 1 : (byte) 0);
+        } else if (value instanceof Character) {
+            ensureCapacity(7);
+            writeByte(TAG_STRING);
+            writeInt(1);
+            writeChar((Character) value);
+        } else if (value instanceof Enum) {
+            writeString(((Enum<?>) value).name());
+        } else {
+            writeString(value.toString());
+        }
+    }
+
+    private void writeString(String value) {
+        int length = value.length();
+        ensureCapacity(5 + (length << 1));
+        writeByte(TAG_STRING);
+        writeInt(length);
+        for (int i = 0; i < length; i++) {
+            writeChar(value.charAt(i));
+        }
+    }
+
+    private void writeByte(byte value) {
+        ensureCapacity(1);
+        buffer[position++] = value;
+    }
+
+    private void writeChar(char value) {
+        buffer[position++] = (byte) value;
+        buffer[position++] = (byte) (value >>> 8);
+    }
+
+    private void writeInt(int value) {
+        ensureCapacity(4);
+        buffer[position++] = (byte) value;
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) (value >>> 16);
+        buffer[position++] = (byte) (value >>> 24);
+    }
+
+    private void writeLong(long value) {
+        ensureCapacity(8);
+        for (int i = 0; i < 8; i++) {
+            buffer[position++] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private void ensureCapacity(int length) {
+        if (position + length > buffer.length) {
+            byte[] expanded = new byte[Math.max(buffer.length << 1, position + length)];
+            System.arraycopy(buffer, 0, expanded, 0, position);
+            buffer = expanded;
+        }
+    }
+}
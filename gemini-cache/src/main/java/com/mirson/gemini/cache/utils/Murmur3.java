@@ -0,0 +1,126 @@
+package com.mirson.gemini.cache.utils;
+
+/**
+ * MurmurHash3 (x64, 128位) 实现
+ * 非加密哈希，速度快、分布均匀，用于布隆过滤器等场景
+ *
+ * @author zoutongkun
+ */
+public final class Murmur3 {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private Murmur3() {
+    }
+
+    /**
+     * 计算128位哈希
+     *
+     * @param data
+     * @param offset
+     * @param length
+     * @param seed
+     * @return 长度为2的数组，分别为高/低64位
+     */
+    public static long[] hash128(byte[] data, int offset, int length, long seed) {
+        long[] result = new long[2];
+        hash128(data, offset, length, seed, result);
+        return result;
+    }
+
+    /**
+     * 计算128位哈希，结果写入调用方复用的数组，不分配内存
+     *
+     * @param data
+     * @param offset
+     * @param length
+     * @param seed
+     * @param result 长度不小于2，依次写入高/低64位
+     */
+    public static void hash128(byte[] data, int offset, int length, long seed, long[] result) {
+        long h1 = seed;
+        long h2 = seed;
+        int blocks = length >>> 4;
+        for (int i = 0; i < blocks; i++) {
+            int index = offset + (i << 4);
+            long k1 = getLong(data, index);
+            long k2 = getLong(data, index + 8);
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        long k1 = 0;
+        long k2 = 0;
+        int tail = offset + (blocks << 4);
+        // 剩余不足16字节的部分，按小端序拼入k1（低8字节）、k2（高8字节）
+        int remaining = length & 15;
+        if (remaining > 8) {
+            for (int i = remaining - 1; i >= 8; i--) {
+                k2 ^= ((long) data[tail + i] & 0xff) << ((i - 8) << 3);
+            }
+            h2 ^= mixK2(k2);
+        }
+        if (remaining > 0) {
+            for (int i = Math.min(remaining, 8) - 1; i >= 0; i--) {
+                k1 ^= ((long) data[tail + i] & 0xff) << (i << 3);
+            }
+            h1 ^= mixK1(k1);
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+        result[0] = h1;
+        result[1] = h2;
+    }
+
+    static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        return k1;
+    }
+
+    static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        return k2;
+    }
+
+    static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    /**
+     * 小端方式读取long
+     */
+    private static long getLong(byte[] data, int index) {
+        return ((long) data[index] & 0xff)
+                | (((long) data[index + 1] & 0xff) << 8)
+                | (((long) data[index + 2] & 0xff) << 16)
+                | (((long) data[index + 3] & 0xff) << 24)
+                | (((long) data[index + 4] & 0xff) << 32)
+                | (((long) data[index + 5] & 0xff) << 40)
+                | (((long) data[index + 6] & 0xff) << 48)
+                | (((long) data[index + 7] & 0xff) << 56);
+    }
+}
@@ -1,22 +1,50 @@
 package com.mirson.gemini.cache.utils;
 
+import com.mirson.gemini.cache.common.CacheConfigProperties;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.expression.Expression;
-import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.stereotype.Component;
 
-import java.util.LinkedList;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Spring EL 表达式处理工具
+ * 表达式按（方法，表达式）解析一次后缓存，并开启SpEL编译模式（MIXED，不支持编译时自动退回解释执行）
  * @author zoutongkun
  */
 @Component
 public class SpElUtil {
 
-  protected static class RootObject {
+  /**
+   * 表达式解析器（线程安全）
+   */
+  private static final SpelExpressionParser PARSER = new SpelExpressionParser(
+      new SpelParserConfiguration(SpelCompilerMode.MIXED, SpElUtil.class.getClassLoader()));
+
+  /**
+   * 已解析的表达式，（方法，表达式） -> 解析结果
+   */
+  private final ConcurrentMap<ExpressionKey, KeyExpression> expressionCache = new ConcurrentHashMap<>();
+
+  /**
+   * 缓存配置，未注入时按默认配置处理
+   */
+  @Autowired(required = false)
+  private CacheConfigProperties cacheConfigProperties;
+
+  /**
+   * 表达式根对象，需为public以便SpEL编译后直接访问
+   */
+  public static class RootObject {
 
     private final Object[] args;
 
@@ -33,51 +61,134 @@ public class SpElUtil {
   public Object parseAndGetCacheKeyFromExpression(String input,
       final Object returnedObject,
       Object[] args, KeyGenerators keyGenerator) {
+    return parseAndGetCacheKeyFromExpression(null, input, returnedObject, args, keyGenerator);
+  }
 
-    ExpressionParser parser = new SpelExpressionParser();
-    StandardEvaluationContext standardEvaluationContext;
+  /**
+   * 计算缓存key
+   *
+   * @param method         表达式所在的方法，用于区分不同参数类型下的编译结果，可以为null
+   * @param input          key表达式，#result或#paramN开头
+   * @param returnedObject #result对应的对象
+   * @param args           方法参数
+   * @param keyGenerator
+   * @return
+   */
+  public Object parseAndGetCacheKeyFromExpression(Method method, String input,
+      final Object returnedObject,
+      Object[] args, KeyGenerators keyGenerator) {
+    KeyExpression keyExpression = getKeyExpression(method, input);
+    // 每次调用只创建一个上下文
+    StandardEvaluationContext standardEvaluationContext = new StandardEvaluationContext(new RootObject(args));
+    if (keyExpression.result) {
+      standardEvaluationContext.setVariable("result", returnedObject);
+    }
+    List<Object> params = new ArrayList<>(keyExpression.expressions.length);
+    for (Expression expression : keyExpression.expressions) {
+      params.add(expression.getValue(standardEvaluationContext, Object.class));
+    }
+    return CacheUtil.buildCacheKey(keyGenerator, params);
+  }
+
+  private KeyExpression getKeyExpression(Method method, String input) {
+    ExpressionKey expressionKey = new ExpressionKey(method, input);
+    KeyExpression keyExpression = expressionCache.get(expressionKey);
+    if (keyExpression == null) {
+      keyExpression = parse(input);
+      expressionCache.putIfAbsent(expressionKey, keyExpression);
+    }
+    return keyExpression;
+  }
+
+  private KeyExpression parse(String input) {
     input = input.trim();
-    List<Object> params = new LinkedList<>();
     if (input.startsWith("#result")) {
-      Expression exp = parser.parseExpression(input);
-      standardEvaluationContext = new StandardEvaluationContext();
-      standardEvaluationContext.setVariable("result", returnedObject);
-      params.add(exp.getValue(standardEvaluationContext, Object.class));
+      return new KeyExpression(true, new Expression[]{PARSER.parseExpression(input)});
     } else if (input.startsWith("#param")) {
       String[] paramsArr = input.split(",");
-      for (String param : paramsArr) {
-        standardEvaluationContext = new StandardEvaluationContext(new RootObject(args));
-        Expression expressionObj = parser
-            .parseExpression(convertAnnotationInputToSpringExpression(param));
-        params.add(expressionObj.getValue(standardEvaluationContext, Object.class));
+      Expression[] expressions = new Expression[paramsArr.length];
+      for (int i = 0; i < paramsArr.length; i++) {
+        expressions[i] = PARSER.parseExpression(convertAnnotationInputToSpringExpression(paramsArr[i]));
       }
+      return new KeyExpression(false, expressions);
     } else {
       throw new IllegalArgumentException("Invalid key expression");
     }
-    return getCacheKey(params, keyGenerator);
-  }
-
-  private Object getCacheKey(List<Object> params, KeyGenerators keyGenerator) {
-    switch (keyGenerator) {
-    case SHA:
-      return CacheUtil.buildCacheKey(params);
-    case CONCAT:
-      return CacheUtil.buildStringCacheKey(params.toArray());
-    default:
-      return CacheUtil.buildCacheKey(params);
-    }
   }
 
+  /**
+   * #paramN.a.b默认只取第一级属性（args[N-1].a），与历史版本生成的key一致；
+   * 开启app.cache.key.fullPropertyPath后保留完整的属性路径（args[N-1].a.b）
+   *
+   * @param inputString
+   * @return
+   */
   private String convertAnnotationInputToSpringExpression(String inputString) {
     inputString = inputString.trim();
     String[] inputStringArr = inputString.split("\\.");
     String indexNumberStr = inputStringArr[0].replace("#param", "");
     int indexNumber = Integer.parseInt(indexNumberStr);
     indexNumber--;
-    if (inputStringArr.length > 1)
+    if (inputStringArr.length > 1 && isFullPropertyPath())
+      return "args[" + indexNumber + "]" + inputString.substring(inputString.indexOf('.'));
+    else if (inputStringArr.length > 1)
       return "args[" + indexNumber + "]" + "." + inputStringArr[1];
     else
       return "args[" + indexNumber + "]";
   }
 
+  private boolean isFullPropertyPath() {
+    return cacheConfigProperties != null && cacheConfigProperties.isKeyFullPropertyPath();
+  }
+
+  /**
+   * 解析后的key表达式
+   */
+  private static final class KeyExpression {
+
+    /**
+     * 是否引用#result
+     */
+    private final boolean result;
+
+    private final Expression[] expressions;
+
+    private KeyExpression(boolean result, Expression[] expressions) {
+      this.result = result;
+      this.expressions = expressions;
+    }
+  }
+
+  /**
+   * 表达式缓存key
+   */
+  private static final class ExpressionKey {
+
+    private final Method method;
+
+    private final String expression;
+
+    private ExpressionKey(Method method, String expression) {
+      this.method = method;
+      this.expression = expression;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof ExpressionKey)) {
+        return false;
+      }
+      ExpressionKey that = (ExpressionKey) o;
+      return Objects.equals(method, that.method) && expression.equals(that.expression);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * Objects.hashCode(method) + expression.hashCode();
+    }
+  }
+
 }
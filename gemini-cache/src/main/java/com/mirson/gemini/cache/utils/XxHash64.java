@@ -0,0 +1,112 @@
+package com.mirson.gemini.cache.utils;
+
+/**
+ * xxHash64 实现
+ * 非加密哈希，速度快、分布均匀，用于缓存key生成
+ *
+ * @author zoutongkun
+ */
+public final class XxHash64 {
+
+    private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+
+    private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+
+    private static final long PRIME64_3 = 0x165667B19E3779F9L;
+
+    private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+
+    private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+    private XxHash64() {
+    }
+
+    /**
+     * 计算64位哈希
+     *
+     * @param data
+     * @param offset
+     * @param length
+     * @param seed
+     * @return
+     */
+    public static long hash(byte[] data, int offset, int length, long seed) {
+        int end = offset + length;
+        int index = offset;
+        long h;
+        if (length >= 32) {
+            long v1 = seed + PRIME64_1 + PRIME64_2;
+            long v2 = seed + PRIME64_2;
+            long v3 = seed;
+            long v4 = seed - PRIME64_1;
+            int limit = end - 32;
+            do {
+                v1 = round(v1, getLong(data, index));
+                v2 = round(v2, getLong(data, index + 8));
+                v3 = round(v3, getLong(data, index + 16));
+                v4 = round(v4, getLong(data, index + 24));
+                index += 32;
+            } while (index <= limit);
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12)
+                    + Long.rotateLeft(v4, 18);
+            h = mergeRound(h, v1);
+            h = mergeRound(h, v2);
+            h = mergeRound(h, v3);
+            h = mergeRound(h, v4);
+        } else {
+            h = seed + PRIME64_5;
+        }
+        h += length;
+
+        while (index + 8 <= end) {
+            h ^= round(0, getLong(data, index));
+            h = Long.rotateLeft(h, 27) * PRIME64_1 + PRIME64_4;
+            index += 8;
+        }
+        if (index + 4 <= end) {
+            h ^= (getInt(data, index) & 0xffffffffL) * PRIME64_1;
+            h = Long.rotateLeft(h, 23) * PRIME64_2 + PRIME64_3;
+            index += 4;
+        }
+        while (index < end) {
+            h ^= (data[index] & 0xff) * PRIME64_5;
+            h = Long.rotateLeft(h, 11) * PRIME64_1;
+            index++;
+        }
+
+        h ^= h >>> 33;
+        h *= PRIME64_2;
+        h ^= h >>> 29;
+        h *= PRIME64_3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME64_2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME64_1;
+    }
+
+    private static long mergeRound(long acc, long val) {
+        acc ^= round(0, val);
+        return acc * PRIME64_1 + PRIME64_4;
+    }
+
+    /**
+     * 小端方式读取long
+     */
+    private static long getLong(byte[] data, int index) {
+        return (getInt(data, index) & 0xffffffffL) | ((long) getInt(data, index + 4) << 32);
+    }
+
+    /**
+     * 小端方式读取int
+     */
+    private static int getInt(byte[] data, int index) {
+        return (data[index] & 0xff)
+                | ((data[index + 1] & 0xff) << 8)
+                | ((data[index + 2] & 0xff) << 16)
+                | ((data[index + 3] & 0xff) << 24);
+    }
+}
@@ -0,0 +1,277 @@
+package com.mirson.gemini.cache.core.aspect;
+
+import com.mirson.gemini.cache.annotation.CacheAddBatch;
+import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.core.cache.CacheService;
+import com.mirson.gemini.cache.core.cache.LocalCacheSpecs;
+import com.mirson.gemini.cache.core.cache.NullValue;
+import com.mirson.gemini.cache.core.metrics.CacheMetrics;
+import com.mirson.gemini.cache.utils.KeyGenerators;
+import com.mirson.gemini.cache.utils.SpElUtil;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 批量读取缓存：只用未命中的元素调用原方法，加载结果按元素的key回填，并与命中的结果按参数顺序合并
+ *
+ * @author zoutongkun
+ */
+public class CacheAddBatchAspectTest {
+
+    private static final String CACHE_NAME = "orders";
+
+    private final SpElUtil spElUtil = new SpElUtil();
+
+    private final CacheMetrics cacheMetrics = new CacheMetrics();
+
+    /**
+     * 模拟的缓存内容，key -> 数据
+     */
+    private final Map<Object, Object> cache = new ConcurrentHashMap<>();
+
+    /**
+     * 每次调用原方法时传入的集合参数
+     */
+    private final List<List<Object>> calls = new ArrayList<>();
+
+    private final OrderRepository repository = new OrderRepository();
+
+    private CacheManagerAspect aspect;
+
+    @Before
+    public void setUp() throws Exception {
+        CacheConfigProperties properties = new CacheConfigProperties();
+        properties.setEnableCache(true);
+        aspect = new CacheManagerAspect();
+        inject("spElUtil", spElUtil);
+        inject("cacheService", cacheService());
+        inject("cacheConfigProperties", properties);
+        inject("cacheMetrics", cacheMetrics);
+        inject("localCacheSpecs", new LocalCacheSpecs(properties));
+    }
+
+    @Test
+    public void mapResultMergesHitsAndLoadsInArgumentOrder() throws Throwable {
+        cache.put(elementKey("findMap", 2L), "cached-2");
+
+        Object result = invoke("findMap", new ArrayList<>(Arrays.asList(1L, 2L, 3L)));
+
+        Map<Object, Object> expected = new LinkedHashMap<>();
+        expected.put(1L, "order-1");
+        expected.put(2L, "cached-2");
+        expected.put(3L, "order-3");
+        assertEquals(expected, result);
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(((Map<?, ?>) result).keySet()));
+        // 只用未命中的元素调用原方法
+        assertEquals(Collections.singletonList(Arrays.<Object>asList(1L, 3L)), calls);
+        assertEquals("order-1", cache.get(elementKey("findMap", 1L)));
+        assertEquals("order-3", cache.get(elementKey("findMap", 3L)));
+        assertEquals(1, cacheMetrics.get(CACHE_NAME, CacheMetrics.HITS));
+        assertEquals(2, cacheMetrics.get(CACHE_NAME, CacheMetrics.MISSES));
+
+        // 回填后全部命中，不再调用原方法
+        assertEquals(expected, invoke("findMap", new ArrayList<>(Arrays.asList(1L, 2L, 3L))));
+        assertEquals(1, calls.size());
+    }
+
+    @Test
+    public void missingAndNullValuesAreOmitted() throws Throwable {
+        cache.put(elementKey("findMap", 2L), NullValue.INSTANCE);
+
+        Map<?, ?> result = (Map<?, ?>) invoke("findMap",
+                new ArrayList<>(Arrays.asList(1L, 2L, OrderRepository.MISSING)));
+
+        assertEquals(Collections.singletonMap(1L, "order-1"), result);
+        assertEquals(Collections.singletonList(Arrays.<Object>asList(1L, OrderRepository.MISSING)), calls);
+        assertFalse(cache.containsKey(elementKey("findMap", OrderRepository.MISSING)));
+    }
+
+    @Test
+    public void listResultKeysMatchElementKeys() throws Throwable {
+        Order cached = new Order(2L);
+        cache.put(elementKey("findList", 2L), cached);
+
+        List<?> result = (List<?>) invoke("findList", new ArrayList<>(Arrays.asList(3L, 2L, 1L)));
+
+        assertEquals(3, result.size());
+        assertEquals(Long.valueOf(3L), ((Order) result.get(0)).getId());
+        assertSame(cached, result.get(1));
+        assertEquals(Long.valueOf(1L), ((Order) result.get(2)).getId());
+        assertEquals(Collections.singletonList(Arrays.<Object>asList(3L, 1L)), calls);
+        // resultKeyExpression生成的key与keyExpression一致，可以被下一次批量读取命中
+        assertTrue(cache.containsKey(elementKey("findList", 1L)));
+        assertTrue(cache.containsKey(elementKey("findList", 3L)));
+        assertEquals(3, ((List<?>) invoke("findList", new ArrayList<>(Arrays.asList(1L, 2L, 3L)))).size());
+        assertEquals(1, calls.size());
+    }
+
+    @Test
+    public void unsupportedSignatureCallsActualMethod() throws Throwable {
+        List<Long> ids = new ArrayList<>(Arrays.asList(1L, 2L));
+        assertEquals("order-1,order-2", invoke("findJoined", ids));
+        assertEquals(Collections.singletonList(Arrays.<Object>asList(1L, 2L)), calls);
+        assertTrue(cache.isEmpty());
+    }
+
+    /**
+     * 单个元素的缓存key，与keyExpression（#result代表单个元素）的计算结果一致
+     */
+    private Object elementKey(String methodName, Object element) {
+        Method method = method(methodName);
+        return spElUtil.parseAndGetCacheKeyFromExpression(method, "#result", element, new Object[]{null},
+                KeyGenerators.SHA);
+    }
+
+    private Object invoke(String methodName, List<Long> ids) throws Throwable {
+        return aspect.getAndAddBatchCache(joinPoint(method(methodName), new Object[]{ids}));
+    }
+
+    private Method method(String name) {
+        for (Method method : OrderRepository.class.getDeclaredMethods()) {
+            if (method.getName().equals(name)) {
+                return method;
+            }
+        }
+        throw new AssertionError("no method " + name);
+    }
+
+    private void inject(String name, Object value) throws Exception {
+        Field field = CacheManagerAspect.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(aspect, value);
+    }
+
+    /**
+     * 只支持批量读取与批量回填的缓存服务
+     */
+    private CacheService cacheService() {
+        return (CacheService) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{CacheService.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getAll":
+                            Map<Object, Object> found = new LinkedHashMap<>();
+                            for (Object key : (Collection<?>) args[1]) {
+                                if (cache.containsKey(key)) {
+                                    found.put(key, cache.get(key));
+                                }
+                            }
+                            return found;
+                        case "fillAll":
+                            cache.putAll((Map<?, ?>) args[1]);
+                            return true;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private ProceedingJoinPoint joinPoint(Method method, Object[] args) {
+        MethodSignature signature = (MethodSignature) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{MethodSignature.class}, (proxy, invoked, invokeArgs) -> {
+                    switch (invoked.getName()) {
+                        case "getMethod":
+                            return method;
+                        case "getReturnType":
+                            return method.getReturnType();
+                        case "getDeclaringType":
+                            return method.getDeclaringClass();
+                        case "toString":
+                            return method.toString();
+                        default:
+                            throw new UnsupportedOperationException(invoked.getName());
+                    }
+                });
+        return (ProceedingJoinPoint) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ProceedingJoinPoint.class}, (proxy, invoked, invokeArgs) -> {
+                    switch (invoked.getName()) {
+                        case "getArgs":
+                            return args.clone();
+                        case "getSignature":
+                            return signature;
+                        case "getTarget":
+                            return repository;
+                        case "proceed":
+                            Object[] actualArgs = invokeArgs == null ? args : (Object[]) invokeArgs[0];
+                            calls.add(new ArrayList<>((Collection<?>) actualArgs[0]));
+                            try {
+                                return method.invoke(repository, actualArgs);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        default:
+                            throw new UnsupportedOperationException(invoked.getName());
+                    }
+                });
+    }
+
+    public static class Order {
+
+        private final Long id;
+
+        public Order(Long id) {
+            this.id = id;
+        }
+
+        public Long getId() {
+            return id;
+        }
+    }
+
+    public static class OrderRepository {
+
+        /**
+         * 数据库中不存在的id
+         */
+        static final Long MISSING = 99L;
+
+        @CacheAddBatch(cacheName = CACHE_NAME)
+        public Map<Long, String> findMap(Collection<Long> ids) {
+            Map<Long, String> orders = new LinkedHashMap<>();
+            for (Long id : ids) {
+                if (!MISSING.equals(id)) {
+                    orders.put(id, "order-" + id);
+                }
+            }
+            return orders;
+        }
+
+        @CacheAddBatch(cacheName = CACHE_NAME, resultKeyExpression = "#result.id")
+        public List<Order> findList(Collection<Long> ids) {
+            List<Order> orders = new ArrayList<>();
+            // 返回顺序与参数不同
+            for (Long id : ids) {
+                orders.add(0, new Order(id));
+            }
+            return orders;
+        }
+
+        @CacheAddBatch(cacheName = CACHE_NAME)
+        public String findJoined(Collection<Long> ids) {
+            StringBuilder joined = new StringBuilder();
+            for (Long id : ids) {
+                joined.append(joined.length() > 0 ? "," : "").append("order-").append(id);
+            }
+            return joined.toString();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.mirson.gemini.cache.core.aspect;
+
+import com.mirson.gemini.cache.annotation.CacheAdd;
+import com.mirson.gemini.cache.annotation.CacheDelete;
+import com.mirson.gemini.cache.utils.KeyGenerators;
+import com.mirson.gemini.cache.utils.SpElUtil;
+import org.junit.Test;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 调用计划生成的key与SpEL计算的key一致
+ *
+ * @author zoutongkun
+ */
+public class CacheInvocationPlanTest {
+
+    private final SpElUtil spElUtil = new SpElUtil();
+
+    private final Object[] args = {"order", 42L};
+
+    @Test
+    public void noExpressionKeyMatchesAllParamsExpression() {
+        for (KeyGenerators keyGenerator : KeyGenerators.values()) {
+            Method method = find("find", CacheAdd.class, keyGenerator);
+            CacheInvocationPlan<CacheAdd> plan = CacheInvocationPlan.create(method,
+                    method.getAnnotation(CacheAdd.class), spElUtil);
+            assertEquals(keyGenerator.name(),
+                    spElUtil.parseAndGetCacheKeyFromExpression(method, "#param1,#param2", null, args, keyGenerator),
+                    plan.cacheKey(args, null));
+        }
+    }
+
+    @Test
+    public void noExpressionDeleteMatchesAdd() {
+        for (KeyGenerators keyGenerator : KeyGenerators.values()) {
+            Method add = find("find", CacheAdd.class, keyGenerator);
+            Method delete = find("remove", CacheDelete.class, keyGenerator);
+            CacheInvocationPlan<CacheAdd> addPlan = CacheInvocationPlan.create(add,
+                    add.getAnnotation(CacheAdd.class), spElUtil);
+            CacheInvocationPlan<CacheDelete> deletePlan = CacheInvocationPlan.create(delete,
+                    delete.getAnnotation(CacheDelete.class), spElUtil);
+            assertEquals(keyGenerator.name(), addPlan.cacheKey(args, null), deletePlan.cacheKey(args, null));
+        }
+    }
+
+    @Test
+    public void expressionKeyMatchesSpEL() {
+        for (KeyGenerators keyGenerator : KeyGenerators.values()) {
+            Method method = find("get", CacheAdd.class, keyGenerator);
+            CacheInvocationPlan<CacheAdd> plan = CacheInvocationPlan.create(method,
+                    method.getAnnotation(CacheAdd.class), spElUtil);
+            assertEquals(keyGenerator.name(),
+                    spElUtil.parseAndGetCacheKeyFromExpression(method, "#param2", null, args, keyGenerator),
+                    plan.cacheKey(args, null));
+        }
+    }
+
+    /**
+     * 按方法名前缀与key生成器查找测试方法
+     */
+    private static <A extends Annotation> Method find(String prefix, Class<A> annotationType,
+                                                      KeyGenerators keyGenerator) {
+        for (Method method : Methods.class.getDeclaredMethods()) {
+            A annotation = method.getAnnotation(annotationType);
+            if (annotation != null && method.getName().startsWith(prefix)
+                    && keyGenerator == keyGenerator(annotation)) {
+                return method;
+            }
+        }
+        throw new AssertionError("no " + prefix + " method for " + keyGenerator);
+    }
+
+    private static KeyGenerators keyGenerator(Annotation annotation) {
+        return annotation instanceof CacheAdd ? ((CacheAdd) annotation).keyGenerator()
+                : ((CacheDelete) annotation).keyGenerator();
+    }
+
+    /**
+     * 每种key生成器各一个方法
+     */
+    static class Methods {
+
+        @CacheAdd(cacheName = "plan_test", keyGenerator = KeyGenerators.SHA)
+        public Object findSha(String type, Long id) {
+            return null;
+        }
+
+        @CacheAdd(cacheName = "plan_test", keyGenerator = KeyGenerators.CONCAT)
+        public Object findConcat(String type, Long id) {
+            return null;
+        }
+
+        @CacheAdd(cacheName = "plan_test", keyGenerator = KeyGenerators.MURMUR3_128)
+        public Object findMurmur(String type, Long id) {
+            return null;
+        }
+
+        @CacheAdd(cacheName = "plan_test", keyGenerator = KeyGenerators.XXHASH64)
+        public Object findXxHash(String type, Long id) {
+            return null;
+        }
+
+        @CacheDelete(cacheNames = "plan_test", keyGenerator = KeyGenerators.SHA)
+        public void removeSha(String type, Long id) {
+        }
+
+        @CacheDelete(cacheNames = "plan_test", keyGenerator = KeyGenerators.CONCAT)
+        public void removeConcat(String type, Long id) {
+        }
+
+        @CacheDelete(cacheNames = "plan_test", keyGenerator = KeyGenerators.MURMUR3_128)
+        public void removeMurmur(String type, Long id) {
+        }
+
+        @CacheDelete(cacheNames = "plan_test", keyGenerator = KeyGenerators.XXHASH64)
+        public void removeXxHash(String type, Long id) {
+        }
+
+        @CacheAdd(cacheName = "plan_test", keyExpression = "#param2", keyGenerator = KeyGenerators.SHA)
+        public Object getSha(String type, Long id) {
+            return null;
+        }
+
+        @CacheAdd(cacheName = "plan_test", keyExpression = "#param2", keyGenerator = KeyGenerators.CONCAT)
+        public Object getConcat(String type, Long id) {
+            return null;
+        }
+
+        @CacheAdd(cacheName = "plan_test", keyExpression = "#param2", keyGenerator = KeyGenerators.MURMUR3_128)
+        public Object getMurmur(String type, Long id) {
+            return null;
+        }
+
+        @CacheAdd(cacheName = "plan_test", keyExpression = "#param2", keyGenerator = KeyGenerators.XXHASH64)
+        public Object getXxHash(String type, Long id) {
+            return null;
+        }
+    }
+}
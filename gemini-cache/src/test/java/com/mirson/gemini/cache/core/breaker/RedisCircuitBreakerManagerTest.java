@@ -0,0 +1,209 @@
+package com.mirson.gemini.cache.core.breaker;
+
+import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.core.metrics.CacheMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.redisson.api.RMapCache;
+import org.redisson.api.RedissonClient;
+import org.redisson.misc.RedissonPromise;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 熔断管理：熔断中跳过写入、删除总是发送、未确认的删除在补发成功后才闭合并通知监听器
+ *
+ * @author zoutongkun
+ */
+public class RedisCircuitBreakerManagerTest {
+
+    private static final String CACHE = "orders";
+
+    private CacheMetrics cacheMetrics;
+
+    private RedisCircuitBreakerManager manager;
+
+    /**
+     * Redis是否可用（影响探测与补发）
+     */
+    private final AtomicBoolean redisUp = new AtomicBoolean(true);
+
+    /**
+     * 补发时删除的key，清空整个缓存记录为null
+     */
+    private final List<Collection<?>> replayed = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() {
+        CacheConfigProperties properties = new CacheConfigProperties();
+        properties.setBreakerEnable(true);
+        properties.setBreakerLatencyBudget(50);
+        properties.setBreakerFailureThreshold(2);
+        properties.setBreakerOpenDuration(20);
+        cacheMetrics = new CacheMetrics();
+        manager = new RedisCircuitBreakerManager(redissonClient(), properties, cacheMetrics);
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void writeReportsWhetherApplied() {
+        assertTrue(manager.write(CACHE, () -> CompletableFuture.completedFuture(null)));
+        // 超出延迟预算
+        assertFalse(manager.write(CACHE, CompletableFuture::new));
+        assertEquals(1, cacheMetrics.get(CACHE, CacheMetrics.BREAKER_TIMEOUTS));
+        // 访问失败
+        assertFalse(manager.write(CACHE, () -> failed(new IllegalStateException("down"))));
+        assertEquals(CircuitState.OPEN, manager.getState(CACHE));
+        assertEquals(1, cacheMetrics.get(CACHE, CacheMetrics.BREAKER_OPENED));
+    }
+
+    @Test
+    public void writeIsSkippedWhileOpen() {
+        redisUp.set(false);
+        open();
+        AtomicInteger sent = new AtomicInteger();
+        assertFalse(manager.write(CACHE, () -> {
+            sent.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }));
+        assertEquals(0, sent.get());
+        assertEquals(1, cacheMetrics.get(CACHE, CacheMetrics.BREAKER_SHORT_CIRCUITS));
+        assertNull(manager.execute(CACHE, () -> CompletableFuture.completedFuture("value"), null));
+    }
+
+    @Test
+    public void deleteIsSentWhileOpen() {
+        redisUp.set(false);
+        open();
+        AtomicInteger sent = new AtomicInteger();
+        assertTrue(manager.delete(CACHE, () -> {
+            sent.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }));
+        assertEquals(1, sent.get());
+        // 熔断中的成功删除不会闭合熔断器
+        assertNotEquals(CircuitState.CLOSED, manager.getState(CACHE));
+        assertFalse(manager.delete(CACHE, CompletableFuture::new));
+        assertEquals(1, cacheMetrics.get(CACHE, CacheMetrics.BREAKER_TIMEOUTS));
+    }
+
+    @Test
+    public void deferredDeletesAreReplayedBeforeClosing() throws InterruptedException {
+        manager.addReplayListener((cacheName, keys) -> replayed.add(keys == null ? null : new HashSet<>(keys)));
+        redisUp.set(false);
+        open();
+        manager.deferDelete(CACHE, Arrays.asList("a", "b"));
+        manager.deferDelete(CACHE, Arrays.asList("b", "c"));
+        assertEquals(4, cacheMetrics.get(CACHE, CacheMetrics.BREAKER_DEFERRED_DELETES));
+
+        // Redis不可用时不闭合，也不丢弃待补发的删除
+        Thread.sleep(100);
+        assertNotEquals(CircuitState.CLOSED, manager.getState(CACHE));
+        assertTrue(replayed.isEmpty());
+
+        redisUp.set(true);
+        await(() -> manager.getState(CACHE) == CircuitState.CLOSED);
+        await(() -> !replayed.isEmpty());
+        assertEquals(1, replayed.size());
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), replayed.get(0));
+    }
+
+    @Test
+    public void deferredClearReplacesPendingKeys() throws InterruptedException {
+        manager.addReplayListener((cacheName, keys) -> replayed.add(keys));
+        redisUp.set(false);
+        open();
+        manager.deferDelete(CACHE, Arrays.asList("a", "b"));
+        manager.deferClear(CACHE);
+        // 清空整个缓存后不再记录单个key
+        manager.deferDelete(CACHE, Arrays.asList("c"));
+
+        redisUp.set(true);
+        await(() -> !replayed.isEmpty());
+        assertEquals(1, replayed.size());
+        assertNull(replayed.get(0));
+        assertEquals(CircuitState.CLOSED, manager.getState(CACHE));
+    }
+
+    @Test
+    public void deferredDeletesAreReplayedWhileClosed() throws InterruptedException {
+        manager.addReplayListener((cacheName, keys) -> replayed.add(new ArrayList<>(keys)));
+        manager.write(CACHE, () -> CompletableFuture.completedFuture(null));
+        manager.deferDelete(CACHE, Arrays.asList("a"));
+        await(() -> !replayed.isEmpty());
+        assertEquals(Arrays.asList("a"), replayed.get(0));
+    }
+
+    /**
+     * 连续失败达到阈值，使熔断器熔断
+     */
+    private void open() {
+        manager.write(CACHE, () -> failed(new IllegalStateException("down")));
+        manager.write(CACHE, () -> failed(new IllegalStateException("down")));
+        assertEquals(CircuitState.OPEN, manager.getState(CACHE));
+    }
+
+    private void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("condition not reached");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable cause) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(cause);
+        return future;
+    }
+
+    /**
+     * 只支持熔断探测与补发删除的Redis客户端
+     */
+    private RedissonClient redissonClient() {
+        Set<String> supported = new HashSet<>(Arrays.asList("isExistsAsync", "fastRemoveAsync", "deleteAsync"));
+        RMapCache<?, ?> mapCache = (RMapCache<?, ?>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{RMapCache.class}, (proxy, method, args) -> {
+                    if (!supported.contains(method.getName())) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    if (!redisUp.get()) {
+                        return RedissonPromise.newFailedFuture(new IllegalStateException("down"));
+                    }
+                    return RedissonPromise.newSucceededFuture(
+                            "fastRemoveAsync".equals(method.getName()) ? (Object) 1L : Boolean.TRUE);
+                });
+        return (RedissonClient) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{RedissonClient.class}, (proxy, method, args) -> {
+                    if ("getMapCache".equals(method.getName())) {
+                        return mapCache;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
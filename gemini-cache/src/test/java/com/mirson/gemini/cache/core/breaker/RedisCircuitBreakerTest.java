@@ -0,0 +1,85 @@
+package com.mirson.gemini.cache.core.breaker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 熔断器状态转换：连续失败后熔断、熔断时间满后探测、探测结果决定闭合或重新熔断
+ *
+ * @author zoutongkun
+ */
+public class RedisCircuitBreakerTest {
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker("orders", 100, 3);
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.onFailure());
+        assertFalse(breaker.onFailure());
+        assertTrue(breaker.onFailure());
+        assertEquals(CircuitState.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        // 已熔断后的失败不会重复触发
+        assertFalse(breaker.onFailure());
+    }
+
+    @Test
+    public void successResetsFailureCount() {
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker("orders", 100, 2);
+        assertFalse(breaker.onFailure());
+        breaker.onSuccess();
+        assertFalse(breaker.onFailure());
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+        assertTrue(breaker.onFailure());
+    }
+
+    @Test
+    public void thresholdIsAtLeastOne() {
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker("orders", 100, 0);
+        assertTrue(breaker.onFailure());
+        assertEquals(CircuitState.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void halfOpensOnlyAfterOpenDuration() throws InterruptedException {
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker("orders", 100, 1);
+        // 未熔断时不进入探测
+        assertFalse(breaker.tryHalfOpen(0));
+        breaker.onFailure();
+        assertFalse(breaker.tryHalfOpen(60000));
+        assertEquals(CircuitState.OPEN, breaker.getState());
+        Thread.sleep(5);
+        assertTrue(breaker.tryHalfOpen(1));
+        assertEquals(CircuitState.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        // 同一时间只有一个探测
+        assertFalse(breaker.tryHalfOpen(0));
+    }
+
+    @Test
+    public void failedProbeReopensAndRestartsOpenDuration() throws InterruptedException {
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker("orders", 100, 1);
+        breaker.onFailure();
+        Thread.sleep(5);
+        assertTrue(breaker.tryHalfOpen(1));
+        breaker.onProbe(false);
+        assertEquals(CircuitState.OPEN, breaker.getState());
+        assertFalse(breaker.tryHalfOpen(60000));
+    }
+
+    @Test
+    public void successfulProbeClosesAndResetsFailures() throws InterruptedException {
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker("orders", 100, 2);
+        breaker.onFailure();
+        breaker.onFailure();
+        Thread.sleep(5);
+        assertTrue(breaker.tryHalfOpen(1));
+        breaker.onProbe(true);
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.onFailure());
+    }
+}
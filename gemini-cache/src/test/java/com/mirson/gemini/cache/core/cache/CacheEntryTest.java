@@ -0,0 +1,106 @@
+package com.mirson.gemini.cache.core.cache;
+
+import com.mirson.gemini.cache.utils.CacheUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 缓存条目的生命周期随机延长、提前刷新与概率提前刷新（XFetch）判断
+ *
+ * @author zoutongkun
+ */
+public class CacheEntryTest {
+
+    @Test
+    public void jitterStaysWithinRatio() {
+        for (int i = 0; i < 1000; i++) {
+            long ttl = CacheUtil.jitter(10000, 0.1);
+            assertTrue("jitter out of range: " + ttl, ttl >= 10000 && ttl < 11000);
+        }
+        assertEquals(10000, CacheUtil.jitter(10000, 0));
+        assertEquals(0, CacheUtil.jitter(0, 0.1));
+        assertEquals(-1, CacheUtil.jitter(-1, 0.1));
+    }
+
+    @Test
+    public void wrapConvertsSecondsAndAppliesJitter() {
+        long before = System.currentTimeMillis();
+        CacheEntry entry = CacheEntry.wrap("value", 10, 0.2);
+        assertEquals("value", entry.getValue());
+        assertTrue(entry.getWriteTime() >= before && entry.getWriteTime() <= System.currentTimeMillis());
+        assertTrue(entry.getTtl() >= 10000 && entry.getTtl() < 12000);
+        assertEquals(0, entry.getVersion());
+
+        assertEquals(0, CacheEntry.wrap("value", 0, 0.2).getTtl());
+        assertEquals(0, CacheEntry.wrap("value", -5, 0.2).getTtl());
+        assertSame(entry, CacheEntry.wrap(entry, 30, 0.2));
+    }
+
+    @Test
+    public void fromWrapsLegacyValues() {
+        assertNull(CacheEntry.from(null));
+        CacheEntry legacy = CacheEntry.from("value");
+        assertEquals("value", legacy.getValue());
+        assertEquals(0, legacy.getWriteTime());
+        assertEquals(0, legacy.getTtl());
+        assertEquals(-1, legacy.remainingTtl(System.currentTimeMillis()));
+    }
+
+    @Test
+    public void refreshIsDueAtFactorOfTtl() {
+        CacheEntry entry = new CacheEntry("value", 1000, 10000, 0);
+        assertFalse(entry.isRefreshDue(0.8, 0, 1000 + 7999));
+        assertTrue(entry.isRefreshDue(0.8, 0, 1000 + 8000));
+
+        CacheEntry unlimited = new CacheEntry("value", 1000, 0, 0);
+        assertFalse(unlimited.isRefreshDue(0.8, 0, Long.MAX_VALUE / 2));
+        assertFalse(unlimited.isRefreshDue(0.8, 5000, 1000 + 4999));
+        assertTrue(unlimited.isRefreshDue(0.8, 5000, 1000 + 5000));
+    }
+
+    @Test
+    public void earlyRefreshNeedsTtlAndLoadCost() {
+        long now = 1000 + 10000;
+        assertFalse(new CacheEntry("value", 1000, 0, 100).isEarlyRefreshDue(1.0, now));
+        assertFalse(new CacheEntry("value", 1000, 10000, 0).isEarlyRefreshDue(1.0, now));
+        assertFalse(new CacheEntry("value", 0, 10000, 100).isEarlyRefreshDue(1.0, now));
+    }
+
+    @Test
+    public void earlyRefreshProbabilityGrowsTowardsExpiry() {
+        CacheEntry entry = new CacheEntry("value", 1000, 10000, 100);
+        // 已过期时必然刷新
+        for (int i = 0; i < 100; i++) {
+            assertTrue(entry.isEarlyRefreshDue(1.0, 1000 + 10000));
+        }
+        // 距离过期远大于加载耗时，刷新概率为exp(-剩余时间/加载耗时)，可忽略
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(entry.isEarlyRefreshDue(1.0, 1000));
+        }
+        // 距离过期一个加载耗时，刷新概率约为exp(-1)
+        int due = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (entry.isEarlyRefreshDue(1.0, 1000 + 10000 - 100)) {
+                due++;
+            }
+        }
+        assertTrue("unexpected early refresh count: " + due, due > 3000 && due < 4400);
+    }
+
+    @Test
+    public void withVersionCopiesOnlyWhenChanged() {
+        CacheEntry entry = new CacheEntry("value", 1000, 10000, 5);
+        assertSame(entry, entry.withVersion(0));
+        CacheEntry versioned = entry.withVersion(3);
+        assertEquals(3, versioned.getVersion());
+        assertEquals("value", versioned.getValue());
+        assertEquals(1000, versioned.getWriteTime());
+        assertEquals(10000, versioned.getTtl());
+        assertEquals(5, versioned.getLoadCost());
+    }
+}
@@ -0,0 +1,152 @@
+package com.mirson.gemini.cache.core.cache;
+
+import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.core.metrics.CacheMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.redisson.codec.SerializationCodec;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 主机共享缓存段的读写、覆盖、代数与消息去重
+ *
+ * @author zoutongkun
+ */
+public class HostSharedSegmentTest {
+
+    private static final String CACHE = "shared_test";
+
+    private Path file;
+
+    private HostSharedSegment segment;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("gemini-cache-shared", ".seg");
+        segment = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        segment.shutdown();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void putAndGet() {
+        assertTrue(segment.isEnabled());
+        assertTrue(segment.put(CACHE, "key", new CacheEntry("value", 1000L, 60000L, 0L, 3L), future()));
+
+        CacheEntry stored = segment.get(CACHE, "key");
+        assertNotNull(stored);
+        assertEquals("value", stored.getValue());
+        assertEquals(1000L, stored.getWriteTime());
+        assertEquals(3L, stored.getVersion());
+        assertNull(segment.get(CACHE, "missing"));
+        assertNull(segment.get("other_cache", "key"));
+    }
+
+    @Test
+    public void overwriteReturnsLatest() {
+        segment.put(CACHE, "key", entry("v1"), future());
+        segment.put(CACHE, "key", entry("v2"), future());
+        assertEquals("v2", segment.get(CACHE, "key").getValue());
+    }
+
+    @Test
+    public void expiredAndRemovedEntriesMiss() {
+        segment.put(CACHE, "expired", entry("value"), System.currentTimeMillis() - 1);
+        assertNull(segment.get(CACHE, "expired"));
+
+        segment.put(CACHE, "key", entry("value"), future());
+        segment.remove(CACHE, "key");
+        assertNull(segment.get(CACHE, "key"));
+    }
+
+    @Test
+    public void removeAllStartsNewGeneration() {
+        segment.put(CACHE, "a", entry("a"), future());
+        segment.put("other_cache", "a", entry("a"), future());
+
+        segment.removeAll(CACHE);
+        assertNull(segment.get(CACHE, "a"));
+        assertNotNull(segment.get("other_cache", "a"));
+
+        // 新代数下重新写入有效
+        segment.put(CACHE, "a", entry("b"), future());
+        assertEquals("b", segment.get(CACHE, "a").getValue());
+    }
+
+    @Test
+    public void rejectsRecordLargerThanQuarterOfData() {
+        assertFalse(segment.put(CACHE, "key", entry(new byte[300 * 1024]), future()));
+        assertNull(segment.get(CACHE, "key"));
+    }
+
+    @Test
+    public void ringOverwritesOldestRecords() {
+        byte[] value = new byte[100 * 1024];
+        for (int i = 0; i < 30; i++) {
+            assertTrue(segment.put(CACHE, i, entry(value), future()));
+        }
+        // 数据区1MB，最早写入的记录已被覆盖
+        assertNull(segment.get(CACHE, 0));
+        assertNotNull(segment.get(CACHE, 29));
+    }
+
+    @Test
+    public void invalidateOnceSkipsHandledMessage() {
+        segment.put(CACHE, "key", entry("value"), future());
+        assertTrue(segment.invalidateOnce(42L, new String[]{CACHE}, Collections.singletonList("key")));
+        assertNull(segment.get(CACHE, "key"));
+
+        segment.put(CACHE, "key", entry("value"), future());
+        assertFalse(segment.invalidateOnce(42L, new String[]{CACHE}, Collections.singletonList("key")));
+        assertNotNull(segment.get(CACHE, "key"));
+
+        // keys为null时清空整个缓存
+        assertTrue(segment.invalidateOnce(43L, new String[]{CACHE}, null));
+        assertNull(segment.get(CACHE, "key"));
+    }
+
+    @Test
+    public void reopenAloneReinitializes() {
+        segment.put(CACHE, "key", entry("value"), future());
+        long segmentId = segment.getSegmentId();
+        assertTrue(segment.isSameHost(segmentId));
+
+        segment.shutdown();
+        segment = open();
+        assertTrue(segment.isEnabled());
+        assertNotEquals(segmentId, segment.getSegmentId());
+        assertNull(segment.get(CACHE, "key"));
+    }
+
+    private HostSharedSegment open() {
+        CacheConfigProperties properties = new CacheConfigProperties();
+        properties.setSharedCapacity(1);
+        properties.setSharedSlots(1024);
+        properties.setSharedPath(file.toString());
+        return new HostSharedSegment(properties, new CacheMetrics(), new SerializationCodec());
+    }
+
+    private static CacheEntry entry(Object value) {
+        return new CacheEntry(value, System.currentTimeMillis(), 60000L, 0L);
+    }
+
+    private static long future() {
+        return System.currentTimeMillis() + 60000L;
+    }
+}
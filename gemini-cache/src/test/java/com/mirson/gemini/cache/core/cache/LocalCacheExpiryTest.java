@@ -0,0 +1,94 @@
+package com.mirson.gemini.cache.core.cache;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 本地缓存按条目剩余生命周期过期，空值占位对象使用更短的过期时间
+ *
+ * @author zoutongkun
+ */
+public class LocalCacheExpiryTest {
+
+    private static final long NEVER = Long.MAX_VALUE;
+
+    @Test
+    public void remainingTtlIsBoundedByTtl() {
+        CacheEntry entry = new CacheEntry("value", 1000, 10000, 0);
+        assertEquals(10000, entry.remainingTtl(1000));
+        assertEquals(4000, entry.remainingTtl(7000));
+        assertEquals(0, entry.remainingTtl(20000));
+        // 节点时钟落后于写入节点时不超过生命周期
+        assertEquals(10000, entry.remainingTtl(500));
+        assertEquals(-1, new CacheEntry("value", 1000, 0, 0).remainingTtl(1000));
+        assertEquals(-1, new CacheEntry("value", 0, 10000, 0).remainingTtl(1000));
+    }
+
+    @Test
+    public void entryWithTtlExpiresByRemainingTtl() {
+        LocalCacheExpiry expiry = new LocalCacheExpiry(60000, 0, 0, 0);
+        CacheEntry entry = new CacheEntry("value", System.currentTimeMillis() - 4000, 10000, 0);
+        long expire = expiry.expireAfterCreate("key", entry, 0);
+        assertTrue("unexpected expire: " + expire, expire <= TimeUnit.SECONDS.toNanos(6)
+                && expire > TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void expiredEntryExpiresImmediately() {
+        LocalCacheExpiry expiry = new LocalCacheExpiry(60000, 0, 0, 0);
+        CacheEntry entry = new CacheEntry("value", System.currentTimeMillis() - 20000, 10000, 0);
+        assertEquals(0, expiry.expireAfterCreate("key", entry, 0));
+    }
+
+    @Test
+    public void entryWithoutTtlUsesExpireAfterWrite() {
+        LocalCacheExpiry expiry = new LocalCacheExpiry(60000, 0, 0, 0);
+        assertEquals(TimeUnit.SECONDS.toNanos(60),
+                expiry.expireAfterCreate("key", new CacheEntry("value", System.currentTimeMillis(), 0, 0), 0));
+        assertEquals(TimeUnit.SECONDS.toNanos(60), expiry.expireAfterCreate("key", "raw", 0));
+
+        LocalCacheExpiry unlimited = new LocalCacheExpiry(0, 0, 0, 0);
+        assertEquals(NEVER, unlimited.expireAfterCreate("key", "raw", 0));
+    }
+
+    @Test
+    public void expireAfterWriteIsJittered() {
+        LocalCacheExpiry expiry = new LocalCacheExpiry(60000, 0, 0, 0.1);
+        for (int i = 0; i < 1000; i++) {
+            long expire = expiry.expireAfterCreate("key", "raw", 0);
+            assertTrue("jitter out of range: " + expire, expire >= TimeUnit.SECONDS.toNanos(60)
+                    && expire < TimeUnit.SECONDS.toNanos(66));
+        }
+        assertEquals(NEVER, new LocalCacheExpiry(0, 0, 0, 0.1).expireAfterCreate("key", "raw", 0));
+    }
+
+    @Test
+    public void expireAfterAccessCapsAllEntries() {
+        LocalCacheExpiry expiry = new LocalCacheExpiry(60000, 5000, 0, 0);
+        CacheEntry entry = new CacheEntry("value", System.currentTimeMillis(), 30000, 0);
+        assertEquals(TimeUnit.SECONDS.toNanos(5), expiry.expireAfterCreate("key", entry, 0));
+        assertEquals(TimeUnit.SECONDS.toNanos(5), expiry.expireAfterUpdate("key", entry, 0, 1));
+        // 访问后顺延，不超过当前剩余时间
+        assertEquals(TimeUnit.SECONDS.toNanos(5), expiry.expireAfterRead("key", entry, 0, NEVER));
+        assertEquals(TimeUnit.SECONDS.toNanos(2),
+                expiry.expireAfterRead("key", entry, 0, TimeUnit.SECONDS.toNanos(2)));
+    }
+
+    @Test
+    public void nullValueUsesShorterExpire() {
+        LocalCacheExpiry expiry = new LocalCacheExpiry(60000, 0, 1000, 0);
+        assertEquals(TimeUnit.SECONDS.toNanos(1), expiry.expireAfterCreate("key", NullValue.INSTANCE, 0));
+        CacheEntry nullEntry = new CacheEntry(NullValue.INSTANCE, System.currentTimeMillis(), 30000, 0);
+        assertEquals(TimeUnit.SECONDS.toNanos(1), expiry.expireAfterCreate("key", nullEntry, 0));
+        CacheEntry shortNull = new CacheEntry(NullValue.INSTANCE, System.currentTimeMillis() - 29800, 30000, 0);
+        assertTrue(expiry.expireAfterCreate("key", shortNull, 0) <= TimeUnit.MILLISECONDS.toNanos(200));
+
+        // 未配置时与普通数据一致
+        LocalCacheExpiry same = new LocalCacheExpiry(60000, 0, 0, 0);
+        assertEquals(TimeUnit.SECONDS.toNanos(60), same.expireAfterCreate("key", NullValue.INSTANCE, 0));
+    }
+}
@@ -0,0 +1,145 @@
+package com.mirson.gemini.cache.core.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.core.metrics.CacheMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.redisson.codec.SerializationCodec;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 本地缓存快照的保存与恢复
+ *
+ * @author zoutongkun
+ */
+public class LocalCacheSnapshotTest {
+
+    private Path directory;
+
+    private Path file;
+
+    private CacheConfigProperties properties;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("gemini-cache-snapshot");
+        file = directory.resolve("local.snapshot");
+        properties = new CacheConfigProperties();
+        properties.setMaximumSize(1000);
+        properties.setExpireAfterWrite(60000);
+        properties.setSnapshotPath(file.toString());
+        properties.setSnapshotTopN(100);
+        properties.setSnapshotMaxAge(300);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory.resolve("local.snapshot.tmp"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    public void saveAndRestore() {
+        TwoLevelCacheService source = cacheService();
+        source.restoreLocal("orders", "a", entry("order-a"), 60000L);
+        source.restoreLocal("orders", 2L, entry("order-2"), 60000L);
+        source.restoreLocal("users", "u", entry("user-u"), 60000L);
+        LocalCacheSnapshot saved = snapshot(source);
+        assertTrue(saved.isEnabled());
+        saved.shutdown();
+        assertTrue(Files.exists(file));
+
+        TwoLevelCacheService target = cacheService();
+        snapshot(target).restore();
+        Cache<Object, Object> orders = target.localCaches().get("orders");
+        assertNotNull(orders);
+        assertEquals("order-a", ((CacheEntry) orders.getIfPresent("a")).getValue());
+        assertEquals("order-2", ((CacheEntry) orders.getIfPresent(2L)).getValue());
+        assertEquals("user-u", ((CacheEntry) target.localCaches().get("users").getIfPresent("u")).getValue());
+        // 恢复的条目保持原来的剩余过期时间
+        long expiresAfter = orders.policy().expireVariably().get()
+                .getExpiresAfter("a", TimeUnit.MILLISECONDS).orElse(0L);
+        assertTrue(expiresAfter > 0 && expiresAfter <= 60000L);
+        // 快照使用后删除
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void skipsExpiredEntries() throws InterruptedException {
+        TwoLevelCacheService source = cacheService();
+        source.restoreLocal("orders", "short", entry("short"), 50L);
+        source.restoreLocal("orders", "long", entry("long"), 60000L);
+        snapshot(source).save();
+        Thread.sleep(100L);
+
+        TwoLevelCacheService target = cacheService();
+        snapshot(target).restore();
+        Cache<Object, Object> orders = target.localCaches().get("orders");
+        assertNull(orders.getIfPresent("short"));
+        assertNotNull(orders.getIfPresent("long"));
+    }
+
+    @Test
+    public void keepsExistingEntries() {
+        TwoLevelCacheService source = cacheService();
+        source.restoreLocal("orders", "a", entry("old"), 60000L);
+        snapshot(source).save();
+
+        TwoLevelCacheService target = cacheService();
+        target.restoreLocal("orders", "a", entry("new"), 60000L);
+        snapshot(target).restore();
+        assertEquals("new", ((CacheEntry) target.localCaches().get("orders").getIfPresent("a")).getValue());
+    }
+
+    @Test
+    public void ignoresSnapshotOlderThanMaxAge() throws InterruptedException {
+        TwoLevelCacheService source = cacheService();
+        source.restoreLocal("orders", "a", entry("a"), 60000L);
+        snapshot(source).save();
+        // 保证快照的年龄大于0
+        Thread.sleep(5L);
+
+        properties.setSnapshotMaxAge(0);
+        TwoLevelCacheService target = cacheService();
+        snapshot(target).restore();
+        Cache<Object, Object> orders = target.localCaches().get("orders");
+        assertTrue(orders == null || orders.getIfPresent("a") == null);
+    }
+
+    @Test
+    public void disabledWithoutLocalCache() {
+        LocalCacheSnapshot snapshot = new LocalCacheSnapshot(properties, null, new SerializationCodec());
+        assertFalse(snapshot.isEnabled());
+        snapshot.shutdown();
+        assertFalse(Files.exists(file));
+    }
+
+    private TwoLevelCacheService cacheService() {
+        CacheMetrics cacheMetrics = new CacheMetrics();
+        return new TwoLevelCacheService(null, null, properties, cacheMetrics, null,
+                new LocalCacheSpecs(properties), new LocalMemoryBudget(properties, cacheMetrics),
+                new OffHeapStore(properties, cacheMetrics, new SerializationCodec()),
+                new HostSharedSegment(properties, cacheMetrics, new SerializationCodec()), null);
+    }
+
+    private LocalCacheSnapshot snapshot(TwoLevelCacheService cacheService) {
+        return new LocalCacheSnapshot(properties, cacheService, new SerializationCodec());
+    }
+
+    private static CacheEntry entry(Object value) {
+        return new CacheEntry(value, System.currentTimeMillis(), 60000L, 0L);
+    }
+}
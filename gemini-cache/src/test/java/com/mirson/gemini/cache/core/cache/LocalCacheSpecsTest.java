@@ -0,0 +1,151 @@
+package com.mirson.gemini.cache.core.cache;
+
+import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.core.metrics.CacheMetrics;
+import org.junit.Before;
+import org.junit.Test;
+import org.redisson.codec.SerializationCodec;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 本地缓存配置的解析、覆盖顺序、变更通知与准入策略
+ *
+ * @author zoutongkun
+ */
+public class LocalCacheSpecsTest {
+
+    private static final String CACHE_NAME = "orders";
+
+    private CacheConfigProperties properties;
+
+    @Before
+    public void setUp() {
+        properties = new CacheConfigProperties();
+        properties.setInitialCapacity(16);
+        properties.setMaximumSize(1000);
+        properties.setExpireAfterWrite(60000);
+    }
+
+    @Test
+    public void mergeOverridesOnlySpecifiedItems() {
+        LocalCacheSpec base = new LocalCacheSpec(true, 16, 1000, 60000, 0, 0, LocalCacheSpec.Admission.ALL);
+        LocalCacheSpec merged = base.merge(" maximumSize = 50 ,, expireAfterAccess=2000,admission=Frequent ");
+        assertTrue(merged.isEnabled());
+        assertEquals(16, merged.getInitialCapacity());
+        assertEquals(50, merged.getMaximumSize());
+        assertEquals(60000, merged.getExpireAfterWrite());
+        assertEquals(2000, merged.getExpireAfterAccess());
+        assertEquals(0, merged.getRefreshAfterWrite());
+        assertEquals(LocalCacheSpec.Admission.FREQUENT, merged.getAdmission());
+
+        assertSame(base, base.merge(null));
+        assertSame(base, base.merge("  "));
+        assertFalse(base.merge("enabled=false").isEnabled());
+    }
+
+    @Test
+    public void toStringCanBeMergedBack() {
+        LocalCacheSpec spec = new LocalCacheSpec(false, 8, 10, 20, 30, 40, LocalCacheSpec.Admission.FREQUENT);
+        LocalCacheSpec other = new LocalCacheSpec(true, 0, 0, 0, 0, 0, LocalCacheSpec.Admission.ALL);
+        assertEquals(spec, other.merge(spec.toString()));
+        assertEquals(spec.hashCode(), other.merge(spec.toString()).hashCode());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownKeyIsRejected() {
+        new LocalCacheSpecs(properties).get(CACHE_NAME).merge("maxSize=10");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void itemWithoutValueIsRejected() {
+        new LocalCacheSpecs(properties).get(CACHE_NAME).merge("maximumSize");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidNumberIsRejected() {
+        new LocalCacheSpecs(properties).get(CACHE_NAME).merge("maximumSize=ten");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidConfiguredSpecFailsAtStartup() {
+        properties.setLocalSpecs("orders:maximumSize=10;users:admission=sometimes");
+        new LocalCacheSpecs(properties);
+    }
+
+    @Test
+    public void configuredSpecOverridesAnnotation() {
+        properties.setLocalSpecs("orders:maximumSize=10");
+        LocalCacheSpecs specs = new LocalCacheSpecs(properties);
+        specs.register(CACHE_NAME, "maximumSize=20,expireAfterWrite=5000");
+        LocalCacheSpec spec = specs.get(CACHE_NAME);
+        assertEquals(10, spec.getMaximumSize());
+        assertEquals(5000, spec.getExpireAfterWrite());
+        assertEquals(16, spec.getInitialCapacity());
+
+        // 未单独配置的缓存使用全局配置
+        LocalCacheSpec other = specs.get("users");
+        assertEquals(1000, other.getMaximumSize());
+        assertEquals(60000, other.getExpireAfterWrite());
+        assertEquals(Arrays.asList(CACHE_NAME, "users"), new ArrayList<>(specs.getAll().keySet()));
+    }
+
+    @Test
+    public void listenerIsNotifiedOnlyWhenEffectiveSpecChanges() {
+        LocalCacheSpecs specs = new LocalCacheSpecs(properties);
+        List<String> changed = new ArrayList<>();
+        specs.addListener(changed::add);
+
+        // 首次注册时尚未使用，不需要重建
+        specs.register(CACHE_NAME, "maximumSize=20");
+        assertEquals(20, specs.get(CACHE_NAME).getMaximumSize());
+        assertTrue(changed.isEmpty());
+
+        specs.register(CACHE_NAME, "maximumSize=20");
+        specs.register(CACHE_NAME, " ");
+        // 文本不同但生效的配置相同
+        specs.register(CACHE_NAME, "maximumSize=20,initialCapacity=16");
+        assertTrue(changed.isEmpty());
+
+        specs.register(CACHE_NAME, "maximumSize=30");
+        assertEquals(Collections.singletonList(CACHE_NAME), changed);
+        assertEquals(30, specs.get(CACHE_NAME).getMaximumSize());
+    }
+
+    @Test
+    public void frequentAdmissionAdmitsOnSecondWrite() {
+        properties.setTimeout(3000);
+        properties.setLocalSpecs("orders:admission=frequent");
+        CacheMetrics cacheMetrics = new CacheMetrics();
+        CacheService redis = (CacheService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{CacheService.class}, (proxy, method, args) -> {
+                    if (!"getEntry".equals(method.getName())) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    return new CacheEntry("value-" + args[1], System.currentTimeMillis(), 60000L, 0L);
+                });
+        TwoLevelCacheService cacheService = new TwoLevelCacheService(redis, null, properties, cacheMetrics, null,
+                new LocalCacheSpecs(properties), new LocalMemoryBudget(properties, cacheMetrics),
+                new OffHeapStore(properties, cacheMetrics, new SerializationCodec()),
+                new HostSharedSegment(properties, cacheMetrics, new SerializationCodec()), null);
+
+        assertEquals("value-a", cacheService.get(CACHE_NAME, "a"));
+        assertNull(cacheService.localCaches().get(CACHE_NAME).getIfPresent("a"));
+        assertEquals(1, cacheMetrics.get(CACHE_NAME, CacheMetrics.LOCAL_ADMISSION_REJECTS));
+
+        assertEquals("value-a", cacheService.get(CACHE_NAME, "a"));
+        assertNotNull(cacheService.localCaches().get(CACHE_NAME).getIfPresent("a"));
+        assertEquals(1, cacheMetrics.get(CACHE_NAME, CacheMetrics.LOCAL_ADMISSION_REJECTS));
+    }
+}
@@ -0,0 +1,123 @@
+package com.mirson.gemini.cache.core.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.core.metrics.CacheMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 本地缓存内存预算：合计不超过上限、按命中次数分配、额度同步到缓存的淘汰上限
+ *
+ * @author zoutongkun
+ */
+public class LocalMemoryBudgetTest {
+
+    private static final long BUDGET = 1024 * 1024;
+
+    /**
+     * 每个条目的估算大小
+     */
+    private static final int ENTRY_WEIGHT = 1000;
+
+    private LocalMemoryBudget budget;
+
+    private Cache<Object, Object> hot;
+
+    private Cache<Object, Object> cold;
+
+    @Before
+    public void setUp() {
+        CacheConfigProperties properties = new CacheConfigProperties();
+        properties.setMemoryBudget(1);
+        // 不自动重新分配，由测试调用
+        properties.setRebalanceInterval(3600);
+        budget = new LocalMemoryBudget(properties, new CacheMetrics());
+        hot = newCache();
+        budget.register("hot", hot);
+        cold = newCache();
+        budget.register("cold", cold);
+        // 停止注册时提交的重新分配，等待正在进行的分配完成
+        budget.shutdown();
+        budget.rebalance();
+    }
+
+    @After
+    public void tearDown() {
+        budget.shutdown();
+    }
+
+    @Test
+    public void disabledWithoutBudget() {
+        LocalMemoryBudget disabled = new LocalMemoryBudget(new CacheConfigProperties(), new CacheMetrics());
+        assertFalse(disabled.isEnabled());
+        assertTrue(budget.isEnabled());
+    }
+
+    @Test
+    public void allocationsStayWithinBudget() {
+        for (int i = 0; i < 5; i++) {
+            assertTrue(budget.getAllocated("hot") + budget.getAllocated("cold") <= BUDGET);
+            budget.rebalance();
+        }
+        assertEquals(budget.getAllocated("hot"), maximum(hot));
+        assertEquals(budget.getAllocated("cold"), maximum(cold));
+    }
+
+    @Test
+    public void hitsShiftBudgetToHotCache() {
+        hot.put("key", "value");
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 100; i++) {
+                hot.getIfPresent("key");
+            }
+            budget.rebalance();
+        }
+        long hotAllocated = budget.getAllocated("hot");
+        long coldAllocated = budget.getAllocated("cold");
+        assertTrue(hotAllocated > coldAllocated * 3);
+        assertTrue(hotAllocated + coldAllocated <= BUDGET);
+        // 没有命中的缓存仍保留保底额度
+        assertTrue("cold allocation below floor: " + coldAllocated, coldAllocated >= BUDGET * 0.2 / 2 * 0.9);
+        assertEquals(hotAllocated, maximum(hot));
+        assertEquals(coldAllocated, maximum(cold));
+    }
+
+    @Test
+    public void cacheIsEvictedToItsAllocation() {
+        for (int i = 0; i < 2000; i++) {
+            cold.put(i, "value");
+        }
+        cold.cleanUp();
+        assertTrue(budget.getWeightedSize("cold") <= budget.getAllocated("cold"));
+        assertTrue(budget.getWeightedSize("cold") > 0);
+    }
+
+    @Test
+    public void unregisterOnlyRemovesSameCache() {
+        budget.unregister("hot", newCache());
+        assertTrue(budget.getAllocated("hot") > 0);
+        budget.unregister("hot", hot);
+        assertEquals(0, budget.getAllocated("hot"));
+        assertEquals(0, budget.getWeightedSize("hot"));
+    }
+
+    private Cache<Object, Object> newCache() {
+        return Caffeine.newBuilder()
+                .maximumWeight(budget.initialShare())
+                .weigher((key, value) -> ENTRY_WEIGHT)
+                .recordStats()
+                .executor(Runnable::run)
+                .build();
+    }
+
+    private static long maximum(Cache<Object, Object> cache) {
+        return cache.policy().eviction().get().getMaximum();
+    }
+}
@@ -0,0 +1,140 @@
+package com.mirson.gemini.cache.core.cache;
+
+import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.core.metrics.CacheMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.redisson.codec.SerializationCodec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 堆外缓存的读写、覆盖、过期与淘汰
+ *
+ * @author zoutongkun
+ */
+public class OffHeapStoreTest {
+
+    private static final String CACHE = "offheap_test";
+
+    private OffHeapStore store;
+
+    @Before
+    public void setUp() {
+        CacheConfigProperties properties = new CacheConfigProperties();
+        // 2个1MB的分块
+        properties.setOffHeapCapacity(2);
+        properties.setOffHeapSlabSize(1);
+        properties.setOffHeapMinValueSize(0);
+        properties.setOffHeapPromoteHits(2);
+        store = new OffHeapStore(properties, new CacheMetrics(), new SerializationCodec());
+    }
+
+    @After
+    public void tearDown() {
+        store.shutdown();
+    }
+
+    @Test
+    public void putAndGet() {
+        assertTrue(store.isEnabled());
+        CacheEntry entry = new CacheEntry("value", 1000L, 60000L, 5L, 7L);
+        assertTrue(store.put(CACHE, "key", entry, future()));
+
+        CacheEntry stored = store.get(CACHE, "key");
+        assertNotNull(stored);
+        assertEquals("value", stored.getValue());
+        assertEquals(1000L, stored.getWriteTime());
+        assertEquals(60000L, stored.getTtl());
+        assertEquals(7L, stored.getVersion());
+        assertNull(store.get(CACHE, "missing"));
+        assertNull(store.get("other_cache", "key"));
+    }
+
+    @Test
+    public void overwriteReplacesEntryAndUsedBytes() {
+        store.put(CACHE, "key", entry("short"), future());
+        long used = store.getUsedBytes(CACHE);
+        assertTrue(used > 0);
+
+        store.put(CACHE, "key", entry(repeat('x', 1000)), future());
+        assertEquals(repeat('x', 1000), store.get(CACHE, "key").getValue());
+        assertTrue(store.getUsedBytes(CACHE) > used);
+
+        store.put(CACHE, "key", entry("short"), future());
+        assertEquals(used, store.getUsedBytes(CACHE));
+    }
+
+    @Test
+    public void expiredEntryIsRemoved() {
+        store.put(CACHE, "key", entry("value"), System.currentTimeMillis() - 1);
+        assertNull(store.get(CACHE, "key"));
+        assertEquals(0L, store.getUsedBytes(CACHE));
+    }
+
+    @Test
+    public void removeAndRemoveAll() {
+        store.put(CACHE, "a", entry("a"), future());
+        store.put(CACHE, "b", entry("b"), future());
+        store.put("other_cache", "a", entry("a"), future());
+
+        store.remove(CACHE, "a");
+        assertNull(store.get(CACHE, "a"));
+        assertNotNull(store.get(CACHE, "b"));
+
+        store.removeAll(CACHE);
+        assertNull(store.get(CACHE, "b"));
+        assertEquals(0L, store.getUsedBytes(CACHE));
+        assertNotNull(store.get("other_cache", "a"));
+    }
+
+    @Test
+    public void rejectsEntryLargerThanSlab() {
+        assertFalse(store.put(CACHE, "key", entry(repeat('x', 2 * 1024 * 1024)), future()));
+        assertNull(store.get(CACHE, "key"));
+    }
+
+    @Test
+    public void recyclesOldestSlabWhenFull() {
+        String value = repeat('x', 300 * 1024);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(store.put(CACHE, i, entry(value), future()));
+        }
+        // 每个分块放得下3个条目，循环复用后最早写入的条目被淘汰
+        assertNull(store.get(CACHE, 0));
+        assertNotNull(store.get(CACHE, 9));
+        assertTrue(store.getUsedBytes(CACHE) <= 2 * 1024 * 1024);
+    }
+
+    @Test
+    public void promotesAfterConfiguredHits() {
+        store.put(CACHE, "key", entry("value"), future());
+        store.get(CACHE, "key");
+        assertFalse(store.shouldPromote(CACHE, "key"));
+        store.get(CACHE, "key");
+        assertTrue(store.shouldPromote(CACHE, "key"));
+        // 提升后重新计数
+        assertFalse(store.shouldPromote(CACHE, "key"));
+    }
+
+    private static CacheEntry entry(Object value) {
+        return new CacheEntry(value, System.currentTimeMillis(), 60000L, 0L);
+    }
+
+    private static long future() {
+        return System.currentTimeMillis() + 60000L;
+    }
+
+    private static String repeat(char c, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
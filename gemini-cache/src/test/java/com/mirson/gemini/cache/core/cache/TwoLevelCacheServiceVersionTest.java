@@ -0,0 +1,100 @@
+package com.mirson.gemini.cache.core.cache;
+
+import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.core.metrics.CacheMetrics;
+import org.junit.Before;
+import org.junit.Test;
+import org.redisson.codec.SerializationCodec;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 本地缓存的版本校验：清空整个缓存之后从Redis读取的数据可以写入本地缓存
+ *
+ * @author zoutongkun
+ */
+public class TwoLevelCacheServiceVersionTest {
+
+    private static final String CACHE_NAME = "orders";
+
+    private static final String[] CACHE_NAMES = {CACHE_NAME};
+
+    private CacheConfigProperties properties;
+
+    private CacheMetrics cacheMetrics;
+
+    /**
+     * 读取Redis时执行的操作（模拟读取期间收到的变更消息）
+     */
+    private final AtomicReference<Runnable> duringRead = new AtomicReference<>();
+
+    private TwoLevelCacheService cacheService;
+
+    @Before
+    public void setUp() {
+        properties = new CacheConfigProperties();
+        properties.setMaximumSize(1000);
+        properties.setExpireAfterWrite(60000);
+        properties.setTimeout(3000);
+        properties.setVersionTombstoneTtl(10000);
+        properties.setVersionTombstoneSize(1000);
+        cacheMetrics = new CacheMetrics();
+        CacheService redis = (CacheService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{CacheService.class}, (proxy, method, args) -> {
+                    if (!"getEntry".equals(method.getName())) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    Runnable action = duringRead.getAndSet(null);
+                    if (action != null) {
+                        action.run();
+                    }
+                    // 回源写入的条目不带版本号
+                    return new CacheEntry("value-" + args[1], System.currentTimeMillis(), 60000L, 0L);
+                });
+        cacheService = new TwoLevelCacheService(redis, null, properties, cacheMetrics, null,
+                new LocalCacheSpecs(properties), new LocalMemoryBudget(properties, cacheMetrics),
+                new OffHeapStore(properties, cacheMetrics, new SerializationCodec()),
+                new HostSharedSegment(properties, cacheMetrics, new SerializationCodec()), null);
+    }
+
+    @Test
+    public void acceptsReadStartedAfterClear() {
+        assertEquals("value-a", cacheService.get(CACHE_NAME, "a"));
+        cacheService.clearNotSend(CACHE_NAMES, null, 5L);
+        assertNull(local("a"));
+
+        assertEquals("value-a", cacheService.get(CACHE_NAME, "a"));
+        assertNotNull(local("a"));
+        assertEquals(0L, cacheMetrics.get(CACHE_NAME, CacheMetrics.LOCAL_VERSION_REJECTS));
+    }
+
+    @Test
+    public void rejectsReadOverlappingClear() {
+        cacheService.get(CACHE_NAME, "warm");
+        duringRead.set(() -> cacheService.clearNotSend(CACHE_NAMES, null, 5L));
+        assertEquals("value-a", cacheService.get(CACHE_NAME, "a"));
+        assertNull(local("a"));
+        assertEquals(1L, cacheMetrics.get(CACHE_NAME, CacheMetrics.LOCAL_VERSION_REJECTS));
+
+        // 下一次读取在清空之后开始
+        cacheService.get(CACHE_NAME, "a");
+        assertNotNull(local("a"));
+    }
+
+    @Test
+    public void rejectsOlderThanKeyVersion() {
+        cacheService.get(CACHE_NAME, "warm");
+        cacheService.clearNotSend(CACHE_NAMES, "a", 5L);
+        cacheService.get(CACHE_NAME, "a");
+        assertNull(local("a"));
+    }
+
+    private Object local(Object key) {
+        return cacheService.localCaches().get(CACHE_NAME).getIfPresent(key);
+    }
+}
@@ -0,0 +1,262 @@
+package com.mirson.gemini.cache.core.listener;
+
+import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.core.bloom.BloomFilterManager;
+import com.mirson.gemini.cache.core.cache.CacheEntry;
+import com.mirson.gemini.cache.core.cache.CacheService;
+import com.mirson.gemini.cache.core.cache.HostSharedSegment;
+import com.mirson.gemini.cache.core.cache.LocalCacheSpecs;
+import com.mirson.gemini.cache.core.cache.LocalMemoryBudget;
+import com.mirson.gemini.cache.core.cache.OffHeapStore;
+import com.mirson.gemini.cache.core.cache.TwoLevelCacheService;
+import com.mirson.gemini.cache.core.metrics.CacheMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.MessageListener;
+import org.redisson.client.RedisConnectionException;
+import org.redisson.client.codec.Codec;
+import org.redisson.codec.SerializationCodec;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 按需订阅变更topic分片：首次访问缓存时订阅，订阅后能收到变更消息，订阅失败时下次访问重试
+ *
+ * @author zoutongkun
+ */
+public class CacheTopicSubscriberTest {
+
+    private static final String TOPIC = "test:topic";
+
+    private static final String CACHE_NAME = "orders";
+
+    private final Codec codec = new SerializationCodec();
+
+    /**
+     * 各channel上订阅的监听器
+     */
+    private final Map<String, MessageListener<byte[]>> listeners = new ConcurrentHashMap<>();
+
+    /**
+     * 剩余的订阅失败次数
+     */
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /**
+     * 各channel的订阅次数
+     */
+    private final Map<String, AtomicInteger> subscribeCalls = new ConcurrentHashMap<>();
+
+    /**
+     * 订阅该channel时阻塞，直到gate打开（模拟较慢的订阅）
+     */
+    private volatile String gatedChannel;
+
+    private final CountDownLatch gate = new CountDownLatch(1);
+
+    private final CountDownLatch gateReached = new CountDownLatch(1);
+
+    private CacheConfigProperties properties;
+
+    private BloomFilterManager bloomFilterManager;
+
+    private TwoLevelCacheService cacheService;
+
+    private CacheUpdateMessageListener messageListener;
+
+    @Before
+    public void setUp() {
+        properties = new CacheConfigProperties();
+        properties.setMaximumSize(1000);
+        properties.setExpireAfterWrite(60000);
+        properties.setTimeout(3000);
+        properties.setTopic(TOPIC);
+        properties.setNotifyShards(4);
+        properties.setBloomSyncInterval(60);
+        CacheMetrics cacheMetrics = new CacheMetrics();
+        CacheService redis = (CacheService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{CacheService.class}, (proxy, method, args) -> {
+                    if (!"getEntry".equals(method.getName())) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    return new CacheEntry("value-" + args[1], System.currentTimeMillis(), 60000L, 0L);
+                });
+        HostSharedSegment hostSharedSegment = new HostSharedSegment(properties, cacheMetrics, codec);
+        cacheService = new TwoLevelCacheService(redis, null, properties, cacheMetrics, null,
+                new LocalCacheSpecs(properties), new LocalMemoryBudget(properties, cacheMetrics),
+                new OffHeapStore(properties, cacheMetrics, codec), hostSharedSegment, null);
+        bloomFilterManager = new BloomFilterManager(null, properties, cacheMetrics, null);
+        messageListener = new CacheUpdateMessageListener(cacheService, bloomFilterManager, hostSharedSegment, codec);
+    }
+
+    @After
+    public void tearDown() {
+        bloomFilterManager.shutdown();
+    }
+
+    @Test
+    public void onDemandShardReceivesMessages() throws IOException {
+        CacheTopicSubscriber subscriber = subscriber();
+        assertTrue(subscriber.isSharded());
+        assertTrue(listeners.isEmpty());
+
+        assertEquals("value-a", cacheService.get(CACHE_NAME, "a"));
+        String channel = CacheTopics.channel(TOPIC, CacheTopics.shard(CACHE_NAME, 4));
+        assertEquals(Collections.singleton(channel), listeners.keySet());
+        assertNotNull(local("a"));
+
+        publish(channel, "a");
+        assertNull(local("a"));
+    }
+
+    @Test
+    public void failedSubscriptionIsRetried() throws IOException {
+        subscriber();
+        failures.set(1);
+        try {
+            cacheService.get(CACHE_NAME, "a");
+            fail("subscription failure should propagate");
+        } catch (RedisConnectionException e) {
+            // 未订阅时不创建本地缓存
+            assertFalse(cacheService.localCaches().containsKey(CACHE_NAME));
+            assertTrue(listeners.isEmpty());
+        }
+
+        assertEquals("value-a", cacheService.get(CACHE_NAME, "a"));
+        assertNotNull(local("a"));
+        String channel = CacheTopics.channel(TOPIC, CacheTopics.shard(CACHE_NAME, 4));
+        publish(channel, "a");
+        assertNull(local("a"));
+    }
+
+    @Test
+    public void slowSubscriptionDoesNotBlockOtherCaches() throws Exception {
+        subscriber();
+        String channel = CacheTopics.channel(TOPIC, CacheTopics.shard(CACHE_NAME, 4));
+        String otherCache = otherShardCache();
+        gatedChannel = channel;
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Object> first = executor.submit(() -> cacheService.get(CACHE_NAME, "a"));
+            assertTrue(gateReached.await(5, TimeUnit.SECONDS));
+            Future<Object> second = executor.submit(() -> cacheService.get(CACHE_NAME, "b"));
+
+            // 其他缓存名称的创建不等待该分片的订阅
+            assertEquals("value-x", cacheService.get(otherCache, "x"));
+            assertFalse(cacheService.localCaches().containsKey(CACHE_NAME));
+
+            gate.countDown();
+            assertEquals("value-a", first.get(5, TimeUnit.SECONDS));
+            assertEquals("value-b", second.get(5, TimeUnit.SECONDS));
+            // 并发访问只订阅一次
+            assertEquals(1, subscribeCalls.get(channel).get());
+        } finally {
+            gate.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void listenerMayCreateOtherCaches() {
+        String otherCache = otherShardCache();
+        cacheService.addCreateListener(cacheName -> {
+            if (CACHE_NAME.equals(cacheName)) {
+                cacheService.get(otherCache, "x");
+            }
+        });
+        assertEquals("value-a", cacheService.get(CACHE_NAME, "a"));
+        assertTrue(cacheService.localCaches().containsKey(CACHE_NAME));
+        assertTrue(cacheService.localCaches().containsKey(otherCache));
+    }
+
+    @Test(expected = RedisConnectionException.class)
+    public void unshardedSubscriptionFailurePropagates() {
+        properties.setNotifyShards(0);
+        failures.set(1);
+        new CacheTopicSubscriber(redissonClient(), properties, messageListener);
+    }
+
+    /**
+     * 与CACHE_NAME不在同一分片的缓存名称
+     */
+    private static String otherShardCache() {
+        for (int i = 0; ; i++) {
+            String cacheName = "users" + i;
+            if (CacheTopics.shard(cacheName, 4) != CacheTopics.shard(CACHE_NAME, 4)) {
+                return cacheName;
+            }
+        }
+    }
+
+    private CacheTopicSubscriber subscriber() {
+        CacheTopicSubscriber subscriber = new CacheTopicSubscriber(redissonClient(), properties, messageListener);
+        cacheService.addCreateListener(subscriber::subscribe);
+        return subscriber;
+    }
+
+    /**
+     * 模拟其他节点发布的删除消息
+     */
+    private void publish(String channel, Object key) throws IOException {
+        CacheUpdateMessage message = new CacheUpdateMessage(CACHE_NAME, key);
+        byte[] frame = CacheUpdateFrame.encode(0L, Collections.singletonList(message), codec);
+        UUID otherNode = UUID.randomUUID();
+        ByteBuffer.wrap(frame, 1, 16).putLong(otherNode.getMostSignificantBits())
+                .putLong(otherNode.getLeastSignificantBits());
+        listeners.get(channel).onMessage(channel, frame);
+    }
+
+    private Object local(Object key) {
+        return cacheService.localCaches().get(CACHE_NAME).getIfPresent(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedissonClient redissonClient() {
+        return (RedissonClient) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{RedissonClient.class}, (proxy, method, args) -> {
+                    if (!"getTopic".equals(method.getName())) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    String channel = (String) args[0];
+                    return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{RTopic.class},
+                            (topic, topicMethod, topicArgs) -> {
+                                if (!"addListener".equals(topicMethod.getName())
+                                        || !(topicArgs[0] instanceof MessageListener)) {
+                                    throw new UnsupportedOperationException(topicMethod.getName());
+                                }
+                                subscribeCalls.computeIfAbsent(channel, c -> new AtomicInteger()).incrementAndGet();
+                                if (channel.equals(gatedChannel)) {
+                                    gateReached.countDown();
+                                    gate.await();
+                                }
+                                if (failures.getAndDecrement() > 0) {
+                                    throw new RedisConnectionException("subscribe timeout");
+                                }
+                                listeners.put(channel, (MessageListener<byte[]>) topicArgs[0]);
+                                return 1;
+                            });
+                });
+    }
+}
@@ -0,0 +1,90 @@
+package com.mirson.gemini.cache.core.listener;
+
+import com.mirson.gemini.cache.common.CacheConfigProperties;
+import com.mirson.gemini.cache.core.key.CacheKey128;
+import org.junit.Test;
+import org.redisson.client.codec.Codec;
+import org.redisson.codec.SerializationCodec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 缓存变更消息帧的编码与解码
+ *
+ * @author zoutongkun
+ */
+public class CacheUpdateFrameTest {
+
+    private final Codec codec = new SerializationCodec();
+
+    @Test
+    public void roundTripsEachKeyType() throws IOException {
+        StringBuilder longString = new StringBuilder();
+        for (int i = 0; i < 30000; i++) {
+            longString.append('k');
+        }
+        List<Object> keys = Arrays.<Object>asList("order:1", "中文key", "", 42L, Long.MIN_VALUE,
+                new CacheKey128(-1L, 7L), 3, Arrays.asList("a", 1), longString.toString());
+        long[] versions = new long[keys.size()];
+        for (int i = 0; i < versions.length; i++) {
+            versions[i] = 100L + i;
+        }
+        CacheUpdateMessage group = new CacheUpdateMessage(new String[]{"orders", "users"}, keys);
+        group.setVersions(versions);
+
+        List<CacheUpdateMessage> messages = CacheUpdateFrame.decode(
+                CacheUpdateFrame.encode(9L, Collections.singletonList(group), codec), codec);
+        assertEquals(1, messages.size());
+        CacheUpdateMessage message = messages.get(0);
+        assertArrayEquals(new Object[]{"orders", "users"}, message.getCacheNames());
+        assertEquals(keys, new ArrayList<>(message.getKeys()));
+        assertArrayEquals(versions, message.getVersions());
+        assertEquals(CacheConfigProperties.SYSTEM_ID, message.getSystemId());
+        assertEquals(9L, message.getSegmentId());
+    }
+
+    @Test
+    public void roundTripsSingleKeyAndClear() throws IOException {
+        CacheUpdateMessage single = new CacheUpdateMessage("orders", new CacheKey128(1L, 2L));
+        single.setVersion(5L);
+        CacheUpdateMessage shared = new CacheUpdateMessage(new String[]{"users"}, Arrays.asList("a", 2L));
+        shared.setVersion(6L);
+        CacheUpdateMessage clear = new CacheUpdateMessage("orders", (Object) null);
+        clear.setVersion(7L);
+
+        List<CacheUpdateMessage> messages = CacheUpdateFrame.decode(
+                CacheUpdateFrame.encode(0L, Arrays.asList(single, shared, clear), codec), codec);
+        assertEquals(3, messages.size());
+
+        assertEquals(Collections.<Object>singletonList(new CacheKey128(1L, 2L)),
+                new ArrayList<>(messages.get(0).getKeys()));
+        assertArrayEquals(new long[]{5L}, messages.get(0).getVersions());
+
+        assertEquals(Arrays.<Object>asList("a", 2L), new ArrayList<>(messages.get(1).getKeys()));
+        assertArrayEquals(new long[]{6L, 6L}, messages.get(1).getVersions());
+
+        assertArrayEquals(new Object[]{"orders"}, messages.get(2).getCacheNames());
+        assertNull(messages.get(2).getKey());
+        assertNull(messages.get(2).getKeys());
+        assertEquals(7L, messages.get(2).getVersion());
+
+        // 同一帧内消息标识连续
+        assertEquals(messages.get(0).getMessageId() + 1, messages.get(1).getMessageId());
+        assertEquals(messages.get(0).getMessageId() + 2, messages.get(2).getMessageId());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnknownVersion() throws IOException {
+        byte[] frame = CacheUpdateFrame.encode(0L, Collections.<CacheUpdateMessage>emptyList(), codec);
+        frame[0] = 1;
+        CacheUpdateFrame.decode(frame, codec);
+    }
+}
@@ -0,0 +1,168 @@
+package com.mirson.gemini.cache.core.loader;
+
+import com.mirson.gemini.cache.core.metrics.CacheMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 并发加载合并：同一key只加载一次、异常传递给等待线程、等待超时后自行加载
+ *
+ * @author zoutongkun
+ */
+public class SingleFlightLoaderTest {
+
+    private static final String CACHE = "single_flight_test";
+
+    private CacheMetrics cacheMetrics;
+
+    private SingleFlightLoader loader;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        cacheMetrics = new CacheMetrics();
+        loader = new SingleFlightLoader(cacheMetrics, CacheMetrics.COALESCED_LOADS);
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentLoadsOfSameKeyAreCoalesced() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        Object value = new Object();
+        CacheLoader slowLoader = () -> {
+            loads.incrementAndGet();
+            started.countDown();
+            release.await();
+            return value;
+        };
+
+        Future<Object> first = executor.submit(() -> load("key", 0, slowLoader));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        List<Future<Object>> waiters = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            waiters.add(executor.submit(() -> load("key", 0, slowLoader)));
+        }
+        awaitMetric(CacheMetrics.COALESCED_LOADS, 5);
+        release.countDown();
+
+        assertSame(value, first.get(5, TimeUnit.SECONDS));
+        for (Future<Object> waiter : waiters) {
+            assertSame(value, waiter.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(0, loader.inFlight());
+    }
+
+    @Test
+    public void differentKeysAreNotCoalesced() throws Throwable {
+        AtomicInteger loads = new AtomicInteger();
+        assertEquals("a", loader.load(CACHE, "a", 0, () -> {
+            loads.incrementAndGet();
+            return "a";
+        }));
+        assertEquals("b", loader.load(CACHE, "b", 0, () -> {
+            loads.incrementAndGet();
+            return "b";
+        }));
+        assertEquals(2, loads.get());
+        assertEquals(0, cacheMetrics.get(CACHE, CacheMetrics.COALESCED_LOADS));
+    }
+
+    @Test
+    public void failureIsPropagatedToWaiters() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("load failed");
+        CacheLoader failingLoader = () -> {
+            started.countDown();
+            release.await();
+            throw failure;
+        };
+
+        Future<Object> first = executor.submit(() -> load("key", 0, failingLoader));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<Object> waiter = executor.submit(() -> load("key", 0, () -> "unexpected"));
+        awaitMetric(CacheMetrics.COALESCED_LOADS, 1);
+        release.countDown();
+
+        assertSame(failure, causeOf(first));
+        assertSame(failure, causeOf(waiter));
+        assertEquals(0, loader.inFlight());
+    }
+
+    @Test
+    public void waiterLoadsItselfAfterTimeout() throws Throwable {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Object> first = executor.submit(() -> load("key", 0, () -> {
+            started.countDown();
+            release.await();
+            return "slow";
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertEquals("fallback", loader.load(CACHE, "key", 20, () -> "fallback"));
+        assertEquals(1, cacheMetrics.get(CACHE, CacheMetrics.COALESCE_TIMEOUTS));
+
+        release.countDown();
+        assertEquals("slow", first.get(5, TimeUnit.SECONDS));
+        assertEquals(0, loader.inFlight());
+    }
+
+    private Object load(Object key, long waitTimeoutMillis, CacheLoader cacheLoader) throws Exception {
+        try {
+            return loader.load(CACHE, key, waitTimeoutMillis, cacheLoader);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Throwable causeOf(Future<Object> future) throws InterruptedException {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (TimeoutException e) {
+            fail("load did not finish");
+        }
+        fail("expected failure");
+        return null;
+    }
+
+    private void awaitMetric(String metric, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cacheMetrics.get(CACHE, metric) < expected) {
+            if (System.currentTimeMillis() > deadline) {
+                fail(metric + " did not reach " + expected);
+            }
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.mirson.gemini.cache.utils;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * MurmurHash3 (x64, 128位) 与参考实现的结果一致
+ *
+ * @author zoutongkun
+ */
+public class Murmur3Test {
+
+    @Test
+    public void matchesReferenceVectors() {
+        assertArrayEquals(new long[]{0L, 0L}, hash(""));
+        assertArrayEquals(new long[]{0xcbd8a7b341bd9b02L, 0x5b1e906a48ae1d19L}, hash("hello"));
+        assertArrayEquals(new long[]{0xe34bbc7bbc071b6cL, 0x7a433ca9c49a9347L},
+                hash("The quick brown fox jumps over the lazy dog"));
+    }
+
+    @Test
+    public void ignoresBytesOutsideRange() {
+        byte[] data = "0123456789abcdefghijklmnopqrstuvwxyz".getBytes(StandardCharsets.UTF_8);
+        for (int length = 0; length <= 32; length++) {
+            byte[] copy = Arrays.copyOfRange(data, 3, 3 + length);
+            assertArrayEquals(Murmur3.hash128(copy, 0, length, 7L), Murmur3.hash128(data, 3, length, 7L));
+        }
+    }
+
+    @Test
+    public void writesIntoReusedArray() {
+        byte[] data = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8);
+        long[] result = new long[2];
+        for (int length = 0; length <= data.length; length++) {
+            Murmur3.hash128(data, 0, length, 7L, result);
+            assertArrayEquals(Murmur3.hash128(data, 0, length, 7L), result);
+        }
+    }
+
+    private static long[] hash(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        return Murmur3.hash128(bytes, 0, bytes.length, 0L);
+    }
+}